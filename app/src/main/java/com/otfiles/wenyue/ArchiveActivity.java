@@ -0,0 +1,221 @@
+package com.otfiles.wenyue;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.otfiles.wenyue.adapters.ArchiveEntryAdapter;
+import com.otfiles.wenyue.utils.AppSettings;
+import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.ForegroundWork;
+import com.otfiles.wenyue.utils.HexFile;
+import com.otfiles.wenyue.utils.WorkerPools;
+import com.otfiles.wenyue.utils.ZipIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * 像文件夹一样浏览 ZIP 压缩包
+ *
+ * 中央目录在后台读取一次，之后进入子目录只查询内存中的索引。
+ * 文本文件以虚拟路径在 ViewerActivity 中打开，内容从压缩包中流式解压，不解压到磁盘。
+ */
+public class ArchiveActivity extends AppCompatActivity implements ArchiveEntryAdapter.OnItemClickListener {
+
+    private static final String TAG = "ArchiveActivity";
+    private static final String STATE_DIRECTORY = "directory";
+
+    private String archivePath;
+    private ZipIndex index;
+    // 当前目录，以 / 结尾，根目录为空字符串
+    private String directory = "";
+    private TextView pathText;
+    private ArchiveEntryAdapter adapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setTheme(AppSettings.getThemeRes(this, false));
+        setContentView(R.layout.activity_archive);
+
+        archivePath = getIntent().getStringExtra("path");
+        if (archivePath == null) {
+            Toast.makeText(this, R.string.error_no_file, Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+        if (savedInstanceState != null) {
+            directory = savedInstanceState.getString(STATE_DIRECTORY, "");
+        }
+        final File archive = new File(archivePath);
+        setTitle(archive.getName());
+
+        pathText = findViewById(R.id.archive_path);
+        adapter = new ArchiveEntryAdapter(this, this);
+        RecyclerView list = findViewById(R.id.archive_list);
+        list.setLayoutManager(new LinearLayoutManager(this));
+        list.setAdapter(adapter);
+
+        index = ZipIndex.getCached(archive);
+        if (index != null) {
+            showDirectory();
+            return;
+        }
+        pathText.setText(R.string.archive_loading);
+        final String initialDirectory = directory;
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                ZipIndex loaded = null;
+                IOException error = null;
+                ForegroundWork.begin();
+                try {
+                    loaded = ZipIndex.open(archive);
+                    // 顺便列出要显示的目录，显示时不用再切换线程
+                    loaded.list(initialDirectory);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    ForegroundWork.end();
+                }
+                final ZipIndex result = loaded;
+                final IOException failure = error;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isDestroyed()) {
+                            return;
+                        }
+                        if (result == null) {
+                            Log.e(TAG, "Error reading archive: " + archivePath, failure);
+                            Toast.makeText(ArchiveActivity.this,
+                                getString(R.string.archive_open_failed, failure.getMessage()), Toast.LENGTH_LONG).show();
+                            finish();
+                            return;
+                        }
+                        index = result;
+                        showDirectory();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_DIRECTORY, directory);
+    }
+
+    /**
+     * 显示当前目录，还没有列出过的目录在后台列出并排序
+     */
+    private void showDirectory() {
+        pathText.setText("/" + directory);
+        List<ZipIndex.Entry> cached = index.getCachedListing(directory);
+        if (cached != null) {
+            adapter.setEntries(cached);
+            return;
+        }
+        final ZipIndex current = index;
+        final String requested = directory;
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<ZipIndex.Entry> entries;
+                ForegroundWork.begin();
+                try {
+                    entries = current.list(requested);
+                } finally {
+                    ForegroundWork.end();
+                }
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        // 列出期间又进入了别的目录时放弃
+                        if (!isDestroyed() && requested.equals(directory)) {
+                            adapter.setEntries(entries);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public void onItemClick(ZipIndex.Entry entry) {
+        if (entry.isDirectory()) {
+            directory = entry.getPath();
+            showDirectory();
+            return;
+        }
+        final String path = ZipIndex.entryPath(archivePath, entry);
+        String extension = FileUtils.getFileExtension(entry.getName());
+        if (FileUtils.isTextFile(extension)) {
+            openEntry(path);
+        } else if (FileUtils.isImageFile(extension) || FileUtils.isAudioFile(extension)
+                || FileUtils.isVideoFile(extension)) {
+            Toast.makeText(this, R.string.archive_binary_entry, Toast.LENGTH_SHORT).show();
+        } else {
+            // 扩展名无法判断时解压开头的一小段检查
+            WorkerPools.io().execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean binary;
+                    try {
+                        InputStream in = index.openEntry(path);
+                        try {
+                            binary = HexFile.isBinary(in);
+                        } finally {
+                            in.close();
+                        }
+                    } catch (IOException e) {
+                        Log.w(TAG, "Error reading entry: " + path, e);
+                        binary = true;
+                    }
+                    final boolean showText = !binary;
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isDestroyed()) {
+                                return;
+                            }
+                            if (showText) {
+                                openEntry(path);
+                            } else {
+                                Toast.makeText(ArchiveActivity.this, R.string.archive_binary_entry,
+                                    Toast.LENGTH_SHORT).show();
+                            }
+                        }
+                    });
+                }
+            });
+        }
+    }
+
+    private void openEntry(String path) {
+        Intent intent = new Intent(this, ViewerActivity.class);
+        intent.putExtra("path", path);
+        startActivity(intent);
+    }
+
+    @Override
+    public void onBackPressed() {
+        if (index != null && !directory.isEmpty()) {
+            // 返回上级目录
+            int slash = directory.lastIndexOf('/', directory.length() - 2);
+            directory = slash >= 0 ? directory.substring(0, slash + 1) : "";
+            showDirectory();
+        } else {
+            super.onBackPressed();
+        }
+    }
+}
@@ -1,29 +1,49 @@
 package com.otfiles.wenyue;
 
+import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
 import android.widget.PopupMenu;
+import android.widget.ProgressBar;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.otfiles.wenyue.adapters.DirectoryAdapter;
+import com.otfiles.wenyue.utils.AppSettings;
+import com.otfiles.wenyue.utils.BatchTranscoder;
+import com.otfiles.wenyue.utils.DirectoryListingCache;
+import com.otfiles.wenyue.utils.DirectorySizeCalculator;
+import com.otfiles.wenyue.utils.DocumentCache;
+import com.otfiles.wenyue.utils.FileHasher;
 import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.ForegroundWork;
+import com.otfiles.wenyue.utils.ReadingPositionStore;
+import com.otfiles.wenyue.utils.WorkerPools;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DirectoryActivity extends AppCompatActivity implements DirectoryAdapter.OnItemClickListener {
 
+    private static final String TAG = "DirectoryActivity";
     private TextView titleText;
     private Button viewButton;
     private Button selectAllButton;
@@ -34,8 +54,42 @@ public class DirectoryActivity extends AppCompatActivity implements DirectoryAda
     private DirectoryAdapter adapter;
     private File currentDirectory;
     private boolean isAddFavoriteMode = false;
+    private DirectorySizeCalculator.Task sizeTask;
+    private FileHasher.Task hashTask;
+    private BatchTranscoder convertTask;
+    
+    private final Handler handler = new Handler();
+    private FileObserver observer;
+    // 界面可见时才监听目录，不可见期间的变化在回到界面时按修改时间校验
+    private boolean started;
+    private boolean missedChanges;
+    // 正在后台合并变化
+    private boolean applying;
+    // 以下字段由 pendingNames 保护，监听线程写入，主线程取出
+    private final Set<String> pendingNames = new LinkedHashSet<>();
+    private File watchedDirectory;
+    private boolean relistPending;
+    private long firstPendingAt;
+    private final Runnable applyPendingChanges = new Runnable() {
+        @Override
+        public void run() {
+            applyPendingChanges();
+        }
+    };
     
     private static final String STATE_CURRENT_DIRECTORY = "current_directory";
+    // 转换编码时刷新进度的最小间隔
+    private static final long CONVERT_PROGRESS_INTERVAL_MS = 100;
+    // 转换失败的文件最多列出这么多个，其余只计数
+    private static final int MAX_LISTED_FAILURES = 100;
+    private static final int WATCH_EVENTS = FileObserver.CREATE | FileObserver.DELETE
+        | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+    // inotify 的事件队列溢出，FileObserver 没有公开这个常量
+    private static final int EVENT_Q_OVERFLOW = 0x4000;
+    // 最后一个事件之后等待多久再刷新，相机一次写入几百张照片这样的连续变化合并为一次
+    private static final long CHANGE_DEBOUNCE_MS = 300;
+    // 变化一直持续时最多等待这么久也刷新一次
+    private static final long CHANGE_MAX_DELAY_MS = 1000;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -71,6 +125,43 @@ public class DirectoryActivity extends AppCompatActivity implements DirectoryAda
         updateUI();
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        if (missedChanges && currentDirectory != null) {
+            missedChanges = false;
+            // 不可见期间可能有变化，目录未变化时缓存的列表就是正在显示的列表，不会刷新
+            currentDirectory = nearestDirectory(currentDirectory);
+            loadDirectoryContents();
+        } else if (currentDirectory != null && currentDirectory.isDirectory()) {
+            watchDirectory();
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        started = false;
+        missedChanges = true;
+        stopWatching();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        stopWatching();
+        if (sizeTask != null) {
+            sizeTask.cancel();
+        }
+        if (hashTask != null) {
+            hashTask.cancel();
+        }
+        if (convertTask != null) {
+            convertTask.cancel();
+        }
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -80,14 +171,7 @@ public class DirectoryActivity extends AppCompatActivity implements DirectoryAda
     }
 
     private void applyTheme() {
-        SharedPreferences prefs = getSharedPreferences("app_settings", MODE_PRIVATE);
-        String theme = prefs.getString("color_theme", "blue");
-        
-        if ("green".equals(theme)) {
-            setTheme(R.style.AppTheme_Green);
-        } else {
-            setTheme(R.style.AppTheme);
-        }
+        setTheme(AppSettings.getThemeRes(this, false));
     }
 
     private void initViews() {
@@ -150,12 +234,147 @@ public class DirectoryActivity extends AppCompatActivity implements DirectoryAda
         
         titleText.setText(currentDirectory.getAbsolutePath());
         
-        File[] filesArray = currentDirectory.listFiles();
-        List<File> files = filesArray != null ? Arrays.asList(filesArray) : new ArrayList<File>();
-        
-        // 排序：文件夹在前，文件在后，按名称排序
-        files = FileUtils.sortFiles(files);
-        adapter.updateFiles(files);
+        // 先开始监听再列出，列出期间发生的变化也会收到事件，合并时已经在列表中的条目不变
+        if (started && !currentDirectory.equals(watchedDirectory)) {
+            watchDirectory();
+        }
+        // 排序：文件夹在前，文件在后，按名称排序；目录未变化时直接使用缓存（包括收藏预加载的结果）
+        ForegroundWork.begin();
+        try {
+            List<File> files = DirectoryListingCache.list(currentDirectory);
+            if (files != adapter.getFiles()) {
+                adapter.updateFiles(files);
+            }
+        } finally {
+            ForegroundWork.end();
+        }
+    }
+
+    /**
+     * @return directory 本身，不存在时为最近的存在的上级目录
+     */
+    private static File nearestDirectory(File directory) {
+        File existing = directory;
+        while (existing != null && !existing.isDirectory()) {
+            existing = existing.getParentFile();
+        }
+        return existing != null ? existing : Environment.getExternalStorageDirectory();
+    }
+
+    /**
+     * 监听当前目录中条目的创建、删除和移动，文件内容的修改不影响列表
+     */
+    private void watchDirectory() {
+        stopWatching();
+        final File directory = currentDirectory;
+        synchronized (pendingNames) {
+            watchedDirectory = directory;
+        }
+        observer = new FileObserver(directory.getAbsolutePath(), WATCH_EVENTS) {
+            @Override
+            public void onEvent(int event, String path) {
+                onDirectoryEvent(directory, event, path);
+            }
+        };
+        observer.startWatching();
+    }
+
+    private void stopWatching() {
+        if (observer != null) {
+            observer.stopWatching();
+            observer = null;
+        }
+        handler.removeCallbacks(applyPendingChanges);
+        synchronized (pendingNames) {
+            watchedDirectory = null;
+            pendingNames.clear();
+            relistPending = false;
+            firstPendingAt = 0;
+        }
+    }
+
+    /**
+     * 在监听线程调用，记录变化的文件名，等变化停下来后再合并到列表中
+     */
+    private void onDirectoryEvent(File directory, int event, String name) {
+        boolean relist = name == null || (event & EVENT_Q_OVERFLOW) != 0
+            || (event & (FileObserver.DELETE_SELF | FileObserver.MOVE_SELF)) != 0;
+        if (!relist && (event & WATCH_EVENTS) == 0) {
+            return;
+        }
+        synchronized (pendingNames) {
+            if (directory != watchedDirectory) {
+                return;
+            }
+            if (relist) {
+                relistPending = true;
+            } else {
+                pendingNames.add(name);
+            }
+            long now = SystemClock.uptimeMillis();
+            if (firstPendingAt == 0) {
+                firstPendingAt = now;
+            }
+            handler.removeCallbacks(applyPendingChanges);
+            handler.postAtTime(applyPendingChanges, Math.min(now + CHANGE_DEBOUNCE_MS, firstPendingAt + CHANGE_MAX_DELAY_MS));
+        }
+    }
+
+    /**
+     * 在后台把变化的条目插入或移出排序后的列表，只通知变化的位置
+     */
+    private void applyPendingChanges() {
+        if (isDestroyed()) {
+            return;
+        }
+        if (applying) {
+            // 上一批还没有合并完，之后再处理
+            handler.removeCallbacks(applyPendingChanges);
+            handler.postDelayed(applyPendingChanges, CHANGE_DEBOUNCE_MS);
+            return;
+        }
+        final List<String> names;
+        boolean relist;
+        synchronized (pendingNames) {
+            names = new ArrayList<>(pendingNames);
+            relist = relistPending;
+            pendingNames.clear();
+            relistPending = false;
+            firstPendingAt = 0;
+        }
+        final List<File> shown = adapter.getFiles();
+        if (relist || !(shown instanceof DirectoryListingCache.Snapshot)) {
+            // 事件丢失，或者目录本身被删除、移走，重新列出
+            currentDirectory = nearestDirectory(currentDirectory);
+            loadDirectoryContents();
+            return;
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        final File directory = currentDirectory;
+        applying = true;
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                final DirectoryListingCache.Update update = DirectoryListingCache.applyChanges(
+                    directory, (DirectoryListingCache.Snapshot) shown, names);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        applying = false;
+                        if (isDestroyed()) {
+                            return;
+                        }
+                        // 期间切换了目录或重新列出时丢弃
+                        if (directory.equals(currentDirectory) && adapter.getFiles() == shown) {
+                            adapter.applyUpdate(update);
+                            updateButtonVisibility();
+                        }
+                    }
+                });
+            }
+        });
     }
 
     private void updateUI() {
@@ -244,8 +463,10 @@ public class DirectoryActivity extends AppCompatActivity implements DirectoryAda
                     Toast.makeText(DirectoryActivity.this, R.string.copy_function, Toast.LENGTH_SHORT).show();
                     return true;
                 } else if (id == R.id.menu_details) {
-                    // 详情功能占位
-                    Toast.makeText(DirectoryActivity.this, R.string.details_function, Toast.LENGTH_SHORT).show();
+                    showDetailsDialog();
+                    return true;
+                } else if (id == R.id.menu_convert_encoding) {
+                    showConvertEncodingDialog();
                     return true;
                 } else if (id == R.id.menu_settings) {
                     // 启动设置
@@ -259,6 +480,369 @@ public class DirectoryActivity extends AppCompatActivity implements DirectoryAda
         popup.show();
     }
 
+    /**
+     * 显示详情：选中项（未选中时为当前目录）的位置、大小和包含的文件数
+     */
+    private void showDetailsDialog() {
+        final List<File> targets = new ArrayList<>();
+        if (adapter.isSelectionMode()) {
+            targets.addAll(adapter.getSelectedFiles());
+        } else if (currentDirectory != null) {
+            targets.add(currentDirectory);
+        }
+        if (targets.isEmpty()) {
+            Toast.makeText(this, R.string.no_files_selected, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_details, null);
+        TextView nameText = dialogView.findViewById(R.id.details_name);
+        TextView pathText = dialogView.findViewById(R.id.details_path);
+        TextView modifiedText = dialogView.findViewById(R.id.details_modified);
+        final TextView sizeText = dialogView.findViewById(R.id.details_size);
+        final TextView contentsText = dialogView.findViewById(R.id.details_contents);
+        
+        // 统计结果里的文件夹数包含根目录本身，单独查看一个文件夹时不计入
+        int rootDirectories = 0;
+        if (targets.size() == 1) {
+            File target = targets.get(0);
+            nameText.setText(target.getName());
+            pathText.setText(getString(R.string.details_path, target.getAbsolutePath()));
+            modifiedText.setText(getString(R.string.details_modified, FileUtils.getFileLastModified(target)));
+            if (target.isDirectory()) {
+                rootDirectories = 1;
+            } else {
+                contentsText.setVisibility(View.GONE);
+                startChecksums(target, dialogView);
+            }
+        } else {
+            nameText.setText(getString(R.string.details_selection, targets.size()));
+            pathText.setText(getString(R.string.details_path, currentDirectory.getAbsolutePath()));
+            modifiedText.setVisibility(View.GONE);
+        }
+        
+        final int excludedDirectories = rootDirectories;
+        showSizeResult(sizeText, contentsText, new DirectorySizeCalculator.Result(0, 0, excludedDirectories),
+            excludedDirectories, false);
+        
+        if (sizeTask != null) {
+            sizeTask.cancel();
+        }
+        final DirectorySizeCalculator.Task task = DirectorySizeCalculator.calculate(targets,
+            new DirectorySizeCalculator.Listener() {
+                @Override
+                public void onProgress(final DirectorySizeCalculator.Result partial) {
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            showSizeResult(sizeText, contentsText, partial, excludedDirectories, false);
+                        }
+                    });
+                }
+
+                @Override
+                public void onComplete(final DirectorySizeCalculator.Result total) {
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            showSizeResult(sizeText, contentsText, total, excludedDirectories, true);
+                        }
+                    });
+                }
+            });
+        sizeTask = task;
+        
+        AlertDialog dialog = new AlertDialog.Builder(this)
+            .setView(dialogView)
+            .setPositiveButton(R.string.details_close, null)
+            .create();
+        dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialog) {
+                task.cancel();
+                if (hashTask != null) {
+                    hashTask.cancel();
+                    hashTask = null;
+                }
+            }
+        });
+        dialog.show();
+    }
+
+    /**
+     * 在详情对话框中显示文件的校验值，未缓存时在后台计算
+     */
+    private void startChecksums(File file, View dialogView) {
+        dialogView.findViewById(R.id.details_checksum_title).setVisibility(View.VISIBLE);
+        final ProgressBar progressBar = dialogView.findViewById(R.id.details_checksum_progress);
+        final TextView checksumText = dialogView.findViewById(R.id.details_checksums);
+        checksumText.setVisibility(View.VISIBLE);
+        
+        if (hashTask != null) {
+            hashTask.cancel();
+            hashTask = null;
+        }
+        
+        Map<String, String> cached = FileHasher.getCached(file);
+        if (cached != null) {
+            showChecksums(checksumText, cached);
+            return;
+        }
+        
+        progressBar.setVisibility(View.VISIBLE);
+        checksumText.setText(getString(R.string.details_checksum_progress, 0));
+        hashTask = FileHasher.hash(file, new FileHasher.Listener() {
+            @Override
+            public void onProgress(final long hashedBytes, final long totalBytes) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        int permille = totalBytes > 0 ? (int) (hashedBytes * 1000 / totalBytes) : 0;
+                        progressBar.setProgress(permille);
+                        checksumText.setText(getString(R.string.details_checksum_progress, permille / 10));
+                    }
+                });
+            }
+
+            @Override
+            public void onComplete(final Map<String, String> hashes) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        progressBar.setVisibility(View.GONE);
+                        showChecksums(checksumText, hashes);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(IOException e) {
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        progressBar.setVisibility(View.GONE);
+                        checksumText.setText(R.string.details_checksum_failed);
+                    }
+                });
+            }
+        });
+    }
+
+    private void showChecksums(TextView checksumText, Map<String, String> hashes) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> entry : hashes.entrySet()) {
+            if (text.length() > 0) {
+                text.append("\n");
+            }
+            text.append(entry.getKey()).append(":\n").append(entry.getValue());
+        }
+        checksumText.setText(text.toString());
+    }
+
+    private void showSizeResult(TextView sizeText, TextView contentsText,
+                                DirectorySizeCalculator.Result result, int excludedDirectories, boolean complete) {
+        String size = FileUtils.formatFileSize(result.bytes);
+        sizeText.setText(complete ? getString(R.string.details_size, size)
+            : getString(R.string.details_size_calculating, size));
+        contentsText.setText(getString(R.string.details_contents,
+            result.files, Math.max(0, result.directories - excludedDirectories)));
+    }
+
+    /**
+     * 选择目标编码，转换选中的文本文件和选中文件夹下的所有文本文件
+     */
+    private void showConvertEncodingDialog() {
+        final List<File> targets = adapter.getSelectedFiles();
+        if (targets.isEmpty()) {
+            Toast.makeText(this, R.string.no_files_selected, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        
+        final String[] encodings = getResources().getStringArray(R.array.encoding_options);
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.convert_encoding_target)
+            .setItems(encodings, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    convertEncoding(new ArrayList<>(targets), encodings[which]);
+                }
+            })
+            .show();
+    }
+
+    /**
+     * 在后台转换编码，对话框中显示进度和转换失败的文件
+     */
+    private void convertEncoding(List<File> targets, String encoding) {
+        View dialogView = getLayoutInflater().inflate(R.layout.dialog_convert_encoding, null);
+        final TextView statusText = dialogView.findViewById(R.id.convert_status);
+        final ProgressBar progressBar = dialogView.findViewById(R.id.convert_progress);
+        final TextView currentFileText = dialogView.findViewById(R.id.convert_current_file);
+        final View failuresScroll = dialogView.findViewById(R.id.convert_failures_scroll);
+        final TextView failuresText = dialogView.findViewById(R.id.convert_failures);
+        statusText.setText(getString(R.string.convert_encoding_scanning, 0));
+        
+        final BatchTranscoder transcoder = new BatchTranscoder(targets, encoding);
+        transcoder.setThreads(Runtime.getRuntime().availableProcessors());
+        if (convertTask != null) {
+            convertTask.cancel();
+        }
+        convertTask = transcoder;
+        
+        final AlertDialog dialog = new AlertDialog.Builder(this)
+            .setTitle(getString(R.string.convert_encoding) + " → " + encoding)
+            .setView(dialogView)
+            .setNegativeButton(R.string.convert_encoding_cancel, null)
+            .setCancelable(false)
+            .create();
+        dialog.setOnDismissListener(new DialogInterface.OnDismissListener() {
+            @Override
+            public void onDismiss(DialogInterface dialog) {
+                transcoder.cancel();
+            }
+        });
+        dialog.show();
+        
+        final ReadingPositionStore positionStore = ReadingPositionStore.getInstance(getFilesDir());
+        final AtomicInteger processed = new AtomicInteger();
+        final List<String> failures = new ArrayList<>();
+        final AtomicInteger failed = new AtomicInteger();
+        transcoder.setListener(new BatchTranscoder.Listener() {
+            private volatile int total = -1;
+            private volatile long lastReport;
+
+            @Override
+            public void onScanComplete(int totalFiles) {
+                total = totalFiles;
+                report(null, true);
+            }
+
+            @Override
+            public void onFileDone(File file, BatchTranscoder.Outcome outcome, String sourceEncoding) {
+                if (outcome == BatchTranscoder.Outcome.CONVERTED) {
+                    // 文件内容已被替换，原来的阅读位置和缓存的内容不再有效
+                    positionStore.remove(file.getAbsolutePath());
+                    DocumentCache.remove(file.getAbsolutePath());
+                }
+                processed.incrementAndGet();
+                report(file, false);
+            }
+
+            @Override
+            public void onFileFailed(File file, IOException e) {
+                if (failed.getAndIncrement() < MAX_LISTED_FAILURES) {
+                    String failure = getString(R.string.convert_encoding_failure, file.getAbsolutePath(), e.toString());
+                    synchronized (failures) {
+                        failures.add(failure);
+                    }
+                }
+                processed.incrementAndGet();
+                report(file, true);
+            }
+
+            /**
+             * 在工作线程调用，限制刷新频率，失败和统计完成时总是刷新
+             */
+            private void report(final File file, boolean force) {
+                long now = System.currentTimeMillis();
+                if (!force && now - lastReport < CONVERT_PROGRESS_INTERVAL_MS) {
+                    return;
+                }
+                lastReport = now;
+                final int done = processed.get();
+                final int count = total;
+                final int failedCount = failed.get();
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (count < 0) {
+                            statusText.setText(getString(R.string.convert_encoding_scanning, done));
+                        } else {
+                            statusText.setText(failedCount > 0
+                                ? getString(R.string.convert_encoding_progress_failed, done, count, failedCount)
+                                : getString(R.string.convert_encoding_progress, done, count));
+                            progressBar.setIndeterminate(false);
+                            progressBar.setMax(Math.max(1, count));
+                            progressBar.setProgress(done);
+                        }
+                        if (file != null) {
+                            currentFileText.setText(file.getName());
+                        }
+                    }
+                });
+            }
+        });
+        
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                BatchTranscoder.Summary summary = null;
+                IOException error = null;
+                try {
+                    summary = transcoder.run();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error converting encoding", e);
+                    error = e;
+                }
+                final BatchTranscoder.Summary result = summary;
+                final IOException runError = error;
+                final String failureList = joinFailures(failures, failed.get());
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (convertTask == transcoder) {
+                            convertTask = null;
+                        }
+                        if (isDestroyed()) {
+                            return;
+                        }
+                        // 文件大小已经变化
+                        loadDirectoryContents();
+                        if (!dialog.isShowing()) {
+                            return;
+                        }
+                        progressBar.setVisibility(View.GONE);
+                        currentFileText.setVisibility(View.GONE);
+                        if (result == null) {
+                            statusText.setText(getString(R.string.convert_encoding_error, runError.toString()));
+                        } else {
+                            statusText.setText(getString(result.cancelled ? R.string.convert_encoding_cancelled
+                                : R.string.convert_encoding_result, result.converted, result.kept, result.failed));
+                        }
+                        if (failureList != null) {
+                            failuresScroll.setVisibility(View.VISIBLE);
+                            failuresText.setText(failureList);
+                        }
+                        dialog.getButton(DialogInterface.BUTTON_NEGATIVE).setText(R.string.details_close);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @param total 失败的文件总数，超出列出数量的部分只显示个数
+     * @return 没有失败时返回 null
+     */
+    private String joinFailures(List<String> failures, int total) {
+        if (total == 0) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        synchronized (failures) {
+            for (String failure : failures) {
+                if (text.length() > 0) {
+                    text.append("\n");
+                }
+                text.append(failure);
+            }
+            if (total > failures.size()) {
+                text.append("\n").append(getString(R.string.convert_encoding_more_failures, total - failures.size()));
+            }
+        }
+        return text.toString();
+    }
+
     @Override
     public void onItemClick(File file) {
         if (file.isDirectory()) {
@@ -268,10 +852,8 @@ public class DirectoryActivity extends AppCompatActivity implements DirectoryAda
             adapter.clearSelection();
             updateButtonVisibility();
         } else {
-            // 打开单个文件
-            Intent intent = new Intent(this, ViewerActivity.class);
-            intent.putExtra("path", file.getAbsolutePath());
-            startActivity(intent);
+            // 打开单个文件，二进制文件用十六进制视图
+            HexViewerActivity.open(this, file.getAbsolutePath());
         }
     }
 
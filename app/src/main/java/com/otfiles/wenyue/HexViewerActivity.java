@@ -0,0 +1,389 @@
+package com.otfiles.wenyue;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.otfiles.wenyue.adapters.HexRowAdapter;
+import com.otfiles.wenyue.utils.AppSettings;
+import com.otfiles.wenyue.utils.ContentFile;
+import com.otfiles.wenyue.utils.DeflateIndex;
+import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.ForegroundWork;
+import com.otfiles.wenyue.utils.HexFile;
+import com.otfiles.wenyue.utils.WorkerPools;
+import com.otfiles.wenyue.utils.ZipIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 二进制文件的十六进制视图
+ *
+ * 行列表只绑定屏幕上的行，每行的字节从 {@link HexFile} 映射的页中读取，打开时不读取文件内容。
+ * 输入框可以输入偏移跳转，或输入字节序列在后台查找下一个匹配。
+ */
+public class HexViewerActivity extends AppCompatActivity {
+
+    private static final String TAG = "HexViewerActivity";
+    private static final String STATE_OFFSET = "offset";
+    // 屏幕宽度达到这个值时每行 16 字节，否则 8 字节
+    private static final int WIDE_SCREEN_DP = 600;
+
+    private HexFile hexFile;
+    private HexRowAdapter adapter;
+    private LinearLayoutManager layoutManager;
+    private EditText input;
+    private Button findButton;
+    private TextView statusText;
+    private String statusIdle;
+    // 文件打开前界面重建时保留的位置
+    private long initialOffset;
+    private long lastMatch = -1;
+    private volatile boolean searchCancelled;
+    private boolean searching;
+
+    /**
+     * 在后台选择查看界面后打开文件，界面已经销毁时不打开
+     */
+    public static void open(final Activity activity, final String path) {
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Intent intent = intentFor(activity, path);
+                activity.runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!activity.isDestroyed()) {
+                            activity.startActivity(intent);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 按文件类型选择查看界面：文本文件用 ViewerActivity，二进制文件用十六进制视图，ZIP 压缩包按目录浏览。
+     * 扩展名无法判断时读取文件开头检查，在后台线程调用。
+     */
+    public static Intent intentFor(Context context, String path) {
+        if (ContentFile.isContentPath(path)) {
+            return contentIntentFor(context, path);
+        }
+        File file = new File(path);
+        String extension = FileUtils.getFileExtension(path);
+        if (ZipIndex.isArchive(extension)) {
+            Intent intent = new Intent(context, ArchiveActivity.class);
+            intent.putExtra("path", path);
+            return intent;
+        }
+        boolean binary;
+        if (FileUtils.isTextFile(extension)) {
+            binary = false;
+        } else if (DeflateIndex.isGzip(extension)) {
+            // .gz 文件检查解压后的内容，文本在 ViewerActivity 中边解压边显示
+            binary = isBinaryGzip(file);
+        } else if (FileUtils.isImageFile(extension) || FileUtils.isAudioFile(extension)
+                || FileUtils.isVideoFile(extension)) {
+            binary = true;
+        } else {
+            ForegroundWork.begin();
+            try {
+                binary = HexFile.isBinary(file);
+            } finally {
+                ForegroundWork.end();
+            }
+        }
+        Intent intent = new Intent(context, binary ? HexViewerActivity.class : ViewerActivity.class);
+        intent.putExtra("path", path);
+        return intent;
+    }
+
+    /**
+     * content:// URI 按提供者给出的文件名判断，判断不了时读取开头检查。
+     * 压缩包和 .gz 文件需要按文件路径随机访问，以十六进制查看。
+     */
+    private static Intent contentIntentFor(Context context, String path) {
+        String extension = FileUtils.getFileExtension(ContentFile.getDisplayName(context, path));
+        boolean binary;
+        if (FileUtils.isTextFile(extension)) {
+            binary = false;
+        } else if (FileUtils.isImageFile(extension) || FileUtils.isAudioFile(extension)
+                || FileUtils.isVideoFile(extension)) {
+            binary = true;
+        } else {
+            ForegroundWork.begin();
+            try {
+                binary = ContentFile.stat(context, path).isBinary();
+            } catch (IOException e) {
+                // 读取失败时交给文本查看界面显示错误
+                Log.w(TAG, "Error reading uri: " + path, e);
+                binary = false;
+            } finally {
+                ForegroundWork.end();
+            }
+        }
+        Intent intent = new Intent(context, binary ? HexViewerActivity.class : ViewerActivity.class);
+        intent.putExtra("path", path);
+        return intent;
+    }
+
+    private static boolean isBinaryGzip(File file) {
+        ForegroundWork.begin();
+        try {
+            InputStream in = DeflateIndex.forGzip(file).open(0);
+            try {
+                return HexFile.isBinary(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // 不是有效的 gzip 文件时查看原始字节
+            Log.w(TAG, "Error reading gzip file: " + file, e);
+            return true;
+        } finally {
+            ForegroundWork.end();
+        }
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setTheme(AppSettings.getThemeRes(this, false));
+        setContentView(R.layout.activity_hex_viewer);
+
+        String path = getIntent().getStringExtra("path");
+        if (path == null) {
+            Toast.makeText(this, R.string.error_no_file, Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+        setTitle(ContentFile.isContentPath(path) ? ContentFile.peekDisplayName(path) : new File(path).getName());
+        if (savedInstanceState != null) {
+            initialOffset = savedInstanceState.getLong(STATE_OFFSET);
+        }
+
+        input = findViewById(R.id.hex_input);
+        findButton = findViewById(R.id.hex_find);
+        statusText = findViewById(R.id.hex_status);
+        statusText.setText(R.string.hex_opening);
+        layoutManager = new LinearLayoutManager(this);
+        RecyclerView list = findViewById(R.id.hex_list);
+        list.setLayoutManager(layoutManager);
+        openFile(path);
+
+        findViewById(R.id.hex_jump).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                jump();
+            }
+        });
+        findButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (searching) {
+                    searchCancelled = true;
+                } else {
+                    find();
+                }
+            }
+        });
+    }
+
+    /**
+     * 在后台打开文件，content:// URI 同时查询文件名
+     */
+    private void openFile(final String path) {
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                HexFile opened = null;
+                String name = null;
+                ForegroundWork.begin();
+                try {
+                    if (ContentFile.isContentPath(path)) {
+                        name = ContentFile.getDisplayName(HexViewerActivity.this, path);
+                        opened = ContentFile.stat(HexViewerActivity.this, path).openHex();
+                    } else {
+                        opened = new HexFile(new File(path));
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Error opening file: " + path, e);
+                } finally {
+                    ForegroundWork.end();
+                }
+                final HexFile result = opened;
+                final String title = name;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isDestroyed()) {
+                            closeQuietly(result);
+                            return;
+                        }
+                        if (result == null) {
+                            Toast.makeText(HexViewerActivity.this, R.string.error_reading_file,
+                                Toast.LENGTH_SHORT).show();
+                            finish();
+                            return;
+                        }
+                        if (title != null) {
+                            setTitle(title);
+                        }
+                        onFileOpened(result);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onFileOpened(HexFile file) {
+        hexFile = file;
+        statusIdle = getString(R.string.hex_status,
+            FileUtils.formatFileSize(hexFile.length()), String.valueOf(hexFile.length()));
+        statusText.setText(statusIdle);
+
+        int bytesPerRow = getResources().getConfiguration().screenWidthDp >= WIDE_SCREEN_DP ? 16 : 8;
+        adapter = new HexRowAdapter(this, hexFile, bytesPerRow);
+        RecyclerView list = findViewById(R.id.hex_list);
+        list.setAdapter(adapter);
+        layoutManager.scrollToPositionWithOffset((int) (initialOffset / bytesPerRow), 0);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putLong(STATE_OFFSET, adapter != null ? firstVisibleOffset() : initialOffset);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchCancelled = true;
+        closeQuietly(hexFile);
+    }
+
+    private static void closeQuietly(HexFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Error closing file", e);
+            }
+        }
+    }
+
+    private long firstVisibleOffset() {
+        int row = layoutManager.findFirstVisibleItemPosition();
+        return Math.max(0, row) * (long) adapter.getBytesPerRow();
+    }
+
+    private void jump() {
+        if (hexFile == null) {
+            return;
+        }
+        long offset = HexFile.parseOffset(input.getText().toString());
+        if (offset < 0 || offset >= hexFile.length()) {
+            Toast.makeText(this, R.string.hex_invalid_offset, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        show(offset, 1);
+    }
+
+    /**
+     * 滚动到字节所在的行并高亮
+     */
+    private void show(long offset, int length) {
+        lastMatch = offset;
+        adapter.setMatch(offset, length);
+        layoutManager.scrollToPositionWithOffset((int) Math.min(Integer.MAX_VALUE - 1, offset / adapter.getBytesPerRow()), 0);
+    }
+
+    /**
+     * 从上一个匹配之后或屏幕顶部开始在后台查找
+     */
+    private void find() {
+        if (hexFile == null) {
+            return;
+        }
+        final byte[] pattern = HexFile.parsePattern(input.getText().toString());
+        if (pattern == null) {
+            Toast.makeText(this, R.string.hex_invalid_pattern, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final long from = lastMatch >= 0 ? lastMatch + 1 : firstVisibleOffset();
+        final String total = FileUtils.formatFileSize(hexFile.length());
+        searching = true;
+        searchCancelled = false;
+        findButton.setText(R.string.hex_find_cancel);
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                long found = -1;
+                try {
+                    found = hexFile.find(pattern, from, new HexFile.Progress() {
+                        private long lastUpdate;
+
+                        @Override
+                        public boolean onProgress(final long position) {
+                            long now = System.currentTimeMillis();
+                            if (now - lastUpdate >= 100) {
+                                lastUpdate = now;
+                                runOnUiThread(new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        if (searching) {
+                                            statusText.setText(getString(R.string.hex_searching,
+                                                FileUtils.formatFileSize(position), total));
+                                        }
+                                    }
+                                });
+                            }
+                            return !searchCancelled;
+                        }
+                    });
+                } catch (IOException e) {
+                    if (!searchCancelled) {
+                        Log.e(TAG, "Error searching file", e);
+                    }
+                }
+                final long result = found;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFindFinished(result, pattern.length);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onFindFinished(long found, int length) {
+        searching = false;
+        if (isDestroyed()) {
+            return;
+        }
+        findButton.setText(R.string.hex_find);
+        if (found >= 0) {
+            statusText.setText(getString(R.string.hex_found, found));
+            show(found, length);
+        } else {
+            statusText.setText(statusIdle);
+            if (!searchCancelled) {
+                Toast.makeText(this, R.string.hex_not_found, Toast.LENGTH_SHORT).show();
+            }
+        }
+    }
+}
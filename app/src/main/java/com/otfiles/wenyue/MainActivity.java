@@ -5,6 +5,7 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.net.Uri;
 import android.os.Bundle;
 import android.support.v4.app.ActivityCompat;
 import android.support.v4.content.ContextCompat;
@@ -21,24 +22,40 @@ import android.widget.ImageButton;
 import android.widget.Toast;
 
 import com.otfiles.wenyue.adapters.FileAdapter;
+import com.otfiles.wenyue.utils.AppSettings;
+import com.otfiles.wenyue.utils.FavoritesStore;
+import com.otfiles.wenyue.utils.FavoritesWarmup;
 import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.ForegroundWork;
+import com.otfiles.wenyue.utils.StartupTimer;
+import com.otfiles.wenyue.utils.UriUtils;
+import com.otfiles.wenyue.utils.WorkerPools;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 public class MainActivity extends AppCompatActivity {
 
     private static final String TAG = "MainActivity";
     private static final int REQUEST_STORAGE_PERMISSION = 1;
+    // 收藏连续变化时等列表稳定下来再预加载
+    private static final long WARMUP_DELAY_MS = 1000;
     
     private RecyclerView favoritesList;
     private FileAdapter adapter;
     private List<String> favoritePaths;
-    private SharedPreferences preferences;
-    private static final String PREFS_NAME = "FavoritesPrefs";
-    private static final String KEY_FAVORITES = "favorites";
+    private FavoritesStore favoritesStore;
+    private FavoritesStore.Listener favoritesListener;
+    private boolean warmupScheduled;
+    private final Runnable warmupTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!isDestroyed()) {
+                startWarmup();
+            }
+        }
+    };
     
     // 用于存储从文件选择器返回的路径
     private String selectedFilePath;
@@ -85,23 +102,33 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void initializeApp() {
-        preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        favoritesStore = FavoritesStore.getInstance(this);
         
         // 初始化UI组件
         ImageButton settingsButton = findViewById(R.id.settings_button);
         favoritesList = findViewById(R.id.favorites_list);
         FloatingActionButton previewFab = findViewById(R.id.preview_fab);
         
-        // 加载收藏列表
-        loadFavorites();
-        Log.d(TAG, "加载收藏列表，共 " + favoritePaths.size() + " 个项目");
-        
-        // 设置RecyclerView
+        // 设置RecyclerView，收藏列表在后台加载完成后刷新
+        favoritePaths = favoritesStore.getPaths();
         adapter = new FileAdapter(this, favoritePaths, true);
+        adapter.updateData(favoritePaths, favoritesStore.getStatuses());
         favoritesList.setLayoutManager(new LinearLayoutManager(this));
         favoritesList.setAdapter(adapter);
         Log.d(TAG, "RecyclerView初始化完成");
         
+        favoritesListener = new FavoritesStore.Listener() {
+            @Override
+            public void onFavoritesChanged() {
+                favoritePaths = favoritesStore.getPaths();
+                adapter.updateData(favoritePaths, favoritesStore.getStatuses());
+                Log.d(TAG, "收藏列表已更新，共 " + favoritePaths.size() + " 个项目");
+                scheduleWarmup();
+            }
+        };
+        favoritesStore.addListener(favoritesListener);
+        favoritesStore.load();
+        
         // 设置按钮点击监听器
         settingsButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -148,26 +175,46 @@ public class MainActivity extends AppCompatActivity {
         Log.d(TAG, "初始化完成");
     }
     
-    private void loadFavorites() {
-        Log.d(TAG, "开始加载收藏列表");
-        // 从SharedPreferences加载收藏列表
-        Set<String> favoritesSet = preferences.getStringSet(KEY_FAVORITES, new HashSet<String>());
-        favoritePaths = new ArrayList<String>(favoritesSet);
-        Log.d(TAG, "收藏列表加载完成，共 " + favoritePaths.size() + " 个项目");
+    /**
+     * 收藏预加载不影响第一屏，推迟到第一帧之后；
+     * 列表连续变化多次时只在最后一次变化 {@link #WARMUP_DELAY_MS} 之后预加载一次
+     */
+    private void scheduleWarmup() {
+        if (warmupScheduled) {
+            return;
+        }
+        warmupScheduled = true;
+        StartupTimer.runAfterFirstFrame(new Runnable() {
+            @Override
+            public void run() {
+                warmupScheduled = false;
+                favoritesList.removeCallbacks(warmupTask);
+                favoritesList.postDelayed(warmupTask, WARMUP_DELAY_MS);
+            }
+        });
     }
     
-    private void saveFavorites() {
-        Log.d(TAG, "开始保存收藏列表");
-        // 保存收藏列表到SharedPreferences
-        SharedPreferences.Editor editor = preferences.edit();
-        Set<String> favoritesSet = new HashSet<String>(favoritePaths);
-        editor.putStringSet(KEY_FAVORITES, favoritesSet);
-        boolean success = editor.commit();
-        if (success) {
-            Log.d(TAG, "收藏列表保存成功");
-        } else {
-            Log.e(TAG, "收藏列表保存失败");
+    /**
+     * 在低优先级线程中预加载收藏的文件和文件夹
+     */
+    private void startWarmup() {
+        SharedPreferences settings = AppSettings.get(this);
+        long budgetBytes = settings.getInt(AppSettings.KEY_WARMUP_BUDGET_MB, 64) * 1024L * 1024L;
+        
+        List<String> existingPaths = new ArrayList<>();
+        List<String> directoryPaths = new ArrayList<>();
+        for (String path : favoritePaths) {
+            FavoritesStore.Status status = favoritesStore.getStatus(path);
+            if (status == null || !status.exists) {
+                continue;
+            }
+            existingPaths.add(path);
+            if (status.directory) {
+                directoryPaths.add(path);
+            }
         }
+        FavoritesWarmup.start(existingPaths, directoryPaths, budgetBytes);
+        Log.d(TAG, "开始预加载收藏，预算 " + budgetBytes + " 字节");
     }
     
     private void openSettings() {
@@ -184,7 +231,9 @@ public class MainActivity extends AppCompatActivity {
     }
     
     private void openPath(String path) {
-        if (FileUtils.isDirectory(path)) {
+        FavoritesStore.Status status = favoritesStore.getStatus(path);
+        boolean isDirectory = status != null ? status.directory : FileUtils.isDirectory(path);
+        if (isDirectory) {
             // 打开目录
             Log.i(TAG, "打开目录: " + path);
             Intent intent = new Intent(this, DirectoryActivity.class);
@@ -193,9 +242,7 @@ public class MainActivity extends AppCompatActivity {
         } else {
             // 打开文件
             Log.i(TAG, "打开文件: " + path);
-            Intent intent = new Intent(this, ViewerActivity.class);
-            intent.putExtra("path", path);
-            startActivity(intent);
+            HexViewerActivity.open(this, path);
         }
     }
     
@@ -241,10 +288,7 @@ public class MainActivity extends AppCompatActivity {
                 Log.i(TAG, "确认按钮被点击，输入路径: " + path);
                 
                 if (!path.isEmpty() && (FileUtils.fileExists(path) || FileUtils.isDirectory(path))) {
-                    if (!favoritePaths.contains(path)) {
-                        favoritePaths.add(path);
-                        saveFavorites();
-                        adapter.updateData(favoritePaths);
+                    if (favoritesStore.add(path)) {
                         Log.i(TAG, "成功添加收藏: " + path);
                         Toast.makeText(MainActivity.this, "已添加收藏", Toast.LENGTH_SHORT).show();
                     } else {
@@ -271,10 +315,7 @@ public class MainActivity extends AppCompatActivity {
             .setPositiveButton("删除", new DialogInterface.OnClickListener() {
                 @Override
                 public void onClick(DialogInterface dialog, int which) {
-                    String removedPath = favoritePaths.get(position);
-                    favoritePaths.remove(position);
-                    saveFavorites();
-                    adapter.updateData(favoritePaths);
+                    String removedPath = favoritesStore.remove(position);
                     Log.i(TAG, "已删除收藏: " + removedPath);
                     Toast.makeText(MainActivity.this, "已删除收藏", Toast.LENGTH_SHORT).show();
                 }
@@ -296,16 +337,7 @@ public class MainActivity extends AppCompatActivity {
         
         if (requestCode == 1 && resultCode == RESULT_OK) {
             if (data != null && data.getData() != null) {
-                // 获取选择的文件路径
-                String path = FileUtils.getPathFromUri(this, data.getData());
-                if (path != null) {
-                    Log.i(TAG, "文件选择器返回路径: " + path);
-                    // 显示添加收藏对话框并预填充路径
-                    showAddFavoriteDialog(path);
-                } else {
-                    Log.w(TAG, "无法从URI获取路径: " + data.getData());
-                    Toast.makeText(this, "无法获取文件路径", Toast.LENGTH_SHORT).show();
-                }
+                onFilePicked(data.getData());
             } else {
                 Log.w(TAG, "文件选择器返回空数据");
             }
@@ -314,15 +346,59 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    /**
+     * 在后台查询选择的文件路径：能直接读取时添加收藏，否则通过 URI 打开
+     */
+    private void onFilePicked(final Uri uri) {
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                ForegroundWork.begin();
+                final String path;
+                try {
+                    String resolved = UriUtils.getPathFromUri(MainActivity.this, uri);
+                    // 分区存储下查到的路径可能无权读取
+                    path = resolved != null && new File(resolved).canRead() ? resolved : null;
+                } finally {
+                    ForegroundWork.end();
+                }
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isDestroyed()) {
+                            return;
+                        }
+                        if (path != null) {
+                            Log.i(TAG, "文件选择器返回路径: " + path);
+                            // 显示添加收藏对话框并预填充路径
+                            showAddFavoriteDialog(path);
+                        } else {
+                            // 查不到可读的真实路径时直接通过 URI 打开，不复制文件
+                            Log.i(TAG, "无法从URI获取可读路径，直接打开: " + uri);
+                            HexViewerActivity.open(MainActivity.this, uri.toString());
+                        }
+                    }
+                });
+            }
+        });
+    }
+    
     @Override
     protected void onResume() {
         super.onResume();
         Log.d(TAG, "onResume: 活动恢复");
-        // 如果已经初始化，重新加载收藏列表
-        if (adapter != null) {
-            loadFavorites();
-            adapter.updateData(favoritePaths);
-            Log.d(TAG, "收藏列表已更新");
+        // 如果已经初始化，在后台重新检查收藏的状态
+        if (favoritesStore != null && favoritesStore.isLoaded()) {
+            favoritesStore.refreshStatuses();
+        }
+    }
+    
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        favoritesList.removeCallbacks(warmupTask);
+        if (favoritesStore != null) {
+            favoritesStore.removeListener(favoritesListener);
         }
     }
 }
\ No newline at end of file
@@ -6,16 +6,29 @@ import android.support.v7.app.AppCompatActivity;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.Button;
 import android.widget.Spinner;
 import android.widget.Switch;
 import android.widget.Toast;
 
+import com.otfiles.wenyue.utils.AppSettings;
+import com.otfiles.wenyue.utils.PerfOverlay;
+
+import java.io.File;
+import java.io.IOException;
+
 public class SettingsActivity extends AppCompatActivity {
 
     private SharedPreferences preferences;
     private Spinner themeSelector;
     private Spinner encodingSelector;
+    private Spinner warmupBudgetSelector;
     private Switch confirmOperations;
+    private Switch perfOverlay;
+    private Button exportTrace;
+    
+    // 收藏预加载预算选项对应的MB数，与 R.array.warmup_budget_options 一一对应
+    private static final int[] WARMUP_BUDGET_MB = {0, 16, 64, 256};
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,14 +47,8 @@ public class SettingsActivity extends AppCompatActivity {
     }
 
     private void applyTheme() {
-        preferences = getSharedPreferences("app_settings", MODE_PRIVATE);
-        String theme = preferences.getString("color_theme", "blue");
-        
-        if ("green".equals(theme)) {
-            setTheme(R.style.AppTheme_Green);
-        } else {
-            setTheme(R.style.AppTheme);
-        }
+        preferences = AppSettings.get(this);
+        setTheme(AppSettings.getThemeRes(this, false));
     }
 
     private void initViews() {
@@ -59,8 +66,17 @@ public class SettingsActivity extends AppCompatActivity {
         encodingAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         encodingSelector.setAdapter(encodingAdapter);
         
+        // 初始化收藏预加载预算选择器
+        warmupBudgetSelector = findViewById(R.id.warmup_budget_selector);
+        ArrayAdapter<CharSequence> warmupAdapter = ArrayAdapter.createFromResource(this,
+                R.array.warmup_budget_options, android.R.layout.simple_spinner_item);
+        warmupAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        warmupBudgetSelector.setAdapter(warmupAdapter);
+        
         // 初始化开关
         confirmOperations = findViewById(R.id.confirm_operations);
+        perfOverlay = findViewById(R.id.perf_overlay);
+        exportTrace = findViewById(R.id.export_trace);
         
         // 设置监听器
         setListeners();
@@ -78,7 +94,7 @@ public class SettingsActivity extends AppCompatActivity {
                 }
                 
                 // 保存主题设置
-                preferences.edit().putString("color_theme", themeValue).apply();
+                preferences.edit().putString(AppSettings.KEY_COLOR_THEME, themeValue).apply();
                 
                 // 提示用户重启应用以应用主题
                 Toast.makeText(SettingsActivity.this, 
@@ -95,7 +111,19 @@ public class SettingsActivity extends AppCompatActivity {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                 String selectedEncoding = parent.getItemAtPosition(position).toString();
-                preferences.edit().putString("default_encoding", selectedEncoding).apply();
+                preferences.edit().putString(AppSettings.KEY_DEFAULT_ENCODING, selectedEncoding).apply();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                // 不做任何操作
+            }
+        });
+        
+        warmupBudgetSelector.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                preferences.edit().putInt(AppSettings.KEY_WARMUP_BUDGET_MB, WARMUP_BUDGET_MB[position]).apply();
             }
 
             @Override
@@ -111,11 +139,32 @@ public class SettingsActivity extends AppCompatActivity {
                 preferences.edit().putBoolean("confirm_operations", isChecked).apply();
             }
         });
+        
+        perfOverlay.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                preferences.edit().putBoolean(PerfOverlay.PREF_ENABLED, perfOverlay.isChecked()).apply();
+                Toast.makeText(SettingsActivity.this, R.string.perf_overlay_pending, Toast.LENGTH_SHORT).show();
+            }
+        });
+        
+        exportTrace.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                try {
+                    File file = PerfOverlay.exportTrace(SettingsActivity.this);
+                    Toast.makeText(SettingsActivity.this, getString(R.string.perf_trace_exported, file.getAbsolutePath()),
+                        Toast.LENGTH_LONG).show();
+                } catch (IOException e) {
+                    Toast.makeText(SettingsActivity.this, R.string.perf_trace_export_failed, Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
     }
 
     private void loadSettings() {
         // 加载主题设置
-        String theme = preferences.getString("color_theme", "blue");
+        String theme = preferences.getString(AppSettings.KEY_COLOR_THEME, "blue");
         if ("green".equals(theme)) {
             themeSelector.setSelection(1); // 绿色主题
         } else {
@@ -123,7 +172,7 @@ public class SettingsActivity extends AppCompatActivity {
         }
         
         // 加载编码设置
-        String encoding = preferences.getString("default_encoding", "UTF-8");
+        String encoding = preferences.getString(AppSettings.KEY_DEFAULT_ENCODING, "UTF-8");
         ArrayAdapter<CharSequence> adapter = (ArrayAdapter<CharSequence>) encodingSelector.getAdapter();
         for (int i = 0; i < adapter.getCount(); i++) {
             if (adapter.getItem(i).equals(encoding)) {
@@ -132,9 +181,21 @@ public class SettingsActivity extends AppCompatActivity {
             }
         }
         
+        // 加载收藏预加载预算设置
+        int warmupBudget = preferences.getInt(AppSettings.KEY_WARMUP_BUDGET_MB, 64);
+        for (int i = 0; i < WARMUP_BUDGET_MB.length; i++) {
+            if (WARMUP_BUDGET_MB[i] == warmupBudget) {
+                warmupBudgetSelector.setSelection(i);
+                break;
+            }
+        }
+        
         // 加载操作确认设置
         boolean confirmOps = preferences.getBoolean("confirm_operations", true);
         confirmOperations.setChecked(confirmOps);
+        
+        // 加载性能统计浮层设置
+        perfOverlay.setChecked(preferences.getBoolean(PerfOverlay.PREF_ENABLED, false));
     }
 
     @Override
@@ -143,7 +204,9 @@ public class SettingsActivity extends AppCompatActivity {
         // 保存当前状态
         outState.putInt("theme_position", themeSelector.getSelectedItemPosition());
         outState.putInt("encoding_position", encodingSelector.getSelectedItemPosition());
+        outState.putInt("warmup_budget_position", warmupBudgetSelector.getSelectedItemPosition());
         outState.putBoolean("confirm_operations", confirmOperations.isChecked());
+        outState.putBoolean("perf_overlay", perfOverlay.isChecked());
     }
 
     @Override
@@ -153,7 +216,9 @@ public class SettingsActivity extends AppCompatActivity {
         if (savedInstanceState != null) {
             themeSelector.setSelection(savedInstanceState.getInt("theme_position", 0));
             encodingSelector.setSelection(savedInstanceState.getInt("encoding_position", 0));
+            warmupBudgetSelector.setSelection(savedInstanceState.getInt("warmup_budget_position", 2));
             confirmOperations.setChecked(savedInstanceState.getBoolean("confirm_operations", true));
+            perfOverlay.setChecked(savedInstanceState.getBoolean("perf_overlay", false));
         }
     }
 }
\ No newline at end of file
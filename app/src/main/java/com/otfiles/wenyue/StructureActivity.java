@@ -0,0 +1,174 @@
+package com.otfiles.wenyue;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.otfiles.wenyue.adapters.StructureAdapter;
+import com.otfiles.wenyue.utils.AppSettings;
+import com.otfiles.wenyue.utils.StructureIndex;
+import com.otfiles.wenyue.utils.WorkerPools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JSON / XML 文件的结构视图
+ *
+ * 点击节点展开或收起，子节点在第一次展开时才在后台扫描，一次最多加载 {@link #PAGE_SIZE} 个。
+ * 长按节点返回文本视图，定位到节点所在的位置。
+ */
+public class StructureActivity extends AppCompatActivity implements StructureAdapter.OnRowClickListener {
+
+    /** 返回结果中节点开头的字节偏移 */
+    public static final String EXTRA_OFFSET = "offset";
+
+    private static final String TAG = "StructureActivity";
+    // 每次加载的子节点数
+    private static final int PAGE_SIZE = 500;
+
+    private String path;
+    private String encoding;
+    private StructureIndex index;
+    private StructureAdapter.Row root;
+    private StructureAdapter adapter;
+    private boolean destroyed;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setTheme(AppSettings.getThemeRes(this, false));
+        setContentView(R.layout.activity_structure);
+
+        path = getIntent().getStringExtra("path");
+        encoding = getIntent().getStringExtra("encoding");
+        if (path == null) {
+            Toast.makeText(this, R.string.error_no_file, Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+        if (encoding == null) {
+            encoding = "UTF-8";
+        } else if (encoding.startsWith("UTF-16")) {
+            Toast.makeText(this, getString(R.string.structure_unsupported_encoding, encoding), Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+        File file = new File(path);
+        setTitle(file.getName());
+
+        index = new StructureIndex(file, encoding);
+        root = new StructureAdapter.Row(index.getRoot(), -1);
+        adapter = new StructureAdapter(this, this);
+        RecyclerView list = findViewById(R.id.structure_list);
+        list.setLayoutManager(new LinearLayoutManager(this));
+        list.setAdapter(adapter);
+        load(root);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        destroyed = true;
+    }
+
+    @Override
+    public void onRowClick(StructureAdapter.Row row) {
+        if (row.isMore()) {
+            load(row.owner);
+        } else if (row.node.hasChildren()) {
+            if (row.expanded) {
+                row.expanded = false;
+            } else if (row.children == null) {
+                load(row);
+            } else {
+                row.expanded = true;
+            }
+            refresh();
+        }
+    }
+
+    /**
+     * 返回打开结构视图的文本视图，由它跳转到节点的开头
+     */
+    @Override
+    public void onRowLongClick(StructureAdapter.Row row) {
+        Intent result = new Intent();
+        result.putExtra("path", path);
+        result.putExtra(EXTRA_OFFSET, row.node.getStart());
+        setResult(RESULT_OK, result);
+        finish();
+    }
+
+    /**
+     * 在后台加载节点的下一页子节点
+     */
+    private void load(final StructureAdapter.Row row) {
+        if (row.loading) {
+            return;
+        }
+        row.loading = true;
+        row.expanded = true;
+        refresh();
+        final StructureIndex.Page after = row.page;
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                StructureIndex.Page page = null;
+                IOException error = null;
+                try {
+                    page = index.children(row.node, after, PAGE_SIZE);
+                } catch (IOException e) {
+                    error = e;
+                }
+                final StructureIndex.Page result = page;
+                final IOException failure = error;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (destroyed) {
+                            return;
+                        }
+                        row.loading = false;
+                        if (result != null) {
+                            row.addPage(result);
+                        } else {
+                            Log.e(TAG, "Error scanning " + path, failure);
+                            Toast.makeText(StructureActivity.this, failure.getMessage(), Toast.LENGTH_LONG).show();
+                            if (row.children == null) {
+                                row.expanded = false;
+                            }
+                        }
+                        refresh();
+                    }
+                });
+            }
+        });
+    }
+
+    private void refresh() {
+        List<StructureAdapter.Row> rows = new ArrayList<>();
+        addVisible(root, rows);
+        adapter.setRows(rows);
+    }
+
+    private static void addVisible(StructureAdapter.Row row, List<StructureAdapter.Row> rows) {
+        if (row.children != null) {
+            for (StructureAdapter.Row child : row.children) {
+                rows.add(child);
+                if (child.expanded) {
+                    addVisible(child, rows);
+                }
+            }
+        }
+        if (row.loading || row.page != null && row.page.hasMore()) {
+            rows.add(row.getMoreRow());
+        }
+    }
+}
@@ -1,15 +1,22 @@
 package com.otfiles.wenyue;
 
+import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.os.FileObserver;
+import android.os.Handler;
 import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager;
+import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.text.Editable;
+import android.text.Layout;
+import android.text.TextWatcher;
+import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
@@ -18,30 +25,92 @@ import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.otfiles.wenyue.utils.AppSettings;
+import com.otfiles.wenyue.utils.ContentFile;
+import com.otfiles.wenyue.utils.DeflateIndex;
+import com.otfiles.wenyue.utils.DocumentCache;
 import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.ForegroundWork;
+import com.otfiles.wenyue.utils.MarkdownParser;
+import com.otfiles.wenyue.utils.MarkdownRenderer;
+import com.otfiles.wenyue.utils.ReadingPositionStore;
+import com.otfiles.wenyue.utils.StructureIndex;
+import com.otfiles.wenyue.utils.SyntaxHighlighter;
+import com.otfiles.wenyue.utils.SyntaxLexer;
+import com.otfiles.wenyue.utils.TextFileIndex;
+import com.otfiles.wenyue.utils.TextWindow;
+import com.otfiles.wenyue.utils.WorkerPools;
+import com.otfiles.wenyue.utils.ZipIndex;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ViewerActivity extends AppCompatActivity {
 
+    private static final String TAG = "ViewerActivity";
+    private static final int REQUEST_STRUCTURE = 1;
+
     private Toolbar toolbar;
     private TextView titleText;
     private Spinner encodingSpinner;
     private Button saveButton;
+    private Button markdownButton;
+    private Button structureButton;
     private ViewPager viewPager;
     private EditText contentEdit;
     
     private List<String> filePaths;
+    // 尚未打开过的文件编码为 null，第一次显示时再检测
     private List<String> encodings;
-    private List<String> contents;
+    // 翻页后视图被回收、或界面重建前还没有保存的修改
+    private Map<Integer, UnsavedPage> unsavedPages = new HashMap<>();
     private int currentPosition;
     private boolean isMultipleFiles;
+    private ViewFragment singleView;
+    private ReadingPositionStore positionStore;
+    private final Handler handler = new Handler();
+    private CharBuffer textBuffer;
+    // Markdown 文件显示源码而不是预览
+    private boolean showMarkdownSource;
+    // 正在后台保存，期间不能再次保存
+    private boolean saving;
+    // content:// URI 是否有写入权限，已经开始查询的 URI 都有记录，查询完成前为 false
+    private final Map<String, Boolean> writableUris = new HashMap<>();
+    // 监听当前文件所在的目录，文件被替换（先写临时文件再重命名）后仍然能收到事件
+    private FileObserver fileObserver;
+    private String watchedPath;
+    // 由 checkExternalChange 对象加锁保护，监听线程和主线程都会访问
+    private boolean changeCheckPending;
+    private final Runnable checkExternalChange = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (this) {
+                changeCheckPending = false;
+            }
+            checkExternalChange();
+        }
+    };
     
     private static final String[] ENCODING_OPTIONS = {"UTF-8", "GBK", "ISO-8859-1", "GB2312", "Big5"};
+    // 大文件每次只解码阅读位置附近这么多字节
+    private static final int WINDOW_BYTES = 256 * 1024;
+    // 滚动到距窗口边缘不足这个比例时加载相邻的内容
+    private static final float EDGE_RATIO = 0.1f;
+    // 停止滚动后多久记录阅读位置
+    private static final long RECORD_POSITION_DELAY_MS = 1000;
     private static final String STATE_CURRENT_POSITION = "currentPosition";
     private static final String STATE_ENCODINGS = "encodings";
+    private static final int WATCH_EVENTS = FileObserver.MODIFY | FileObserver.CLOSE_WRITE
+        | FileObserver.CREATE | FileObserver.MOVED_TO;
+    // 文件持续写入（如日志）时最多每隔这么久检查一次
+    private static final long EXTERNAL_CHANGE_DELAY_MS = 500;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -49,30 +118,32 @@ public class ViewerActivity extends AppCompatActivity {
         applyTheme();
         setContentView(R.layout.activity_viewer);
         
+        positionStore = ReadingPositionStore.getInstance(getFilesDir());
+        // 从其他应用直接打开时应用刚启动，记录可能还没有读取
+        positionStore.preload();
+        Object retained = getLastCustomNonConfigurationInstance();
+        if (retained instanceof RetainedState) {
+            unsavedPages = ((RetainedState) retained).unsavedPages;
+        }
         initViews();
         setupToolbar();
         getIntentData();
         setupEncodingSpinner();
         setupSaveButton();
+        setupFormatButtons();
         
         if (savedInstanceState != null) {
             restoreState(savedInstanceState);
         } else {
-            loadFiles();
+            loadFiles(null);
         }
         
         updateUI();
     }
 
     private void applyTheme() {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
-        String themeColor = prefs.getString("color_theme", "blue");
-        
-        if ("green".equals(themeColor)) {
-            setTheme(R.style.AppTheme_Green);
-        } else {
-            setTheme(R.style.AppTheme);
-        }
+        // 使用自己的 Toolbar，主题不能带 ActionBar
+        setTheme(AppSettings.getThemeRes(this, true));
     }
 
     private void initViews() {
@@ -80,6 +151,8 @@ public class ViewerActivity extends AppCompatActivity {
         titleText = findViewById(R.id.title_text);
         encodingSpinner = findViewById(R.id.encoding_spinner);
         saveButton = findViewById(R.id.save_button);
+        markdownButton = findViewById(R.id.markdown_button);
+        structureButton = findViewById(R.id.structure_button);
         viewPager = findViewById(R.id.view_pager);
         contentEdit = findViewById(R.id.content_edit);
     }
@@ -123,7 +196,9 @@ public class ViewerActivity extends AppCompatActivity {
         encodingSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                if (encodings != null && currentPosition < encodings.size()) {
+                // 编码为 null 说明文件还在加载，此时的选择来自初始化
+                if (encodings != null && currentPosition < encodings.size()
+                        && encodings.get(currentPosition) != null) {
                     String selectedEncoding = ENCODING_OPTIONS[position];
                     if (!selectedEncoding.equals(encodings.get(currentPosition))) {
                         encodings.set(currentPosition, selectedEncoding);
@@ -147,67 +222,754 @@ public class ViewerActivity extends AppCompatActivity {
         });
     }
 
-    private void loadFiles() {
+    private void setupFormatButtons() {
+        structureButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                // 编码确定之前按钮不可用
+                String encoding = encodings.get(currentPosition);
+                if (encoding == null) {
+                    return;
+                }
+                Intent intent = new Intent(ViewerActivity.this, StructureActivity.class);
+                intent.putExtra("path", filePaths.get(currentPosition));
+                intent.putExtra("encoding", encoding);
+                startActivityForResult(intent, REQUEST_STRUCTURE);
+            }
+        });
+        markdownButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                showMarkdownSource = !showMarkdownSource;
+                updateMarkdownModes();
+                updateFormatButtons();
+            }
+        });
+    }
+
+    /**
+     * 重新设置所有已显示页面的 Markdown 预览和语法高亮
+     */
+    private void updateMarkdownModes() {
+        if (singleView != null) {
+            singleView.updateMarkdownMode();
+        }
+        if (isMultipleFiles && viewPager != null) {
+            for (int i = 0; i < viewPager.getChildCount(); i++) {
+                Object tag = viewPager.getChildAt(i).getTag();
+                if (tag instanceof ViewFragment) {
+                    ((ViewFragment) tag).updateMarkdownMode();
+                }
+            }
+        }
+    }
+
+    /**
+     * 准备文件列表，文件内容在页面第一次显示时才加载
+     * @param savedEncodings 重建界面前使用的编码，为 null 时在打开文件时确定
+     */
+    private void loadFiles(List<String> savedEncodings) {
         encodings = new ArrayList<>();
-        contents = new ArrayList<>();
+        for (int i = 0; i < filePaths.size(); i++) {
+            encodings.add(savedEncodings != null && i < savedEncodings.size() ? savedEncodings.get(i) : null);
+        }
+    }
+
+    /**
+     * 确定文件使用的编码：上次阅读时的编码、预加载时检测的编码，或者重新检测。
+     * 可能需要读取文件，在后台线程调用。
+     */
+    private String resolveEncoding(String path, String known) {
+        if (known != null) {
+            return known;
+        }
+        ReadingPositionStore.Position saved = positionStore.get(path);
+        if (saved != null) {
+            return saved.encoding;
+        }
+        if (isCompressed(path) || ContentFile.isContentPath(path)) {
+            return detectSourceEncoding(path);
+        }
+        // 收藏预加载过的文件直接使用缓存的编码检测结果
+        File file = new File(path);
+        TextFileIndex index = TextFileIndex.getCached(file);
+        return index != null ? index.getEncoding() : FileUtils.detectEncoding(file);
+    }
+
+    /**
+     * @return 上次的阅读位置，没有记录时为文件开头。阅读位置记录没有读入时会读取文件。
+     */
+    private long savedOffset(String path) {
+        ReadingPositionStore.Position saved = positionStore.get(path);
+        return saved != null ? saved.offset : 0;
+    }
+
+    /**
+     * 只用于本地文件，content:// URI 要打开描述符才能校验缓存，由 loadWindowAsync 在后台查找
+     * @return 缓存中包含上次阅读位置的窗口，编码与已选择的编码不同时返回 null
+     */
+    private TextWindow cachedWindow(int position) {
+        String path = filePaths.get(position);
+        TextWindow window = DocumentCache.get(path, savedOffset(path));
+        String encoding = encodings.get(position);
+        if (window == null || (encoding != null && !encoding.equals(window.getEncoding()))) {
+            return null;
+        }
+        encodings.set(position, window.getEncoding());
+        return window;
+    }
+
+    /**
+     * content:// URI 不能按 File 查询属性，打开描述符读取长度和修改时间后校验缓存，在后台线程调用
+     */
+    private TextWindow cachedContentWindow(String path, long anchor) {
+        try {
+            ContentFile file = ContentFile.stat(this, path);
+            return DocumentCache.get(path, file.length(), file.lastModified(), anchor);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 后台加载窗口完成后在主线程回调
+     */
+    private interface WindowCallback {
+        /**
+         * @param window 读取到的窗口，读取失败时为 null
+         * @param encoding 使用的编码
+         * @param offset 窗口围绕的阅读位置
+         */
+        void onWindowLoaded(TextWindow window, String encoding, long offset);
+    }
+
+    /**
+     * 在后台确定编码和阅读位置并读取窗口，放入缓存后在主线程回调；读取失败时提示。
+     * 界面已经销毁时不回调，重建后的界面会从缓存中取到这个窗口。
+     * @param known 已经确定的编码，为 null 时由 resolveEncoding 确定
+     * @param anchor 阅读位置，小于 0 时使用记录的位置
+     */
+    private void loadWindowAsync(final String path, final String known, final long anchor,
+                                 final WindowCallback callback) {
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                ForegroundWork.begin();
+                try {
+                    final String encoding = resolveEncoding(path, known);
+                    final long offset = anchor >= 0 ? anchor : savedOffset(path);
+                    TextWindow loaded = null;
+                    try {
+                        if (anchor < 0 && ContentFile.isContentPath(path)) {
+                            loaded = cachedContentWindow(path, offset);
+                            if (loaded != null && !encoding.equals(loaded.getEncoding())) {
+                                loaded = null;
+                            }
+                        }
+                        if (loaded == null) {
+                            loaded = readWindow(path, encoding, offset);
+                            DocumentCache.put(loaded);
+                        }
+                    } catch (IOException e) {
+                        Log.e(TAG, "Error reading file: " + path, e);
+                        loaded = null;
+                    }
+                    final TextWindow window = loaded;
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isDestroyed()) {
+                                return;
+                            }
+                            if (window == null) {
+                                Toast.makeText(ViewerActivity.this, R.string.error_reading_file, Toast.LENGTH_SHORT).show();
+                            }
+                            callback.onWindowLoaded(window, encoding, offset);
+                        }
+                    });
+                } finally {
+                    ForegroundWork.end();
+                }
+            }
+        });
+    }
+
+    /**
+     * @return 是否为压缩包中的文件或 .gz 文件，这些文件读取解压后的内容，不能保存
+     */
+    private static boolean isCompressed(String path) {
+        if (ContentFile.isContentPath(path)) {
+            return false;
+        }
+        return ZipIndex.isEntryPath(path) || DeflateIndex.isGzip(FileUtils.getFileExtension(path));
+    }
+
+    /**
+     * @return 解压后内容的来源，按需解压，跳转时从最近的检查点开始
+     */
+    private static TextWindow.Source compressedSource(String path) throws IOException {
+        if (ZipIndex.isEntryPath(path)) {
+            return ZipIndex.open(new File(ZipIndex.archiveOf(path))).source(path);
+        }
+        return DeflateIndex.forGzip(new File(path));
+    }
+
+    /**
+     * 读取阅读位置附近的窗口，压缩的文件从解压后的内容中读取，content:// URI 从文件描述符中读取
+     */
+    private TextWindow readWindow(String path, String encoding, long anchor) throws IOException {
+        if (ContentFile.isContentPath(path)) {
+            ContentFile file = ContentFile.stat(this, path);
+            return TextWindow.load(file, path, file.lastModified(), encoding, anchor, WINDOW_BYTES);
+        }
+        if (!isCompressed(path)) {
+            return TextWindow.load(new File(path), encoding, anchor, WINDOW_BYTES);
+        }
+        long lastModified = new File(ZipIndex.isEntryPath(path) ? ZipIndex.archiveOf(path) : path).lastModified();
+        return TextWindow.load(compressedSource(path), path, lastModified, encoding, anchor, WINDOW_BYTES);
+    }
+
+    /**
+     * 根据解压后内容或 URI 内容的开头检测编码
+     */
+    private String detectSourceEncoding(String path) {
+        try {
+            if (ContentFile.isContentPath(path)) {
+                return ContentFile.stat(this, path).detectEncoding();
+            }
+            InputStream in = compressedSource(path).open(0);
+            try {
+                return FileUtils.detectEncoding(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error detecting encoding: " + path, e);
+            return "UTF-8";
+        }
+    }
+
+    /**
+     * 在页面上显示文件：有缓存或未保存的修改时直接显示，否则在后台加载
+     */
+    private void bindPage(final ViewFragment fragment) {
+        final int position = fragment.getPosition();
+        final String path = filePaths.get(position);
+        boolean content = ContentFile.isContentPath(path);
+        if (content) {
+            resolveContentInfo(path);
+        }
+        UnsavedPage unsaved = unsavedPages.remove(position);
+        if (unsaved != null) {
+            fragment.restoreUnsaved(unsaved);
+            return;
+        }
+        // 阅读位置记录还没有读入时不在主线程等待，和没有缓存一样到后台加载
+        if (!content && positionStore.isLoaded()) {
+            TextWindow cached = cachedWindow(position);
+            if (cached != null) {
+                fragment.setWindow(cached, savedOffset(filePaths.get(position)));
+                return;
+            }
+        }
         
-        for (String path : filePaths) {
-            File file = new File(path);
-            String encoding = FileUtils.detectEncoding(file);
-            String content = FileUtils.readFile(file, encoding);
-            
-            encodings.add(encoding);
-            contents.add(content);
+        loadWindowAsync(path, encodings.get(position), -1, new WindowCallback() {
+            @Override
+            public void onWindowLoaded(TextWindow window, String encoding, long offset) {
+                if (encodings.get(position) == null) {
+                    encodings.set(position, encoding);
+                }
+                if (!encoding.equals(encodings.get(position))) {
+                    // 加载期间切换了编码，以切换后的结果为准
+                    return;
+                }
+                // 视图可能已经被回收给别的页面
+                if (fragment.getPosition() == position && !fragment.hasWindow()) {
+                    fragment.setWindow(window != null ? window : TextWindow.empty(path, encoding), offset);
+                }
+                if (position == currentPosition) {
+                    updateEncodingSpinner();
+                    updateFormatButtons();
+                }
+            }
+        });
+    }
+
+    /**
+     * 结构视图中长按节点后跳转到节点的开头
+     */
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode != REQUEST_STRUCTURE || resultCode != RESULT_OK || data == null) {
+            return;
+        }
+        final int position = filePaths.indexOf(data.getStringExtra("path"));
+        final long offset = data.getLongExtra(StructureActivity.EXTRA_OFFSET, -1);
+        String encoding = position >= 0 ? encodings.get(position) : null;
+        if (offset < 0 || encoding == null) {
+            return;
+        }
+        final ViewFragment view = getViewAt(position);
+        if (view != null && view.isDirty()) {
+            view.warnUnsavedOnce();
+            return;
         }
+        String path = filePaths.get(position);
+        positionStore.put(path, offset, encoding);
+        if (view == null) {
+            // 页面显示时从记录的位置加载
+            return;
+        }
+        TextWindow current = view.getWindow();
+        if (current != null && offset >= current.getStartByte() && offset < current.getEndByte()) {
+            view.setWindow(current, offset);
+            return;
+        }
+        loadWindowAsync(path, encoding, offset, new WindowCallback() {
+            @Override
+            public void onWindowLoaded(TextWindow window, String encoding, long offset) {
+                if (window == null || !encoding.equals(encodings.get(position))
+                        || view.getPosition() != position || view.isDirty()) {
+                    return;
+                }
+                view.setWindow(window, offset);
+            }
+        });
+    }
+
+    /**
+     * 在后台查询 content:// URI 的文件名和写入权限，完成后刷新标题、保存按钮和按扩展名决定的显示方式
+     */
+    private void resolveContentInfo(final String path) {
+        if (writableUris.containsKey(path)) {
+            return;
+        }
+        writableUris.put(path, false);
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                ContentFile.getDisplayName(ViewerActivity.this, path);
+                final boolean writable = ContentFile.isWritable(ViewerActivity.this, path);
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isDestroyed()) {
+                            return;
+                        }
+                        writableUris.put(path, writable);
+                        updateTitle();
+                        updateFormatButtons();
+                        updateMarkdownModes();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return 指定位置的文件视图，不在屏幕上时返回 null
+     */
+    private ViewFragment getViewAt(int position) {
+        if (isMultipleFiles) {
+            return getFragmentAtPosition(position);
+        }
+        return position == 0 ? singleView : null;
     }
 
     private void reloadCurrentFile() {
         if (currentPosition < filePaths.size()) {
-            String path = filePaths.get(currentPosition);
-            String encoding = encodings.get(currentPosition);
-            File file = new File(path);
-            
-            String content = FileUtils.readFile(file, encoding);
-            contents.set(currentPosition, content);
+            final int position = currentPosition;
+            String path = filePaths.get(position);
+            String encoding = encodings.get(position);
+            unsavedPages.remove(position);
             
-            if (isMultipleFiles) {
-                // 更新ViewPager中的内容
-                ViewFragment fragment = getFragmentAtPosition(currentPosition);
-                if (fragment != null) {
-                    fragment.setContent(content);
-                }
-            } else {
-                contentEdit.setText(content);
+            // 直接用新编码重新解码已经读取的字节，只有换行符表示不同时才重新读取文件
+            ViewFragment view = getViewAt(position);
+            if (view == null || !view.hasWindow()) {
+                // 页面还在加载，加载完成时会发现编码已经改变，按新编码重新加载
+                loadWindowAsync(path, encoding, -1, reloadCallback(position));
+                return;
             }
+            long anchor = view.getReadingOffset();
+            positionStore.put(path, anchor, encoding);
+            TextWindow window = view.getWindow().withEncoding(encoding);
+            if (window == null) {
+                loadWindowAsync(path, encoding, anchor, reloadCallback(position));
+                return;
+            }
+            DocumentCache.put(window);
+            view.setWindow(window, anchor);
         }
     }
 
+    /**
+     * @return 切换编码后重新加载完成时显示新窗口的回调，加载期间又切换了编码时忽略
+     */
+    private WindowCallback reloadCallback(final int position) {
+        return new WindowCallback() {
+            @Override
+            public void onWindowLoaded(TextWindow window, String encoding, long offset) {
+                if (window == null || !encoding.equals(encodings.get(position))) {
+                    return;
+                }
+                ViewFragment view = getViewAt(position);
+                if (view != null) {
+                    view.setWindow(window, offset);
+                }
+            }
+        };
+    }
+
     private void saveCurrentFile() {
-        if (currentPosition < filePaths.size()) {
-            String path = filePaths.get(currentPosition);
-            String encoding = encodings.get(currentPosition);
-            String content;
-            
-            if (isMultipleFiles) {
-                ViewFragment fragment = getFragmentAtPosition(currentPosition);
-                if (fragment != null) {
-                    content = fragment.getContent();
-                } else {
-                    content = contents.get(currentPosition);
+        saveCurrentFile(false);
+    }
+
+    /**
+     * 在后台写入当前页面的内容，写入后重新读取窗口
+     * @param overwrite 文件打开后在外部被修改过时是否直接覆盖，否则先提示。
+     *                  只显示了一部分的文件仍然只替换这一部分，这部分的字节在文件中已经变化时拒绝保存
+     */
+    private void saveCurrentFile(final boolean overwrite) {
+        if (currentPosition < filePaths.size() && !saving) {
+            final String path = filePaths.get(currentPosition);
+            if (isCompressed(path)) {
+                Toast.makeText(this, R.string.compressed_read_only, Toast.LENGTH_SHORT).show();
+                return;
+            }
+            final ViewFragment view = getViewAt(currentPosition);
+            if (view == null || !view.hasWindow()) {
+                // 还在加载中
+                return;
+            }
+            final TextWindow window = view.getWindow();
+            final String content = view.getContent();
+            final long anchor = view.getReadingOffset();
+            saving = true;
+            saveButton.setEnabled(false);
+            WorkerPools.io().execute(new Runnable() {
+                @Override
+                public void run() {
+                    ForegroundWork.begin();
+                    try {
+                        if (!overwrite && isChangedOnDisk(path, window)) {
+                            finishSave(new Runnable() {
+                                @Override
+                                public void run() {
+                                    confirmOverwrite();
+                                }
+                            });
+                            return;
+                        }
+                        if (overwrite && !isWindowInPlace(path, window)) {
+                            finishSave(new Runnable() {
+                                @Override
+                                public void run() {
+                                    Toast.makeText(ViewerActivity.this, R.string.overwrite_window_changed,
+                                        Toast.LENGTH_LONG).show();
+                                }
+                            });
+                            return;
+                        }
+                        final boolean success = writeWindow(path, window, content);
+                        TextWindow loaded = null;
+                        if (success) {
+                            // 保存后窗口的字节范围可能变化，重新加载
+                            try {
+                                loaded = readWindow(path, window.getEncoding(), anchor);
+                                DocumentCache.put(loaded);
+                            } catch (IOException e) {
+                                Log.e(TAG, "Error reading file: " + path, e);
+                            }
+                        }
+                        final TextWindow reloaded = loaded;
+                        finishSave(new Runnable() {
+                            @Override
+                            public void run() {
+                                Toast.makeText(ViewerActivity.this,
+                                    success ? R.string.message_save_success : R.string.error_save_failed,
+                                    Toast.LENGTH_SHORT).show();
+                                // 保存期间又编辑过时保留编辑的内容
+                                if (reloaded != null && view.getWindow() == window
+                                        && view.getContent().equals(content)) {
+                                    view.setWindow(reloaded, anchor);
+                                }
+                            }
+                        });
+                    } finally {
+                        ForegroundWork.end();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 保存结束后回到主线程恢复保存按钮，界面还在时执行 action
+     */
+    private void finishSave(final Runnable action) {
+        runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                saving = false;
+                saveButton.setEnabled(true);
+                if (!isDestroyed()) {
+                    action.run();
                 }
-            } else {
-                content = contentEdit.getText().toString();
             }
-            
-            boolean success = FileUtils.saveFile(new File(path), content, encoding);
-            
-            if (success) {
-                Toast.makeText(this, R.string.message_save_success, Toast.LENGTH_SHORT).show();
-                contents.set(currentPosition, content);
+        });
+    }
+
+    /**
+     * 写回编辑后的窗口内容：content:// URI 通过文件描述符写入，整个文件直接重写，
+     * 否则只替换窗口对应的部分，窗口外的内容原样保留
+     */
+    private boolean writeWindow(String path, TextWindow window, String content) {
+        if (ContentFile.isContentPath(path)) {
+            return saveContent(window, content);
+        }
+        if (window.isWholeFile()) {
+            return FileUtils.saveFile(new File(path), content, window.getEncoding());
+        }
+        try {
+            window.save(content);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving file: " + path, e);
+            return false;
+        }
+    }
+
+    /**
+     * 可能读取整个窗口的字节，在后台线程调用
+     * @return 整个文件一起写回，或文件中窗口对应的字节没有变化，可以只替换窗口部分
+     */
+    private boolean isWindowInPlace(String path, TextWindow window) {
+        if (window.isWholeFile() || ContentFile.isContentPath(path)) {
+            // content:// URI 写回时在同一个描述符上确认
+            return true;
+        }
+        try {
+            return window.matchesFile(new File(path));
+        } catch (IOException e) {
+            // 读取失败时交给保存报告错误
+            return true;
+        }
+    }
+
+    private void confirmOverwrite() {
+        new AlertDialog.Builder(this)
+            .setTitle(R.string.overwrite_title)
+            .setMessage(R.string.overwrite_message)
+            .setPositiveButton(R.string.overwrite_confirm, new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    saveCurrentFile(true);
+                }
+            })
+            .setNegativeButton(R.string.overwrite_cancel, null)
+            .show();
+    }
+
+    /**
+     * 可能需要打开 content:// URI 的文件描述符，在后台线程调用
+     * @return 文件的长度或修改时间是否与读取窗口时不同，文件已被删除时返回 false
+     */
+    private boolean isChangedOnDisk(String path, TextWindow window) {
+        if (isCompressed(path)) {
+            return false;
+        }
+        long length;
+        long lastModified;
+        if (ContentFile.isContentPath(path)) {
+            try {
+                ContentFile file = ContentFile.stat(this, path);
+                length = file.length();
+                lastModified = file.lastModified();
+            } catch (IOException e) {
+                return false;
+            }
+        } else {
+            File file = new File(path);
+            if (!file.exists()) {
+                return false;
+            }
+            length = file.length();
+            lastModified = file.lastModified();
+        }
+        return length != window.getFileLength() || lastModified != window.getLastModified();
+    }
+
+    /**
+     * 监听当前页面的文件，压缩的文件和 content:// URI 只在回到界面和保存时检查
+     */
+    private void watchCurrentFile() {
+        String path = filePaths != null && currentPosition < filePaths.size() ? filePaths.get(currentPosition) : null;
+        if (path != null && path.equals(watchedPath)) {
+            return;
+        }
+        stopWatchingFile();
+        if (path == null || isCompressed(path) || ContentFile.isContentPath(path)) {
+            return;
+        }
+        File file = new File(path);
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent == null) {
+            return;
+        }
+        final String name = file.getName();
+        watchedPath = path;
+        fileObserver = new FileObserver(parent.getAbsolutePath(), WATCH_EVENTS) {
+            @Override
+            public void onEvent(int event, String changed) {
+                if (name.equals(changed)) {
+                    scheduleChangeCheck();
+                }
+            }
+        };
+        fileObserver.startWatching();
+    }
+
+    private void stopWatchingFile() {
+        if (fileObserver != null) {
+            fileObserver.stopWatching();
+            fileObserver = null;
+        }
+        watchedPath = null;
+    }
+
+    /**
+     * 可以在监听线程调用，连续的事件合并为一次检查
+     */
+    private void scheduleChangeCheck() {
+        synchronized (checkExternalChange) {
+            if (changeCheckPending) {
+                return;
+            }
+            changeCheckPending = true;
+        }
+        handler.postDelayed(checkExternalChange, EXTERNAL_CHANGE_DELAY_MS);
+    }
+
+    /**
+     * 当前文件在外部被修改后重新读取：只在末尾追加时只读取新增的部分，否则重新读取阅读位置附近的窗口。
+     * 有未保存的修改时不重新读取，提示保存时会确认是否覆盖。
+     */
+    private void checkExternalChange() {
+        if (isDestroyed() || currentPosition >= filePaths.size()) {
+            return;
+        }
+        final ViewFragment view = getViewAt(currentPosition);
+        final String path = filePaths.get(currentPosition);
+        if (view == null || !view.hasWindow() || isCompressed(path)) {
+            return;
+        }
+        final TextWindow window = view.getWindow();
+        final boolean dirty = view.isDirty();
+        final long anchor = view.getReadingOffset();
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!isChangedOnDisk(path, window)) {
+                    return;
+                }
+                TextWindow loaded = null;
+                if (!dirty) {
+                    try {
+                        if (!ContentFile.isContentPath(path)) {
+                            loaded = window.reloadAppended(new File(path), WINDOW_BYTES);
+                        }
+                        if (loaded == null) {
+                            loaded = readWindow(path, window.getEncoding(), anchor);
+                        }
+                    } catch (IOException e) {
+                        Log.w(TAG, "Error reloading file: " + path, e);
+                        return;
+                    }
+                }
+                final TextWindow updated = loaded;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isDestroyed() || view.getWindow() != window) {
+                            return;
+                        }
+                        if (updated == null || view.isDirty()) {
+                            view.warnChangedOnce();
+                            return;
+                        }
+                        DocumentCache.put(updated);
+                        view.updateWindow(updated, anchor);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 通过文件描述符写回 content:// URI，没有写入权限时失败
+     */
+    private boolean saveContent(TextWindow window, String content) {
+        try {
+            if (window.isWholeFile()) {
+                ContentFile.save(this, window.getPath(), content, window.getEncoding());
             } else {
-                Toast.makeText(this, R.string.error_save_failed, Toast.LENGTH_SHORT).show();
+                ContentFile.saveWindow(this, window, content);
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving uri: " + window.getPath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 记录文件视图当前的阅读位置
+     */
+    private void recordPosition(ViewFragment view) {
+        int position = view.getPosition();
+        if (position < filePaths.size() && view.hasWindow()) {
+            positionStore.put(filePaths.get(position), view.getReadingOffset(), view.getWindow().getEncoding());
+        }
+    }
+
+    /**
+     * 滚动到窗口边缘时以当前阅读位置为中心加载相邻的内容
+     */
+    private void onViewScrolled(final ViewFragment view) {
+        handler.removeCallbacksAndMessages(view);
+        handler.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                recordPosition(view);
             }
+        }, view, android.os.SystemClock.uptimeMillis() + RECORD_POSITION_DELAY_MS);
+        
+        int position = view.getPosition();
+        if (!view.hasWindow() || !view.isNearWindowEdge()) {
+            return;
+        }
+        if (view.isDirty()) {
+            view.warnUnsavedOnce();
+            return;
         }
+        if (!view.beginEdgeLoad()) {
+            return;
+        }
+        final TextWindow current = view.getWindow();
+        loadWindowAsync(filePaths.get(position), current.getEncoding(), view.getReadingOffset(), new WindowCallback() {
+            @Override
+            public void onWindowLoaded(TextWindow window, String encoding, long offset) {
+                // 加载期间页面被回收、换了窗口或被编辑时放弃
+                if (window == null || view.getWindow() != current || view.isDirty()) {
+                    return;
+                }
+                // 加载期间可能继续滚动了，新窗口包含当前位置时停在当前位置
+                long reading = view.getReadingOffset();
+                boolean inWindow = reading >= window.getStartByte() && reading < window.getEndByte();
+                view.setWindow(window, inWindow ? reading : offset);
+            }
+        });
     }
 
     private void updateUI() {
@@ -221,9 +983,15 @@ public class ViewerActivity extends AppCompatActivity {
             viewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
                 @Override
                 public void onPageSelected(int position) {
+                    ViewFragment previous = getFragmentAtPosition(currentPosition);
+                    if (previous != null) {
+                        recordPosition(previous);
+                    }
                     currentPosition = position;
                     updateTitle();
                     updateEncodingSpinner();
+                    updateFormatButtons();
+                    watchCurrentFile();
                 }
             });
             
@@ -232,19 +1000,22 @@ public class ViewerActivity extends AppCompatActivity {
             viewPager.setVisibility(View.GONE);
             contentEdit.setVisibility(View.VISIBLE);
             
-            if (!contents.isEmpty()) {
-                contentEdit.setText(contents.get(0));
+            singleView = new ViewFragment();
+            singleView.setPosition(0);
+            singleView.bind(contentEdit);
+            if (!filePaths.isEmpty()) {
+                bindPage(singleView);
             }
         }
         
         updateTitle();
         updateEncodingSpinner();
+        updateFormatButtons();
     }
 
     private void updateTitle() {
         if (filePaths != null && currentPosition < filePaths.size()) {
-            File file = new File(filePaths.get(currentPosition));
-            titleText.setText(file.getName());
+            titleText.setText(displayName(filePaths.get(currentPosition)));
             
             if (isMultipleFiles) {
                 titleText.append(" (" + (currentPosition + 1) + "/" + filePaths.size() + ")");
@@ -252,6 +1023,20 @@ public class ViewerActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * content:// URI 的文件名由 resolveContentInfo 在后台查询，查询完成前显示 URI 的最后一段
+     */
+    private String displayName(String path) {
+        return ContentFile.isContentPath(path) ? ContentFile.peekDisplayName(path) : new File(path).getName();
+    }
+
+    /**
+     * @return 扩展名，content:// URI 取提供者给出的文件名的扩展名
+     */
+    private String extensionOf(String path) {
+        return FileUtils.getFileExtension(path != null ? displayName(path) : null);
+    }
+
     private void updateEncodingSpinner() {
         if (encodings != null && currentPosition < encodings.size()) {
             String encoding = encodings.get(currentPosition);
@@ -264,29 +1049,120 @@ public class ViewerActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * 按当前文件的类型显示 Markdown 预览切换和结构视图按钮，压缩的文件和没有写入权限的 URI 不能保存
+     */
+    private void updateFormatButtons() {
+        String path = filePaths != null && currentPosition < filePaths.size() ? filePaths.get(currentPosition) : null;
+        String extension = extensionOf(path);
+        boolean compressed = isCompressed(path);
+        // 结构视图按文件路径随机访问，URI 打开的文件不显示
+        boolean local = !compressed && !ContentFile.isContentPath(path);
+        boolean writable = !compressed && (!ContentFile.isContentPath(path) || Boolean.TRUE.equals(writableUris.get(path)));
+        saveButton.setVisibility(writable ? View.VISIBLE : View.GONE);
+        structureButton.setVisibility(local && StructureIndex.isSupported(extension) ? View.VISIBLE : View.GONE);
+        structureButton.setEnabled(path != null && encodings.get(currentPosition) != null);
+        markdownButton.setVisibility(MarkdownParser.isMarkdown(extension) ? View.VISIBLE : View.GONE);
+        markdownButton.setText(showMarkdownSource ? R.string.markdown_preview : R.string.markdown_source);
+    }
+
     private void restoreState(Bundle savedInstanceState) {
         currentPosition = savedInstanceState.getInt(STATE_CURRENT_POSITION, 0);
-        encodings = savedInstanceState.getStringArrayList(STATE_ENCODINGS);
-        
-        if (encodings == null) {
-            loadFiles();
-        } else {
-            contents = new ArrayList<>();
-            for (int i = 0; i < filePaths.size(); i++) {
-                File file = new File(filePaths.get(i));
-                String content = FileUtils.readFile(file, encodings.get(i));
-                contents.add(content);
-            }
-        }
+        // 阅读位置在 onSaveInstanceState 时已经记录，重新加载时回到原来的位置
+        loadFiles(savedInstanceState.getStringArrayList(STATE_ENCODINGS));
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        watchCurrentFile();
+        // 不可见期间的修改没有收到事件
+        scheduleChangeCheck();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        stopWatchingFile();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        recordVisiblePositions();
+        positionStore.flush();
     }
 
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
+        recordVisiblePositions();
         outState.putInt(STATE_CURRENT_POSITION, currentPosition);
         outState.putStringArrayList(STATE_ENCODINGS, new ArrayList<>(encodings));
     }
 
+    /**
+     * 旋转屏幕等界面重建时把未保存的修改交给新界面，已加载的内容由 DocumentCache 保留
+     */
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        RetainedState state = new RetainedState();
+        state.unsavedPages.putAll(unsavedPages);
+        if (singleView != null && singleView.isDirty()) {
+            state.unsavedPages.put(0, singleView.toUnsavedPage());
+        }
+        if (isMultipleFiles && viewPager != null) {
+            for (int i = 0; i < viewPager.getChildCount(); i++) {
+                Object tag = viewPager.getChildAt(i).getTag();
+                if (tag instanceof ViewFragment && ((ViewFragment) tag).isDirty()) {
+                    ViewFragment fragment = (ViewFragment) tag;
+                    state.unsavedPages.put(fragment.getPosition(), fragment.toUnsavedPage());
+                }
+            }
+        }
+        return state;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        stopWatchingFile();
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    private static class RetainedState {
+        final Map<Integer, UnsavedPage> unsavedPages = new HashMap<>();
+    }
+
+    /**
+     * 视图回收时保存下来的未保存修改
+     */
+    private static class UnsavedPage {
+        final TextWindow window;
+        final String text;
+        final long offset;
+
+        UnsavedPage(TextWindow window, String text, long offset) {
+            this.window = window;
+            this.text = text;
+            this.offset = offset;
+        }
+    }
+
+    private void recordVisiblePositions() {
+        if (singleView != null) {
+            recordPosition(singleView);
+        }
+        if (isMultipleFiles && viewPager != null) {
+            for (int i = 0; i < viewPager.getChildCount(); i++) {
+                Object tag = viewPager.getChildAt(i).getTag();
+                if (tag instanceof ViewFragment) {
+                    recordPosition((ViewFragment) tag);
+                }
+            }
+        }
+    }
+
     /**
      * 获取指定位置的Fragment
      */
@@ -309,7 +1185,12 @@ public class ViewerActivity extends AppCompatActivity {
         return null;
     }
 
+    /**
+     * 页面内容按需加载，移出屏幕的页面视图回收后给新页面复用
+     */
     private class ViewPagerAdapter extends PagerAdapter {
+        private final ArrayDeque<ViewFragment> recycledViews = new ArrayDeque<>();
+
         @Override
         public int getCount() {
             return filePaths.size();
@@ -322,57 +1203,294 @@ public class ViewerActivity extends AppCompatActivity {
 
         @Override
         public Object instantiateItem(ViewGroup container, int position) {
-            ViewFragment fragment = new ViewFragment();
-            fragment.setPosition(position);
-            
-            if (position < contents.size()) {
-                fragment.setContent(contents.get(position));
+            ViewFragment fragment = recycledViews.poll();
+            if (fragment == null) {
+                fragment = new ViewFragment();
+                View view = fragment.onCreateView(getLayoutInflater(), container, null);
+                // 设置标签以便后续查找
+                view.setTag(fragment);
             }
-            
-            // 将Fragment添加到容器
-            View view = fragment.onCreateView(getLayoutInflater(), container, null);
-            container.addView(view);
-            
-            // 设置标签以便后续查找
-            view.setTag(fragment);
-            
-            return view;
+            fragment.setPosition(position);
+            container.addView(fragment.getView());
+            bindPage(fragment);
+            return fragment.getView();
         }
 
         @Override
         public void destroyItem(ViewGroup container, int position, Object object) {
-            container.removeView((View) object);
+            View view = (View) object;
+            container.removeView(view);
+            if (view.getTag() instanceof ViewFragment) {
+                ViewFragment fragment = (ViewFragment) view.getTag();
+                if (fragment.hasWindow()) {
+                    recordPosition(fragment);
+                    if (fragment.isDirty()) {
+                        unsavedPages.put(position, fragment.toUnsavedPage());
+                    }
+                }
+                fragment.recycle();
+                recycledViews.push(fragment);
+            }
         }
     }
 
-    public static class ViewFragment {
+    /**
+     * 显示一个文件的窗口内容，并跟踪滚动位置和是否被编辑
+     */
+    public class ViewFragment {
+        private View root;
         private EditText contentEdit;
-        private String content;
+        private TextWindow window;
         private int position;
+        private boolean dirty;
+        private boolean updatingText;
+        private boolean unsavedWarningShown;
+        private boolean changedWarningShown;
+        // 正在加载相邻内容时的窗口，避免滚动时重复加载
+        private TextWindow edgeLoadFrom;
+        private ViewTreeObserver.OnScrollChangedListener scrollListener;
+        private SyntaxHighlighter highlighter;
+        private MarkdownRenderer markdownRenderer;
         
         public View onCreateView(android.view.LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
-            View view = inflater.inflate(R.layout.fragment_view, container, false);
-            contentEdit = view.findViewById(R.id.content_edit);
-            
-            if (content != null) {
-                contentEdit.setText(content);
+            root = inflater.inflate(R.layout.fragment_view, container, false);
+            bind((EditText) root.findViewById(R.id.content_edit));
+            return root;
+        }
+
+        public View getView() {
+            return root;
+        }
+
+        /**
+         * 绑定到一个编辑框
+         */
+        public void bind(EditText edit) {
+            contentEdit = edit;
+            highlighter = new SyntaxHighlighter(edit);
+            markdownRenderer = new MarkdownRenderer(edit);
+            contentEdit.addTextChangedListener(new TextWatcher() {
+                @Override
+                public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                }
+
+                @Override
+                public void onTextChanged(CharSequence s, int start, int before, int count) {
+                }
+
+                @Override
+                public void afterTextChanged(Editable s) {
+                    if (!updatingText) {
+                        dirty = true;
+                    }
+                }
+            });
+            scrollListener = new ViewTreeObserver.OnScrollChangedListener() {
+                @Override
+                public void onScrollChanged() {
+                    if (window != null) {
+                        onViewScrolled(ViewFragment.this);
+                    }
+                }
+            };
+            contentEdit.getViewTreeObserver().addOnScrollChangedListener(scrollListener);
+        }
+
+        /**
+         * 清空内容以便给其他页面复用，监听器保留
+         */
+        public void recycle() {
+            handler.removeCallbacksAndMessages(this);
+            window = null;
+            edgeLoadFrom = null;
+            dirty = false;
+            highlighter.setLexer(null);
+            markdownRenderer.setWindow(null, false);
+            updatingText = true;
+            contentEdit.setText("");
+            updatingText = false;
+            contentEdit.scrollTo(0, 0);
+        }
+
+        /**
+         * 恢复回收前未保存的修改
+         */
+        public void restoreUnsaved(UnsavedPage unsaved) {
+            setWindow(unsaved.window, unsaved.offset);
+            updatingText = true;
+            contentEdit.setText(unsaved.text);
+            updatingText = false;
+            dirty = true;
+        }
+
+        /**
+         * 显示窗口内容，并滚动到指定字节偏移所在的行
+         */
+        public void setWindow(TextWindow window, long scrollToOffset) {
+            this.window = window;
+            this.dirty = false;
+            this.unsavedWarningShown = false;
+            this.changedWarningShown = false;
+            if (contentEdit == null) {
+                return;
             }
+            // 所有页面共用一个解码缓冲区，setText 会复制内容
+            textBuffer = window.decode(textBuffer);
+            boolean preview = isMarkdownPreview();
+            // 窗口开头按初始状态分析，窗口从块注释中间开始时前几行的颜色可能不准确
+            highlighter.setLexer(preview ? null : SyntaxLexer.forExtension(extensionOf(window.getPath())));
+            updatingText = true;
+            contentEdit.setText(textBuffer);
+            updatingText = false;
+            markdownRenderer.setWindow(preview ? window : null, false);
             
-            return view;
+            final int charOffset = TextWindow.charOffsetOfLine(textBuffer, window.lineOfByteOffset(scrollToOffset));
+            contentEdit.post(new Runnable() {
+                @Override
+                public void run() {
+                    Layout layout = contentEdit.getLayout();
+                    if (layout != null) {
+                        int line = layout.getLineForOffset(Math.min(charOffset, contentEdit.length()));
+                        contentEdit.scrollTo(0, layout.getLineTop(line));
+                    }
+                }
+            });
         }
 
-        public void setContent(String content) {
-            this.content = content;
-            if (contentEdit != null) {
-                contentEdit.setText(content);
+        /**
+         * 文件在外部被修改后换成新窗口。新内容以当前文本开头（在末尾追加）时只把多出的部分接在后面，
+         * 滚动位置不变，否则重新显示。
+         */
+        public void updateWindow(TextWindow updated, long scrollToOffset) {
+            if (contentEdit == null || isMarkdownPreview() || updated.getStartByte() != window.getStartByte()) {
+                setWindow(updated, scrollToOffset);
+                return;
+            }
+            textBuffer = updated.decode(textBuffer);
+            Editable text = contentEdit.getText();
+            int length = text.length();
+            if (textBuffer.length() < length || !startsWith(textBuffer, text)) {
+                setWindow(updated, scrollToOffset);
+                return;
+            }
+            window = updated;
+            if (textBuffer.length() > length) {
+                updatingText = true;
+                text.append(textBuffer, length, textBuffer.length());
+                updatingText = false;
+            }
+        }
+
+        private boolean startsWith(CharSequence text, CharSequence prefix) {
+            for (int i = 0; i < prefix.length(); i++) {
+                if (text.charAt(i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 切换 Markdown 预览和源码后重新设置样式
+         */
+        public void updateMarkdownMode() {
+            if (window == null || contentEdit == null) {
+                return;
+            }
+            boolean preview = isMarkdownPreview();
+            highlighter.setLexer(preview ? null : SyntaxLexer.forExtension(extensionOf(window.getPath())));
+            markdownRenderer.setWindow(preview ? window : null, dirty);
+        }
+
+        private boolean isMarkdownPreview() {
+            return !showMarkdownSource && MarkdownParser.isMarkdown(extensionOf(window.getPath()));
+        }
+
+        public boolean hasWindow() {
+            return window != null;
+        }
+
+        public TextWindow getWindow() {
+            return window;
+        }
+
+        public UnsavedPage toUnsavedPage() {
+            return new UnsavedPage(window, getContent(), getReadingOffset());
+        }
+
+        public boolean isDirty() {
+            return dirty;
+        }
+
+        public void warnUnsavedOnce() {
+            if (!unsavedWarningShown) {
+                unsavedWarningShown = true;
+                Toast.makeText(ViewerActivity.this, R.string.message_save_before_continue, Toast.LENGTH_SHORT).show();
+            }
+        }
+
+        /**
+         * 开始加载当前窗口相邻的内容
+         * @return 当前窗口已经在加载或加载失败过时返回 false
+         */
+        public boolean beginEdgeLoad() {
+            if (edgeLoadFrom == window) {
+                return false;
+            }
+            edgeLoadFrom = window;
+            return true;
+        }
+
+        public void warnChangedOnce() {
+            if (!changedWarningShown) {
+                changedWarningShown = true;
+                Toast.makeText(ViewerActivity.this, R.string.message_file_changed, Toast.LENGTH_SHORT).show();
+            }
+        }
+
+        /**
+         * @return 第一行可见文字在文件中的字节偏移
+         */
+        public long getReadingOffset() {
+            if (window == null) {
+                return 0;
+            }
+            int charOffset = firstVisibleCharOffset();
+            if (charOffset < 0) {
+                return window.getStartByte();
+            }
+            return window.byteOffsetOfLine(TextWindow.lineOfCharOffset(contentEdit.getText(), charOffset));
+        }
+
+        /**
+         * @return 可见区域是否已经接近窗口的开头或结尾（且文件在那个方向还有更多内容）
+         */
+        public boolean isNearWindowEdge() {
+            Layout layout = contentEdit != null ? contentEdit.getLayout() : null;
+            if (window == null || layout == null || window.isWholeFile()) {
+                return false;
+            }
+            int length = contentEdit.length();
+            int first = firstVisibleCharOffset();
+            int lastLine = layout.getLineForVertical(contentEdit.getScrollY() + contentEdit.getHeight());
+            int last = layout.getLineEnd(lastLine);
+            return (window.hasNext() && last >= length * (1 - EDGE_RATIO))
+                || (window.hasPrevious() && first <= length * EDGE_RATIO);
+        }
+
+        private int firstVisibleCharOffset() {
+            Layout layout = contentEdit != null ? contentEdit.getLayout() : null;
+            if (layout == null) {
+                return -1;
             }
+            return layout.getLineStart(layout.getLineForVertical(contentEdit.getScrollY()));
         }
 
         public String getContent() {
             if (contentEdit != null) {
                 return contentEdit.getText().toString();
             }
-            return content != null ? content : "";
+            return window != null ? window.getText() : "";
         }
         
         public void setPosition(int position) {
@@ -383,4 +1501,4 @@ public class ViewerActivity extends AppCompatActivity {
             return position;
         }
     }
-}
\ No newline at end of file
+}
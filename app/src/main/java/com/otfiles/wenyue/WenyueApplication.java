@@ -0,0 +1,35 @@
+package com.otfiles.wenyue;
+
+import android.app.Application;
+
+import com.otfiles.wenyue.utils.AppSettings;
+import com.otfiles.wenyue.utils.FavoritesStore;
+import com.otfiles.wenyue.utils.Perf;
+import com.otfiles.wenyue.utils.PerfOverlay;
+import com.otfiles.wenyue.utils.ReadingPositionStore;
+import com.otfiles.wenyue.utils.StartupTimer;
+
+public class WenyueApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // 性能统计需要区分主线程；发布版在打开统计浮层之后才开始统计
+        Perf.setEnabled(BuildConfig.DEBUG);
+        Perf.setMainThread(Thread.currentThread());
+        StartupTimer.install(this);
+        PerfOverlay.install(this);
+
+        // 第一屏需要的数据在后台提前读取：设置（主题）和收藏列表都在应用私有目录，不需要存储权限
+        AppSettings.preload(this);
+        FavoritesStore.getInstance(this).load();
+
+        // 只有打开文件时才用到的数据推迟到第一帧之后
+        StartupTimer.runAfterFirstFrame(new Runnable() {
+            @Override
+            public void run() {
+                ReadingPositionStore.getInstance(getFilesDir()).preload();
+            }
+        });
+    }
+}
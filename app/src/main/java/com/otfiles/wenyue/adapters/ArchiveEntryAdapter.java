@@ -0,0 +1,106 @@
+package com.otfiles.wenyue.adapters;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.otfiles.wenyue.R;
+import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.Perf;
+import com.otfiles.wenyue.utils.ZipIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压缩包中一个目录的内容
+ */
+public class ArchiveEntryAdapter extends RecyclerView.Adapter<ArchiveEntryAdapter.ViewHolder> {
+
+    private Context context;
+    private List<ZipIndex.Entry> entries = new ArrayList<>();
+    private OnItemClickListener listener;
+
+    public interface OnItemClickListener {
+        void onItemClick(ZipIndex.Entry entry);
+    }
+
+    public ArchiveEntryAdapter(Context context, OnItemClickListener listener) {
+        this.context = context;
+        this.listener = listener;
+    }
+
+    public void setEntries(List<ZipIndex.Entry> entries) {
+        this.entries = entries;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.item_archive_entry, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        Perf.Span span = Perf.begin("ArchiveEntryAdapter.bind");
+        try {
+            bindItem(holder, entries.get(position));
+        } finally {
+            Perf.end(span);
+        }
+    }
+
+    private void bindItem(ViewHolder holder, final ZipIndex.Entry entry) {
+        holder.fileName.setText(entry.getName());
+        if (entry.isDirectory()) {
+            holder.itemIcon.setImageResource(R.drawable.ic_folder);
+            holder.fileSize.setText("");
+        } else {
+            String extension = FileUtils.getFileExtension(entry.getName());
+            int iconRes = R.drawable.ic_file;
+            if (FileUtils.isTextFile(extension)) {
+                iconRes = R.drawable.ic_text;
+            } else if (FileUtils.isImageFile(extension)) {
+                iconRes = R.drawable.ic_image;
+            } else if (FileUtils.isAudioFile(extension)) {
+                iconRes = R.drawable.ic_audio;
+            } else if (FileUtils.isVideoFile(extension)) {
+                iconRes = R.drawable.ic_video;
+            }
+            holder.itemIcon.setImageResource(iconRes);
+            holder.fileSize.setText(FileUtils.formatFileSize(entry.getSize()));
+        }
+
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                if (listener != null) {
+                    listener.onItemClick(entry);
+                }
+            }
+        });
+    }
+
+    @Override
+    public int getItemCount() {
+        return entries.size();
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        ImageView itemIcon;
+        TextView fileName;
+        TextView fileSize;
+
+        public ViewHolder(View itemView) {
+            super(itemView);
+            itemIcon = itemView.findViewById(R.id.item_icon);
+            fileName = itemView.findViewById(R.id.file_name);
+            fileSize = itemView.findViewById(R.id.file_size);
+        }
+    }
+}
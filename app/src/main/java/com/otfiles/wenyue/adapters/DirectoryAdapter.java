@@ -10,10 +10,13 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.otfiles.wenyue.R;
+import com.otfiles.wenyue.utils.DirectoryListingCache;
 import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.Perf;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 
 public class DirectoryAdapter extends RecyclerView.Adapter<DirectoryAdapter.ViewHolder> {
@@ -43,6 +46,15 @@ public class DirectoryAdapter extends RecyclerView.Adapter<DirectoryAdapter.View
 
     @Override
     public void onBindViewHolder(final ViewHolder holder, int position) {
+        Perf.Span span = Perf.begin("DirectoryAdapter.bind");
+        try {
+            bindItem(holder, position);
+        } finally {
+            Perf.end(span);
+        }
+    }
+
+    private void bindItem(final ViewHolder holder, int position) {
         final File file = files.get(position);
         
         // 设置文件名
@@ -108,6 +120,27 @@ public class DirectoryAdapter extends RecyclerView.Adapter<DirectoryAdapter.View
         notifyDataSetChanged();
     }
 
+    public List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * 按增量修改更新列表，只通知变化的位置，保留仍然存在的文件的选中状态
+     */
+    public void applyUpdate(DirectoryListingCache.Update update) {
+        this.files = update.getFiles();
+        if (!selectedFiles.isEmpty()) {
+            selectedFiles.retainAll(new HashSet<>(files));
+        }
+        for (int i = 0; i < update.getOperationCount(); i++) {
+            if (update.getType(i) == DirectoryListingCache.Update.INSERTED) {
+                notifyItemRangeInserted(update.getPosition(i), update.getCount(i));
+            } else {
+                notifyItemRangeRemoved(update.getPosition(i), update.getCount(i));
+            }
+        }
+    }
+
     public void toggleSelection(File file) {
         if (selectedFiles.contains(file)) {
             selectedFiles.remove(file);
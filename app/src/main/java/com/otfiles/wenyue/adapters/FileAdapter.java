@@ -10,15 +10,21 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.otfiles.wenyue.R;
+import com.otfiles.wenyue.utils.FavoritesStore;
 import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.Perf;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class FileAdapter extends RecyclerView.Adapter<FileAdapter.ViewHolder> {
 
     private Context context;
     private List<String> filePaths;
     private boolean isFavoriteList;
+    // 后台批量检查得到的路径状态，绑定时不再访问磁盘
+    private Map<String, FavoritesStore.Status> statuses = Collections.emptyMap();
     private OnItemClickListener onItemClickListener;
     
     public interface OnItemClickListener {
@@ -41,6 +47,11 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.ViewHolder> {
         notifyDataSetChanged();
     }
 
+    public void updateData(List<String> newFilePaths, Map<String, FavoritesStore.Status> newStatuses) {
+        this.statuses = newStatuses;
+        updateData(newFilePaths);
+    }
+
     @Override
     public int getItemViewType(int position) {
         // 如果是收藏列表且是最后一项，返回添加按钮类型
@@ -67,6 +78,15 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.ViewHolder> {
 
     @Override
     public void onBindViewHolder(final ViewHolder holder, int position) {
+        Perf.Span span = Perf.begin("FileAdapter.bind");
+        try {
+            bindItem(holder, position);
+        } finally {
+            Perf.end(span);
+        }
+    }
+
+    private void bindItem(final ViewHolder holder, int position) {
         if (getItemViewType(position) == 1) {
             // 添加按钮项
             holder.icon.setImageResource(R.drawable.ic_add);
@@ -77,9 +97,11 @@ public class FileAdapter extends RecyclerView.Adapter<FileAdapter.ViewHolder> {
             String name = FileUtils.getFileName(path);
             holder.name.setText(name);
             
-            // 设置图标
+            // 设置图标，状态未知时按扩展名显示
+            FavoritesStore.Status status = statuses.get(path);
+            holder.itemView.setAlpha(status != null && !status.exists ? 0.4f : 1f);
             Drawable icon;
-            if (FileUtils.isDirectory(path)) {
+            if (status != null && status.directory) {
                 icon = context.getResources().getDrawable(R.drawable.ic_folder);
             } else {
                 // 根据文件类型设置不同图标
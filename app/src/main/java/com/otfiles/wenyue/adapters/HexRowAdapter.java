@@ -0,0 +1,111 @@
+package com.otfiles.wenyue.adapters;
+
+import android.content.Context;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.RecyclerView;
+import android.text.SpannableString;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.otfiles.wenyue.R;
+import com.otfiles.wenyue.utils.HexFile;
+import com.otfiles.wenyue.utils.Perf;
+
+import java.io.IOException;
+
+/**
+ * 十六进制视图的行，绑定时才从映射的页中读取这一行的字节
+ */
+public class HexRowAdapter extends RecyclerView.Adapter<HexRowAdapter.ViewHolder> {
+
+    private Context context;
+    private HexFile file;
+    private final int bytesPerRow;
+    private final byte[] rowBytes;
+    private final StringBuilder rowText = new StringBuilder();
+    private final int matchColor;
+    // 高亮的字节范围，没有时 matchLength 为 0
+    private long matchStart;
+    private int matchLength;
+
+    public HexRowAdapter(Context context, HexFile file, int bytesPerRow) {
+        this.context = context;
+        this.file = file;
+        this.bytesPerRow = bytesPerRow;
+        this.rowBytes = new byte[bytesPerRow];
+        this.matchColor = ContextCompat.getColor(context, R.color.hex_match);
+    }
+
+    public int getBytesPerRow() {
+        return bytesPerRow;
+    }
+
+    /**
+     * 高亮这些字节的十六进制和字符
+     */
+    public void setMatch(long start, int length) {
+        matchStart = start;
+        matchLength = length;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.item_hex_row, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        Perf.Span span = Perf.begin("HexRowAdapter.bind");
+        try {
+            bindItem(holder, position);
+        } finally {
+            Perf.end(span);
+        }
+    }
+
+    private void bindItem(ViewHolder holder, int position) {
+        long offset = (long) position * bytesPerRow;
+        int count;
+        try {
+            count = file.read(offset, rowBytes, 0, bytesPerRow);
+        } catch (IOException e) {
+            count = 0;
+        }
+        rowText.setLength(0);
+        HexFile.formatRow(offset, rowBytes, count, bytesPerRow, rowText);
+        if (matchLength == 0 || matchStart >= offset + count || matchStart + matchLength <= offset) {
+            holder.text.setText(rowText);
+            return;
+        }
+        // 这一行中匹配的字节范围 [first, last]
+        int first = (int) Math.max(0, matchStart - offset);
+        int last = (int) Math.min(count - 1, matchStart + matchLength - 1 - offset);
+        SpannableString text = new SpannableString(rowText);
+        text.setSpan(new BackgroundColorSpan(matchColor), HexFile.hexColumn(offset, first),
+            HexFile.hexColumn(offset, last) + 2, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        text.setSpan(new BackgroundColorSpan(matchColor), HexFile.charColumn(offset, first, bytesPerRow),
+            HexFile.charColumn(offset, last, bytesPerRow) + 1, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        holder.text.setText(text);
+    }
+
+    @Override
+    public int getItemCount() {
+        // 超大的文件只显示前面能用 int 表示的行
+        return (int) Math.min(Integer.MAX_VALUE, file.getRowCount(bytesPerRow));
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        public TextView text;
+
+        public ViewHolder(View itemView) {
+            super(itemView);
+            text = itemView.findViewById(R.id.hex_row);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.otfiles.wenyue.adapters;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import com.otfiles.wenyue.R;
+import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.Perf;
+import com.otfiles.wenyue.utils.StructureIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 结构视图的列表，每行是展开后可见的一个节点，按层级缩进
+ */
+public class StructureAdapter extends RecyclerView.Adapter<StructureAdapter.ViewHolder> {
+
+    /**
+     * 树中的一个节点及其展开状态。node 为 null 的行表示 owner 的“加载更多”
+     */
+    public static class Row {
+        public final StructureIndex.Node node;
+        public final Row owner;
+        public final int depth;
+        public boolean expanded;
+        public boolean loading;
+        // 已加载的子节点，尚未加载时为 null
+        public List<Row> children;
+        // 最后加载的一页，用来继续加载
+        public StructureIndex.Page page;
+        private Row moreRow;
+
+        public Row(StructureIndex.Node node, int depth) {
+            this(node, null, depth);
+        }
+
+        private Row(StructureIndex.Node node, Row owner, int depth) {
+            this.node = node;
+            this.owner = owner;
+            this.depth = depth;
+        }
+
+        public boolean isMore() {
+            return node == null;
+        }
+
+        /**
+         * @return 正在加载或还有未加载的子节点时在子节点之后显示的行
+         */
+        public Row getMoreRow() {
+            if (moreRow == null) {
+                moreRow = new Row(null, this, depth + 1);
+            }
+            return moreRow;
+        }
+
+        /**
+         * 追加一页子节点
+         */
+        public void addPage(StructureIndex.Page page) {
+            if (children == null) {
+                children = new ArrayList<>();
+            }
+            for (StructureIndex.Node child : page.getNodes()) {
+                children.add(new Row(child, depth + 1));
+            }
+            this.page = page;
+        }
+    }
+
+    public interface OnRowClickListener {
+        void onRowClick(Row row);
+        void onRowLongClick(Row row);
+    }
+
+    private Context context;
+    private List<Row> rows = new ArrayList<>();
+    private OnRowClickListener listener;
+    private final int indentPx;
+
+    public StructureAdapter(Context context, OnRowClickListener listener) {
+        this.context = context;
+        this.listener = listener;
+        this.indentPx = (int) (16 * context.getResources().getDisplayMetrics().density);
+    }
+
+    public void setRows(List<Row> rows) {
+        this.rows = rows;
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(context).inflate(R.layout.item_structure, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(final ViewHolder holder, int position) {
+        Perf.Span span = Perf.begin("StructureAdapter.bind");
+        try {
+            bindItem(holder, rows.get(position));
+        } finally {
+            Perf.end(span);
+        }
+    }
+
+    private void bindItem(final ViewHolder holder, final Row row) {
+        holder.itemView.setPaddingRelative(indentPx * (row.depth + 1), holder.itemView.getPaddingTop(),
+            holder.itemView.getPaddingEnd(), holder.itemView.getPaddingBottom());
+        if (row.isMore()) {
+            holder.toggle.setText("");
+            holder.name.setText("");
+            holder.detail.setText(row.owner.loading ? R.string.structure_loading : R.string.structure_more);
+        } else {
+            StructureIndex.Node node = row.node;
+            holder.toggle.setText(node.hasChildren() ? (row.expanded ? "▾" : "▸") : "");
+            holder.name.setText(node.getType() == StructureIndex.ELEMENT ? "<" + node.getName() + ">" : node.getName());
+            holder.detail.setText(describe(node));
+        }
+
+        holder.itemView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                listener.onRowClick(row);
+            }
+        });
+        holder.itemView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                if (row.isMore()) {
+                    return false;
+                }
+                listener.onRowLongClick(row);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 值的预览，容器显示占用的大小
+     */
+    private static String describe(StructureIndex.Node node) {
+        String size = FileUtils.formatFileSize(node.getEnd() - node.getStart());
+        switch (node.getType()) {
+            case StructureIndex.OBJECT:
+                return "{…} " + size;
+            case StructureIndex.ARRAY:
+                return "[…] " + size;
+            case StructureIndex.STRING:
+                return "\"" + node.getPreview() + "\"";
+            case StructureIndex.ELEMENT:
+                return node.getPreview() != null ? node.getPreview() : node.hasChildren() ? size : "";
+            default:
+                return node.getPreview() != null ? node.getPreview() : "";
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return rows.size();
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+        public TextView toggle;
+        public TextView name;
+        public TextView detail;
+
+        public ViewHolder(View itemView) {
+            super(itemView);
+            toggle = itemView.findViewById(R.id.structure_toggle);
+            name = itemView.findViewById(R.id.structure_name);
+            detail = itemView.findViewById(R.id.structure_detail);
+        }
+    }
+}
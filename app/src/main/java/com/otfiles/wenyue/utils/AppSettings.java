@@ -0,0 +1,45 @@
+package com.otfiles.wenyue.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.otfiles.wenyue.R;
+
+/**
+ * 应用设置
+ *
+ * 所有界面共用 app_settings 这一个设置文件。应用启动时先取一次，系统会在后台线程开始读取文件，
+ * 界面创建时读取主题一般不需要再等待磁盘。
+ */
+public class AppSettings {
+
+    public static final String PREFS_NAME = "app_settings";
+    public static final String KEY_COLOR_THEME = "color_theme";
+    public static final String KEY_DEFAULT_ENCODING = "default_encoding";
+    public static final String KEY_WARMUP_BUDGET_MB = "warmup_budget_mb";
+
+    private static final String THEME_GREEN = "green";
+
+    /**
+     * 在应用启动时调用，提前开始读取设置文件
+     */
+    public static void preload(Context context) {
+        get(context);
+    }
+
+    public static SharedPreferences get(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @param noActionBar 界面是否使用自己的 Toolbar
+     * @return 设置中选择的主题
+     */
+    public static int getThemeRes(Context context, boolean noActionBar) {
+        boolean green = THEME_GREEN.equals(get(context).getString(KEY_COLOR_THEME, "blue"));
+        if (noActionBar) {
+            return green ? R.style.AppTheme_Green_NoActionBar : R.style.AppTheme_NoActionBar;
+        }
+        return green ? R.style.AppTheme_Green : R.style.AppTheme;
+    }
+}
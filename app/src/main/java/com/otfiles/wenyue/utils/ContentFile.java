@@ -0,0 +1,272 @@
+package com.otfiles.wenyue.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructStat;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 通过 content:// URI 打开的文件
+ *
+ * 文件选择器返回的 URI 大多查不到真实路径。这里直接打开 URI 的文件描述符，
+ * 通过 FileChannel 按偏移读取、映射和写回，不复制到临时文件。
+ * URI 字符串本身就是路径，和本地文件路径一样在界面之间传递。
+ */
+public class ContentFile implements TextWindow.Source {
+
+    private static final String TAG = "ContentFile";
+    private static final String PREFIX = "content://";
+    // 缓存的显示名称数量
+    private static final int MAX_NAMES = 32;
+
+    private static final LinkedHashMap<String, String> NAMES =
+        new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_NAMES;
+            }
+        };
+
+    private final ContentResolver resolver;
+    private final Uri uri;
+    private final long length;
+    private final long lastModified;
+
+    private ContentFile(ContentResolver resolver, Uri uri, long length, long lastModified) {
+        this.resolver = resolver;
+        this.uri = uri;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    public static boolean isContentPath(String path) {
+        return path != null && path.startsWith(PREFIX);
+    }
+
+    /**
+     * 打开 URI 读取长度和修改时间
+     * @throws IOException 无法打开，包括没有访问权限
+     */
+    public static ContentFile stat(Context context, String path) throws IOException {
+        ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        Uri uri = Uri.parse(path);
+        ParcelFileDescriptor pfd = openDescriptor(resolver, uri, "r");
+        try {
+            StructStat stat = Os.fstat(pfd.getFileDescriptor());
+            // 管道等不能随机访问的描述符按长度未知处理，只能从头顺序读取
+            long length = OsConstants.S_ISREG(stat.st_mode) ? stat.st_size : -1;
+            return new ContentFile(resolver, uri, length, stat.st_mtime * 1000);
+        } catch (ErrnoException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            pfd.close();
+        }
+    }
+
+    /**
+     * @return 文件长度，不能随机访问时返回 -1
+     */
+    @Override
+    public long length() {
+        return length;
+    }
+
+    public long lastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public InputStream open(long offset) throws IOException {
+        FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(openDescriptor(resolver, uri, "r"));
+        try {
+            if (length >= 0) {
+                in.getChannel().position(offset);
+            } else {
+                skipFully(in, offset);
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 根据文件开头检测编码
+     */
+    public String detectEncoding() throws IOException {
+        InputStream in = open(0);
+        try {
+            return FileUtils.detectEncoding(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public boolean isBinary() throws IOException {
+        InputStream in = open(0);
+        try {
+            return HexFile.isBinary(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 按页映射文件描述符，用于十六进制视图
+     * @throws IOException 打开失败或不能随机访问
+     */
+    public HexFile openHex() throws IOException {
+        if (length < 0) {
+            throw new IOException("Not seekable: " + uri);
+        }
+        FileInputStream in = new ParcelFileDescriptor.AutoCloseInputStream(openDescriptor(resolver, uri, "r"));
+        try {
+            return new HexFile(in.getChannel(), in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 用内容替换整个文件
+     */
+    public static void save(Context context, String path, String content, String encoding) throws IOException {
+        byte[] encoded = content.getBytes(encoding);
+        ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        FileOutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(
+            openDescriptor(resolver, Uri.parse(path), "wt"));
+        Perf.Span span = Perf.begin("ContentFile.save");
+        try {
+            out.write(encoded);
+            out.flush();
+        } finally {
+            out.close();
+            Perf.end(span, encoded.length);
+        }
+    }
+
+    /**
+     * 只替换窗口对应的部分，在同一个文件描述符上移动后面的内容
+     * @param window 窗口，路径为 URI
+     */
+    public static void saveWindow(Context context, TextWindow window, CharSequence text) throws IOException {
+        ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        ParcelFileDescriptor pfd = openDescriptor(resolver, Uri.parse(window.getPath()), "rw");
+        Perf.Span span = Perf.begin("ContentFile.saveWindow");
+        try {
+            // 两个流都不拥有描述符，由 pfd 负责关闭
+            FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+            FileOutputStream out = new FileOutputStream(pfd.getFileDescriptor());
+            window.save(text, in.getChannel(), out.getChannel());
+        } finally {
+            pfd.close();
+            Perf.end(span);
+        }
+    }
+
+    /**
+     * 是否有写入权限，其他应用以只读方式分享的 URI 没有写入授权。需要询问系统服务，在后台线程调用。
+     */
+    public static boolean isWritable(Context context, String path) {
+        return context.checkCallingOrSelfUriPermission(Uri.parse(path), Intent.FLAG_GRANT_WRITE_URI_PERMISSION)
+            == PackageManager.PERMISSION_GRANTED;
+    }
+
+    /**
+     * 不查询提供者，可以在主线程调用
+     * @return 已经查询过的文件名，还没有查询时用 URI 的最后一段
+     */
+    public static String peekDisplayName(String path) {
+        synchronized (NAMES) {
+            String cached = NAMES.get(path);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String segment = Uri.parse(path).getLastPathSegment();
+        return segment != null ? segment : path;
+    }
+
+    /**
+     * 查询提供者，在后台线程调用
+     * @return 提供者给出的文件名，查询不到时用 URI 的最后一段
+     */
+    public static String getDisplayName(Context context, String path) {
+        synchronized (NAMES) {
+            String cached = NAMES.get(path);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Uri uri = Uri.parse(path);
+        String name = null;
+        Cursor cursor = null;
+        try {
+            cursor = context.getContentResolver().query(uri,
+                new String[] {OpenableColumns.DISPLAY_NAME}, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                name = cursor.getString(0);
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Error querying name: " + path, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        if (name == null) {
+            name = uri.getLastPathSegment() != null ? uri.getLastPathSegment() : path;
+        }
+        synchronized (NAMES) {
+            NAMES.put(path, name);
+        }
+        return name;
+    }
+
+    private static ParcelFileDescriptor openDescriptor(ContentResolver resolver, Uri uri, String mode)
+            throws IOException {
+        ParcelFileDescriptor pfd;
+        try {
+            pfd = resolver.openFileDescriptor(uri, mode);
+        } catch (SecurityException e) {
+            // 选择器授予的临时权限已经失效，或者提供者不允许写入
+            throw new IOException("Permission denied: " + uri, e);
+        }
+        if (pfd == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        return pfd;
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    return;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
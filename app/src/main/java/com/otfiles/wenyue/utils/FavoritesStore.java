@@ -0,0 +1,436 @@
+package com.otfiles.wenyue.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 收藏列表存储
+ *
+ * 收藏按用户添加的顺序保存在应用私有目录的文件中，读写都在后台线程进行。
+ * 所有收藏的类型和是否存在在后台一次性批量检查并缓存，列表绑定时不需要访问磁盘。
+ * 上次检查的结果也保存在文件中，启动时先按保存的结果显示列表，再在后台重新检查。
+ * 除后台任务外，所有方法都应在主线程调用。
+ */
+public class FavoritesStore {
+
+    private static final String TAG = "FavoritesStore";
+    private static final String STORE_FILE = "favorites.txt";
+    private static final String STATUS_FILE = "favorites_status.txt";
+    // 旧版本使用 SharedPreferences 的 StringSet 保存收藏
+    private static final String LEGACY_PREFS_NAME = "FavoritesPrefs";
+    private static final String LEGACY_KEY_FAVORITES = "favorites";
+
+    private static FavoritesStore instance;
+
+    /**
+     * 收藏路径的状态
+     */
+    public static class Status {
+        public final boolean exists;
+        public final boolean directory;
+
+        Status(boolean exists, boolean directory) {
+            this.exists = exists;
+            this.directory = directory;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Status)) {
+                return false;
+            }
+            Status other = (Status) o;
+            return exists == other.exists && directory == other.directory;
+        }
+
+        @Override
+        public int hashCode() {
+            return (exists ? 2 : 0) + (directory ? 1 : 0);
+        }
+    }
+
+    public interface Listener {
+        /**
+         * 收藏列表或状态发生变化，在主线程回调
+         */
+        void onFavoritesChanged();
+    }
+
+    private final Context context;
+    private final File storeFile;
+    private final File statusFile;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 单线程保证写入按顺序进行
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final List<Listener> listeners = new ArrayList<>();
+
+    private List<String> paths = new ArrayList<>();
+    private Map<String, Status> statuses = new HashMap<>();
+    private boolean loaded;
+    private boolean loading;
+    // 每次检查状态加一，io 线程池中先开始的检查可能后完成，只采用最后一次的结果
+    private int statusGeneration;
+
+    public static synchronized FavoritesStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new FavoritesStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private FavoritesStore(Context context) {
+        this.context = context;
+        this.storeFile = new File(context.getFilesDir(), STORE_FILE);
+        this.statusFile = new File(context.getFilesDir(), STATUS_FILE);
+    }
+
+    public void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * 在后台加载收藏列表和上次保存的状态，完成后通知监听器，再在后台重新检查状态；
+     * 已经加载过时只刷新状态
+     */
+    public void load() {
+        if (loaded) {
+            refreshStatuses();
+            return;
+        }
+        if (loading) {
+            return;
+        }
+        loading = true;
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<String> loadedPaths = readPaths();
+                final Map<String, Status> cached = readStatuses(loadedPaths);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        loading = false;
+                        loaded = true;
+                        // 合并加载完成前添加的收藏
+                        List<String> merged = new ArrayList<>(loadedPaths);
+                        for (String path : paths) {
+                            if (!merged.contains(path)) {
+                                merged.add(path);
+                            }
+                        }
+                        paths = merged;
+                        statuses = cached;
+                        if (merged.size() != loadedPaths.size()) {
+                            persist();
+                        }
+                        notifyListeners();
+                        refreshStatuses();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 在后台重新检查所有收藏的类型和是否存在，有变化时通知监听器并保存结果
+     */
+    public void refreshStatuses() {
+        final List<String> snapshot = new ArrayList<>(paths);
+        final int generation = ++statusGeneration;
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Map<String, Status> resolved = resolveStatuses(snapshot);
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != statusGeneration || resolved.equals(statuses)) {
+                            return;
+                        }
+                        statuses = resolved;
+                        writer.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                writeStatuses(resolved);
+                            }
+                        });
+                        notifyListeners();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return 收藏路径列表（按添加顺序）的只读副本
+     */
+    public List<String> getPaths() {
+        return Collections.unmodifiableList(new ArrayList<>(paths));
+    }
+
+    /**
+     * @return 所有已检查路径的状态
+     */
+    public Map<String, Status> getStatuses() {
+        return Collections.unmodifiableMap(statuses);
+    }
+
+    /**
+     * @return 缓存的路径状态，尚未检查时返回 null
+     */
+    public Status getStatus(String path) {
+        return statuses.get(path);
+    }
+
+    public boolean contains(String path) {
+        return paths.contains(path);
+    }
+
+    /**
+     * 添加收藏到列表末尾
+     * @return 是否添加成功（已存在时返回 false）
+     */
+    public boolean add(String path) {
+        if (path == null || paths.contains(path)) {
+            return false;
+        }
+        paths.add(path);
+        persist();
+        refreshStatuses();
+        notifyListeners();
+        return true;
+    }
+
+    /**
+     * 删除收藏
+     * @return 被删除的路径
+     */
+    public String remove(int position) {
+        String removed = paths.remove(position);
+        persist();
+        notifyListeners();
+        return removed;
+    }
+
+    private void notifyListeners() {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onFavoritesChanged();
+        }
+    }
+
+    /**
+     * 在写入线程保存当前列表的快照，先写临时文件再重命名，避免写到一半时丢失收藏
+     */
+    private void persist() {
+        if (!loaded) {
+            // 加载完成后会合并并保存
+            return;
+        }
+        final List<String> snapshot = new ArrayList<>(paths);
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                writePaths(snapshot);
+            }
+        });
+    }
+
+    /**
+     * @return 是否保存成功
+     */
+    private boolean writePaths(List<String> snapshot) {
+        File tempFile = new File(storeFile.getPath() + ".tmp");
+        BufferedWriter bw = null;
+        try {
+            bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+            for (String path : snapshot) {
+                bw.write(path);
+                bw.write('\n');
+            }
+            bw.close();
+            bw = null;
+            if (!tempFile.renameTo(storeFile)) {
+                Log.e(TAG, "Failed to replace " + storeFile.getAbsolutePath());
+                tempFile.delete();
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving favorites", e);
+            return false;
+        } finally {
+            if (bw != null) {
+                try {
+                    bw.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing streams", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 保存状态，每行为类型（d 文件夹、f 文件、- 不存在）加路径
+     */
+    private void writeStatuses(Map<String, Status> snapshot) {
+        File tempFile = new File(statusFile.getPath() + ".tmp");
+        BufferedWriter bw = null;
+        try {
+            bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+            for (Map.Entry<String, Status> entry : snapshot.entrySet()) {
+                Status status = entry.getValue();
+                bw.write(!status.exists ? '-' : status.directory ? 'd' : 'f');
+                bw.write('\t');
+                bw.write(entry.getKey());
+                bw.write('\n');
+            }
+            bw.close();
+            bw = null;
+            if (!tempFile.renameTo(statusFile)) {
+                Log.e(TAG, "Failed to replace " + statusFile.getAbsolutePath());
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error saving favorite statuses", e);
+        } finally {
+            if (bw != null) {
+                try {
+                    bw.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing streams", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 上次保存的状态中属于 paths 的部分，没有保存过时为空
+     */
+    private Map<String, Status> readStatuses(List<String> paths) {
+        Map<String, Status> result = new HashMap<>();
+        if (!statusFile.exists()) {
+            return result;
+        }
+
+        Set<String> wanted = new HashSet<>(paths);
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(statusFile), "UTF-8"));
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.length() < 3 || line.charAt(1) != '\t') {
+                    continue;
+                }
+                String path = line.substring(2);
+                if (wanted.contains(path)) {
+                    char type = line.charAt(0);
+                    result.put(path, new Status(type != '-', type == 'd'));
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading favorite statuses", e);
+        } finally {
+            if (br != null) {
+                try {
+                    br.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing streams", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    private List<String> readPaths() {
+        List<String> result = new ArrayList<>();
+        if (!storeFile.exists()) {
+            return migrateLegacyFavorites();
+        }
+
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(storeFile), "UTF-8"));
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.isEmpty() && !result.contains(line)) {
+                    result.add(line);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error loading favorites", e);
+        } finally {
+            if (br != null) {
+                try {
+                    br.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing streams", e);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 把旧版本 SharedPreferences 中的收藏迁移到新文件（旧数据本身没有顺序）
+     */
+    private List<String> migrateLegacyFavorites() {
+        final SharedPreferences prefs = context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE);
+        Set<String> legacy = prefs.getStringSet(LEGACY_KEY_FAVORITES, new HashSet<String>());
+        final List<String> result = new ArrayList<>(legacy);
+        Collections.sort(result);
+        if (!result.isEmpty()) {
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // 新文件写入成功后才删除旧数据，中途退出时下次启动重新迁移
+                    if (writePaths(result)) {
+                        prefs.edit().remove(LEGACY_KEY_FAVORITES).apply();
+                        Log.d(TAG, "Migrated " + result.size() + " legacy favorites");
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
+    private static Map<String, Status> resolveStatuses(List<String> snapshot) {
+        Map<String, Status> resolved = new HashMap<>();
+        for (String path : snapshot) {
+            File file = new File(path);
+            boolean directory = file.isDirectory();
+            boolean exists = directory || file.exists();
+            resolved.put(path, new Status(exists, directory));
+        }
+        return resolved;
+    }
+}
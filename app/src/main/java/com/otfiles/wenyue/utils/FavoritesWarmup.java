@@ -0,0 +1,128 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 收藏预加载
+ *
+ * 在低优先级线程中预先检测收藏的文本文件的编码，并预先列出收藏的文件夹，
+ * 打开收藏时可以直接使用缓存的结果。每读一段数据前都会先让路给前台任务，
+ * 剩余预算不够的项跳过。
+ */
+public class FavoritesWarmup {
+
+    // 列目录没有可统计的读取字节数，按每个条目的大致开销计入预算
+    private static final int DIRECTORY_ENTRY_COST = 256;
+
+    private static Run current;
+
+    /**
+     * 一次预加载，被取消时中止
+     */
+    private static class Run implements Runnable, IoThrottle {
+        private final List<File> textFiles;
+        private final List<File> directories;
+        private final long budgetBytes;
+        private long usedBytes;
+        private volatile boolean cancelled;
+
+        Run(List<File> textFiles, List<File> directories, long budgetBytes) {
+            this.textFiles = textFiles;
+            this.directories = directories;
+            this.budgetBytes = budgetBytes;
+        }
+
+        @Override
+        public void acquire(long bytes) throws IOException {
+            if (cancelled) {
+                throw new InterruptedIOException("Warm-up cancelled");
+            }
+            if (usedBytes + bytes > budgetBytes) {
+                throw new IOException("Warm-up budget exhausted");
+            }
+            try {
+                ForegroundWork.awaitIdle();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Warm-up interrupted");
+            }
+            usedBytes += bytes;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // 文件夹列表很小，先处理
+                for (File directory : directories) {
+                    if (DirectoryListingCache.getCached(directory) != null) {
+                        continue;
+                    }
+                    try {
+                        acquire(0);
+                    } catch (InterruptedIOException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        // 预算已用完，其余文件夹留到下次
+                        break;
+                    }
+                    List<File> files = DirectoryListingCache.list(directory);
+                    usedBytes += (long) files.size() * DIRECTORY_ENTRY_COST;
+                }
+                for (File file : textFiles) {
+                    // 剩余预算不够时跳过，留给后面更小的文件
+                    if (usedBytes + TextFileIndex.cost(file) > budgetBytes) {
+                        continue;
+                    }
+                    try {
+                        TextFileIndex.build(file, this);
+                    } catch (InterruptedIOException e) {
+                        throw e;
+                    } catch (IOException e) {
+                        // 这个文件超出预算，继续处理其余的
+                    }
+                }
+            } catch (IOException e) {
+                // 被取消，已完成的部分仍然保留在缓存中
+            }
+        }
+    }
+
+    /**
+     * 开始预加载，取消上一次尚未完成的预加载
+     * @param paths 收藏路径，按显示顺序
+     * @param directoryPaths 其中的文件夹路径
+     * @param budgetBytes 本次最多读取的字节数，为0时不预加载
+     */
+    public static synchronized void start(List<String> paths, List<String> directoryPaths, long budgetBytes) {
+        cancel();
+        if (budgetBytes <= 0) {
+            return;
+        }
+
+        List<File> textFiles = new ArrayList<>();
+        List<File> directories = new ArrayList<>();
+        for (String path : paths) {
+            if (directoryPaths.contains(path)) {
+                directories.add(new File(path));
+            } else if (FileUtils.isTextFile(FileUtils.getFileExtension(path))) {
+                textFiles.add(new File(path));
+            }
+        }
+        if (textFiles.isEmpty() && directories.isEmpty()) {
+            return;
+        }
+
+        current = new Run(textFiles, directories, budgetBytes);
+        WorkerPools.lowPriority().execute(current);
+    }
+
+    public static synchronized void cancel() {
+        if (current != null) {
+            current.cancelled = true;
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.otfiles.wenyue.utils;
+
+import android.content.Context;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.text.Editable;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.ForegroundColorSpan;
+import android.text.style.QuoteSpan;
+import android.text.style.RelativeSizeSpan;
+import android.text.style.StrikethroughSpan;
+import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
+import android.text.style.UnderlineSpan;
+import android.widget.EditText;
+
+import com.otfiles.wenyue.R;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 编辑框的 Markdown 预览
+ *
+ * 在原文上按 {@link MarkdownParser} 的结果设置样式，标记符号变淡，内容仍然可以编辑。
+ * 解析在后台线程进行，每解析出一批块就回到界面线程设置这些块的样式，长文档从开头逐步显示。
+ * 编辑后稍等片刻重新解析，内容和位置都没有变化的块保留原来的样式，只替换被编辑过的块。
+ * 未编辑的文本的解析结果放入 {@link MarkdownCache}，再次打开时不必重新解析。
+ */
+public class MarkdownRenderer {
+
+    // 编辑停止多久后重新解析
+    private static final long EDIT_DELAY_MS = 300;
+    // 每批最多等待的时间，第一批尽快显示
+    private static final long BATCH_NANOS = 16 * 1000000L;
+    private static final float[] HEADING_SIZES = {1.6f, 1.4f, 1.25f, 1.1f, 1.0f, 0.9f};
+
+    // 所有编辑框共用一个解析线程
+    private static ExecutorService executor;
+
+    /**
+     * 标记一个块的范围和它的样式，位置随文本的编辑移动
+     */
+    private static class BlockMark {
+        final MarkdownParser.Block block;
+        final List<Object> spans = new ArrayList<>();
+        // 最后一次确认仍然有效的解析版本
+        int generation;
+
+        BlockMark(MarkdownParser.Block block, int generation) {
+            this.block = block;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * 一次解析，在界面线程创建
+     */
+    private class Job implements Runnable, MarkdownParser.BlockSink {
+        final int generation;
+        final String text;
+        final MarkdownParser.Document previous;
+        // 文本未编辑时解析结果放入缓存
+        final TextWindow cacheWindow;
+        volatile boolean cancelled;
+        private List<Object[]> batch = new ArrayList<>();
+        private long batchStart;
+
+        Job(int generation, String text, MarkdownParser.Document previous, TextWindow cacheWindow) {
+            this.generation = generation;
+            this.text = text;
+            this.previous = previous;
+            this.cacheWindow = cacheWindow;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            Perf.Span span = Perf.begin("MarkdownRenderer.parse");
+            batchStart = System.nanoTime();
+            final MarkdownParser.Document document = MarkdownParser.parse(text, previous, this);
+            Perf.end(span, text.length() * 2L);
+            if (document == null) {
+                return;
+            }
+            if (cacheWindow != null) {
+                MarkdownCache.put(cacheWindow, document);
+            }
+            final List<Object[]> last = batch;
+            edit.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!cancelled && generation == MarkdownRenderer.this.generation) {
+                        applyBatch(generation, last);
+                        finish(generation, document);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public boolean block(int start, MarkdownParser.Block block, boolean reused) {
+            batch.add(new Object[] {start, block});
+            long now = System.nanoTime();
+            if (now - batchStart >= BATCH_NANOS) {
+                final List<Object[]> ready = batch;
+                batch = new ArrayList<>();
+                batchStart = now;
+                edit.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!cancelled && generation == MarkdownRenderer.this.generation) {
+                            applyBatch(generation, ready);
+                        }
+                    }
+                });
+            }
+            return !cancelled;
+        }
+    }
+
+    private final EditText edit;
+    private final int markupColor;
+    private final int linkColor;
+    private final int codeBackground;
+    private TextWindow window;
+    private boolean edited;
+    // 每次设置窗口或编辑后加一，旧版本的结果不再设置
+    private int generation;
+    private MarkdownParser.Document document;
+    private Job job;
+
+    private final Runnable renderEdited = new Runnable() {
+        @Override
+        public void run() {
+            start();
+        }
+    };
+
+    public MarkdownRenderer(EditText edit) {
+        this.edit = edit;
+        Context context = edit.getContext();
+        markupColor = ContextCompat.getColor(context, R.color.syntax_comment);
+        linkColor = ContextCompat.getColor(context, R.color.primary);
+        codeBackground = ContextCompat.getColor(context, R.color.markdown_code_background);
+        edit.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (window != null) {
+                    edited = true;
+                    cancel();
+                    MarkdownRenderer.this.edit.removeCallbacks(renderEdited);
+                    MarkdownRenderer.this.edit.postDelayed(renderEdited, EDIT_DELAY_MS);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在设置文本之后调用，开始预览
+     * @param window 编辑框中文本所属的窗口，为 null 时停止预览并清除样式
+     * @param edited 文本是否已经与窗口内容不同
+     */
+    public void setWindow(TextWindow window, boolean edited) {
+        this.window = window;
+        this.edited = edited;
+        cancel();
+        edit.removeCallbacks(renderEdited);
+        clearMarks(edit.getText(), 0, edit.length(), Integer.MAX_VALUE);
+        document = null;
+        if (window != null) {
+            start();
+        }
+    }
+
+    private void cancel() {
+        generation++;
+        if (job != null) {
+            job.cancelled = true;
+            job = null;
+        }
+    }
+
+    private void start() {
+        cancel();
+        MarkdownParser.Document previous = document;
+        if (previous == null && !edited) {
+            previous = MarkdownCache.get(window);
+        }
+        job = new Job(generation, edit.getText().toString(), previous, edited ? null : window);
+        executor().execute(job);
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = WorkerPools.newFixed("markdown", 1);
+        }
+        return executor;
+    }
+
+    /**
+     * 设置一批块的样式，位置和内容都没变的块只更新版本
+     */
+    private void applyBatch(int generation, List<Object[]> batch) {
+        Perf.Span span = Perf.begin("MarkdownRenderer.apply");
+        Editable text = edit.getText();
+        for (Object[] item : batch) {
+            int start = (Integer) item[0];
+            MarkdownParser.Block block = (MarkdownParser.Block) item[1];
+            int end = start + block.getLength();
+            if (end > text.length()) {
+                break;
+            }
+            BlockMark existing = findMark(text, start, end, block);
+            if (existing != null) {
+                existing.generation = generation;
+                continue;
+            }
+            clearMarks(text, start, end, generation);
+            BlockMark mark = new BlockMark(block, generation);
+            for (int i = 0; i < block.getRunCount(); i++) {
+                addSpans(text, mark, start + block.getRunStart(i), start + block.getRunEnd(i), block.getRunStyle(i));
+            }
+            text.setSpan(mark, start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        Perf.end(span);
+    }
+
+    /**
+     * 解析完成，清除已经不存在的块的样式
+     */
+    private void finish(int generation, MarkdownParser.Document document) {
+        this.document = document;
+        job = null;
+        clearMarks(edit.getText(), 0, edit.length(), generation);
+    }
+
+    private static BlockMark findMark(Editable text, int start, int end, MarkdownParser.Block block) {
+        BlockMark[] marks = text.getSpans(start, end, BlockMark.class);
+        for (BlockMark mark : marks) {
+            if (mark.block == block && text.getSpanStart(mark) == start && text.getSpanEnd(mark) == end) {
+                return mark;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 清除范围内不属于当前版本的块的样式
+     */
+    private static void clearMarks(Editable text, int start, int end, int generation) {
+        BlockMark[] marks = text.getSpans(start, end, BlockMark.class);
+        for (BlockMark mark : marks) {
+            if (mark.generation != generation) {
+                for (Object span : mark.spans) {
+                    text.removeSpan(span);
+                }
+                text.removeSpan(mark);
+            }
+        }
+    }
+
+    private void addSpans(Editable text, BlockMark mark, int start, int end, int style) {
+        if (start >= end) {
+            return;
+        }
+        switch (style) {
+            case MarkdownParser.STYLE_BOLD:
+                addSpan(text, mark, new StyleSpan(Typeface.BOLD), start, end);
+                break;
+            case MarkdownParser.STYLE_ITALIC:
+                addSpan(text, mark, new StyleSpan(Typeface.ITALIC), start, end);
+                break;
+            case MarkdownParser.STYLE_STRIKE:
+                addSpan(text, mark, new StrikethroughSpan(), start, end);
+                break;
+            case MarkdownParser.STYLE_CODE:
+            case MarkdownParser.STYLE_CODE_BLOCK:
+                addSpan(text, mark, new TypefaceSpan("monospace"), start, end);
+                addSpan(text, mark, new BackgroundColorSpan(codeBackground), start, end);
+                break;
+            case MarkdownParser.STYLE_LINK:
+                addSpan(text, mark, new ForegroundColorSpan(linkColor), start, end);
+                addSpan(text, mark, new UnderlineSpan(), start, end);
+                break;
+            case MarkdownParser.STYLE_QUOTE:
+                addSpan(text, mark, new QuoteSpan(linkColor), start, end);
+                break;
+            case MarkdownParser.STYLE_BULLET:
+                addSpan(text, mark, new ForegroundColorSpan(linkColor), start, end);
+                addSpan(text, mark, new StyleSpan(Typeface.BOLD), start, end);
+                break;
+            case MarkdownParser.STYLE_MARKUP:
+                addSpan(text, mark, new ForegroundColorSpan(markupColor), start, end);
+                break;
+            default:
+                // 标题
+                addSpan(text, mark, new RelativeSizeSpan(HEADING_SIZES[style - 1]), start, end);
+                addSpan(text, mark, new StyleSpan(Typeface.BOLD), start, end);
+                break;
+        }
+    }
+
+    private static void addSpan(Editable text, BlockMark mark, Object span, int start, int end) {
+        text.setSpan(span, start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        mark.spans.add(span);
+    }
+}
@@ -0,0 +1,152 @@
+package com.otfiles.wenyue.utils;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.view.Gravity;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import com.otfiles.wenyue.BuildConfig;
+import com.otfiles.wenyue.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 性能统计浮层
+ *
+ * 在设置中打开后，每个界面的右下角显示 {@link Perf} 的统计，每秒刷新一次。
+ * 在主线程上执行过的项目会标出次数。调试版始终统计，发布版只在打开浮层后统计。
+ */
+public class PerfOverlay implements Application.ActivityLifecycleCallbacks {
+
+    public static final String PREF_ENABLED = "perf_overlay";
+
+    private static final long REFRESH_INTERVAL_MS = 1000;
+    // 浮层最多显示的项目数
+    private static final int MAX_ROWS = 10;
+
+    private TextView overlay;
+
+    /**
+     * 注册到应用，界面恢复时按设置显示浮层
+     */
+    public static void install(Application application) {
+        application.registerActivityLifecycleCallbacks(new PerfOverlay());
+    }
+
+    /**
+     * 把最近的调用记录导出为 Chrome trace 格式的文件
+     * @return 导出的文件
+     * @throws IOException 写入失败
+     */
+    public static File exportTrace(Context context) throws IOException {
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        File file = new File(dir, "wenyue-trace-" + System.currentTimeMillis() + ".json");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            Perf.writeTrace(writer);
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private final Runnable refresh = new Runnable() {
+        @Override
+        public void run() {
+            if (overlay != null) {
+                overlay.setText(formatStats(overlay.getContext()));
+                overlay.postDelayed(this, REFRESH_INTERVAL_MS);
+            }
+        }
+    };
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+        boolean enabled = AppSettings.get(activity).getBoolean(PREF_ENABLED, false);
+        Perf.setEnabled(BuildConfig.DEBUG || enabled);
+        ViewGroup content = activity.findViewById(android.R.id.content);
+        if (!enabled || !(content instanceof FrameLayout)) {
+            return;
+        }
+
+        overlay = new TextView(activity);
+        overlay.setTypeface(Typeface.MONOSPACE);
+        overlay.setTextSize(9);
+        overlay.setTextColor(Color.WHITE);
+        overlay.setBackgroundColor(0xB0000000);
+        overlay.setPadding(8, 8, 8, 8);
+        // 不拦截触摸事件
+        overlay.setClickable(false);
+        overlay.setFocusable(false);
+        content.addView(overlay, new FrameLayout.LayoutParams(
+            ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT,
+            Gravity.BOTTOM | Gravity.END));
+        refresh.run();
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+        if (overlay != null) {
+            overlay.removeCallbacks(refresh);
+            ((ViewGroup) overlay.getParent()).removeView(overlay);
+            overlay = null;
+        }
+    }
+
+    private static String formatStats(Context context) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(context.getString(R.string.perf_overlay_header));
+        List<Perf.Stat> stats = Perf.getStats();
+        for (int i = 0; i < stats.size() && i < MAX_ROWS; i++) {
+            Perf.Stat stat = stats.get(i);
+            sb.append('\n').append(stat.getName())
+                .append("  ").append(stat.getCount())
+                .append(String.format(Locale.US, "  %.1f/%.1f/%.1f",
+                    stat.percentileMicros(0.5) / 1000.0,
+                    stat.percentileMicros(0.95) / 1000.0,
+                    stat.getMaxNanos() / 1000000.0));
+            if (stat.getBytes() > 0) {
+                sb.append("  ").append(FileUtils.formatFileSize(stat.getBytes()));
+            }
+            if (stat.getMainThreadCount() > 0) {
+                sb.append("  ⚠").append(stat.getMainThreadCount());
+            }
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
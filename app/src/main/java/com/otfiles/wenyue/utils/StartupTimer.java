@@ -0,0 +1,139 @@
+package com.otfiles.wenyue.utils;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 冷启动计时
+ *
+ * 记录从进程启动到第一个界面第一次绘制完成的耗时，输出到日志并计入 {@link Perf}（"App.firstFrame"）。
+ * 不影响第一屏显示的初始化工作通过 {@link #runAfterFirstFrame} 推迟到第一帧之后在主线程执行。
+ */
+public class StartupTimer implements Application.ActivityLifecycleCallbacks {
+
+    private static final String TAG = "StartupTimer";
+    // 应用类加载的时间，API 24 以下没有进程启动时间，用它近似
+    private static final long CLASS_LOAD_NANOS = System.nanoTime();
+
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static final List<Runnable> DEFERRED = new ArrayList<>();
+    private static boolean firstFrameDrawn;
+    private static long firstFrameMillis = -1;
+
+    private final Application application;
+
+    /**
+     * 在 Application.onCreate 中调用，第一个界面创建时开始等待第一帧
+     */
+    public static void install(Application application) {
+        application.registerActivityLifecycleCallbacks(new StartupTimer(application));
+    }
+
+    /**
+     * 第一帧绘制完成后在主线程执行任务，已经绘制过时立即投递到主线程
+     */
+    public static void runAfterFirstFrame(Runnable task) {
+        synchronized (DEFERRED) {
+            if (!firstFrameDrawn) {
+                DEFERRED.add(task);
+                return;
+            }
+        }
+        MAIN_HANDLER.post(task);
+    }
+
+    /**
+     * @return 冷启动到第一帧的毫秒数，尚未绘制时返回 -1
+     */
+    public static long getFirstFrameMillis() {
+        return firstFrameMillis;
+    }
+
+    private StartupTimer(Application application) {
+        this.application = application;
+    }
+
+    @Override
+    public void onActivityCreated(final Activity activity, Bundle savedInstanceState) {
+        application.unregisterActivityLifecycleCallbacks(this);
+        final View decor = activity.getWindow().getDecorView();
+        decor.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decor.getViewTreeObserver().removeOnPreDrawListener(this);
+                // 投递的任务在这一帧绘制完成之后执行
+                MAIN_HANDLER.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onFirstFrame(activity.getClass().getSimpleName());
+                    }
+                });
+                return true;
+            }
+        });
+    }
+
+    private static void onFirstFrame(String activityName) {
+        long startNanos = processStartNanos();
+        firstFrameMillis = (System.nanoTime() - startNanos) / 1000000;
+        Perf.end(Perf.beginAt("App.firstFrame", startNanos));
+        Log.i(TAG, "First frame of " + activityName + " after " + firstFrameMillis + " ms");
+
+        List<Runnable> tasks;
+        synchronized (DEFERRED) {
+            firstFrameDrawn = true;
+            tasks = new ArrayList<>(DEFERRED);
+            DEFERRED.clear();
+        }
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+
+    /**
+     * @return 进程启动时间，与 System.nanoTime 使用同一基准
+     */
+    private static long processStartNanos() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            long sinceStartMillis = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+            return System.nanoTime() - sinceStartMillis * 1000000;
+        }
+        return CLASS_LOAD_NANOS;
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
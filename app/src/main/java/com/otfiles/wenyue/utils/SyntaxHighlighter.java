@@ -0,0 +1,321 @@
+package com.otfiles.wenyue.utils;
+
+import android.content.Context;
+import android.support.v4.content.ContextCompat;
+import android.text.Editable;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.TextWatcher;
+import android.text.style.ForegroundColorSpan;
+import android.view.ViewTreeObserver;
+import android.widget.EditText;
+
+import com.otfiles.wenyue.R;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 编辑框的语法高亮
+ *
+ * 只分析可见的行和上下各 {@link #MARGIN_LINES} 行。界面线程只截取这一段文本，
+ * 分析在后台线程进行，结果回到界面线程后替换这一段的颜色。
+ * 每行结束时的分析状态保存在 {@link LexerStateCache} 中，滚动和编辑时只需要从最近的已知状态开始分析。
+ */
+public class SyntaxHighlighter {
+
+    // 可见区域上下额外分析的行数
+    private static final int MARGIN_LINES = 50;
+
+    // 所有编辑框共用一个分析线程
+    private static ExecutorService executor;
+
+    /**
+     * 标记由高亮设置的颜色，替换时只删除这些
+     */
+    private static class HighlightSpan extends ForegroundColorSpan {
+        HighlightSpan(int color) {
+            super(color);
+        }
+    }
+
+    /**
+     * 一次分析请求，在界面线程创建
+     */
+    private static class Job {
+        final SyntaxHighlighter owner;
+        final SyntaxLexer lexer;
+        final int generation;
+        final int firstLine;
+        final int startState;
+        // 从 firstLine 行开始的文本，以及每行在其中的起止位置
+        final String text;
+        final int[] lineStarts;
+        final int[] lineEnds;
+        // text 在编辑框中的起始位置
+        final int textOffset;
+        // 从这一行开始需要设置颜色（之前的行只用来计算状态）
+        final int paintLine;
+
+        Job(SyntaxHighlighter owner, SyntaxLexer lexer, int generation, int firstLine, int startState,
+            String text, int[] lineStarts, int[] lineEnds, int textOffset, int paintLine) {
+            this.owner = owner;
+            this.lexer = lexer;
+            this.generation = generation;
+            this.firstLine = firstLine;
+            this.startState = startState;
+            this.text = text;
+            this.lineStarts = lineStarts;
+            this.lineEnds = lineEnds;
+            this.textOffset = textOffset;
+            this.paintLine = paintLine;
+        }
+    }
+
+    /**
+     * 分析结果中的记号，位置相对于编辑框
+     */
+    private static class Tokens implements SyntaxLexer.TokenSink {
+        int[] starts = new int[256];
+        int[] ends = new int[256];
+        int[] types = new int[256];
+        int count;
+        int offset;
+
+        @Override
+        public void token(int start, int end, int type) {
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+                types = Arrays.copyOf(types, count * 2);
+            }
+            starts[count] = start + offset;
+            ends[count] = end + offset;
+            types[count] = type;
+            count++;
+        }
+    }
+
+    private final EditText edit;
+    private final LexerStateCache cache = new LexerStateCache();
+    private final int[] colors;
+    private SyntaxLexer lexer;
+    private int removedNewlines;
+    private boolean requestPosted;
+    // 当前文本版本中已经设置过颜色的行范围
+    private int paintedGeneration = -1;
+    private int paintedFirst;
+    private int paintedLast = -1;
+    // 尚未开始的请求，新的请求会替换它
+    private final AtomicReference<Job> pending = new AtomicReference<>();
+
+    private final Runnable worker = new Runnable() {
+        @Override
+        public void run() {
+            Job job = pending.getAndSet(null);
+            if (job != null) {
+                lex(job);
+            }
+        }
+    };
+
+    private final Runnable request = new Runnable() {
+        @Override
+        public void run() {
+            requestPosted = false;
+            requestVisible();
+        }
+    };
+
+    public SyntaxHighlighter(EditText edit) {
+        this.edit = edit;
+        Context context = edit.getContext();
+        colors = new int[] {
+            0,
+            ContextCompat.getColor(context, R.color.syntax_keyword),
+            ContextCompat.getColor(context, R.color.syntax_string),
+            ContextCompat.getColor(context, R.color.syntax_comment),
+            ContextCompat.getColor(context, R.color.syntax_number),
+            ContextCompat.getColor(context, R.color.syntax_tag),
+            ContextCompat.getColor(context, R.color.syntax_attribute)
+        };
+        edit.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                if (lexer != null) {
+                    removedNewlines = countNewlines(s, start, start + count);
+                }
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                if (lexer == null) {
+                    return;
+                }
+                if (start == 0 && before > 0 && count == s.length()) {
+                    // 整体替换
+                    cache.reset(s);
+                } else {
+                    cache.onTextChanged(s, start, before, count, removedNewlines);
+                }
+                postRequest();
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
+        edit.getViewTreeObserver().addOnScrollChangedListener(new ViewTreeObserver.OnScrollChangedListener() {
+            @Override
+            public void onScrollChanged() {
+                if (lexer != null) {
+                    postRequest();
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置分析器，在设置文本之前调用
+     * @param lexer 为 null 时不高亮
+     */
+    public void setLexer(SyntaxLexer lexer) {
+        this.lexer = lexer;
+        cache.reset(lexer != null ? edit.getText() : "");
+        paintedGeneration = -1;
+        if (lexer == null) {
+            clearSpans(edit.getText(), 0, edit.length());
+        } else {
+            postRequest();
+        }
+    }
+
+    private void postRequest() {
+        if (!requestPosted) {
+            requestPosted = true;
+            edit.post(request);
+        }
+    }
+
+    /**
+     * 为可见区域创建分析请求
+     */
+    private void requestVisible() {
+        Layout layout = edit.getLayout();
+        if (lexer == null || layout == null) {
+            return;
+        }
+        Editable text = edit.getText();
+        int length = text.length();
+        int scrollY = edit.getScrollY();
+        int firstVisible = cache.lineOfOffset(layout.getLineStart(layout.getLineForVertical(scrollY)));
+        int lastVisible = cache.lineOfOffset(layout.getLineEnd(layout.getLineForVertical(scrollY + edit.getHeight())));
+        int generation = cache.getGeneration();
+        if (generation == paintedGeneration && firstVisible >= paintedFirst && lastVisible <= paintedLast) {
+            return;
+        }
+
+        int paintLine = Math.max(0, firstVisible - MARGIN_LINES);
+        int lastLine = Math.min(cache.getLineCount() - 1, lastVisible + MARGIN_LINES);
+        int firstLine = Math.min(paintLine, cache.findStartLine(paintLine));
+        int count = lastLine - firstLine + 1;
+        int textStart = cache.lineStart(firstLine);
+        int textEnd = cache.lineEnd(lastLine, length);
+        int[] lineStarts = new int[count];
+        int[] lineEnds = new int[count];
+        for (int i = 0; i < count; i++) {
+            lineStarts[i] = cache.lineStart(firstLine + i) - textStart;
+            lineEnds[i] = cache.lineEnd(firstLine + i, length) - textStart;
+        }
+        Job job = new Job(this, lexer, generation, firstLine, cache.startStateOf(firstLine),
+            text.subSequence(textStart, textEnd).toString(), lineStarts, lineEnds, textStart, paintLine);
+        if (pending.getAndSet(job) == null) {
+            executor().execute(worker);
+        }
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = WorkerPools.newFixed("highlight", 1);
+        }
+        return executor;
+    }
+
+    /**
+     * 在后台线程分析，保存各行的结束状态，再回到界面线程设置颜色
+     */
+    private static void lex(final Job job) {
+        Perf.Span span = Perf.begin("SyntaxHighlighter.lex");
+        final Tokens tokens = new Tokens();
+        tokens.offset = job.textOffset;
+        int count = job.lineStarts.length;
+        int[] states = new int[count];
+        int state = job.startState;
+        for (int i = 0; i < count; i++) {
+            boolean paint = job.firstLine + i >= job.paintLine;
+            state = job.lexer.lexLine(job.text, job.lineStarts[i], job.lineEnds[i], state, paint ? tokens : null);
+            states[i] = state;
+        }
+        Perf.end(span, job.text.length() * 2L);
+
+        if (!job.owner.cache.commit(job.generation, job.firstLine, states, count)) {
+            // 文本在分析期间被修改过，修改时已经发出了新的请求
+            return;
+        }
+        final int paintStart = job.textOffset + job.lineStarts[job.paintLine - job.firstLine];
+        final int paintEnd = job.textOffset + job.text.length();
+        final int lastLine = job.firstLine + count - 1;
+        job.owner.edit.post(new Runnable() {
+            @Override
+            public void run() {
+                job.owner.apply(job, tokens, paintStart, paintEnd, lastLine);
+            }
+        });
+    }
+
+    private void apply(Job job, Tokens tokens, int paintStart, int paintEnd, int lastLine) {
+        if (job.lexer != lexer || job.generation != cache.getGeneration()) {
+            return;
+        }
+        Editable text = edit.getText();
+        if (paintEnd > text.length()) {
+            return;
+        }
+        Perf.Span span = Perf.begin("SyntaxHighlighter.apply");
+        clearSpans(text, paintStart, paintEnd);
+        for (int i = 0; i < tokens.count; i++) {
+            text.setSpan(new HighlightSpan(colors[tokens.types[i]]), tokens.starts[i], tokens.ends[i],
+                Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        Perf.end(span);
+
+        if (paintedGeneration == job.generation && job.paintLine <= paintedLast + 1 && lastLine >= paintedFirst - 1) {
+            paintedFirst = Math.min(paintedFirst, job.paintLine);
+            paintedLast = Math.max(paintedLast, lastLine);
+        } else {
+            paintedGeneration = job.generation;
+            paintedFirst = job.paintLine;
+            paintedLast = lastLine;
+        }
+        // 分析期间又滚动过时补上新的可见区域
+        postRequest();
+    }
+
+    private static void clearSpans(Editable text, int start, int end) {
+        HighlightSpan[] spans = text.getSpans(start, end, HighlightSpan.class);
+        for (HighlightSpan span : spans) {
+            text.removeSpan(span);
+        }
+    }
+
+    private static int countNewlines(CharSequence text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,108 @@
+package com.otfiles.wenyue.perf;
+
+import android.content.Intent;
+import android.support.v7.widget.RecyclerView;
+import android.widget.Button;
+
+import com.otfiles.wenyue.DirectoryActivity;
+import com.otfiles.wenyue.R;
+import com.otfiles.wenyue.ViewerActivity;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadow.api.Shadow;
+import org.robolectric.shadows.ShadowActivity;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * 打开文件夹、全选和多文件查看的耗时与内存
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class DirectoryScenarioTest {
+
+    private static boolean warmedUp;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        if (!warmedUp) {
+            // 第一次启动界面包含加载资源等一次性开销，不计入场景
+            open(TestFiles.directory(folder.getRoot(), "warmup", 10)).destroy();
+            warmedUp = true;
+        }
+    }
+
+    @Test
+    public void open100Entries() throws Exception {
+        measureOpen("directory.open.100", 100);
+    }
+
+    @Test
+    public void open10kEntries() throws Exception {
+        measureOpen("directory.open.10k", 10000);
+    }
+
+    @Test
+    public void open100kEntries() throws Exception {
+        measureOpen("directory.open.100k", 100000);
+    }
+
+    @Test
+    public void selectAllAndView10k() throws Exception {
+        File dir = TestFiles.directory(folder.getRoot(), "select", 10000);
+        ActivityController<DirectoryActivity> controller = open(dir);
+        DirectoryActivity activity = controller.get();
+
+        ScenarioMeter meter = ScenarioMeter.start();
+        ((Button) activity.findViewById(R.id.select_all_button)).performClick();
+        activity.findViewById(R.id.view_button).performClick();
+        Intent viewIntent = ((ShadowActivity) Shadow.extract(activity)).getNextStartedActivity();
+        assertNotNull("view did not start the viewer", viewIntent);
+        ActivityController<ViewerActivity> viewer =
+            Robolectric.buildActivity(ViewerActivity.class, viewIntent).setup();
+        ShadowLooper.idleMainLooper();
+        ScenarioMeter.Result result = meter.stop();
+
+        viewer.pause().stop().destroy();
+        controller.pause().stop().destroy();
+        PerfBudget.check("directory.selectAllView.10k", result);
+    }
+
+    private void measureOpen(String scenario, int entries) throws Exception {
+        File dir = TestFiles.directory(folder.getRoot(), scenario, entries);
+
+        ScenarioMeter meter = ScenarioMeter.start();
+        ActivityController<DirectoryActivity> controller = open(dir);
+        ScenarioMeter.Result result = meter.stop();
+
+        RecyclerView list = controller.get().findViewById(R.id.directory_list);
+        assertEquals(entries, list.getAdapter().getItemCount());
+        controller.pause().stop().destroy();
+        PerfBudget.check(scenario, result);
+    }
+
+    private static ActivityController<DirectoryActivity> open(File dir) {
+        Intent intent = new Intent(RuntimeEnvironment.application, DirectoryActivity.class);
+        intent.putExtra("path", dir.getAbsolutePath());
+        ActivityController<DirectoryActivity> controller =
+            Robolectric.buildActivity(DirectoryActivity.class, intent).setup();
+        ShadowLooper.idleMainLooper();
+        return controller;
+    }
+}
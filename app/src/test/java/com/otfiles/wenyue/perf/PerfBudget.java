@@ -0,0 +1,82 @@
+package com.otfiles.wenyue.perf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 对照 perf-budgets.properties 中记录的预算检查场景结果
+ *
+ * 每个场景两项预算：&lt;场景&gt;.ms 为耗时上限，&lt;场景&gt;.heapMb 为堆内存峰值上限。
+ * 用 -PperfRecord 运行时不检查，把实测值写到 build/perf-results.properties，用于更新预算。
+ */
+final class PerfBudget {
+
+    private static final String BUDGET_RESOURCE = "/perf-budgets.properties";
+    private static final String RESULTS_FILE = "build/perf-results.properties";
+    private static final Logger LOG = Logger.getLogger(PerfBudget.class.getName());
+
+    private static Properties budgets;
+
+    private PerfBudget() {
+    }
+
+    static void check(String scenario, ScenarioMeter.Result result) throws IOException {
+        long heapMb = result.peakHeapBytes / (1024 * 1024);
+        LOG.info(String.format(Locale.US, "%s: %d ms, %d MB peak heap", scenario, result.millis, heapMb));
+
+        if (Boolean.getBoolean("wenyue.perf.record")) {
+            record(scenario, result.millis, heapMb);
+            return;
+        }
+
+        long maxMillis = budget(scenario + ".ms");
+        long maxHeapMb = budget(scenario + ".heapMb");
+        assertTrue(scenario + " took " + result.millis + " ms, budget " + maxMillis + " ms",
+            result.millis <= maxMillis);
+        assertTrue(scenario + " peaked at " + heapMb + " MB heap, budget " + maxHeapMb + " MB",
+            heapMb <= maxHeapMb);
+    }
+
+    private static synchronized long budget(String key) throws IOException {
+        if (budgets == null) {
+            budgets = new Properties();
+            InputStream in = PerfBudget.class.getResourceAsStream(BUDGET_RESOURCE);
+            if (in == null) {
+                fail("Missing " + BUDGET_RESOURCE);
+            }
+            try {
+                budgets.load(in);
+            } finally {
+                in.close();
+            }
+        }
+        String value = budgets.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            fail("No budget recorded for " + key + "; run with -PperfRecord and copy the results into "
+                + BUDGET_RESOURCE);
+        }
+        return Long.parseLong(value.trim());
+    }
+
+    private static synchronized void record(String scenario, long millis, long heapMb) throws IOException {
+        File file = new File(RESULTS_FILE);
+        file.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+        try {
+            writer.write(scenario + ".ms=" + millis + "\n");
+            writer.write(scenario + ".heapMb=" + heapMb + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+}
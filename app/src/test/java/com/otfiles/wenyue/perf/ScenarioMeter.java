@@ -0,0 +1,58 @@
+package com.otfiles.wenyue.perf;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * 测量一个场景的耗时和堆内存峰值
+ *
+ * 堆峰值是各个堆内存池峰值之和减去开始时的占用。各内存池的峰值不一定出现在同一时刻，
+ * 结果略偏大，但同一环境下前后可比。
+ */
+final class ScenarioMeter {
+
+    /**
+     * 一次测量的结果
+     */
+    static final class Result {
+        final long millis;
+        final long peakHeapBytes;
+
+        Result(long millis, long peakHeapBytes) {
+            this.millis = millis;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+    }
+
+    private final long baselineBytes;
+    private final long startNanos;
+
+    private ScenarioMeter() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                used += pool.getUsage().getUsed();
+            }
+        }
+        baselineBytes = used;
+        startNanos = System.nanoTime();
+    }
+
+    static ScenarioMeter start() {
+        return new ScenarioMeter();
+    }
+
+    Result stop() {
+        long millis = (System.nanoTime() - startNanos) / 1000000;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return new Result(millis, Math.max(0, peak - baselineBytes));
+    }
+}
@@ -0,0 +1,74 @@
+package com.otfiles.wenyue.perf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * 生成场景测试用的文件和目录
+ */
+final class TestFiles {
+
+    private static final String HANZI = "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可主发年动同工也能下过子说产种面而方后多定行学法所民得经";
+
+    private TestFiles() {
+    }
+
+    /**
+     * 写一个 UTF-8 文本文件。先生成约 1 MB 的随机行，再重复写到目标大小。
+     */
+    static File textFile(File dir, String name, long size) throws IOException {
+        Random random = new Random(42);
+        StringBuilder block = new StringBuilder();
+        while (block.length() < 400 * 1024) {
+            int length = 10 + random.nextInt(70);
+            for (int i = 0; i < length; i++) {
+                block.append(random.nextInt(4) == 0 ? (char) ('a' + random.nextInt(26))
+                    : HANZI.charAt(random.nextInt(HANZI.length())));
+            }
+            block.append('\n');
+        }
+        byte[] bytes = block.toString().getBytes("UTF-8");
+
+        File file = new File(dir, name);
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 256 * 1024);
+        try {
+            long written = 0;
+            while (written < size) {
+                int count = (int) Math.min(bytes.length, size - written);
+                out.write(bytes, 0, count);
+                written += count;
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * 建立包含 count 个条目的目录，约十分之一是子文件夹，其余是小文本文件
+     */
+    static File directory(File parent, String name, int count) throws IOException {
+        File dir = new File(parent, name);
+        if (!dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        byte[] content = "文悦\n".getBytes("UTF-8");
+        for (int i = 0; i < count; i++) {
+            if (i % 10 == 0) {
+                new File(dir, "folder" + i).mkdir();
+            } else {
+                OutputStream out = new FileOutputStream(new File(dir, "file" + i + ".txt"));
+                try {
+                    out.write(content);
+                } finally {
+                    out.close();
+                }
+            }
+        }
+        return dir;
+    }
+}
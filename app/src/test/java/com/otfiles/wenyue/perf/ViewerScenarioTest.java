@@ -0,0 +1,171 @@
+package com.otfiles.wenyue.perf;
+
+import android.content.Intent;
+import android.content.res.Configuration;
+import android.support.v4.view.ViewPager;
+import android.view.View;
+import android.widget.EditText;
+
+import com.otfiles.wenyue.R;
+import com.otfiles.wenyue.ViewerActivity;
+import com.otfiles.wenyue.utils.DocumentCache;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import static org.junit.Assert.fail;
+
+/**
+ * 打开文件查看界面的耗时与内存
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ViewerScenarioTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final long PAGE_LOAD_TIMEOUT_MS = 30000;
+
+    private static boolean warmedUp;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void setUp() throws Exception {
+        DocumentCache.clear();
+        if (!warmedUp) {
+            // 第一次启动界面包含加载资源等一次性开销，不计入场景
+            open(TestFiles.textFile(folder.getRoot(), "warmup.txt", 4096)).destroy();
+            warmedUp = true;
+        }
+    }
+
+    @Test
+    public void open1Mb() throws Exception {
+        measureOpen("viewer.open.1mb", 1 * MB);
+    }
+
+    @Test
+    public void open50Mb() throws Exception {
+        measureOpen("viewer.open.50mb", 50 * MB);
+    }
+
+    @Test
+    public void open500Mb() throws Exception {
+        measureOpen("viewer.open.500mb", 500 * MB);
+    }
+
+    @Test
+    public void rotate50Mb() throws Exception {
+        File file = TestFiles.textFile(folder.getRoot(), "rotate.txt", 50 * MB);
+        ActivityController<ViewerActivity> controller = open(file);
+
+        ScenarioMeter meter = ScenarioMeter.start();
+        RuntimeEnvironment.setQualifiers("+land");
+        Configuration config = RuntimeEnvironment.application.getResources().getConfiguration();
+        controller.configurationChange(config);
+        awaitContent(controller.get());
+        ScenarioMeter.Result result = meter.stop();
+
+        controller.pause().stop().destroy();
+        PerfBudget.check("viewer.rotate.50mb", result);
+    }
+
+    @Test
+    public void multiView500Files() throws Exception {
+        ArrayList<String> paths = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            paths.add(TestFiles.textFile(folder.getRoot(), "multi" + i + ".txt", 64 * 1024).getAbsolutePath());
+        }
+        Intent intent = new Intent(RuntimeEnvironment.application, ViewerActivity.class);
+        intent.putStringArrayListExtra("paths", paths);
+
+        ScenarioMeter meter = ScenarioMeter.start();
+        ActivityController<ViewerActivity> controller =
+            Robolectric.buildActivity(ViewerActivity.class, intent).setup();
+        ViewPager pager = controller.get().findViewById(R.id.view_pager);
+        awaitPageContent(pager);
+        // 翻过几页，页面视图应当被复用
+        for (int i = 1; i <= 10; i++) {
+            pager.setCurrentItem(i, false);
+            awaitPageContent(pager);
+        }
+        ScenarioMeter.Result result = meter.stop();
+
+        controller.pause().stop().destroy();
+        PerfBudget.check("viewer.multi.500files", result);
+    }
+
+    private void measureOpen(String scenario, long size) throws Exception {
+        File file = TestFiles.textFile(folder.getRoot(), scenario + ".txt", size);
+
+        ScenarioMeter meter = ScenarioMeter.start();
+        ActivityController<ViewerActivity> controller = open(file);
+        ScenarioMeter.Result result = meter.stop();
+
+        controller.pause().stop().destroy();
+        PerfBudget.check(scenario, result);
+    }
+
+    /**
+     * 打开文件并等待窗口在后台加载完成
+     */
+    private static ActivityController<ViewerActivity> open(File file) throws InterruptedException {
+        Intent intent = new Intent(RuntimeEnvironment.application, ViewerActivity.class);
+        intent.putExtra("path", file.getAbsolutePath());
+        ActivityController<ViewerActivity> controller =
+            Robolectric.buildActivity(ViewerActivity.class, intent).setup();
+        awaitContent(controller.get());
+        return controller;
+    }
+
+    private static void awaitContent(ViewerActivity activity) throws InterruptedException {
+        EditText content = activity.findViewById(R.id.content_edit);
+        long deadline = System.currentTimeMillis() + PAGE_LOAD_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            if (content.length() > 0) {
+                return;
+            }
+            Thread.sleep(5);
+        }
+        fail("viewer shows no text");
+    }
+
+    /**
+     * 等待当前页面在后台加载完成
+     */
+    private static void awaitPageContent(ViewPager pager) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + PAGE_LOAD_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            ShadowLooper.idleMainLooper();
+            for (int i = 0; i < pager.getChildCount(); i++) {
+                View page = pager.getChildAt(i);
+                EditText content = page.findViewById(R.id.content_edit);
+                if (content != null && content.length() > 0 && isCurrentPage(pager, page)) {
+                    return;
+                }
+            }
+            Thread.sleep(5);
+        }
+        fail("page " + pager.getCurrentItem() + " did not load");
+    }
+
+    private static boolean isCurrentPage(ViewPager pager, View page) {
+        Object tag = page.getTag();
+        return tag instanceof ViewerActivity.ViewFragment
+            && ((ViewerActivity.ViewFragment) tag).getPosition() == pager.getCurrentItem();
+    }
+}
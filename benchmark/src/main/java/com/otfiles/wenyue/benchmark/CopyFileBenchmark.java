@@ -0,0 +1,57 @@
+package com.otfiles.wenyue.benchmark;
+
+import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.Perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileUtils.copyFile 的吞吐量
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CopyFileBenchmark {
+
+    @Param({"65536", "4194304", "33554432"})
+    public long size;
+
+    private File source;
+    private File target;
+
+    @Setup
+    public void setUp() throws IOException {
+        Perf.setEnabled(false);
+        source = CorpusGenerator.generate(CorpusGenerator.defaultDirectory(), CorpusGenerator.Variant.UTF8, size);
+        target = new File(source.getParentFile(), "copy-" + size + ".txt");
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteCopy() {
+        target.delete();
+    }
+
+    @Benchmark
+    public boolean copyFile() {
+        return FileUtils.copyFile(source, target);
+    }
+}
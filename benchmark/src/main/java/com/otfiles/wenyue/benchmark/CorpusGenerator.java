@@ -0,0 +1,137 @@
+package com.otfiles.wenyue.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.Random;
+
+/**
+ * 生成基准测试用的文本文件
+ *
+ * 内容是随机的中英文混合文本，每种编码、每种大小一个文件。
+ * 随机数种子固定，同样的参数每次生成的内容相同；文件已存在且大小不小于目标时直接复用。
+ */
+public class CorpusGenerator {
+
+    /**
+     * 编码与是否带 BOM 的组合
+     */
+    public enum Variant {
+        GBK("GBK", null),
+        UTF8("UTF-8", null),
+        UTF8_BOM("UTF-8", new byte[] {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF}),
+        BIG5("Big5", null),
+        UTF16LE_BOM("UTF-16LE", new byte[] {(byte) 0xFF, (byte) 0xFE}),
+        UTF16BE_BOM("UTF-16BE", new byte[] {(byte) 0xFE, (byte) 0xFF});
+
+        public final String charsetName;
+        final byte[] bom;
+
+        Variant(String charsetName, byte[] bom) {
+            this.charsetName = charsetName;
+            this.bom = bom;
+        }
+    }
+
+    // main 生成的文件大小
+    public static final long[] SIZES = {4L << 10, 256L << 10, 4L << 20, 32L << 20};
+
+    // 常用汉字，生成时只使用目标编码能表示的字
+    private static final String HANZI =
+        "的一是在不了有和人这中大为上个国我以要他时来用们生到作地于出就分对成会可主发年动同工也能下过子说产种面而方后多定行学法所民得经十三之进着等部度家电力里如水化高自二理起小物现实加量都两体制机当使点从业本去把性好应开它合还因由其些然前外天政四日那社义事平形相全表间样与关各重新线内数正心反你明看原又么利比或但质气第向道命此变条只没结解问意建月公无系军很情者最立代想已通并提直题党程展五果料象员革位入常文总次品式活设及管特件长求老头基资边流路级少图山统接知较将组见计别她手角期根论运农指几九区强放决西被干做必战先回则任取据处理府研质";
+
+    private static final String[] WORDS = {
+        "the", "file", "reader", "encoding", "chapter", "line", "text", "data", "value", "index"
+    };
+    private static final String[] PUNCTUATION = {"，", "。", "、", "：", "！", "？"};
+
+    /**
+     * @return 默认的测试文件目录，可以用系统属性 wenyue.corpus 指定
+     */
+    public static File defaultDirectory() {
+        String dir = System.getProperty("wenyue.corpus");
+        return dir != null ? new File(dir) : new File(System.getProperty("java.io.tmpdir"), "wenyue-corpus");
+    }
+
+    /**
+     * 生成（或复用）一个测试文件
+     * @param dir 目录
+     * @param variant 编码
+     * @param size 目标大小，实际大小会多出不到一行
+     * @return 文件
+     */
+    public static File generate(File dir, Variant variant, long size) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, variant.name().toLowerCase() + "-" + size + ".txt");
+        if (file.length() >= size) {
+            return file;
+        }
+
+        Charset charset = Charset.forName(variant.charsetName);
+        CharsetEncoder encoder = charset.newEncoder();
+        StringBuilder pool = new StringBuilder();
+        for (int i = 0; i < HANZI.length(); i++) {
+            if (encoder.canEncode(HANZI.charAt(i))) {
+                pool.append(HANZI.charAt(i));
+            }
+        }
+
+        File temp = new File(dir, file.getName() + ".tmp");
+        Random random = new Random(size * 31 + variant.ordinal());
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024);
+        try {
+            long written = 0;
+            if (variant.bom != null) {
+                out.write(variant.bom);
+                written += variant.bom.length;
+            }
+            StringBuilder line = new StringBuilder();
+            while (written < size) {
+                line.setLength(0);
+                int length = 10 + random.nextInt(70);
+                while (line.length() < length) {
+                    int kind = random.nextInt(10);
+                    if (kind < 6) {
+                        line.append(pool.charAt(random.nextInt(pool.length())));
+                    } else if (kind < 8) {
+                        line.append(' ').append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                    } else if (kind < 9) {
+                        line.append(random.nextInt(10000));
+                    } else {
+                        line.append(PUNCTUATION[random.nextInt(PUNCTUATION.length)]);
+                    }
+                }
+                line.append('\n');
+                byte[] bytes = line.toString().getBytes(charset);
+                out.write(bytes);
+                written += bytes.length;
+            }
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot create " + file);
+        }
+        return file;
+    }
+
+    /**
+     * 生成所有编码和大小的文件
+     * @param args 可选的目录参数
+     */
+    public static void main(String[] args) throws IOException {
+        File dir = args.length > 0 ? new File(args[0]) : defaultDirectory();
+        for (Variant variant : Variant.values()) {
+            for (long size : SIZES) {
+                File file = generate(dir, variant, size);
+                System.out.println(file + "\t" + file.length());
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.otfiles.wenyue.benchmark;
+
+import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.Perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileUtils.detectEncoding：有 BOM 时只读开头几个字节，没有时依次尝试候选编码
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingDetectionBenchmark {
+
+    @Param({"GBK", "UTF8", "UTF8_BOM", "BIG5", "UTF16LE_BOM", "UTF16BE_BOM"})
+    public CorpusGenerator.Variant variant;
+
+    @Param({"4096", "4194304"})
+    public long size;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        Perf.setEnabled(false);
+        file = CorpusGenerator.generate(CorpusGenerator.defaultDirectory(), variant, size);
+    }
+
+    @Benchmark
+    public String detectEncoding() {
+        return FileUtils.detectEncoding(file);
+    }
+}
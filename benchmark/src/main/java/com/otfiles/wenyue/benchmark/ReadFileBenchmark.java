@@ -0,0 +1,57 @@
+package com.otfiles.wenyue.benchmark;
+
+import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.ParallelDecoder;
+import com.otfiles.wenyue.utils.Perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 整个文件的读取与解码：FileUtils.readFile（含换行符统一）和 ParallelDecoder.decode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class ReadFileBenchmark {
+
+    @Param({"GBK", "UTF8", "UTF8_BOM", "BIG5", "UTF16LE_BOM"})
+    public CorpusGenerator.Variant variant;
+
+    @Param({"262144", "4194304", "33554432"})
+    public long size;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        Perf.setEnabled(false);
+        file = CorpusGenerator.generate(CorpusGenerator.defaultDirectory(), variant, size);
+    }
+
+    @Benchmark
+    public String readFile() {
+        return FileUtils.readFile(file, variant.charsetName);
+    }
+
+    @Benchmark
+    public String parallelDecode() throws IOException {
+        return ParallelDecoder.decode(file, variant.charsetName);
+    }
+}
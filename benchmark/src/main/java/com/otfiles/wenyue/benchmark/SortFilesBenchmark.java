@@ -0,0 +1,83 @@
+package com.otfiles.wenyue.benchmark;
+
+import com.otfiles.wenyue.utils.FileUtils;
+import com.otfiles.wenyue.utils.Perf;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FileUtils.sortFiles 在大目录上的开销
+ *
+ * 用不落盘的 File 子类固定 isDirectory() 的结果，只测量分组和排序本身，不受文件系统影响。
+ * 关闭 Perf，sortFiles 中的计时只剩一次开关检查，不计入结果。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SortFilesBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int count;
+
+    private List<File> files;
+
+    static class SyntheticFile extends File {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean directory;
+
+        SyntheticFile(String path, boolean directory) {
+            super(path);
+            this.directory = directory;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return directory;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Perf.setEnabled(false);
+        Random random = new Random(count);
+        files = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // 名称大小写混合，约十分之一是文件夹
+            StringBuilder name = new StringBuilder();
+            int length = 4 + random.nextInt(20);
+            for (int j = 0; j < length; j++) {
+                char c = (char) ('a' + random.nextInt(26));
+                name.append(random.nextBoolean() ? Character.toUpperCase(c) : c);
+            }
+            if (random.nextInt(10) != 0) {
+                name.append(".txt");
+            }
+            files.add(new SyntheticFile("/sdcard/bench/" + name, random.nextInt(10) == 0));
+        }
+    }
+
+    @Benchmark
+    public List<File> sortFiles() {
+        return FileUtils.sortFiles(files);
+    }
+}
@@ -0,0 +1,868 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量转换文件夹中文本文件的编码
+ *
+ * 遍历整个目录树，在固定大小的线程池中逐个转换文本文件，每个文件按缓冲区流式转换，
+ * 内存占用与文件大小无关；每个线程的编解码器和缓冲区在文件之间复用。编码按读入的第一个缓冲区检测，
+ * 检测后接着用这个缓冲区转换，每个文件只读一遍。转换结果先写临时文件再替换，失败时原文件保持不变。
+ * 已处理文件的大小和修改时间记录在清单文件中，再次运行时跳过未变化的文件。
+ *
+ * 不依赖 Android，可以在应用中使用，也可以在电脑上直接运行：
+ * <pre>
+ * java -cp core.jar com.otfiles.wenyue.utils.BatchTranscoder [--to UTF-8] [--from GBK]
+ *     [--out 输出目录] [--threads 4] 源目录
+ * </pre>
+ */
+public class BatchTranscoder {
+
+    public static final String MANIFEST_NAME = ".wenyue-transcode";
+
+    private static final int BUFFER_CHARS = 64 * 1024;
+    // 每个字符编码后最多 4 个字节
+    private static final int BUFFER_BYTES = BUFFER_CHARS * 4;
+    private static final int DEFAULT_THREADS = 4;
+
+    /**
+     * 单个文件的处理结果
+     */
+    public enum Outcome {
+        // 已转换为目标编码
+        CONVERTED,
+        // 已经是目标编码，原样保留（指定输出目录时原样复制）
+        KEPT,
+        // 与上次运行时相比没有变化，跳过
+        UNCHANGED
+    }
+
+    public interface Listener {
+        /**
+         * 遍历完成，所有要处理的文件都已排队，在调用 {@link #run} 的线程回调；取消时不回调
+         * @param totalFiles 要处理的文件总数
+         */
+        void onScanComplete(int totalFiles);
+
+        /**
+         * 一个文件处理完成，在工作线程回调
+         * @param sourceEncoding 检测到或指定的源编码，跳过的文件为上次记录的源编码
+         */
+        void onFileDone(File file, Outcome outcome, String sourceEncoding);
+
+        /**
+         * 一个文件处理失败，原文件未被修改，在工作线程回调
+         */
+        void onFileFailed(File file, IOException e);
+    }
+
+    /**
+     * 一次运行的统计
+     */
+    public static class Summary {
+        public final int converted;
+        public final int kept;
+        public final int unchanged;
+        public final int failed;
+        public final boolean cancelled;
+
+        Summary(int converted, int kept, int unchanged, int failed, boolean cancelled) {
+            this.converted = converted;
+            this.kept = kept;
+            this.unchanged = unchanged;
+            this.failed = failed;
+            this.cancelled = cancelled;
+        }
+    }
+
+    /**
+     * 清单中的一条记录，大小和修改时间是处理后的结果文件的
+     */
+    private static class Entry {
+        final long length;
+        final long lastModified;
+        final String targetEncoding;
+        final String sourceEncoding;
+
+        Entry(long length, long lastModified, String targetEncoding, String sourceEncoding) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.targetEncoding = targetEncoding;
+            this.sourceEncoding = sourceEncoding;
+        }
+    }
+
+    private final List<File> roots;
+    // 转换整个目录时为该目录，用于计算相对路径和保存清单
+    private final File sourceRoot;
+    private final String targetEncoding;
+    private File outputRoot;
+    private String sourceEncoding;
+    private int threads = DEFAULT_THREADS;
+    private Listener listener;
+
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicInteger kept = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile boolean cancelled;
+
+    /**
+     * @param sourceRoot 要转换的目录
+     * @param targetEncoding 目标编码
+     */
+    public BatchTranscoder(File sourceRoot, String targetEncoding) {
+        this(Collections.singletonList(sourceRoot.getAbsoluteFile()), sourceRoot.getAbsoluteFile(), targetEncoding);
+    }
+
+    /**
+     * 转换一组文件，以及其中文件夹下的所有文本文件。直接替换原文件，不使用清单
+     * @param sources 文件和文件夹
+     * @param targetEncoding 目标编码
+     */
+    public BatchTranscoder(List<File> sources, String targetEncoding) {
+        this(sources, null, targetEncoding);
+    }
+
+    private BatchTranscoder(List<File> roots, File sourceRoot, String targetEncoding) {
+        this.roots = roots;
+        this.sourceRoot = sourceRoot;
+        this.targetEncoding = Charset.forName(targetEncoding).name();
+    }
+
+    /**
+     * 只能在转换整个目录时使用
+     * @param outputRoot 输出目录，按相同的目录结构写入；为 null 时直接替换原文件
+     */
+    public void setOutputRoot(File outputRoot) {
+        if (sourceRoot == null) {
+            throw new IllegalStateException("Output directory requires a single source directory");
+        }
+        this.outputRoot = outputRoot == null ? null : outputRoot.getAbsoluteFile();
+    }
+
+    /**
+     * @param sourceEncoding 源编码，为 null 时逐个文件检测
+     */
+    public void setSourceEncoding(String sourceEncoding) {
+        this.sourceEncoding = sourceEncoding == null ? null : Charset.forName(sourceEncoding).name();
+    }
+
+    /**
+     * @param threads 同时转换的文件数
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 取消运行，正在转换的文件会完成，尚未开始的文件不再处理
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 在当前线程遍历目录并等待所有文件处理完成
+     * @return 统计结果
+     * @throws IOException 源目录不存在或清单写入失败
+     */
+    public Summary run() throws IOException {
+        if (sourceRoot != null && !sourceRoot.isDirectory()) {
+            throw new IOException("Not a directory: " + sourceRoot.getPath());
+        }
+        File manifestFile = sourceRoot == null ? null
+            : new File(outputRoot != null ? outputRoot : sourceRoot, MANIFEST_NAME);
+        Map<String, Entry> previous = manifestFile == null ? new ConcurrentHashMap<String, Entry>()
+            : readManifest(manifestFile);
+        Map<String, Entry> current = new ConcurrentHashMap<>();
+
+        ExecutorService executor = WorkerPools.newFixed("transcode", threads);
+        // 限制排队的文件数，遍历很大的目录树时不会一次性积压所有任务
+        Semaphore pending = new Semaphore(threads * 2);
+        int queued = 0;
+        try {
+            Deque<File> directories = new ArrayDeque<>();
+            Set<String> visited = new HashSet<>();
+            for (File root : roots) {
+                if (root.isDirectory()) {
+                    if (visit(visited, root)) {
+                        directories.push(root);
+                    }
+                } else if (root.isFile() && isCandidate(root)) {
+                    pending.acquireUninterruptibly();
+                    executor.execute(new FileTask(root, previous, current, pending));
+                    queued++;
+                }
+            }
+            while (!directories.isEmpty() && !cancelled) {
+                File[] children = directories.pop().listFiles();
+                if (children == null) {
+                    continue;
+                }
+                for (File child : children) {
+                    if (cancelled) {
+                        break;
+                    }
+                    if (child.isDirectory()) {
+                        if (!child.equals(outputRoot) && visit(visited, child)) {
+                            directories.push(child);
+                        }
+                    } else if (isCandidate(child)) {
+                        pending.acquireUninterruptibly();
+                        executor.execute(new FileTask(child, previous, current, pending));
+                        queued++;
+                    }
+                }
+            }
+            if (listener != null && !cancelled) {
+                listener.onScanComplete(queued);
+            }
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+
+        if (cancelled) {
+            // 没有处理到的文件保留上次的记录
+            for (Map.Entry<String, Entry> entry : previous.entrySet()) {
+                if (!current.containsKey(entry.getKey())) {
+                    current.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        if (manifestFile != null) {
+            writeManifest(manifestFile, current);
+        }
+        return new Summary(converted.get(), kept.get(), unchanged.get(), failed.get(), cancelled);
+    }
+
+    private static void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 符号链接可能指向上层目录形成环，按真实路径每个目录只进入一次
+     * @return 目录是否第一次遇到
+     */
+    private static boolean visit(Set<String> visited, File directory) {
+        try {
+            return visited.add(directory.getCanonicalPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isCandidate(File file) {
+        String name = file.getName();
+        if (name.equals(MANIFEST_NAME) || (name.startsWith(".") && name.endsWith(".tmp"))) {
+            return false;
+        }
+        return FileUtils.isTextFile(FileUtils.getFileExtension(name));
+    }
+
+    /**
+     * 处理一个文件
+     */
+    private class FileTask implements Runnable {
+        private final File source;
+        private final Map<String, Entry> previous;
+        private final Map<String, Entry> current;
+        private final Semaphore pending;
+
+        FileTask(File source, Map<String, Entry> previous, Map<String, Entry> current, Semaphore pending) {
+            this.source = source;
+            this.previous = previous;
+            this.current = current;
+            this.pending = pending;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled) {
+                    process();
+                }
+            } finally {
+                pending.release();
+            }
+        }
+
+        private void process() {
+            String relativePath = sourceRoot != null
+                ? source.getPath().substring(sourceRoot.getPath().length() + 1) : source.getPath();
+            File target = outputRoot != null ? new File(outputRoot, relativePath) : source;
+
+            Entry entry = previous.get(relativePath);
+            if (entry != null && entry.targetEncoding.equals(targetEncoding)
+                    && isRecorded(entry, target) && (target == source || isUpToDate(source, target))) {
+                current.put(relativePath, entry);
+                unchanged.incrementAndGet();
+                notifyDone(Outcome.UNCHANGED, entry.sourceEncoding);
+                return;
+            }
+
+            long length = source.length();
+            Perf.Span span = Perf.begin("BatchTranscoder.file");
+            try {
+                Codecs codecs = CODECS.get();
+                String encoding;
+                Outcome outcome;
+                FileInputStream fis = new FileInputStream(source);
+                try {
+                    FileChannel input = fis.getChannel();
+                    boolean complete = readSample(input, codecs.in);
+                    encoding = sourceEncoding != null ? sourceEncoding
+                        : detect(codecs.in.array(), codecs.in.position(), complete);
+                    try {
+                        outcome = convert(input, codecs, encoding, target);
+                    } catch (CharacterCodingException e) {
+                        if (sourceEncoding != null || !encoding.equals("UTF-8")) {
+                            throw e;
+                        }
+                        // 开头是合法的 UTF-8，后面不是：不再假定 UTF-8，按开头的内容重新检测
+                        input.position(0);
+                        readSample(input, codecs.in);
+                        encoding = detectLegacy(codecs.in.array(), codecs.in.position());
+                        if (encoding.equals("UTF-8")) {
+                            throw e;
+                        }
+                        outcome = convert(input, codecs, encoding, target);
+                    }
+                } finally {
+                    fis.close();
+                }
+                if (outcome == Outcome.KEPT) {
+                    kept.incrementAndGet();
+                } else {
+                    converted.incrementAndGet();
+                }
+                current.put(relativePath,
+                    new Entry(target.length(), target.lastModified(), targetEncoding, encoding));
+                notifyDone(outcome, encoding);
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                if (listener != null) {
+                    listener.onFileFailed(source, e);
+                }
+            } finally {
+                Perf.end(span, length);
+            }
+        }
+
+        /**
+         * 接着已经读入 codecs.in 的开头转换文件
+         */
+        private Outcome convert(FileChannel input, Codecs codecs, String encoding, File target)
+                throws IOException {
+            if (encoding.equals(targetEncoding)) {
+                // 整个文件按目标编码校验一遍，输出到其他目录时同时原样写出
+                verify(input, codecs, encoding, target != source ? target : null);
+                return Outcome.KEPT;
+            }
+            transcode(input, codecs, encoding, target, targetEncoding);
+            return Outcome.CONVERTED;
+        }
+
+        private void notifyDone(Outcome outcome, String encoding) {
+            if (listener != null) {
+                listener.onFileDone(source, outcome, encoding);
+            }
+        }
+    }
+
+    private static boolean isRecorded(Entry entry, File target) {
+        return target.length() == entry.length && target.lastModified() == entry.lastModified;
+    }
+
+    /**
+     * 输出到其他目录时，源文件在上次转换之后修改过就需要重新转换
+     */
+    private static boolean isUpToDate(File source, File target) {
+        return source.lastModified() <= target.lastModified();
+    }
+
+    /**
+     * 读取文件开头，填满输入缓冲区
+     * @return 是否已经读到文件末尾
+     */
+    private static boolean readSample(FileChannel input, ByteBuffer in) throws IOException {
+        in.clear();
+        while (in.hasRemaining()) {
+            if (input.read(in) < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按文件开头检测编码。能按 UTF-8 解码的直接认为是 UTF-8，
+     * 避免按开头几行判断时把 UTF-8 文件误认为 GBK，其余交给 {@link #detectLegacy}。
+     * 后面的内容在转换时校验，不是 UTF-8 时再按 detectLegacy 的结果转换
+     * @param complete 样本是否包含整个文件，否则末尾被截断的字符不算错误
+     */
+    static String detect(byte[] sample, int length, boolean complete) throws IOException {
+        if (isValidUtf8(sample, length, complete)) {
+            return "UTF-8";
+        }
+        return detectLegacy(sample, length);
+    }
+
+    /**
+     * 交给 {@link FileUtils#detectEncoding} 检测。
+     * Big5 文本通常也能按 GBK 解码，检测结果为 GBK 时再区分一次
+     */
+    private static String detectLegacy(byte[] sample, int length) throws IOException {
+        String encoding = Charset.forName(FileUtils.detectEncoding(new ByteArrayInputStream(sample, 0, length))).name();
+        if ((encoding.equals("GBK") || encoding.equals("GB2312")) && looksLikeBig5(sample, length)) {
+            return "Big5";
+        }
+        return encoding;
+    }
+
+    /**
+     * 按 GBK 理解时，简体中文的双字节字符绝大多数落在 GB2312 汉字区（首字节 0xB0-0xF7，
+     * 尾字节 0xA1-0xFE）；Big5 的常用字首字节从 0xA4 开始、尾字节可以小于 0x80，
+     * 按 GBK 理解时大量落在汉字区之外
+     */
+    private static boolean looksLikeBig5(byte[] sample, int length) {
+        int pairs = 0;
+        int hanzi = 0;
+        int i = 0;
+        while (i < length - 1) {
+            int lead = sample[i] & 0xFF;
+            if (lead < 0x81) {
+                i++;
+                continue;
+            }
+            int trail = sample[i + 1] & 0xFF;
+            pairs++;
+            if (lead >= 0xB0 && lead <= 0xF7 && trail >= 0xA1) {
+                hanzi++;
+            }
+            i += 2;
+        }
+        return pairs > 0 && hanzi * 2 < pairs && decodesStrictly(sample, length, "Big5");
+    }
+
+    private static boolean decodesStrictly(byte[] bytes, int length, String encoding) {
+        // 样本末尾可能截断了一个双字节字符
+        int end = length;
+        if (end > 0 && (bytes[end - 1] & 0xFF) >= 0x81) {
+            end--;
+        }
+        try {
+            Charset.forName(encoding).newDecoder().decode(ByteBuffer.wrap(bytes, 0, end));
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    private static boolean isValidUtf8(byte[] sample, int length, boolean complete) {
+        Codecs codecs = CODECS.get();
+        CharsetDecoder decoder = codecs.decoder("UTF-8");
+        ByteBuffer bytes = ByteBuffer.wrap(sample, 0, length);
+        CharBuffer chars = codecs.chars;
+        while (true) {
+            chars.clear();
+            CoderResult result = decoder.decode(bytes, chars, complete);
+            if (result.isError()) {
+                return false;
+            }
+            // 输出缓冲区满时还没有解码完
+            if (!result.isOverflow()) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 接着已经读入 in 的字节读完文件，按 encoding 校验能否解码；target 不为 null 时把读到的字节原样写入
+     * @throws CharacterCodingException 遇到无法解码的字节
+     */
+    private static void verify(FileChannel input, Codecs codecs, String encoding, File target)
+            throws IOException {
+        CharsetDecoder decoder = codecs.decoder(encoding);
+        ByteBuffer in = codecs.in;
+        CharBuffer chars = codecs.chars;
+        File tempFile = target != null ? tempFileFor(target) : null;
+        FileOutputStream fos = null;
+        boolean done = false;
+        try {
+            FileChannel output = null;
+            if (tempFile != null) {
+                fos = new FileOutputStream(tempFile);
+                output = fos.getChannel();
+            }
+            boolean endOfInput = false;
+            CoderResult result;
+            do {
+                endOfInput = endOfInput || input.read(in) < 0;
+                in.flip();
+                int start = in.position();
+                chars.clear();
+                result = decoder.decode(in, chars, endOfInput);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (output != null) {
+                    // 写出已经校验过的字节，没解码完的留到下一轮
+                    ByteBuffer checked = in.duplicate();
+                    checked.limit(in.position());
+                    checked.position(start);
+                    while (checked.hasRemaining()) {
+                        output.write(checked);
+                    }
+                }
+                in.compact();
+            } while (!endOfInput || result.isOverflow());
+            if (fos != null) {
+                fos.getFD().sync();
+            }
+            done = true;
+        } finally {
+            if (fos != null) {
+                fos.close();
+            }
+            if (tempFile != null && !done) {
+                tempFile.delete();
+            }
+        }
+        if (tempFile != null) {
+            replace(tempFile, target);
+        }
+    }
+
+    /**
+     * 每个线程复用的编解码器和缓冲区
+     */
+    private static class Codecs {
+        final ByteBuffer in = ByteBuffer.allocate(BUFFER_CHARS);
+        final CharBuffer chars = CharBuffer.allocate(BUFFER_CHARS);
+        final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+        private final Map<String, CharsetDecoder> decoders = new HashMap<>();
+        private final Map<String, CharsetEncoder> encoders = new HashMap<>();
+
+        /**
+         * newDecoder 和 newEncoder 默认遇到错误时报告，不会静默替换成乱码
+         */
+        CharsetDecoder decoder(String encoding) {
+            CharsetDecoder decoder = decoders.get(encoding);
+            if (decoder == null) {
+                decoder = Charset.forName(encoding).newDecoder();
+                decoders.put(encoding, decoder);
+            }
+            return decoder.reset();
+        }
+
+        CharsetEncoder encoder(String encoding) {
+            CharsetEncoder encoder = encoders.get(encoding);
+            if (encoder == null) {
+                encoder = Charset.forName(encoding).newEncoder();
+                encoders.put(encoding, encoder);
+            }
+            return encoder.reset();
+        }
+    }
+
+    private static final ThreadLocal<Codecs> CODECS = new ThreadLocal<Codecs>() {
+        @Override
+        protected Codecs initialValue() {
+            return new Codecs();
+        }
+    };
+
+    /**
+     * 按缓冲区流式转换编码并替换目标文件，去掉源文件开头的 BOM。
+     * 遇到无法解码或目标编码无法表示的字符时抛出异常，不写入目标文件
+     * @throws IOException 读写失败或字符无法转换
+     */
+    public static void transcode(File source, String fromEncoding, File target, String toEncoding)
+            throws IOException {
+        Codecs codecs = CODECS.get();
+        codecs.in.clear();
+        FileInputStream fis = new FileInputStream(source);
+        try {
+            transcode(fis.getChannel(), codecs, fromEncoding, target, toEncoding);
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * 接着已经读入 codecs.in 的字节转换 input 的其余内容
+     */
+    private static void transcode(FileChannel input, Codecs codecs, String fromEncoding, File target,
+                                  String toEncoding) throws IOException {
+        CharsetDecoder decoder = codecs.decoder(fromEncoding);
+        CharsetEncoder encoder = codecs.encoder(toEncoding);
+        ByteBuffer in = codecs.in;
+        CharBuffer chars = codecs.chars;
+        ByteBuffer out = codecs.out;
+        chars.clear();
+        out.clear();
+
+        File tempFile = tempFileFor(target);
+        FileOutputStream fos = null;
+        boolean done = false;
+        try {
+            fos = new FileOutputStream(tempFile);
+            FileChannel output = fos.getChannel();
+
+            boolean bomChecked = false;
+            boolean endOfInput = false;
+            CoderResult result;
+            do {
+                endOfInput = endOfInput || input.read(in) < 0;
+                in.flip();
+                result = decoder.decode(in, chars, endOfInput);
+                in.compact();
+                if (result.isError()) {
+                    result.throwException();
+                }
+                chars.flip();
+                if (!bomChecked && chars.hasRemaining()) {
+                    bomChecked = true;
+                    if (chars.get(chars.position()) == '\uFEFF') {
+                        chars.get();
+                    }
+                }
+                encode(encoder, chars, out, output, false);
+                chars.compact();
+            } while (!endOfInput || result.isOverflow());
+
+            do {
+                result = decoder.flush(chars);
+                chars.flip();
+                encode(encoder, chars, out, output, true);
+                chars.compact();
+            } while (result.isOverflow());
+            while (encoder.flush(out).isOverflow()) {
+                drain(out, output);
+            }
+            drain(out, output);
+            fos.getFD().sync();
+            done = true;
+        } finally {
+            if (fos != null) {
+                fos.close();
+            }
+            if (!done) {
+                tempFile.delete();
+            }
+        }
+        replace(tempFile, target);
+    }
+
+    /**
+     * 编码 chars 中的字符，输出缓冲区满时写入文件
+     */
+    private static void encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer out,
+                               FileChannel output, boolean endOfInput) throws IOException {
+        while (true) {
+            CoderResult result = encoder.encode(chars, out, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (!result.isOverflow()) {
+                return;
+            }
+            drain(out, output);
+        }
+    }
+
+    private static void drain(ByteBuffer out, FileChannel output) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            output.write(out);
+        }
+        out.clear();
+    }
+
+    private static File tempFileFor(File target) throws IOException {
+        File parent = target.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Failed to create directory: " + parent.getAbsolutePath());
+        }
+        return new File(parent, "." + target.getName() + ".tmp");
+    }
+
+    private static void replace(File tempFile, File target) throws IOException {
+        if (!tempFile.renameTo(target)) {
+            tempFile.delete();
+            throw new IOException("Failed to replace " + target.getAbsolutePath());
+        }
+    }
+
+    private static Map<String, Entry> readManifest(File file) {
+        Map<String, Entry> entries = new ConcurrentHashMap<>();
+        if (!file.isFile()) {
+            return entries;
+        }
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = br.readLine()) != null) {
+                // 大小、修改时间、目标编码、源编码、相对路径，路径放在最后以允许包含制表符
+                String[] parts = line.split("\t", 5);
+                if (parts.length < 5) {
+                    continue;
+                }
+                try {
+                    entries.put(parts[4], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]),
+                        parts[2], parts[3]));
+                } catch (NumberFormatException e) {
+                    // 跳过损坏的记录
+                }
+            }
+        } catch (IOException e) {
+            // 清单丢失只会导致重新检查所有文件
+        } finally {
+            if (br != null) {
+                try {
+                    br.close();
+                } catch (IOException e) {
+                    // 忽略关闭异常
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static void writeManifest(File file, Map<String, Entry> entries) throws IOException {
+        File tempFile = tempFileFor(file);
+        BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+        try {
+            for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                Entry entry = item.getValue();
+                bw.write(entry.length + "\t" + entry.lastModified + "\t" + entry.targetEncoding
+                    + "\t" + entry.sourceEncoding + "\t" + item.getKey());
+                bw.write('\n');
+            }
+        } finally {
+            bw.close();
+        }
+        replace(tempFile, file);
+    }
+
+    public static void main(String[] args) {
+        String to = "UTF-8";
+        String from = null;
+        String out = null;
+        int threads = DEFAULT_THREADS;
+        String source = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--to")) {
+                    to = args[++i];
+                } else if (arg.equals("--from")) {
+                    from = args[++i];
+                } else if (arg.equals("--out")) {
+                    out = args[++i];
+                } else if (arg.equals("--threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (source == null && !arg.startsWith("--")) {
+                    source = arg;
+                } else {
+                    throw new IllegalArgumentException(arg);
+                }
+            }
+        } catch (RuntimeException e) {
+            source = null;
+        }
+        if (source == null) {
+            System.err.println("Usage: BatchTranscoder [--to UTF-8] [--from GBK] [--out DIR] [--threads N] SOURCE_DIR");
+            System.exit(2);
+            return;
+        }
+
+        BatchTranscoder transcoder;
+        try {
+            transcoder = new BatchTranscoder(new File(source), to);
+            transcoder.setSourceEncoding(from);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unsupported encoding: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        transcoder.setOutputRoot(out == null ? null : new File(out));
+        transcoder.setThreads(threads);
+        transcoder.setListener(new Listener() {
+            @Override
+            public void onScanComplete(int totalFiles) {
+            }
+
+            @Override
+            public synchronized void onFileDone(File file, Outcome outcome, String sourceEncoding) {
+                if (outcome != Outcome.UNCHANGED) {
+                    System.out.println(outcome.name().toLowerCase(Locale.US) + "\t" + sourceEncoding + "\t" + file.getPath());
+                }
+            }
+
+            @Override
+            public synchronized void onFileFailed(File file, IOException e) {
+                System.err.println("failed\t" + file.getPath() + "\t" + e);
+            }
+        });
+
+        try {
+            Summary summary = transcoder.run();
+            System.out.println("converted " + summary.converted + ", kept " + summary.kept
+                + ", unchanged " + summary.unchanged + ", failed " + summary.failed);
+            System.exit(summary.failed > 0 ? 1 : 0);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,658 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 可以从任意位置读取的 DEFLATE 压缩数据（.gz 文件、ZIP 条目）
+ *
+ * 顺序解压时每隔一段输出在块边界记录一个检查点：压缩数据中的位位置、输出位置和之前 32 KB 的输出。
+ * 之后从某个位置读取时从不超过它的最近检查点开始解压，往回跳转不必从头解压。
+ * 检查点超过 {@link #MAX_POINTS} 个时间隔加倍、丢弃一半，内存占用有上限。
+ *
+ * java.util.zip.Inflater 不能报告块边界，也不能从字节中间的位开始解压，所以这里自己实现解压。
+ * 多个 gzip 成员首尾相接的文件按一个整体读取。不校验 CRC。
+ */
+public class DeflateIndex implements TextWindow.Source {
+
+    private static final int WINDOW = 32768;
+    private static final int WINDOW_MASK = WINDOW - 1;
+    private static final long INITIAL_SPAN = 1024 * 1024;
+    private static final int MAX_POINTS = 128;
+    private static final int MAX_CACHE_ENTRIES = 8;
+
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+        35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+        3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+        257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+        7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+    private static final Huffman FIXED_LITERALS;
+    private static final Huffman FIXED_DISTANCES;
+
+    static {
+        int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        int[] distances = new int[30];
+        Arrays.fill(distances, 5);
+        try {
+            FIXED_LITERALS = new Huffman(lengths, 0, lengths.length);
+            FIXED_DISTANCES = new Huffman(distances, 0, distances.length);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final Map<String, DeflateIndex> CACHE =
+        new LinkedHashMap<String, DeflateIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DeflateIndex> eldest) {
+                return size() > MAX_CACHE_ENTRIES;
+            }
+        };
+
+    /**
+     * 检查点：从压缩数据的第 bit 位开始解压得到第 out 个字节之后的内容，window 为之前的输出
+     */
+    private static class Point {
+        final long bit;
+        final long out;
+        final byte[] window;
+
+        Point(long bit, long out, byte[] window) {
+            this.bit = bit;
+            this.out = out;
+            this.window = window;
+        }
+    }
+
+    private final File file;
+    private final boolean gzip;
+    private final long fileLength;
+    private final long lastModified;
+    // 压缩数据结束的位置，之后的字节不读取
+    private final long dataEnd;
+    // 解压后的长度，读到结尾之前未知时为 -1
+    private volatile long length;
+    private final List<Point> points = new ArrayList<>();
+    private long span = INITIAL_SPAN;
+
+    private DeflateIndex(File file, boolean gzip, long dataStart, long dataEnd, long length) {
+        this.file = file;
+        this.gzip = gzip;
+        this.fileLength = file.length();
+        this.lastModified = file.lastModified();
+        this.dataEnd = dataEnd;
+        this.length = length;
+        points.add(new Point(dataStart * 8, 0, new byte[0]));
+    }
+
+    public static boolean isGzip(String extension) {
+        return "gz".equals(extension);
+    }
+
+    /**
+     * 获取 .gz 文件的索引，文件未变化时复用之前建立的检查点
+     * @throws IOException 读取失败或不是 gzip 文件
+     */
+    public static DeflateIndex forGzip(File file) throws IOException {
+        String key = file.getAbsolutePath();
+        DeflateIndex index = getCached(key, file);
+        if (index != null) {
+            return index;
+        }
+        long dataStart;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            dataStart = skipGzipHeader(new ByteSource(in));
+        } finally {
+            in.close();
+        }
+        if (dataStart < 0) {
+            throw new IOException("Not a gzip file: " + file);
+        }
+        index = new DeflateIndex(file, true, dataStart, file.length(), -1);
+        return putCached(key, index);
+    }
+
+    /**
+     * 获取文件中一段原始 DEFLATE 数据（ZIP 条目）的索引
+     * @param key 缓存的键
+     * @param start 压缩数据的起始偏移
+     * @param compressedLength 压缩数据的字节数
+     * @param length 解压后的字节数
+     */
+    static DeflateIndex forRange(File file, String key, long start, long compressedLength, long length) {
+        DeflateIndex index = getCached(key, file);
+        if (index != null) {
+            return index;
+        }
+        return putCached(key, new DeflateIndex(file, false, start, start + compressedLength, length));
+    }
+
+    private static DeflateIndex getCached(String key, File file) {
+        synchronized (CACHE) {
+            DeflateIndex index = CACHE.get(key);
+            if (index != null && index.fileLength == file.length() && index.lastModified == file.lastModified()) {
+                return index;
+            }
+            return null;
+        }
+    }
+
+    private static DeflateIndex putCached(String key, DeflateIndex index) {
+        synchronized (CACHE) {
+            CACHE.put(key, index);
+        }
+        return index;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return 解压后的长度，还没有读到结尾时返回 -1
+     */
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * 从解压后的 offset 处开始读取，从最近的检查点开始解压并丢弃之前的内容
+     * @return 解压流，offset 超过结尾时立即结束；调用者负责关闭
+     */
+    @Override
+    public InputStream open(long offset) throws IOException {
+        Point start;
+        synchronized (points) {
+            int i = points.size() - 1;
+            while (i > 0 && points.get(i).out > offset) {
+                i--;
+            }
+            start = points.get(i);
+        }
+        Decoder decoder = new Decoder(start);
+        Perf.Span span = Perf.begin("DeflateIndex.seek");
+        long skipped = 0;
+        try {
+            byte[] scratch = new byte[64 * 1024];
+            while (decoder.out < offset) {
+                int n = decoder.read(scratch, 0, (int) Math.min(scratch.length, offset - decoder.out));
+                if (n < 0) {
+                    break;
+                }
+                skipped += n;
+            }
+        } catch (IOException e) {
+            decoder.close();
+            throw e;
+        } finally {
+            Perf.end(span, skipped);
+        }
+        return decoder;
+    }
+
+    /**
+     * 在块边界记录检查点，只向已经记录的范围之后扩展
+     */
+    private void addPoint(long bit, long out, byte[] ring) {
+        synchronized (points) {
+            if (out < points.get(points.size() - 1).out + span) {
+                return;
+            }
+            int size = (int) Math.min(out, WINDOW);
+            byte[] window = new byte[size];
+            for (int i = 0; i < size; i++) {
+                window[i] = ring[(int) ((out - size + i) & WINDOW_MASK)];
+            }
+            points.add(new Point(bit, out, window));
+            if (points.size() > MAX_POINTS) {
+                // 间隔加倍，保留开头和每隔一个的检查点
+                span *= 2;
+                for (int i = points.size() - 1; i > 0; i--) {
+                    if (i % 2 == 1) {
+                        points.remove(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 跳过 gzip 成员头
+     * @return 头之后的偏移，不是 gzip 头时返回 -1
+     */
+    private static long skipGzipHeader(ByteSource in) throws IOException {
+        if (in.read() != 0x1F || in.read() != 0x8B || in.read() != 8) {
+            return -1;
+        }
+        int flags = in.read();
+        for (int i = 0; i < 6; i++) {
+            in.read();
+        }
+        if ((flags & 4) != 0) {
+            int extraLength = in.read() | in.read() << 8;
+            for (int i = 0; i < extraLength; i++) {
+                in.read();
+            }
+        }
+        if ((flags & 8) != 0) {
+            while (in.read() > 0) {
+                // 文件名
+            }
+        }
+        if ((flags & 16) != 0) {
+            while (in.read() > 0) {
+                // 注释
+            }
+        }
+        if ((flags & 2) != 0) {
+            in.read();
+            in.read();
+        }
+        return in.position();
+    }
+
+    /**
+     * 逐字节读取的简单来源，只用于解析 gzip 头
+     */
+    private static class ByteSource {
+        private final InputStream in;
+        private long position;
+
+        ByteSource(InputStream in) {
+            this.in = new BufferedInputStream(in, 512);
+        }
+
+        int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        long position() {
+            return position;
+        }
+    }
+
+    /**
+     * 规范 Huffman 编码的查找表：用最长码长的位数直接索引，值为 符号 << 4 | 码长
+     */
+    private static class Huffman {
+        final int[] table;
+        final int bits;
+
+        Huffman(int[] lengths, int offset, int count) throws IOException {
+            int[] counts = new int[16];
+            int maxLength = 1;
+            for (int i = 0; i < count; i++) {
+                int len = lengths[offset + i];
+                counts[len]++;
+                maxLength = Math.max(maxLength, len);
+            }
+            counts[0] = 0;
+            int left = 1;
+            for (int len = 1; len < 16; len++) {
+                left = (left << 1) - counts[len];
+                if (left < 0) {
+                    throw new IOException("Bad Huffman code lengths");
+                }
+            }
+            int[] next = new int[16];
+            for (int len = 1, code = 0; len < 16; len++) {
+                code = (code + counts[len - 1]) << 1;
+                next[len] = code;
+            }
+            bits = maxLength;
+            table = new int[1 << maxLength];
+            for (int symbol = 0; symbol < count; symbol++) {
+                int len = lengths[offset + symbol];
+                if (len == 0) {
+                    continue;
+                }
+                // DEFLATE 从低位开始存放编码，查找表按反转后的编码索引
+                int reversed = Integer.reverse(next[len]++) >>> (32 - len);
+                for (int i = reversed; i < table.length; i += 1 << len) {
+                    table[i] = symbol << 4 | len;
+                }
+            }
+        }
+    }
+
+    private static final int STATE_HEADER = 0;
+    private static final int STATE_STORED = 1;
+    private static final int STATE_CODES = 2;
+    private static final int STATE_DONE = 3;
+
+    /**
+     * 从一个检查点开始解压
+     */
+    private class Decoder extends InputStream {
+        private final FileInputStream in;
+        private final byte[] input = new byte[64 * 1024];
+        private int inputPos;
+        private int inputLength;
+        // input[0] 在文件中的偏移
+        private long inputBase;
+        private long bitBuffer;
+        private int bitCount;
+        // 数据结束后补的零字节数，只在解码最后几个符号时用到
+        private int padding;
+        private final byte[] ring = new byte[WINDOW];
+        long out;
+        private int state = STATE_HEADER;
+        private boolean lastBlock;
+        private int storedRemaining;
+        private int copyLength;
+        private int copyDistance;
+        private Huffman literals;
+        private Huffman distances;
+
+        Decoder(Point start) throws IOException {
+            in = new FileInputStream(file);
+            try {
+                inputBase = start.bit >>> 3;
+                in.getChannel().position(inputBase);
+                int skip = (int) (start.bit & 7);
+                if (skip > 0) {
+                    bits(skip);
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            out = start.out;
+            byte[] window = start.window;
+            for (int i = 0; i < window.length; i++) {
+                ring[(int) ((out - window.length + i) & WINDOW_MASK)] = window[i];
+            }
+        }
+
+        private int nextByte() throws IOException {
+            if (inputPos == inputLength) {
+                inputBase += inputLength;
+                inputPos = 0;
+                inputLength = 0;
+                int max = (int) Math.min(input.length, dataEnd - inputBase);
+                if (max <= 0) {
+                    return -1;
+                }
+                int n = in.read(input, 0, max);
+                if (n <= 0) {
+                    return -1;
+                }
+                inputLength = n;
+            }
+            return input[inputPos++] & 0xFF;
+        }
+
+        private void need(int n) throws IOException {
+            while (bitCount < n) {
+                int b = nextByte();
+                if (b < 0) {
+                    if (++padding > 8) {
+                        throw new EOFException("Unexpected end of compressed data");
+                    }
+                    b = 0;
+                }
+                bitBuffer |= (long) b << bitCount;
+                bitCount += 8;
+            }
+        }
+
+        private int bits(int n) throws IOException {
+            if (n == 0) {
+                return 0;
+            }
+            need(n);
+            int value = (int) (bitBuffer & ((1L << n) - 1));
+            bitBuffer >>>= n;
+            bitCount -= n;
+            return value;
+        }
+
+        private int decode(Huffman huffman) throws IOException {
+            need(huffman.bits);
+            int entry = huffman.table[(int) (bitBuffer & ((1 << huffman.bits) - 1))];
+            int len = entry & 15;
+            if (len == 0) {
+                throw new IOException("Bad Huffman code");
+            }
+            bitBuffer >>>= len;
+            bitCount -= len;
+            return entry >>> 4;
+        }
+
+        /**
+         * @return 下一个未读的位在文件中的位置
+         */
+        private long bitPosition() {
+            return (inputBase + inputPos) * 8 - bitCount;
+        }
+
+        private void alignToByte() {
+            int drop = bitCount & 7;
+            bitBuffer >>>= drop;
+            bitCount -= drop;
+        }
+
+        private int alignedByte() throws IOException {
+            if (bitCount >= 8) {
+                int b = (int) (bitBuffer & 0xFF);
+                bitBuffer >>>= 8;
+                bitCount -= 8;
+                return padding > 0 && bitCount < padding * 8 ? -1 : b;
+            }
+            return nextByte();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = 0;
+            while (n < len) {
+                if (copyLength > 0) {
+                    int count = Math.min(copyLength, len - n);
+                    for (int i = 0; i < count; i++) {
+                        byte x = ring[(int) ((out - copyDistance) & WINDOW_MASK)];
+                        ring[(int) (out & WINDOW_MASK)] = x;
+                        b[off + n++] = x;
+                        out++;
+                    }
+                    copyLength -= count;
+                    continue;
+                }
+                if (state == STATE_CODES) {
+                    int symbol = decode(literals);
+                    if (symbol < 256) {
+                        byte x = (byte) symbol;
+                        ring[(int) (out & WINDOW_MASK)] = x;
+                        b[off + n++] = x;
+                        out++;
+                    } else if (symbol == 256) {
+                        state = STATE_HEADER;
+                    } else {
+                        symbol -= 257;
+                        if (symbol >= LENGTH_BASE.length) {
+                            throw new IOException("Bad length code");
+                        }
+                        copyLength = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+                        int distance = decode(distances);
+                        if (distance >= DISTANCE_BASE.length) {
+                            throw new IOException("Bad distance code");
+                        }
+                        copyDistance = DISTANCE_BASE[distance] + bits(DISTANCE_EXTRA[distance]);
+                        if (copyDistance > out) {
+                            throw new IOException("Distance too far back");
+                        }
+                    }
+                } else if (state == STATE_STORED) {
+                    if (storedRemaining == 0) {
+                        state = STATE_HEADER;
+                        continue;
+                    }
+                    byte x = (byte) alignedByte();
+                    ring[(int) (out & WINDOW_MASK)] = x;
+                    b[off + n++] = x;
+                    out++;
+                    storedRemaining--;
+                } else if (state == STATE_HEADER) {
+                    if (lastBlock && !nextMember()) {
+                        state = STATE_DONE;
+                        if (length < 0) {
+                            length = out;
+                        }
+                    } else {
+                        readBlockHeader();
+                    }
+                } else {
+                    break;
+                }
+            }
+            return n == 0 && len > 0 ? -1 : n;
+        }
+
+        private void readBlockHeader() throws IOException {
+            if (padding == 0) {
+                addPoint(bitPosition(), out, ring);
+            }
+            lastBlock = bits(1) == 1;
+            int type = bits(2);
+            if (type == 0) {
+                alignToByte();
+                int len = bits(16);
+                int complement = bits(16);
+                if ((len ^ 0xFFFF) != complement) {
+                    throw new IOException("Bad stored block length");
+                }
+                storedRemaining = len;
+                state = STATE_STORED;
+            } else if (type == 1) {
+                literals = FIXED_LITERALS;
+                distances = FIXED_DISTANCES;
+                state = STATE_CODES;
+            } else if (type == 2) {
+                readDynamicTables();
+                state = STATE_CODES;
+            } else {
+                throw new IOException("Bad block type");
+            }
+        }
+
+        private void readDynamicTables() throws IOException {
+            int literalCount = bits(5) + 257;
+            int distanceCount = bits(5) + 1;
+            int codeLengthCount = bits(4) + 4;
+            int[] codeLengths = new int[19];
+            for (int i = 0; i < codeLengthCount; i++) {
+                codeLengths[CODE_LENGTH_ORDER[i]] = bits(3);
+            }
+            Huffman codeLengthCode = new Huffman(codeLengths, 0, 19);
+            int[] lengths = new int[literalCount + distanceCount];
+            int i = 0;
+            while (i < lengths.length) {
+                int symbol = decode(codeLengthCode);
+                if (symbol < 16) {
+                    lengths[i++] = symbol;
+                    continue;
+                }
+                int repeat;
+                int value = 0;
+                if (symbol == 16) {
+                    if (i == 0) {
+                        throw new IOException("Bad code length repeat");
+                    }
+                    value = lengths[i - 1];
+                    repeat = 3 + bits(2);
+                } else if (symbol == 17) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+                if (i + repeat > lengths.length) {
+                    throw new IOException("Bad code length repeat");
+                }
+                Arrays.fill(lengths, i, i + repeat, value);
+                i += repeat;
+            }
+            literals = new Huffman(lengths, 0, literalCount);
+            distances = new Huffman(lengths, literalCount, distanceCount);
+        }
+
+        /**
+         * 最后一个块结束后，gzip 文件跳过成员尾，后面还有成员时继续解压
+         * @return 是否还有下一个成员
+         */
+        private boolean nextMember() throws IOException {
+            if (!gzip) {
+                return false;
+            }
+            alignToByte();
+            // CRC32 和 ISIZE
+            for (int i = 0; i < 8; i++) {
+                if (alignedByte() < 0) {
+                    return false;
+                }
+            }
+            if (alignedByte() != 0x1F || alignedByte() != 0x8B || alignedByte() != 8) {
+                // 结尾的填充或其他数据
+                return false;
+            }
+            int flags = alignedByte();
+            for (int i = 0; i < 6; i++) {
+                alignedByte();
+            }
+            if ((flags & 4) != 0) {
+                int extraLength = alignedByte() | alignedByte() << 8;
+                for (int i = 0; i < extraLength; i++) {
+                    alignedByte();
+                }
+            }
+            if ((flags & 8) != 0) {
+                while (alignedByte() > 0) {
+                    // 文件名
+                }
+            }
+            if ((flags & 16) != 0) {
+                while (alignedByte() > 0) {
+                    // 注释
+                }
+            }
+            if ((flags & 2) != 0) {
+                alignedByte();
+                alignedByte();
+            }
+            lastBlock = false;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
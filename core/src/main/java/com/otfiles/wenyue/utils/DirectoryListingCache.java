@@ -0,0 +1,295 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.File;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * 排序后的目录列表缓存，按目录的修改时间校验
+ *
+ * 监听到目录中的文件变化时可以用 {@link #applyChanges} 只插入、删除变化的条目，
+ * 不必重新列出和排序整个目录。
+ */
+public class DirectoryListingCache {
+
+    // 部分文件系统（如SD卡上的FAT）修改时间精度只有2秒，
+    // 列目录时距离上次修改太近的结果不能保证之后的修改一定会改变修改时间，不予复用
+    private static final long MTIME_GRANULARITY_MS = 2000;
+    private static final int MAX_CACHE_ENTRIES = 32;
+
+    private static final Map<String, Listing> CACHE =
+        new LinkedHashMap<String, Listing>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Listing> eldest) {
+                return size() > MAX_CACHE_ENTRIES;
+            }
+        };
+
+    private static class Listing {
+        final long lastModified;
+        final long listedAt;
+        final Snapshot files;
+
+        Listing(long lastModified, long listedAt, Snapshot files) {
+            this.lastModified = lastModified;
+            this.listedAt = listedAt;
+            this.files = files;
+        }
+    }
+
+    /**
+     * 排序后的只读列表，文件夹在前。记录文件夹的数量，已删除的条目不用查询类型就能找到。
+     */
+    public static final class Snapshot extends AbstractList<File> implements RandomAccess {
+        private final File[] files;
+        private final int directoryCount;
+
+        Snapshot(File[] files, int directoryCount) {
+            this.files = files;
+            this.directoryCount = directoryCount;
+        }
+
+        @Override
+        public File get(int index) {
+            return files[index];
+        }
+
+        @Override
+        public int size() {
+            return files.length;
+        }
+
+        public int getDirectoryCount() {
+            return directoryCount;
+        }
+    }
+
+    /**
+     * 增量更新的结果：新列表和依次执行的插入、删除。
+     * 每一步的位置按执行到这一步时的列表计算，相邻的同类修改合并为一段。
+     */
+    public static final class Update {
+        public static final int INSERTED = 1;
+        public static final int REMOVED = 2;
+
+        private Snapshot files;
+        // 每个修改占三个元素：类型、位置、数量
+        private int[] operations = new int[12];
+        private int size;
+
+        public Snapshot getFiles() {
+            return files;
+        }
+
+        public int getOperationCount() {
+            return size / 3;
+        }
+
+        public int getType(int operation) {
+            return operations[operation * 3];
+        }
+
+        public int getPosition(int operation) {
+            return operations[operation * 3 + 1];
+        }
+
+        public int getCount(int operation) {
+            return operations[operation * 3 + 2];
+        }
+
+        void inserted(int position) {
+            if (size > 0 && operations[size - 3] == INSERTED) {
+                int start = operations[size - 2];
+                // 插在上一段之中或紧挨着时，插入的仍然是一段连续的位置
+                if (position >= start && position <= start + operations[size - 1]) {
+                    operations[size - 1]++;
+                    return;
+                }
+            }
+            add(INSERTED, position);
+        }
+
+        void removed(int position) {
+            if (size > 0 && operations[size - 3] == REMOVED) {
+                int start = operations[size - 2];
+                if (position == start) {
+                    operations[size - 1]++;
+                    return;
+                }
+                if (position == start - 1) {
+                    operations[size - 2] = position;
+                    operations[size - 1]++;
+                    return;
+                }
+            }
+            add(REMOVED, position);
+        }
+
+        private void add(int type, int position) {
+            if (size == operations.length) {
+                operations = Arrays.copyOf(operations, size * 2);
+            }
+            operations[size++] = type;
+            operations[size++] = position;
+            operations[size++] = 1;
+        }
+    }
+
+    /**
+     * @return 目录未变化时返回缓存的排序结果（只读），否则返回 null
+     */
+    public static Snapshot getCached(File directory) {
+        Listing listing;
+        synchronized (CACHE) {
+            listing = CACHE.get(directory.getAbsolutePath());
+        }
+        if (listing != null
+                && listing.lastModified == directory.lastModified()
+                && listing.listedAt - listing.lastModified >= MTIME_GRANULARITY_MS) {
+            return listing.files;
+        }
+        return null;
+    }
+
+    /**
+     * 列出目录并排序（文件夹在前），目录未变化时直接返回缓存
+     * @return 排序后的文件列表（只读）
+     */
+    public static Snapshot list(File directory) {
+        Snapshot cached = getCached(directory);
+        if (cached != null) {
+            return cached;
+        }
+
+        long lastModified = directory.lastModified();
+        long listedAt = System.currentTimeMillis();
+        Perf.Span span = Perf.begin("DirectoryListingCache.listFiles");
+        File[] filesArray;
+        try {
+            filesArray = directory.listFiles();
+        } finally {
+            Perf.end(span);
+        }
+        List<File> sorted = FileUtils.sortFiles(filesArray != null ? Arrays.asList(filesArray) : new ArrayList<File>());
+        int directoryCount = 0;
+        while (directoryCount < sorted.size() && sorted.get(directoryCount).isDirectory()) {
+            directoryCount++;
+        }
+        Snapshot files = new Snapshot(sorted.toArray(new File[sorted.size()]), directoryCount);
+
+        synchronized (CACHE) {
+            CACHE.put(directory.getAbsolutePath(), new Listing(lastModified, listedAt, files));
+        }
+        return files;
+    }
+
+    /**
+     * 把目录中部分条目的变化合并到已有的列表中：不存在的删除，新出现的按排序插入。
+     * 只查询变化的条目，不重新列出目录。
+     * @param directory 目录
+     * @param current 界面正在显示的列表
+     * @param names 发生变化（创建、删除、移入、移出）的文件名
+     * @return 新列表和从 current 到新列表的修改
+     */
+    public static Update applyChanges(File directory, Snapshot current, Collection<String> names) {
+        Perf.Span span = Perf.begin("DirectoryListingCache.applyChanges");
+        try {
+            long lastModified = directory.lastModified();
+            long listedAt = System.currentTimeMillis();
+            ArrayList<File> files = new ArrayList<>(Arrays.asList(current.files));
+            int directories = current.directoryCount;
+            Update update = new Update();
+            for (String name : names) {
+                File file = new File(directory, name);
+                boolean exists = file.exists();
+                boolean isDirectory = exists && file.isDirectory();
+
+                int index = indexOf(files, 0, directories, name);
+                boolean wasDirectory = index >= 0;
+                if (index < 0) {
+                    index = indexOf(files, directories, files.size(), name);
+                }
+                if (index >= 0) {
+                    if (exists && isDirectory == wasDirectory) {
+                        // 删除后又以同样的类型创建，位置不变
+                        continue;
+                    }
+                    files.remove(index);
+                    if (wasDirectory) {
+                        directories--;
+                    }
+                    update.removed(index);
+                }
+                if (exists) {
+                    int position = isDirectory
+                        ? insertionPoint(files, 0, directories, name)
+                        : insertionPoint(files, directories, files.size(), name);
+                    files.add(position, file);
+                    if (isDirectory) {
+                        directories++;
+                    }
+                    update.inserted(position);
+                }
+            }
+            update.files = new Snapshot(files.toArray(new File[files.size()]), directories);
+
+            synchronized (CACHE) {
+                CACHE.put(directory.getAbsolutePath(), new Listing(lastModified, listedAt, update.files));
+            }
+            return update;
+        } finally {
+            Perf.end(span);
+        }
+    }
+
+    /**
+     * 在 [from, to) 中按名称二分查找，同名（忽略大小写）的几项中找大小写完全相同的
+     * @return 位置，没有时返回 -1
+     */
+    private static int indexOf(List<File> files, int from, int to, String name) {
+        int low = lowerBound(files, from, to, name);
+        for (int i = low; i < to && files.get(i).getName().compareToIgnoreCase(name) == 0; i++) {
+            if (files.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return 插入位置，与 {@link FileUtils#sortFiles} 的顺序一致，同名的插在后面
+     */
+    private static int insertionPoint(List<File> files, int from, int to, String name) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (files.get(mid).getName().compareToIgnoreCase(name) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int lowerBound(List<File> files, int from, int to, String name) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (files.get(mid).getName().compareToIgnoreCase(name) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
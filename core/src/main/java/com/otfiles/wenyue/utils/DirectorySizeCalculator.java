@@ -0,0 +1,243 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 递归统计文件夹大小和文件数量
+ *
+ * 每个文件夹作为一个 fork-join 子任务并行遍历，统计过程中会定期回调部分结果。
+ * 每个文件夹直接包含的文件大小、文件数和子文件夹列表按该文件夹的修改时间缓存，
+ * 再次统计时修改时间未变的文件夹不需要重新列目录。
+ * 注意：文件夹的修改时间只在其直接子项增删改名时变化，文件内容被追加不会使缓存失效。
+ */
+public class DirectorySizeCalculator {
+
+    // 部分结果回调的最小间隔
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    // 缓存的文件夹数量上限
+    private static final int MAX_CACHE_ENTRIES = 20000;
+
+    private static final Map<String, DirectoryEntry> CACHE =
+        new LinkedHashMap<String, DirectoryEntry>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DirectoryEntry> eldest) {
+                return size() > MAX_CACHE_ENTRIES;
+            }
+        };
+
+    public interface Listener {
+        /**
+         * 统计过程中的部分结果，在后台线程回调
+         */
+        void onProgress(Result partial);
+
+        /**
+         * 统计完成，在后台线程回调；任务被取消时不会回调
+         */
+        void onComplete(Result total);
+    }
+
+    /**
+     * 统计结果
+     */
+    public static class Result {
+        public final long bytes;
+        public final int files;
+        public final int directories;
+
+        public Result(long bytes, int files, int directories) {
+            this.bytes = bytes;
+            this.files = files;
+            this.directories = directories;
+        }
+    }
+
+    /**
+     * 一次统计任务，可以随时取消
+     */
+    public static class Task {
+        private volatile boolean cancelled;
+
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicInteger directories = new AtomicInteger();
+        private final AtomicLong lastReport = new AtomicLong();
+        private final Listener listener;
+
+        private Task(Listener listener) {
+            this.listener = listener;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        private Result snapshot() {
+            return new Result(bytes.get(), files.get(), directories.get());
+        }
+
+        private void maybeReport() {
+            long now = System.currentTimeMillis();
+            long last = lastReport.get();
+            if (now - last >= PROGRESS_INTERVAL_MS && lastReport.compareAndSet(last, now)) {
+                listener.onProgress(snapshot());
+            }
+        }
+    }
+
+    /**
+     * 文件夹直接包含的内容，按修改时间缓存
+     */
+    private static class DirectoryEntry {
+        final long lastModified;
+        final long bytes;
+        final int files;
+        final String[] subdirectories;
+
+        DirectoryEntry(long lastModified, long bytes, int files, String[] subdirectories) {
+            this.lastModified = lastModified;
+            this.bytes = bytes;
+            this.files = files;
+            this.subdirectories = subdirectories;
+        }
+    }
+
+    /**
+     * 在共享的 fork-join 线程池中异步统计
+     * @param roots 要统计的文件或文件夹
+     * @param listener 结果回调
+     * @return 统计任务，用于取消
+     */
+    public static Task calculate(final List<File> roots, Listener listener) {
+        final Task task = new Task(listener);
+        WorkerPools.forkJoin().execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<WalkAction> actions = new ArrayList<>();
+                for (File root : roots) {
+                    if (root.isDirectory()) {
+                        actions.add(new WalkAction(task, root));
+                    } else if (root.exists()) {
+                        task.bytes.addAndGet(root.length());
+                        task.files.incrementAndGet();
+                    }
+                }
+                invokeAll(actions);
+                if (!task.isCancelled()) {
+                    task.listener.onComplete(task.snapshot());
+                }
+            }
+        });
+        return task;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    private static class WalkAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Task task;
+        private final File directory;
+
+        WalkAction(Task task, File directory) {
+            this.task = task;
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            if (task.isCancelled()) {
+                return;
+            }
+
+            DirectoryEntry entry = scan(directory);
+            task.bytes.addAndGet(entry.bytes);
+            task.files.addAndGet(entry.files);
+            task.directories.incrementAndGet();
+            task.maybeReport();
+
+            if (entry.subdirectories.length == 0) {
+                return;
+            }
+            List<WalkAction> actions = new ArrayList<>(entry.subdirectories.length);
+            for (String name : entry.subdirectories) {
+                actions.add(new WalkAction(task, new File(directory, name)));
+            }
+            invokeAll(actions);
+        }
+    }
+
+    /**
+     * 列出文件夹的直接内容，修改时间未变时直接使用缓存
+     */
+    private static DirectoryEntry scan(File directory) {
+        String key = directory.getAbsolutePath();
+        long lastModified = directory.lastModified();
+
+        synchronized (CACHE) {
+            DirectoryEntry cached = CACHE.get(key);
+            if (cached != null && cached.lastModified == lastModified) {
+                return cached;
+            }
+        }
+
+        long bytes = 0;
+        int files = 0;
+        List<String> subdirectories = new ArrayList<>();
+        File[] children = directory.listFiles();
+        if (children != null) {
+            String canonicalPath = canonicalPath(directory);
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    // 跳过符号链接，避免重复统计或死循环
+                    if (canonicalPath != null && !isSymlink(canonicalPath, child)) {
+                        subdirectories.add(child.getName());
+                    }
+                } else {
+                    bytes += child.length();
+                    files++;
+                }
+            }
+        }
+
+        DirectoryEntry entry = new DirectoryEntry(lastModified, bytes, files,
+            subdirectories.toArray(new String[subdirectories.size()]));
+        synchronized (CACHE) {
+            CACHE.put(key, entry);
+        }
+        return entry;
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isSymlink(String canonicalParent, File child) {
+        String canonicalChild = canonicalPath(child);
+        return canonicalChild == null
+            || !canonicalChild.equals(new File(canonicalParent, child.getName()).getPath());
+    }
+}
@@ -0,0 +1,121 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内共享的已解码文档缓存
+ *
+ * 保存最近打开的文件窗口（包括窗口内的行起始位置），界面重建（如旋转屏幕）后可以直接复用，
+ * 不必重新读取和解码。按文件长度和修改时间校验，总大小超过预算时丢弃最久未使用的。
+ */
+public class DocumentCache {
+
+    // 缓存的窗口最多占用的内存
+    private static final long MEMORY_BUDGET = 16 * 1024 * 1024;
+
+    private static final LinkedHashMap<String, TextWindow> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static long memory;
+
+    /**
+     * @param path 文件路径
+     * @param anchor 需要包含在窗口内的字节偏移
+     * @return 文件未变化且窗口包含 anchor 时返回缓存的窗口，否则返回 null
+     */
+    public static TextWindow get(String path, long anchor) {
+        File file = new File(path);
+        TextWindow window = lookup(path);
+        if (window == null) {
+            return null;
+        }
+        boolean changed;
+        if (ZipIndex.isEntryPath(path)) {
+            // 压缩包中的文件按压缩包的修改时间校验
+            changed = window.getLastModified() != new File(ZipIndex.archiveOf(path)).lastModified();
+        } else if (DeflateIndex.isGzip(FileUtils.getFileExtension(path))) {
+            // 窗口记录的是解压后的长度，只按修改时间校验
+            changed = window.getLastModified() != file.lastModified();
+        } else {
+            changed = window.getFileLength() != file.length() || window.getLastModified() != file.lastModified();
+        }
+        return validate(path, window, changed, anchor);
+    }
+
+    /**
+     * 按调用者查询到的长度和修改时间校验，用于不能通过 {@link File} 查询的内容，如 content:// URI
+     */
+    public static TextWindow get(String path, long length, long lastModified, long anchor) {
+        TextWindow window = lookup(path);
+        if (window == null) {
+            return null;
+        }
+        boolean changed = window.getFileLength() != length || window.getLastModified() != lastModified;
+        return validate(path, window, changed, anchor);
+    }
+
+    private static TextWindow lookup(String path) {
+        synchronized (CACHE) {
+            return CACHE.get(key(path));
+        }
+    }
+
+    private static TextWindow validate(String path, TextWindow window, boolean changed, long anchor) {
+        if (changed) {
+            remove(path);
+            return null;
+        }
+        if (!window.isWholeFile() && (anchor < window.getStartByte() || anchor >= window.getEndByte())) {
+            return null;
+        }
+        return window;
+    }
+
+    /**
+     * @return URI 原样使用，文件路径转成绝对路径
+     */
+    private static String key(String path) {
+        return path.indexOf("://") >= 0 ? path : new File(path).getAbsolutePath();
+    }
+
+    /**
+     * 放入窗口，替换同一文件之前的窗口。读取失败得到的空窗口不缓存。
+     */
+    public static void put(TextWindow window) {
+        if (window.getLastModified() == 0) {
+            return;
+        }
+        synchronized (CACHE) {
+            TextWindow old = CACHE.put(key(window.getPath()), window);
+            if (old != null) {
+                memory -= old.estimateMemory();
+            }
+            memory += window.estimateMemory();
+
+            // 刚放入的窗口总是保留
+            Iterator<Map.Entry<String, TextWindow>> it = CACHE.entrySet().iterator();
+            while (memory > MEMORY_BUDGET && CACHE.size() > 1) {
+                Map.Entry<String, TextWindow> eldest = it.next();
+                memory -= eldest.getValue().estimateMemory();
+                it.remove();
+            }
+        }
+    }
+
+    public static void remove(String path) {
+        synchronized (CACHE) {
+            TextWindow old = CACHE.remove(key(path));
+            if (old != null) {
+                memory -= old.estimateMemory();
+            }
+        }
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+            memory = 0;
+        }
+    }
+}
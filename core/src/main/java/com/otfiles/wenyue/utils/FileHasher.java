@@ -0,0 +1,216 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 计算文件校验值
+ *
+ * 文件按窗口映射到内存，每次取出一小段同时喂给所有摘要算法，整个文件只读一遍。
+ * 结果按路径、大小和修改时间缓存，文件未变化时再次查看不需要重新读取。
+ */
+public class FileHasher {
+
+    public static final String[] ALGORITHMS = {"MD5", "SHA-1", "SHA-256"};
+
+    // 每次映射的窗口大小，避免在32位设备上一次映射整个大文件
+    private static final long MAP_WINDOW = 32L * 1024 * 1024;
+    // 每次交给摘要算法的数据块大小
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // 进度回调的最小间隔
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    private static final int MAX_CACHE_ENTRIES = 256;
+
+    private static final Map<String, CacheEntry> CACHE =
+        new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > MAX_CACHE_ENTRIES;
+            }
+        };
+
+    public interface Listener {
+        /**
+         * 计算进度，在后台线程回调
+         */
+        void onProgress(long hashedBytes, long totalBytes);
+
+        /**
+         * 计算完成，在后台线程回调；任务被取消时不会回调
+         * @param hashes 算法名到十六进制校验值的映射，顺序与 {@link #ALGORITHMS} 一致
+         */
+        void onComplete(Map<String, String> hashes);
+
+        /**
+         * 读取失败，在后台线程回调
+         */
+        void onError(IOException e);
+    }
+
+    /**
+     * 一次计算任务，可以随时取消
+     */
+    public static class Task {
+        private volatile boolean cancelled;
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static class CacheEntry {
+        final long length;
+        final long lastModified;
+        final Map<String, String> hashes;
+
+        CacheEntry(long length, long lastModified, Map<String, String> hashes) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.hashes = hashes;
+        }
+    }
+
+    /**
+     * 获取缓存的校验值
+     * @param file 文件
+     * @return 文件未变化时返回缓存的校验值，否则返回 null
+     */
+    public static Map<String, String> getCached(File file) {
+        String key = file.getAbsolutePath();
+        synchronized (CACHE) {
+            CacheEntry entry = CACHE.get(key);
+            if (entry != null && entry.length == file.length() && entry.lastModified == file.lastModified()) {
+                return entry.hashes;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在后台线程计算校验值
+     * @param file 文件
+     * @param listener 结果回调
+     * @return 计算任务，用于取消
+     */
+    public static Task hash(final File file, final Listener listener) {
+        final Task task = new Task();
+        WorkerPools.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Map<String, String> hashes = computeHashes(file, task, listener);
+                    listener.onComplete(hashes);
+                } catch (CancellationException e) {
+                    // 已取消，不再回调
+                } catch (IOException e) {
+                    if (!task.isCancelled()) {
+                        listener.onError(e);
+                    }
+                }
+            }
+        });
+        return task;
+    }
+
+    /**
+     * 在当前线程计算校验值，并写入缓存
+     * @param file 文件
+     * @param task 用于检查是否取消，可以为 null
+     * @param listener 进度回调，可以为 null
+     * @return 算法名到十六进制校验值的映射
+     * @throws IOException 读取失败
+     * @throws CancellationException 任务被取消
+     */
+    public static Map<String, String> computeHashes(File file, Task task, Listener listener) throws IOException {
+        Map<String, String> cached = getCached(file);
+        if (cached != null) {
+            return cached;
+        }
+
+        long lastModified = file.lastModified();
+        MessageDigest[] digests = new MessageDigest[ALGORITHMS.length];
+        try {
+            for (int i = 0; i < ALGORITHMS.length; i++) {
+                digests[i] = MessageDigest.getInstance(ALGORITHMS[i]);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Digest algorithm not available", e);
+        }
+
+        FileInputStream fis = null;
+        long length;
+        try {
+            fis = new FileInputStream(file);
+            FileChannel channel = fis.getChannel();
+            length = channel.size();
+
+            byte[] chunk = new byte[CHUNK_SIZE];
+            long position = 0;
+            long lastReport = 0;
+            while (position < length) {
+                long windowSize = Math.min(MAP_WINDOW, length - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                while (window.hasRemaining()) {
+                    if (task != null && task.isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    // 每段数据只从映射内存中取出一次，再交给所有算法
+                    int count = Math.min(chunk.length, window.remaining());
+                    window.get(chunk, 0, count);
+                    for (MessageDigest digest : digests) {
+                        digest.update(chunk, 0, count);
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (listener != null && now - lastReport >= PROGRESS_INTERVAL_MS) {
+                        lastReport = now;
+                        listener.onProgress(position + window.position(), length);
+                    }
+                }
+                position += windowSize;
+            }
+        } finally {
+            if (fis != null) {
+                try {
+                    fis.close();
+                } catch (IOException e) {
+                    // 忽略关闭异常
+                }
+            }
+        }
+
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (int i = 0; i < ALGORITHMS.length; i++) {
+            hashes.put(ALGORITHMS[i], toHex(digests[i].digest()));
+        }
+        hashes = Collections.unmodifiableMap(hashes);
+
+        synchronized (CACHE) {
+            CACHE.put(file.getAbsolutePath(), new CacheEntry(length, lastModified, hashes));
+        }
+        return hashes;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] result = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            result[i * 2] = digits[(bytes[i] >> 4) & 0x0F];
+            result[i * 2 + 1] = digits[bytes[i] & 0x0F];
+        }
+        return new String(result);
+    }
+}
@@ -1,10 +1,5 @@
 package com.otfiles.wenyue.utils;
 
-import android.content.Context;
-import android.database.Cursor;
-import android.net.Uri;
-import android.provider.MediaStore;
-import android.util.Log;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
@@ -18,16 +13,26 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class FileUtils {
 
     private static final String TAG = "FileUtils";
+    // 不依赖 Android 的日志，在 Android 上会输出到 logcat
+    private static final Logger LOG = Logger.getLogger(TAG);
     
     // 常见编码的BOM标记
     private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
@@ -41,6 +46,9 @@ public class FileUtils {
         "UTF-8", "GBK", "GB2312", "ISO-8859-1", "Big5", 
         "UTF-16", "UTF-16BE", "UTF-16LE", "US-ASCII"
     };
+    
+    // 检测编码时每次尝试读取的大致字节数（InputStreamReader 的缓冲区大小）
+    private static final long DETECT_SAMPLE_BYTES = 8192;
 
     /**
      * 对文件列表进行排序：文件夹在前，文件在后，按名称排序
@@ -52,6 +60,15 @@ public class FileUtils {
             return new ArrayList<>();
         }
         
+        Perf.Span span = Perf.begin("FileUtils.sortFiles");
+        try {
+            return sortFilesUntimed(files);
+        } finally {
+            Perf.end(span);
+        }
+    }
+    
+    private static List<File> sortFilesUntimed(List<File> files) {
         // 分离文件夹和文件
         List<File> directories = new ArrayList<>();
         List<File> fileList = new ArrayList<>();
@@ -181,6 +198,16 @@ public class FileUtils {
             return "UTF-8"; // 默认返回UTF-8
         }
         
+        Perf.Span span = Perf.begin("FileUtils.detectEncoding");
+        try {
+            return detectEncodingUntimed(file);
+        } finally {
+            // 检测只读取文件开头，按一个缓冲区估计读取量
+            Perf.end(span, Math.min(file.length(), DETECT_SAMPLE_BYTES));
+        }
+    }
+    
+    private static String detectEncodingUntimed(File file) {
         // 首先检查BOM标记
         String encodingByBOM = detectEncodingByBOM(file);
         if (encodingByBOM != null) {
@@ -235,9 +262,9 @@ public class FileUtils {
             
             bis.reset();
         } catch (FileNotFoundException e) {
-            Log.e(TAG, "File not found: " + file.getAbsolutePath(), e);
+            LOG.log(Level.SEVERE, "File not found: " + file.getAbsolutePath(), e);
         } catch (IOException e) {
-            Log.e(TAG, "Error detecting encoding by BOM", e);
+            LOG.log(Level.SEVERE, "Error detecting encoding by BOM", e);
         } finally {
             try {
                 if (bis != null) {
@@ -247,7 +274,7 @@ public class FileUtils {
                     fis.close();
                 }
             } catch (IOException e) {
-                Log.e(TAG, "Error closing streams", e);
+                LOG.log(Level.SEVERE, "Error closing streams", e);
             }
         }
         
@@ -271,6 +298,59 @@ public class FileUtils {
         return "UTF-8";
     }
     
+    /**
+     * 根据流开头的内容检测编码，用于不能按文件读取的内容（如压缩包中的条目）。不关闭流。
+     * @param in 从内容开头开始的流
+     * @return 检测到的编码名称
+     * @throws IOException 读取失败
+     */
+    public static String detectEncoding(InputStream in) throws IOException {
+        byte[] sample = new byte[(int) DETECT_SAMPLE_BYTES];
+        int length = 0;
+        int n;
+        while (length < sample.length && (n = in.read(sample, length, sample.length - length)) > 0) {
+            length += n;
+        }
+        
+        if (length >= 3 && sample[0] == UTF8_BOM[0] && sample[1] == UTF8_BOM[1] && sample[2] == UTF8_BOM[2]) {
+            return "UTF-8";
+        }
+        if (length >= 4 && startsWith(sample, UTF32LE_BOM)) {
+            return "UTF-32LE";
+        }
+        if (length >= 4 && startsWith(sample, UTF32BE_BOM)) {
+            return "UTF-32BE";
+        }
+        if (length >= 2 && startsWith(sample, UTF16BE_BOM)) {
+            return "UTF-16BE";
+        }
+        if (length >= 2 && startsWith(sample, UTF16LE_BOM)) {
+            return "UTF-16LE";
+        }
+        
+        // 与按文件检测时的候选顺序相同；样本末尾被截断的字符不算错误
+        String[] candidateEncodings = {"GBK", "GB2312", "UTF-8", "ISO-8859-1", "Big5"};
+        for (String encoding : candidateEncodings) {
+            CharsetDecoder decoder = Charset.forName(encoding).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+            CharBuffer out = CharBuffer.allocate(length + 16);
+            if (!decoder.decode(ByteBuffer.wrap(sample, 0, length), out, false).isError()) {
+                return encoding;
+            }
+        }
+        return "UTF-8";
+    }
+    
+    private static boolean startsWith(byte[] data, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * 检查文件是否可以用指定编码正确读取
      */
@@ -297,10 +377,10 @@ public class FileUtils {
             
             return true;
         } catch (FileNotFoundException e) {
-            Log.e(TAG, "File not found: " + file.getAbsolutePath(), e);
+            LOG.log(Level.SEVERE, "File not found: " + file.getAbsolutePath(), e);
             return false;
         } catch (IOException e) {
-            Log.e(TAG, "Error validating encoding: " + encoding, e);
+            LOG.log(Level.SEVERE, "Error validating encoding: " + encoding, e);
             return false;
         } finally {
             try {
@@ -314,60 +394,37 @@ public class FileUtils {
                     fis.close();
                 }
             } catch (IOException e) {
-                Log.e(TAG, "Error closing streams", e);
+                LOG.log(Level.SEVERE, "Error closing streams", e);
             }
         }
     }
     
     /**
-     * 读取文件内容
+     * 读取文件内容，大文件在多个线程中分块解码
      * @param file 要读取的文件
      * @param encoding 文件编码
-     * @return 文件内容字符串
+     * @return 文件内容字符串，换行符统一为 \n，每行（包括最后一行）以 \n 结尾
      */
     public static String readFile(File file, String encoding) {
         if (file == null || !file.exists() || !file.isFile()) {
             return "";
         }
         
-        StringBuilder content = new StringBuilder();
-        FileInputStream fis = null;
-        InputStreamReader isr = null;
-        BufferedReader br = null;
-        
+        String content;
+        Perf.Span span = Perf.begin("FileUtils.readFile");
         try {
-            fis = new FileInputStream(file);
-            isr = new InputStreamReader(fis, encoding);
-            br = new BufferedReader(isr);
-            
-            String line;
-            while ((line = br.readLine()) != null) {
-                content.append(line).append("\n");
-            }
-            
+            // 与逐行读取的结果保持一致，解码时统一换行符
+            content = ParallelDecoder.decodeLines(file, encoding);
         } catch (FileNotFoundException e) {
-            Log.e(TAG, "File not found: " + file.getAbsolutePath(), e);
+            LOG.log(Level.SEVERE, "File not found: " + file.getAbsolutePath(), e);
             return "";
         } catch (IOException e) {
-            Log.e(TAG, "Error reading file: " + file.getAbsolutePath(), e);
+            LOG.log(Level.SEVERE, "Error reading file: " + file.getAbsolutePath(), e);
             return "";
         } finally {
-            try {
-                if (br != null) {
-                    br.close();
-                }
-                if (isr != null) {
-                    isr.close();
-                }
-                if (fis != null) {
-                    fis.close();
-                }
-            } catch (IOException e) {
-                Log.e(TAG, "Error closing streams", e);
-            }
+            Perf.end(span, file.length());
         }
-        
-        return content.toString();
+        return content;
     }
     
     /**
@@ -386,7 +443,7 @@ public class FileUtils {
         File parentDir = file.getParentFile();
         if (parentDir != null && !parentDir.exists()) {
             if (!parentDir.mkdirs()) {
-                Log.e(TAG, "Failed to create directory: " + parentDir.getAbsolutePath());
+                LOG.severe("Failed to create directory: " + parentDir.getAbsolutePath());
                 return false;
             }
         }
@@ -394,6 +451,7 @@ public class FileUtils {
         FileOutputStream fos = null;
         OutputStreamWriter osw = null;
         BufferedWriter bw = null;
+        Perf.Span span = Perf.begin("FileUtils.saveFile");
         
         try {
             fos = new FileOutputStream(file);
@@ -405,10 +463,10 @@ public class FileUtils {
             return true;
             
         } catch (FileNotFoundException e) {
-            Log.e(TAG, "File not found: " + file.getAbsolutePath(), e);
+            LOG.log(Level.SEVERE, "File not found: " + file.getAbsolutePath(), e);
             return false;
         } catch (IOException e) {
-            Log.e(TAG, "Error saving file: " + file.getAbsolutePath(), e);
+            LOG.log(Level.SEVERE, "Error saving file: " + file.getAbsolutePath(), e);
             return false;
         } finally {
             try {
@@ -422,8 +480,9 @@ public class FileUtils {
                     fos.close();
                 }
             } catch (IOException e) {
-                Log.e(TAG, "Error closing streams", e);
+                LOG.log(Level.SEVERE, "Error closing streams", e);
             }
+            Perf.end(span, file.length());
         }
     }
     
@@ -484,7 +543,15 @@ public class FileUtils {
             return "0 B";
         }
         
-        long size = file.length();
+        return formatFileSize(file.length());
+    }
+    
+    /**
+     * 格式化文件大小（带单位）
+     * @param size 字节数
+     * @return 格式化后的文件大小字符串
+     */
+    public static String formatFileSize(long size) {
         if (size < 1024) {
             return size + " B";
         } else if (size < 1024 * 1024) {
@@ -507,7 +574,7 @@ public class FileUtils {
         }
         
         long time = file.lastModified();
-        return android.text.format.DateFormat.format("yyyy-MM-dd HH:mm:ss", time).toString();
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault()).format(time);
     }
     
     /**
@@ -525,13 +592,15 @@ public class FileUtils {
         File parentDir = dest.getParentFile();
         if (parentDir != null && !parentDir.exists()) {
             if (!parentDir.mkdirs()) {
-                Log.e(TAG, "Failed to create directory: " + parentDir.getAbsolutePath());
+                LOG.severe("Failed to create directory: " + parentDir.getAbsolutePath());
                 return false;
             }
         }
         
         FileInputStream fis = null;
         FileOutputStream fos = null;
+        Perf.Span span = Perf.begin("FileUtils.copyFile");
+        long copied = 0;
         
         try {
             fis = new FileInputStream(src);
@@ -541,14 +610,15 @@ public class FileUtils {
             int length;
             while ((length = fis.read(buffer)) > 0) {
                 fos.write(buffer, 0, length);
+                copied += length;
             }
             
             return true;
         } catch (FileNotFoundException e) {
-            Log.e(TAG, "File not found: " + src.getAbsolutePath(), e);
+            LOG.log(Level.SEVERE, "File not found: " + src.getAbsolutePath(), e);
             return false;
         } catch (IOException e) {
-            Log.e(TAG, "Error copying file", e);
+            LOG.log(Level.SEVERE, "Error copying file", e);
             return false;
         } finally {
             try {
@@ -559,8 +629,9 @@ public class FileUtils {
                     fos.close();
                 }
             } catch (IOException e) {
-                Log.e(TAG, "Error closing streams", e);
+                LOG.log(Level.SEVERE, "Error closing streams", e);
             }
+            Perf.end(span, copied);
         }
     }
     
@@ -625,87 +696,4 @@ public class FileUtils {
         File file = new File(path);
         return file.exists();
     }
-    
-    /**
-     * 从Uri获取文件路径
-     * @param context 上下文
-     * @param uri 文件的Uri
-     * @return 文件路径
-     */
-    /*public static String getPathFromUri(Context context, Uri uri) {
-        if (uri == null) {
-            return null;
-        }
-        
-        // 如果Uri是文件协议，直接返回路径
-        if ("file".equals(uri.getScheme())) {
-            return uri.getPath();
-        }
-        
-        // 如果是content协议，尝试通过ContentResolver查询
-        if ("content".equals(uri.getScheme())) {
-            Cursor cursor = null;
-            try {
-                String[] projection = {MediaStore.Images.Media.DATA};
-                cursor = context.getContentResolver().query(uri, projection, null, null, null);
-                if (cursor != null && cursor.moveToFirst()) {
-                    int columnIndex = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-                    return cursor.getString(columnIndex);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error getting path from URI: " + e.getMessage());
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
-                }
-            }
-        }
-        
-        // 如果以上都不行，返回null
-        return null;
-    }*/
-    
-    public static String getPathFromUri(Context context, Uri uri) {
-        if (uri == null) {
-            return null;
-        }
-        
-        // 如果Uri是文件协议，直接返回路径
-        if ("file".equals(uri.getScheme())) {
-            return uri.getPath();
-        }
-        
-        // 如果是content协议，尝试通过ContentResolver查询
-        if ("content".equals(uri.getScheme())) {
-            Cursor cursor = null;
-            try {
-                String[] projection = {MediaStore.Images.Media.DATA};
-                cursor = context.getContentResolver().query(uri, projection, null, null, null);
-                if (cursor != null && cursor.moveToFirst()) {
-                    int columnIndex = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-                    return cursor.getString(columnIndex);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error getting path from URI: " + e.getMessage());
-                
-                // 如果上述方法失败，尝试另一种方法
-                try {
-                    InputStream inputStream = context.getContentResolver().openInputStream(uri);
-                    if (inputStream != null) {
-                        // 对于某些特殊URI，我们无法获取路径，只能返回null
-                        inputStream.close();
-                    }
-                } catch (IOException ioException) {
-                    Log.e(TAG, "Error opening stream from URI: " + ioException.getMessage());
-                }
-            } finally {
-                if (cursor != null) {
-                    cursor.close();
-                }
-            }
-        }
-        
-        // 如果以上都不行，返回null
-        return null;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package com.otfiles.wenyue.utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 记录当前是否有前台任务（用户正在等待的加载）在进行
+ * 低优先级的后台任务在读取磁盘前检查这里，有前台任务时先暂停让路
+ */
+public class ForegroundWork {
+
+    // 前台任务结束后再等待一小段时间，避免连续操作之间被后台任务插队
+    private static final long SETTLE_MS = 300;
+    private static final long POLL_MS = 50;
+
+    private static final AtomicInteger active = new AtomicInteger();
+    private static volatile long lastEnded;
+
+    /**
+     * 前台任务开始，必须与 {@link #end()} 成对调用
+     */
+    public static void begin() {
+        active.incrementAndGet();
+    }
+
+    public static void end() {
+        lastEnded = System.currentTimeMillis();
+        active.decrementAndGet();
+    }
+
+    public static boolean isBusy() {
+        return active.get() > 0 || System.currentTimeMillis() - lastEnded < SETTLE_MS;
+    }
+
+    /**
+     * 阻塞直到没有前台任务
+     * @throws InterruptedException 等待时线程被中断
+     */
+    public static void awaitIdle() throws InterruptedException {
+        while (isBusy()) {
+            Thread.sleep(POLL_MS);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 以十六进制查看的二进制文件
+ *
+ * 按 {@link #PAGE_SIZE} 字节分页映射到内存，只保留最近用到的 {@link #MAX_PAGES} 页，
+ * 打开文件时不读取内容，几 GB 的文件也可以立即显示。
+ * 查找时按块读入同一个缓冲区顺序扫描，用 Horspool 算法跳过不可能匹配的位置。
+ */
+public class HexFile implements Closeable {
+
+    public static final int PAGE_SIZE = 4096;
+    // 最多保留的映射页数
+    private static final int MAX_PAGES = 256;
+    // 查找时每次读取的大小
+    private static final int SEARCH_CHUNK = 4 * 1024 * 1024;
+    // 判断是否为二进制文件时检查的字节数
+    private static final int SNIFF_BYTES = 4096;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * 查找进度
+     */
+    public interface Progress {
+        /**
+         * @param position 已经检查到的位置
+         * @return 返回 false 时停止查找
+         */
+        boolean onProgress(long position);
+    }
+
+    private final Closeable file;
+    private final FileChannel channel;
+    private final long length;
+    private final LinkedHashMap<Long, MappedByteBuffer> pages =
+        new LinkedHashMap<Long, MappedByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                return size() > MAX_PAGES;
+            }
+        };
+
+    public HexFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        this.file = raf;
+        this.channel = raf.getChannel();
+        this.length = channel.size();
+    }
+
+    /**
+     * 映射已经打开的通道，如 content:// URI 的文件描述符
+     * @param owner 通道所属的资源，关闭时一起关闭
+     */
+    public HexFile(FileChannel channel, Closeable owner) throws IOException {
+        this.file = owner;
+        this.channel = channel;
+        this.length = channel.size();
+    }
+
+    public long length() {
+        return length;
+    }
+
+    /**
+     * @return 每行 bytesPerRow 字节时的行数
+     */
+    public long getRowCount(int bytesPerRow) {
+        return (length + bytesPerRow - 1) / bytesPerRow;
+    }
+
+    /**
+     * 读取字节，可以跨页
+     * @return 实际读取的字节数，到达文件末尾时可能少于 count
+     */
+    public synchronized int read(long offset, byte[] buffer, int start, int count) throws IOException {
+        int read = 0;
+        while (read < count && offset + read < length) {
+            long position = offset + read;
+            long pageIndex = position / PAGE_SIZE;
+            MappedByteBuffer page = page(pageIndex);
+            int inPage = (int) (position - pageIndex * PAGE_SIZE);
+            int n = Math.min(count - read, page.limit() - inPage);
+            for (int i = 0; i < n; i++) {
+                buffer[start + read + i] = page.get(inPage + i);
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    private MappedByteBuffer page(long index) throws IOException {
+        MappedByteBuffer page = pages.get(index);
+        if (page == null) {
+            long start = index * PAGE_SIZE;
+            page = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(PAGE_SIZE, length - start));
+            pages.put(index, page);
+        }
+        return page;
+    }
+
+    /**
+     * 从 from 开始向后查找
+     * @param progress 可以为 null
+     * @return 匹配的位置，没有找到或被停止时返回 -1
+     */
+    public long find(byte[] pattern, long from, Progress progress) throws IOException {
+        int m = pattern.length;
+        if (m == 0 || from < 0) {
+            return -1;
+        }
+        Perf.Span span = Perf.begin("HexFile.find");
+        long scanned = 0;
+        try {
+            int[] shift = new int[256];
+            for (int i = 0; i < 256; i++) {
+                shift[i] = m;
+            }
+            for (int i = 0; i < m - 1; i++) {
+                shift[pattern[i] & 0xFF] = m - 1 - i;
+            }
+            if (from + m > length) {
+                return -1;
+            }
+            byte[] chunk = new byte[(int) Math.max(m, Math.min(SEARCH_CHUNK, length - from))];
+            ByteBuffer buffer = ByteBuffer.wrap(chunk);
+            // chunk[0] 在文件中的位置
+            long chunkStart = from;
+            long readPosition = from;
+            while (true) {
+                while (buffer.hasRemaining() && readPosition < length) {
+                    int n = channel.read(buffer, readPosition);
+                    if (n < 0) {
+                        break;
+                    }
+                    readPosition += n;
+                }
+                int size = buffer.position();
+                int i = 0;
+                while (i + m <= size) {
+                    int j = m - 1;
+                    while (j >= 0 && chunk[i + j] == pattern[j]) {
+                        j--;
+                    }
+                    if (j < 0) {
+                        return chunkStart + i;
+                    }
+                    i += shift[chunk[i + m - 1] & 0xFF];
+                }
+                scanned = readPosition - from;
+                if (readPosition >= length || size < m) {
+                    return -1;
+                }
+                // 保留末尾 m - 1 字节接在下一块前面，跨块的匹配不会漏掉
+                int keep = m - 1;
+                System.arraycopy(chunk, size - keep, chunk, 0, keep);
+                chunkStart += size - keep;
+                buffer.clear();
+                buffer.position(keep);
+                if (progress != null && !progress.onProgress(chunkStart)) {
+                    return -1;
+                }
+            }
+        } finally {
+            Perf.end(span, scanned);
+        }
+    }
+
+    /**
+     * 格式化一行：偏移、十六进制字节和可打印的 ASCII 字符
+     * @param count 这一行实际的字节数，最后一行可能少于 bytesPerRow
+     */
+    public static void formatRow(long offset, byte[] bytes, int count, int bytesPerRow, StringBuilder out) {
+        int digits = offsetDigits(offset);
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            out.append(HEX[(int) (offset >>> shift) & 0xF]);
+        }
+        out.append("  ");
+        for (int i = 0; i < bytesPerRow; i++) {
+            if (i < count) {
+                out.append(HEX[(bytes[i] >> 4) & 0xF]).append(HEX[bytes[i] & 0xF]);
+            } else {
+                out.append("  ");
+            }
+            // 每 8 个字节多空一格
+            out.append(i % 8 == 7 && i + 1 < bytesPerRow ? "  " : " ");
+        }
+        out.append(' ');
+        for (int i = 0; i < count; i++) {
+            int b = bytes[i] & 0xFF;
+            out.append(b >= 0x20 && b < 0x7F ? (char) b : '.');
+        }
+    }
+
+    /**
+     * @return formatRow 格式化的一行中第 index 个字节的十六进制在行中的位置
+     */
+    public static int hexColumn(long offset, int index) {
+        return offsetDigits(offset) + 2 + index * 3 + index / 8;
+    }
+
+    /**
+     * @return formatRow 格式化的一行中第 index 个字节的字符在行中的位置
+     */
+    public static int charColumn(long offset, int index, int bytesPerRow) {
+        // 十六进制部分每个字节占 3 格，每 8 个字节之间多 1 格，之后再空 1 格
+        return offsetDigits(offset) + 2 + bytesPerRow * 3 + (bytesPerRow - 1) / 8 + 1 + index;
+    }
+
+    /**
+     * @return 偏移的十六进制位数，至少 8 位，超过 4 GB 的偏移再加位数
+     */
+    private static int offsetDigits(long offset) {
+        return Math.max(8, (64 - Long.numberOfLeadingZeros(offset) + 3) / 4);
+    }
+
+    /**
+     * 解析查找的内容：用引号括起来的文字按 UTF-8 编码，否则按空格分隔的十六进制字节
+     * @return 格式错误时返回 null
+     */
+    public static byte[] parsePattern(String text) {
+        text = text.trim();
+        if (text.length() >= 2 && text.startsWith("\"") && text.endsWith("\"")) {
+            return text.substring(1, text.length() - 1).getBytes(Charset.forName("UTF-8"));
+        }
+        String digits = text.replaceAll("\\s+", "");
+        if (digits.isEmpty() || digits.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[digits.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(digits.charAt(i * 2), 16);
+            int low = Character.digit(digits.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * 解析偏移：0x 开头为十六进制，否则为十进制
+     * @return 格式错误时返回 -1
+     */
+    public static long parseOffset(String text) {
+        text = text.trim();
+        try {
+            if (text.startsWith("0x") || text.startsWith("0X")) {
+                return Long.parseLong(text.substring(2), 16);
+            }
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 根据开头的内容判断是否为二进制文件：含有 NUL 字节或较多控制字符
+     */
+    public static boolean isBinary(File file) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            return isBinary(in);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 根据流开头的内容判断是否为二进制文件，不关闭流
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        byte[] buffer = new byte[SNIFF_BYTES];
+        int n = 0;
+        int r;
+        while (n < buffer.length && (r = in.read(buffer, n, buffer.length - n)) > 0) {
+            n += r;
+        }
+        // UTF-16 文本含有大量 NUL，有 BOM 时按文本处理
+        if (n >= 2 && ((buffer[0] & 0xFF) == 0xFE && (buffer[1] & 0xFF) == 0xFF
+                || (buffer[0] & 0xFF) == 0xFF && (buffer[1] & 0xFF) == 0xFE)) {
+            return false;
+        }
+        int control = 0;
+        for (int i = 0; i < n; i++) {
+            int b = buffer[i] & 0xFF;
+            if (b == 0) {
+                return true;
+            }
+            if (b < 0x20 && b != '\n' && b != '\r' && b != '\t' && b != '\f' && b != 0x1B) {
+                control++;
+            }
+        }
+        return control * 10 > n;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        pages.clear();
+        file.close();
+    }
+}
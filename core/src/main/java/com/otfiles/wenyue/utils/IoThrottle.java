@@ -0,0 +1,16 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.IOException;
+
+/**
+ * 读取磁盘前的节流检查，由调用方决定是否等待、是否允许继续读取
+ */
+public interface IoThrottle {
+
+    /**
+     * 在读取指定字节数之前调用
+     * @param bytes 即将读取的字节数
+     * @throws IOException 不允许继续读取（超出预算或已取消）
+     */
+    void acquire(long bytes) throws IOException;
+}
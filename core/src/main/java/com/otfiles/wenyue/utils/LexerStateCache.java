@@ -0,0 +1,177 @@
+package com.otfiles.wenyue.utils;
+
+import java.util.Arrays;
+
+/**
+ * 语法高亮的逐行状态缓存
+ *
+ * 记录文本每一行的起始位置和 {@link SyntaxLexer} 在行尾的状态。
+ * 编辑时只移动受影响行之后的记录，并把被修改的行标记为未知；
+ * 重新分析时从被修改的行向后进行，某一行的新结束状态与原来相同时后面的状态都仍然有效。
+ * 某一行之前很远都没有已知状态时，从向前 {@link #SYNC_LINES} 行处按初始状态开始分析，
+ * 不需要从文本开头分析。
+ *
+ * 所有方法都是线程安全的，状态只接受与当前文本版本一致的写入。
+ */
+public class LexerStateCache {
+
+    public static final int UNKNOWN = -1;
+    // 没有已知状态时最多向前多少行开始分析
+    public static final int SYNC_LINES = 200;
+
+    private int[] lineStarts = new int[16];
+    private int[] endStates = new int[16];
+    private int lineCount;
+    private int generation;
+    // 被编辑过、之后的状态尚未重新确认的第一行，没有时为 -1
+    private int dirtyLine = -1;
+
+    /**
+     * 文本整体替换后重建行索引，清空所有状态
+     */
+    public synchronized void reset(CharSequence text) {
+        lineCount = 0;
+        generation++;
+        dirtyLine = -1;
+        addLine(0, 0);
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                addLine(lineCount, i + 1);
+            }
+        }
+    }
+
+    /**
+     * 文本被编辑后调用
+     * @param text 编辑后的文本
+     * @param start 编辑的起始位置
+     * @param before 被替换的字符数
+     * @param count 新插入的字符数
+     * @param removedNewlines 被替换的字符中的换行符数
+     */
+    public synchronized void onTextChanged(CharSequence text, int start, int before, int count, int removedNewlines) {
+        generation++;
+        int line = lineOfOffset(start);
+        // 删除被替换内容中的行
+        int removeFrom = line + 1;
+        int removeTo = Math.min(lineCount, removeFrom + removedNewlines);
+        System.arraycopy(lineStarts, removeTo, lineStarts, removeFrom, lineCount - removeTo);
+        System.arraycopy(endStates, removeTo, endStates, removeFrom, lineCount - removeTo);
+        lineCount -= removeTo - removeFrom;
+
+        int delta = count - before;
+        for (int i = removeFrom; i < lineCount; i++) {
+            lineStarts[i] += delta;
+        }
+
+        // 插入新内容中的行
+        int inserted = 0;
+        for (int i = start; i < start + count; i++) {
+            if (text.charAt(i) == '\n') {
+                inserted++;
+                addLine(line + inserted, i + 1);
+            }
+        }
+        Arrays.fill(endStates, line, line + inserted + 1, UNKNOWN);
+        dirtyLine = dirtyLine < 0 ? line : Math.min(dirtyLine, line);
+    }
+
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    public synchronized int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return 字符位置所在的行
+     */
+    public synchronized int lineOfOffset(int offset) {
+        int index = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    /**
+     * @return 行的起始位置
+     */
+    public synchronized int lineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /**
+     * @param textLength 文本长度
+     * @return 行的结束位置，不包含换行符
+     */
+    public synchronized int lineEnd(int line, int textLength) {
+        return line + 1 < lineCount ? lineStarts[line + 1] - 1 : textLength;
+    }
+
+    /**
+     * 找到分析 line 行时应该开始的行：向前找到最近的开始状态已知的行，
+     * 超过 {@link #SYNC_LINES} 行都没有时返回 line - SYNC_LINES，按初始状态开始。
+     * 前面不远处有被编辑过的行时从那一行开始，使编辑的影响传递下来；
+     * 被编辑的行很远时直接放弃它之后的所有状态
+     */
+    public synchronized int findStartLine(int line) {
+        if (dirtyLine >= 0 && dirtyLine < line) {
+            if (line - dirtyLine <= SYNC_LINES) {
+                line = dirtyLine;
+            } else {
+                Arrays.fill(endStates, dirtyLine, lineCount, UNKNOWN);
+                dirtyLine = -1;
+            }
+        }
+        int limit = Math.max(0, line - SYNC_LINES);
+        for (int i = line; i > limit; i--) {
+            if (endStates[i - 1] != UNKNOWN) {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * @return 行开始时的状态，未知时返回初始状态
+     */
+    public synchronized int startStateOf(int line) {
+        if (line == 0 || endStates[line - 1] == UNKNOWN) {
+            return SyntaxLexer.INITIAL;
+        }
+        return endStates[line - 1];
+    }
+
+    /**
+     * 保存从 firstLine 开始连续若干行的结束状态。最后一行的新状态与原来不同时，
+     * 后面各行原来的状态不再可信，全部标记为未知
+     * @param expectedGeneration 分析时的文本版本，与当前版本不同时不保存
+     * @return 是否已保存
+     */
+    public synchronized boolean commit(int expectedGeneration, int firstLine, int[] states, int count) {
+        if (expectedGeneration != generation || firstLine + count > lineCount) {
+            return false;
+        }
+        int last = firstLine + count - 1;
+        boolean converged = count > 0 && endStates[last] == states[count - 1];
+        System.arraycopy(states, 0, endStates, firstLine, count);
+        if (!converged) {
+            Arrays.fill(endStates, last + 1, lineCount, UNKNOWN);
+        }
+        if (dirtyLine >= firstLine && dirtyLine <= last) {
+            dirtyLine = -1;
+        }
+        return true;
+    }
+
+    private void addLine(int index, int start) {
+        if (lineCount == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+            endStates = Arrays.copyOf(endStates, lineCount * 2);
+        }
+        System.arraycopy(lineStarts, index, lineStarts, index + 1, lineCount - index);
+        System.arraycopy(endStates, index, endStates, index + 1, lineCount - index);
+        lineStarts[index] = start;
+        endStates[index] = UNKNOWN;
+        lineCount++;
+    }
+}
@@ -0,0 +1,82 @@
+package com.otfiles.wenyue.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 进程内共享的 Markdown 解析结果缓存
+ *
+ * 按文件路径保存窗口内容的解析结果，用窗口的文件长度、修改时间和起始位置校验。
+ * 重新打开同一个文件时可以直接设置样式，不必重新解析。总大小超过预算时丢弃最久未使用的。
+ */
+public class MarkdownCache {
+
+    // 缓存的解析结果最多占用的内存
+    private static final long MEMORY_BUDGET = 4 * 1024 * 1024;
+
+    private static final class Entry {
+        final long fileLength;
+        final long lastModified;
+        final long startByte;
+        final MarkdownParser.Document document;
+
+        Entry(TextWindow window, MarkdownParser.Document document) {
+            this.fileLength = window.getFileLength();
+            this.lastModified = window.getLastModified();
+            this.startByte = window.getStartByte();
+            this.document = document;
+        }
+
+        boolean matches(TextWindow window) {
+            return fileLength == window.getFileLength() && lastModified == window.getLastModified()
+                && startByte == window.getStartByte();
+        }
+    }
+
+    private static final LinkedHashMap<String, Entry> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static long memory;
+
+    /**
+     * @return 窗口内容未变化时返回缓存的解析结果，否则返回 null
+     */
+    public static MarkdownParser.Document get(TextWindow window) {
+        synchronized (CACHE) {
+            Entry entry = CACHE.get(window.getPath());
+            return entry != null && entry.matches(window) ? entry.document : null;
+        }
+    }
+
+    /**
+     * 放入窗口内容的解析结果，替换同一文件之前的结果。读取失败得到的空窗口不缓存。
+     */
+    public static void put(TextWindow window, MarkdownParser.Document document) {
+        if (window.getLastModified() == 0) {
+            return;
+        }
+        synchronized (CACHE) {
+            Entry old = CACHE.put(window.getPath(), new Entry(window, document));
+            if (old != null) {
+                memory -= old.document.estimateMemory();
+            }
+            memory += document.estimateMemory();
+
+            // 刚放入的结果总是保留
+            Iterator<Map.Entry<String, Entry>> it = CACHE.entrySet().iterator();
+            while (memory > MEMORY_BUDGET && CACHE.size() > 1) {
+                Map.Entry<String, Entry> eldest = it.next();
+                memory -= eldest.getValue().document.estimateMemory();
+                it.remove();
+            }
+        }
+    }
+
+    public static void remove(String path) {
+        synchronized (CACHE) {
+            Entry old = CACHE.remove(path);
+            if (old != null) {
+                memory -= old.document.estimateMemory();
+            }
+        }
+    }
+}
@@ -0,0 +1,676 @@
+package com.otfiles.wenyue.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Markdown 解析
+ *
+ * 先按行把文本分成块（段落、标题、代码块、引用、列表、分隔线），再解析每块内的强调、代码和链接，
+ * 结果是每块一组样式区间（相对于块的开头），不依赖 Android，可以在后台线程运行。
+ * 块按内容的哈希复用：重新解析编辑后的文本时，内容没有变化的块直接沿用上一次的结果。
+ */
+public class MarkdownParser {
+
+    // 块的种类
+    public static final int PARAGRAPH = 0;
+    public static final int HEADING = 1;
+    public static final int CODE_BLOCK = 2;
+    public static final int QUOTE = 3;
+    public static final int LIST = 4;
+    public static final int RULE = 5;
+
+    // 样式，1 到 6 是标题级别
+    public static final int STYLE_BOLD = 7;
+    public static final int STYLE_ITALIC = 8;
+    public static final int STYLE_STRIKE = 9;
+    public static final int STYLE_CODE = 10;
+    public static final int STYLE_CODE_BLOCK = 11;
+    public static final int STYLE_LINK = 12;
+    public static final int STYLE_QUOTE = 13;
+    public static final int STYLE_BULLET = 14;
+    // 标记符号本身，如 **、#、>
+    public static final int STYLE_MARKUP = 15;
+
+    private static final int[] NO_RUNS = new int[0];
+
+    /**
+     * 一个块的解析结果，与块在文本中的位置无关，可以在多次解析之间共享
+     */
+    public static final class Block {
+        private final int kind;
+        private final int length;
+        private final long hash;
+        // 每三个数一组：起始、结束（相对于块的开头）、样式
+        private final int[] runs;
+
+        Block(int kind, int length, long hash, int[] runs) {
+            this.kind = kind;
+            this.length = length;
+            this.hash = hash;
+            this.runs = runs;
+        }
+
+        public int getKind() {
+            return kind;
+        }
+
+        public int getLength() {
+            return length;
+        }
+
+        public int getRunCount() {
+            return runs.length / 3;
+        }
+
+        public int getRunStart(int index) {
+            return runs[index * 3];
+        }
+
+        public int getRunEnd(int index) {
+            return runs[index * 3 + 1];
+        }
+
+        public int getRunStyle(int index) {
+            return runs[index * 3 + 2];
+        }
+
+        long estimateMemory() {
+            return 48 + runs.length * 4L;
+        }
+    }
+
+    /**
+     * 整个文本的解析结果
+     */
+    public static final class Document {
+        private final int[] starts;
+        private final Block[] blocks;
+
+        Document(int[] starts, Block[] blocks) {
+            this.starts = starts;
+            this.blocks = blocks;
+        }
+
+        public int getBlockCount() {
+            return blocks.length;
+        }
+
+        public int getBlockStart(int index) {
+            return starts[index];
+        }
+
+        public Block getBlock(int index) {
+            return blocks[index];
+        }
+
+        public long estimateMemory() {
+            long memory = 32 + starts.length * 4L;
+            for (Block block : blocks) {
+                memory += block.estimateMemory();
+            }
+            return memory;
+        }
+    }
+
+    /**
+     * 逐块接收解析结果
+     */
+    public interface BlockSink {
+        /**
+         * @param start 块在文本中的起始位置
+         * @param reused 是否沿用了上一次解析的结果
+         * @return 返回 false 时停止解析
+         */
+        boolean block(int start, Block block, boolean reused);
+    }
+
+    public static boolean isMarkdown(String extension) {
+        return "md".equals(extension) || "markdown".equals(extension)
+            || "mdown".equals(extension) || "mkd".equals(extension);
+    }
+
+    /**
+     * 解析文本
+     * @param previous 上一次的解析结果，内容相同的块直接复用，可以为 null
+     * @param sink 可以为 null
+     * @return 解析结果，被 sink 停止时返回 null
+     */
+    public static Document parse(CharSequence text, Document previous, BlockSink sink) {
+        Map<Long, Block> reusable = new HashMap<>();
+        if (previous != null) {
+            for (Block block : previous.blocks) {
+                reusable.put(block.hash, block);
+            }
+        }
+        int[] ranges = split(text);
+        int count = ranges.length / 3;
+        int[] starts = new int[count];
+        Block[] blocks = new Block[count];
+        for (int i = 0; i < count; i++) {
+            int start = ranges[i * 3];
+            int end = ranges[i * 3 + 1];
+            int kind = ranges[i * 3 + 2];
+            long hash = hash(text, start, end, kind);
+            Block block = reusable.get(hash);
+            boolean reused = block != null && block.length == end - start;
+            if (!reused) {
+                block = new Block(kind, end - start, hash, parseBlock(text, start, end, kind));
+            }
+            starts[i] = start;
+            blocks[i] = block;
+            if (sink != null && !sink.block(start, block, reused)) {
+                return null;
+            }
+        }
+        return new Document(starts, blocks);
+    }
+
+    /**
+     * 按行分块
+     * @return 每三个数一组：起始、结束（不含最后的换行符）、种类
+     */
+    static int[] split(CharSequence text) {
+        IntList ranges = new IntList();
+        int length = text.length();
+        int kind = -1;
+        int blockStart = 0;
+        int blockEnd = 0;
+        char fence = 0;
+        int lineStart = 0;
+        while (lineStart <= length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int indent = indentOf(text, lineStart, lineEnd);
+            int content = skipSpaces(text, lineStart, lineEnd);
+            boolean blank = content == lineEnd;
+
+            if (kind == CODE_BLOCK && fence != 0) {
+                // 围栏代码块一直到结束的围栏
+                blockEnd = lineEnd;
+                if (lineStart > blockStart && isFence(text, content, lineEnd, fence)) {
+                    ranges.add(blockStart, blockEnd, kind);
+                    kind = -1;
+                }
+            } else if (blank) {
+                // 缩进代码块中的空行要看后面是否还有缩进的行
+                if (kind >= 0 && kind != CODE_BLOCK) {
+                    ranges.add(blockStart, blockEnd, kind);
+                    kind = -1;
+                }
+            } else if (kind == CODE_BLOCK && indent >= 4) {
+                blockEnd = lineEnd;
+            } else if (kind == PARAGRAPH && indent < 4 && isSetextUnderline(text, content, lineEnd)) {
+                ranges.add(blockStart, lineEnd, HEADING);
+                kind = -1;
+            } else {
+                int lineKind = lineKind(text, content, lineEnd, indent, kind);
+                if (kind == CODE_BLOCK && lineKind != CODE_BLOCK) {
+                    ranges.add(blockStart, blockEnd, kind);
+                    kind = -1;
+                }
+                boolean continues = kind >= 0 && (lineKind == kind && (kind == QUOTE || kind == LIST)
+                    || lineKind == PARAGRAPH && (kind == PARAGRAPH || kind == QUOTE || kind == LIST));
+                if (continues) {
+                    blockEnd = lineEnd;
+                } else {
+                    if (kind >= 0) {
+                        ranges.add(blockStart, blockEnd, kind);
+                    }
+                    kind = lineKind;
+                    blockStart = lineStart;
+                    blockEnd = lineEnd;
+                    fence = 0;
+                    if (kind == CODE_BLOCK && indent < 4) {
+                        fence = text.charAt(content);
+                    } else if (kind == HEADING || kind == RULE) {
+                        ranges.add(blockStart, blockEnd, kind);
+                        kind = -1;
+                    }
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        if (kind >= 0) {
+            ranges.add(blockStart, blockEnd, kind);
+        }
+        return ranges.toArray();
+    }
+
+    /**
+     * @param current 当前所在块的种类，段落中缩进的行不是代码块
+     */
+    private static int lineKind(CharSequence text, int start, int end, int indent, int current) {
+        if (indent >= 4) {
+            return current == PARAGRAPH || current == LIST || current == QUOTE ? PARAGRAPH : CODE_BLOCK;
+        }
+        char c = text.charAt(start);
+        if (c == '#' && headingLevel(text, start, end) > 0) {
+            return HEADING;
+        }
+        if ((c == '`' || c == '~') && isFence(text, start, end, c)) {
+            return CODE_BLOCK;
+        }
+        if (c == '>') {
+            return QUOTE;
+        }
+        if ((c == '-' || c == '*' || c == '_') && isRule(text, start, end)) {
+            return RULE;
+        }
+        if (listMarkerEnd(text, start, end) > 0) {
+            return LIST;
+        }
+        return PARAGRAPH;
+    }
+
+    private static int[] parseBlock(CharSequence text, int start, int end, int kind) {
+        IntList runs = new IntList();
+        switch (kind) {
+            case HEADING:
+                parseHeading(text, start, end, runs);
+                break;
+            case CODE_BLOCK:
+                runs.add(0, end - start, STYLE_CODE_BLOCK);
+                int firstLineEnd = lineEnd(text, start, end);
+                int fence = skipSpaces(text, start, firstLineEnd);
+                if (indentOf(text, start, firstLineEnd) < 4 && isFence(text, fence, firstLineEnd, text.charAt(fence))) {
+                    runs.add(0, firstLineEnd - start, STYLE_MARKUP);
+                    int lastLineStart = lastLineStart(text, start, end);
+                    if (lastLineStart > start) {
+                        runs.add(lastLineStart - start, end - start, STYLE_MARKUP);
+                    }
+                }
+                break;
+            case RULE:
+                runs.add(0, end - start, STYLE_MARKUP);
+                break;
+            case QUOTE:
+                runs.add(0, end - start, STYLE_QUOTE);
+                parseLines(text, start, end, kind, runs);
+                break;
+            case LIST:
+                parseLines(text, start, end, kind, runs);
+                break;
+            default:
+                parseInline(text, start, start, end, runs);
+                break;
+        }
+        return runs.size() == 0 ? NO_RUNS : runs.toArray();
+    }
+
+    private static void parseHeading(CharSequence text, int start, int end, IntList runs) {
+        int lineEnd = lineEnd(text, start, end);
+        if (lineEnd < end) {
+            // Setext 标题：第二行是 === 或 ---
+            int level = text.charAt(skipSpaces(text, lineEnd + 1, end)) == '=' ? 1 : 2;
+            runs.add(0, lineEnd - start, level);
+            parseInline(text, start, start, lineEnd, runs);
+            runs.add(lineEnd + 1 - start, end - start, STYLE_MARKUP);
+            return;
+        }
+        int content = skipSpaces(text, start, end);
+        int level = headingLevel(text, content, end);
+        runs.add(0, end - start, level);
+        int textStart = Math.min(end, content + level + 1);
+        runs.add(content - start, textStart - start, STYLE_MARKUP);
+        // 结尾的 # 也是标记
+        int textEnd = end;
+        while (textEnd > textStart && text.charAt(textEnd - 1) == ' ') {
+            textEnd--;
+        }
+        int hashes = textEnd;
+        while (hashes > textStart && text.charAt(hashes - 1) == '#') {
+            hashes--;
+        }
+        if (hashes < textEnd && (hashes == textStart || text.charAt(hashes - 1) == ' ')) {
+            runs.add(hashes - start, textEnd - start, STYLE_MARKUP);
+            textEnd = hashes;
+        }
+        parseInline(text, start, textStart, textEnd, runs);
+    }
+
+    /**
+     * 引用和列表逐行处理行首的标记，其余部分按行内格式解析
+     */
+    private static void parseLines(CharSequence text, int start, int end, int kind, IntList runs) {
+        int lineStart = start;
+        while (lineStart <= end) {
+            int lineEnd = lineEnd(text, lineStart, end);
+            int content = skipSpaces(text, lineStart, lineEnd);
+            int textStart = content;
+            if (kind == QUOTE) {
+                if (content < lineEnd && text.charAt(content) == '>') {
+                    textStart = content + 1;
+                    runs.add(content - start, textStart - start, STYLE_MARKUP);
+                }
+            } else {
+                int markerEnd = listMarkerEnd(text, content, lineEnd);
+                if (markerEnd > 0) {
+                    runs.add(content - start, markerEnd - start, STYLE_BULLET);
+                    textStart = markerEnd;
+                }
+            }
+            parseInline(text, start, textStart, lineEnd, runs);
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /**
+     * 解析行内的代码、强调、删除线和链接
+     * @param base 块的起始位置，样式区间相对于它
+     */
+    private static void parseInline(CharSequence text, int base, int from, int to, IntList runs) {
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < to) {
+                i += 2;
+                continue;
+            }
+            int next = -1;
+            if (c == '`') {
+                next = parseCode(text, base, i, to, runs);
+            } else if (c == '*' || c == '_' || c == '~') {
+                next = parseEmphasis(text, base, i, to, runs);
+            } else if (c == '[' || c == '!' && i + 1 < to && text.charAt(i + 1) == '[') {
+                next = parseLink(text, base, i, to, runs);
+            } else if (c == '<') {
+                next = parseAutoLink(text, base, i, to, runs);
+            }
+            i = next > i ? next : i + 1;
+        }
+    }
+
+    private static int parseCode(CharSequence text, int base, int at, int to, IntList runs) {
+        int ticks = runLength(text, at, to, '`');
+        int i = at + ticks;
+        while (i < to) {
+            if (text.charAt(i) == '`') {
+                int close = runLength(text, i, to, '`');
+                if (close == ticks) {
+                    runs.add(at - base, at + ticks - base, STYLE_MARKUP);
+                    runs.add(at + ticks - base, i - base, STYLE_CODE);
+                    runs.add(i - base, i + ticks - base, STYLE_MARKUP);
+                    return i + ticks;
+                }
+                i += close;
+            } else {
+                i++;
+            }
+        }
+        return at + ticks;
+    }
+
+    private static int parseEmphasis(CharSequence text, int base, int at, int to, IntList runs) {
+        char c = text.charAt(at);
+        int count = runLength(text, at, to, c);
+        if (c == '~' && count != 2) {
+            return at + count;
+        }
+        // 单词中间的下划线不是强调
+        if (c == '_' && at > 0 && Character.isLetterOrDigit(text.charAt(at - 1))) {
+            return at + count;
+        }
+        int width = c == '~' ? 2 : Math.min(count, 2);
+        int open = at + count;
+        if (open >= to || Character.isWhitespace(text.charAt(open))) {
+            return at + count;
+        }
+        int close = findClosing(text, open, to, c, width);
+        if (close < 0 && width == 2) {
+            width = 1;
+            close = findClosing(text, open, to, c, width);
+        }
+        if (close < 0) {
+            return at + count;
+        }
+        int style = c == '~' ? STYLE_STRIKE : width == 2 ? STYLE_BOLD : STYLE_ITALIC;
+        int innerStart = at + width;
+        runs.add(at - base, innerStart - base, STYLE_MARKUP);
+        runs.add(innerStart - base, close - base, style);
+        runs.add(close - base, close + width - base, STYLE_MARKUP);
+        // 内部还可以有其他格式，如 ***粗斜体***
+        parseInline(text, base, innerStart, close, runs);
+        return close + width;
+    }
+
+    private static int findClosing(CharSequence text, int from, int to, char c, int width) {
+        int i = from;
+        while (i < to) {
+            char ch = text.charAt(i);
+            if (ch == '\\') {
+                i += 2;
+            } else if (ch == '`') {
+                // 代码中的符号不算
+                int ticks = runLength(text, i, to, '`');
+                int j = i + ticks;
+                while (j < to && runLength(text, j, to, '`') != ticks) {
+                    j += text.charAt(j) == '`' ? runLength(text, j, to, '`') : 1;
+                }
+                i = j < to ? j + ticks : i + ticks;
+            } else if (ch == c) {
+                int count = runLength(text, i, to, c);
+                if (count >= width && i > from && !Character.isWhitespace(text.charAt(i - 1))
+                        && (c != '_' || i + count >= to || !Character.isLetterOrDigit(text.charAt(i + count)))) {
+                    return i + count - width;
+                }
+                i += count;
+            } else if (ch == '\n' && i + 1 < to && text.charAt(i + 1) == '\n') {
+                return -1;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseLink(CharSequence text, int base, int at, int to, IntList runs) {
+        int open = text.charAt(at) == '!' ? at + 1 : at;
+        int closeBracket = -1;
+        int depth = 0;
+        for (int i = open; i < to; i++) {
+            char ch = text.charAt(i);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == '[') {
+                depth++;
+            } else if (ch == ']' && --depth == 0) {
+                closeBracket = i;
+                break;
+            } else if (ch == '\n') {
+                break;
+            }
+        }
+        if (closeBracket < 0 || closeBracket + 1 >= to || text.charAt(closeBracket + 1) != '(') {
+            return open + 1;
+        }
+        int closeParen = -1;
+        for (int i = closeBracket + 2; i < to; i++) {
+            char ch = text.charAt(i);
+            if (ch == ')') {
+                closeParen = i;
+                break;
+            } else if (ch == '\n') {
+                break;
+            }
+        }
+        if (closeParen < 0) {
+            return open + 1;
+        }
+        runs.add(at - base, open + 1 - base, STYLE_MARKUP);
+        runs.add(open + 1 - base, closeBracket - base, STYLE_LINK);
+        runs.add(closeBracket - base, closeParen + 1 - base, STYLE_MARKUP);
+        parseInline(text, base, open + 1, closeBracket, runs);
+        return closeParen + 1;
+    }
+
+    private static int parseAutoLink(CharSequence text, int base, int at, int to, IntList runs) {
+        for (int i = at + 1; i < to; i++) {
+            char ch = text.charAt(i);
+            if (ch == '>') {
+                String inner = text.subSequence(at + 1, i).toString();
+                if (inner.startsWith("http://") || inner.startsWith("https://") || inner.startsWith("mailto:")) {
+                    runs.add(at - base, at + 1 - base, STYLE_MARKUP);
+                    runs.add(at + 1 - base, i - base, STYLE_LINK);
+                    runs.add(i - base, i + 1 - base, STYLE_MARKUP);
+                    return i + 1;
+                }
+                break;
+            } else if (ch == ' ' || ch == '\n' || ch == '<') {
+                break;
+            }
+        }
+        return at + 1;
+    }
+
+    private static int headingLevel(CharSequence text, int start, int end) {
+        int level = runLength(text, start, end, '#');
+        if (level < 1 || level > 6) {
+            return 0;
+        }
+        return start + level == end || text.charAt(start + level) == ' ' ? level : 0;
+    }
+
+    private static boolean isFence(CharSequence text, int start, int end, char fence) {
+        return (fence == '`' || fence == '~') && runLength(text, start, end, fence) >= 3;
+    }
+
+    private static boolean isRule(CharSequence text, int start, int end) {
+        char c = text.charAt(start);
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char ch = text.charAt(i);
+            if (ch == c) {
+                count++;
+            } else if (ch != ' ' && ch != '\t') {
+                return false;
+            }
+        }
+        return count >= 3;
+    }
+
+    private static boolean isSetextUnderline(CharSequence text, int start, int end) {
+        char c = text.charAt(start);
+        if (c != '=' && c != '-') {
+            return false;
+        }
+        int i = start + runLength(text, start, end, c);
+        while (i < end && text.charAt(i) == ' ') {
+            i++;
+        }
+        return i == end;
+    }
+
+    /**
+     * @return 列表标记（包括后面的空格）的结束位置，不是列表项时返回 -1
+     */
+    private static int listMarkerEnd(CharSequence text, int start, int end) {
+        int i = start;
+        char c = text.charAt(i);
+        if (c == '-' || c == '*' || c == '+') {
+            i++;
+        } else {
+            while (i < end && i - start < 9 && Character.isDigit(text.charAt(i))) {
+                i++;
+            }
+            if (i == start || i >= end || text.charAt(i) != '.' && text.charAt(i) != ')') {
+                return -1;
+            }
+            i++;
+        }
+        if (i < end && text.charAt(i) != ' ' && text.charAt(i) != '\t') {
+            return -1;
+        }
+        return Math.min(end, i + 1);
+    }
+
+    /**
+     * @return 行首缩进的列数，制表符算 4 列
+     */
+    private static int indentOf(CharSequence text, int start, int end) {
+        int indent = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == ' ') {
+                indent++;
+            } else if (c == '\t') {
+                indent += 4;
+            } else {
+                break;
+            }
+        }
+        return indent;
+    }
+
+    private static int skipSpaces(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int runLength(CharSequence text, int start, int end, char c) {
+        int i = start;
+        while (i < end && text.charAt(i) == c) {
+            i++;
+        }
+        return i - start;
+    }
+
+    private static int lineEnd(CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && text.charAt(i) != '\n') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int lastLineStart(CharSequence text, int start, int end) {
+        int i = end;
+        while (i > start && text.charAt(i - 1) != '\n') {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * 64 位 FNV-1a，种类也计入哈希，同样的文字在不同上下文中分到不同种类的块时不会混用
+     */
+    private static long hash(CharSequence text, int start, int end, int kind) {
+        long hash = 0xcbf29ce484222325L ^ kind;
+        for (int i = start; i < end; i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * 可增长的 int 数组
+     */
+    private static final class IntList {
+        private int[] values = new int[48];
+        private int size;
+
+        void add(int a, int b, int c) {
+            if (size + 3 > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            values[size++] = a;
+            values[size++] = b;
+            values[size++] = c;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 整个文件的并行解码
+ *
+ * UTF-8、GBK、Big5 等兼容 ASCII 的编码中，字节 0x0A 只会是换行符，不会出现在多字节字符中间，
+ * 因此可以在换行符之后把文件切成若干块，在 fork-join 线程池中分别解码后按顺序拼接。
+ * 其他编码按单线程解码。
+ */
+public class ParallelDecoder {
+
+    // 小于这个大小的块不再拆分
+    private static final int MIN_CHUNK_BYTES = 1024 * 1024;
+    // 每个线程大约分到几块，块多一些可以平衡各块解码速度的差异
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final Set<String> SPLITTABLE_CHARSETS = new HashSet<>(Arrays.asList(
+        "UTF-8", "GBK", "GB2312", "GB18030", "BIG5", "BIG5-HKSCS", "ISO-8859-1", "US-ASCII",
+        "WINDOWS-1252", "SHIFT_JIS", "EUC-JP", "EUC-KR"));
+
+    /**
+     * @return 编码是否可以在换行符处安全切分
+     */
+    public static boolean isSplittable(String encoding) {
+        try {
+            return SPLITTABLE_CHARSETS.contains(Charset.forName(encoding).name().toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 解码整个文件
+     * @param file 文件
+     * @param encoding 编码
+     * @return 文件内容，无法解码的字节替换为替换字符
+     * @throws IOException 读取失败或文件太大
+     */
+    public static String decode(File file, String encoding) throws IOException {
+        return decode(file, encoding, false);
+    }
+
+    /**
+     * 解码整个文件，拼接各块时统一换行符
+     * @return 文件内容，换行符统一为 \n，内容不为空时以 \n 结尾
+     * @throws IOException 读取失败或文件太大
+     */
+    public static String decodeLines(File file, String encoding) throws IOException {
+        return decode(file, encoding, true);
+    }
+
+    private static String decode(File file, String encoding, boolean lines) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to decode: " + file.getAbsolutePath());
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            List<String> chunks = decodeChunks(bytes, encoding);
+            if (lines) {
+                return joinLines(chunks);
+            }
+            if (chunks.size() == 1) {
+                return chunks.get(0);
+            }
+
+            long length = 0;
+            for (String chunk : chunks) {
+                length += chunk.length();
+            }
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("File too large to decode: " + file.getAbsolutePath());
+            }
+            StringBuilder sb = new StringBuilder((int) length);
+            for (String chunk : chunks) {
+                sb.append(chunk);
+            }
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 按顺序拼接各块，同时把 \r\n 和单独的 \r 换成 \n，只复制一次
+     */
+    private static String joinLines(List<String> chunks) throws IOException {
+        long length = 0;
+        boolean hasCr = false;
+        for (String chunk : chunks) {
+            length += chunk.length();
+            hasCr = hasCr || chunk.indexOf('\r') >= 0;
+        }
+        if (length >= Integer.MAX_VALUE) {
+            throw new IOException("File too large to decode");
+        }
+        if (chunks.size() == 1 && !hasCr) {
+            String chunk = chunks.get(0);
+            return chunk.isEmpty() || chunk.endsWith("\n") ? chunk : chunk + "\n";
+        }
+
+        StringBuilder sb = new StringBuilder((int) length + 1);
+        boolean afterCr = false;
+        for (String chunk : chunks) {
+            if (!hasCr) {
+                sb.append(chunk);
+                continue;
+            }
+            int start = 0;
+            int n = chunk.length();
+            for (int i = 0; i < n; i++) {
+                char c = chunk.charAt(i);
+                if (c == '\r') {
+                    sb.append(chunk, start, i).append('\n');
+                    start = i + 1;
+                    afterCr = true;
+                    continue;
+                }
+                if (c == '\n' && afterCr) {
+                    // \r\n 的 \n 已经随 \r 输出
+                    sb.append(chunk, start, i);
+                    start = i + 1;
+                }
+                afterCr = false;
+            }
+            sb.append(chunk, start, n);
+        }
+        if (sb.length() > 0 && sb.charAt(sb.length() - 1) != '\n') {
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 把字节分块解码，块的边界都在换行符之后
+     * @param bytes 从 position 到 limit 的字节，不会被修改
+     * @param encoding 编码
+     * @return 按顺序排列的解码结果
+     */
+    public static List<String> decodeChunks(ByteBuffer bytes, String encoding) {
+        int parallelism = WorkerPools.forkJoin().getParallelism();
+        if (parallelism <= 1 || bytes.remaining() < 2 * MIN_CHUNK_BYTES || !isSplittable(encoding)) {
+            return Collections.singletonList(decodeRange(bytes, bytes.position(), bytes.limit(), encoding));
+        }
+
+        int chunkBytes = Math.max(MIN_CHUNK_BYTES, bytes.remaining() / (parallelism * CHUNKS_PER_THREAD));
+        int[] bounds = splitAtNewlines(bytes, chunkBytes);
+        String[] results = new String[bounds.length - 1];
+        WorkerPools.forkJoin().invoke(new DecodeAction(bytes, encoding, bounds, results, 0, results.length));
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return 块边界，第一个是 position，最后一个是 limit，中间的都紧跟在换行符之后
+     */
+    private static int[] splitAtNewlines(ByteBuffer bytes, int chunkBytes) {
+        int start = bytes.position();
+        int end = bytes.limit();
+        int[] bounds = new int[(end - start) / chunkBytes + 2];
+        int count = 0;
+        bounds[count++] = start;
+        int next = start + chunkBytes;
+        while (next < end) {
+            while (next < end && bytes.get(next) != '\n') {
+                next++;
+            }
+            if (next >= end - 1) {
+                break;
+            }
+            bounds[count++] = next + 1;
+            next += 1 + chunkBytes;
+        }
+        bounds[count++] = end;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private static String decodeRange(ByteBuffer bytes, int from, int to, String encoding) {
+        ByteBuffer range = bytes.duplicate();
+        range.limit(to);
+        range.position(from);
+        try {
+            return Charset.forName(encoding).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .decode(range)
+                .toString();
+        } catch (CharacterCodingException e) {
+            // 使用 REPLACE 时不会发生
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 解码 [from, to) 范围内的块，范围较大时对半拆分
+     */
+    private static class DecodeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteBuffer bytes;
+        private final String encoding;
+        private final int[] bounds;
+        private final String[] results;
+        private final int from;
+        private final int to;
+
+        DecodeAction(ByteBuffer bytes, String encoding, int[] bounds, String[] results, int from, int to) {
+            this.bytes = bytes;
+            this.encoding = encoding;
+            this.bounds = bounds;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = decodeRange(bytes, bounds[from], bounds[from + 1], encoding);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new DecodeAction(bytes, encoding, bounds, results, from, middle),
+                new DecodeAction(bytes, encoding, bounds, results, middle, to));
+        }
+    }
+}
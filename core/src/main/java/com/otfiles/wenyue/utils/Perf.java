@@ -0,0 +1,400 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 热点路径的耗时与读写量统计
+ *
+ * 用法：
+ * <pre>
+ * Perf.Span span = Perf.begin("FileUtils.readFile");
+ * try {
+ *     ...
+ * } finally {
+ *     Perf.end(span, bytes);
+ * }
+ * </pre>
+ * 每个名称累计调用次数、耗时分布（按微秒的2的幂分桶）、读写字节数和在主线程上执行的次数，
+ * 最近的调用记录可以导出为 Chrome trace 格式（chrome://tracing、Perfetto 可以打开）。
+ *
+ * 默认关闭，关闭时 begin 和 end 不计时也不分配对象。统计按线程累计，
+ * 记录时只锁本线程的数据，查询和导出时再合并。
+ */
+public class Perf {
+
+    // 耗时分桶数，第 i 个桶统计 [2^i, 2^(i+1)) 微秒的调用
+    private static final int BUCKETS = 32;
+    // 每个线程保留最近多少条调用记录用于导出
+    private static final int MAX_EVENTS_PER_THREAD = 1024;
+
+    private static volatile boolean enabled;
+    private static volatile Thread mainThread;
+
+    // 关闭时 begin 返回的占位对象
+    private static final Span DISABLED = new Span(null, 0);
+
+    // 各线程的记录，已经结束的线程在合并时移除
+    private static final List<Recorder> RECORDERS = new ArrayList<>();
+    // 已经结束的线程的统计，由 RECORDERS 对象加锁保护
+    private static final Map<String, Stat> RETIRED = new HashMap<>();
+
+    private static final ThreadLocal<Recorder> RECORDER = new ThreadLocal<Recorder>() {
+        @Override
+        protected Recorder initialValue() {
+            Recorder recorder = new Recorder(Thread.currentThread());
+            synchronized (RECORDERS) {
+                RECORDERS.add(recorder);
+            }
+            return recorder;
+        }
+    };
+
+    /**
+     * 一次正在计时的调用
+     */
+    public static final class Span {
+        final String name;
+        final long startNanos;
+
+        Span(String name, long startNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+        }
+    }
+
+    /**
+     * 一个名称的累计统计
+     */
+    public static final class Stat {
+        private final String name;
+        private long count;
+        private long mainThreadCount;
+        private long totalNanos;
+        private long maxNanos;
+        private long bytes;
+        private final long[] buckets = new long[BUCKETS];
+
+        Stat(String name) {
+            this.name = name;
+        }
+
+        Stat(Stat other) {
+            this.name = other.name;
+            add(other);
+        }
+
+        void add(Stat other) {
+            count += other.count;
+            mainThreadCount += other.mainThreadCount;
+            totalNanos += other.totalNanos;
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+            bytes += other.bytes;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] += other.buckets[i];
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return 在主线程上执行的次数
+         */
+        public long getMainThreadCount() {
+            return mainThreadCount;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * @param fraction 0到1之间，如 0.95
+         * @return 分位数所在桶的上限（微秒）
+         */
+        public long percentileMicros(double fraction) {
+            long target = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets[i];
+                if (seen >= target && seen > 0) {
+                    return 1L << (i + 1);
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static final class Event {
+        final String name;
+        final String threadName;
+        final long threadId;
+        final boolean mainThread;
+        final long startNanos;
+        final long durationNanos;
+        final long bytes;
+
+        Event(String name, Thread thread, boolean mainThread, long startNanos, long durationNanos, long bytes) {
+            this.name = name;
+            this.threadName = thread.getName();
+            this.threadId = thread.getId();
+            this.mainThread = mainThread;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * 一个线程的统计和最近的调用记录。调用记录按列存放在环形缓冲中，记录时不分配对象。
+     * 由自身加锁保护，平时只有所属线程访问，没有竞争。
+     */
+    private static final class Recorder {
+        final Thread thread;
+        final Map<String, Stat> stats = new HashMap<>();
+        final String[] names = new String[MAX_EVENTS_PER_THREAD];
+        final boolean[] onMain = new boolean[MAX_EVENTS_PER_THREAD];
+        final long[] starts = new long[MAX_EVENTS_PER_THREAD];
+        final long[] durations = new long[MAX_EVENTS_PER_THREAD];
+        final long[] bytes = new long[MAX_EVENTS_PER_THREAD];
+        int eventCount;
+        int eventCursor;
+
+        Recorder(Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void record(String name, boolean main, long startNanos, long duration, long byteCount) {
+            Stat stat = stats.get(name);
+            if (stat == null) {
+                stat = new Stat(name);
+                stats.put(name, stat);
+            }
+            long micros = duration / 1000;
+            stat.count++;
+            stat.totalNanos += duration;
+            stat.maxNanos = Math.max(stat.maxNanos, duration);
+            stat.bytes += byteCount;
+            stat.buckets[micros <= 0 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros))]++;
+            if (main) {
+                stat.mainThreadCount++;
+            }
+
+            int i = eventCursor;
+            names[i] = name;
+            onMain[i] = main;
+            starts[i] = startNanos;
+            durations[i] = duration;
+            bytes[i] = byteCount;
+            eventCursor = (i + 1) % MAX_EVENTS_PER_THREAD;
+            eventCount = Math.min(eventCount + 1, MAX_EVENTS_PER_THREAD);
+        }
+
+        synchronized void addStatsTo(Map<String, Stat> target) {
+            for (Stat stat : stats.values()) {
+                Stat merged = target.get(stat.name);
+                if (merged == null) {
+                    target.put(stat.name, new Stat(stat));
+                } else {
+                    merged.add(stat);
+                }
+            }
+        }
+
+        synchronized void addEventsTo(List<Event> target) {
+            for (int n = eventCount; n > 0; n--) {
+                int i = (eventCursor - n + MAX_EVENTS_PER_THREAD) % MAX_EVENTS_PER_THREAD;
+                target.add(new Event(names[i], thread, onMain[i], starts[i], durations[i], bytes[i]));
+            }
+        }
+
+        synchronized void clear() {
+            stats.clear();
+            for (int i = 0; i < MAX_EVENTS_PER_THREAD; i++) {
+                names[i] = null;
+            }
+            eventCount = 0;
+            eventCursor = 0;
+        }
+    }
+
+    /**
+     * 打开或关闭统计，关闭前已经开始的调用不再记录
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 设置主线程，在主线程上执行的调用会被单独计数
+     */
+    public static void setMainThread(Thread thread) {
+        mainThread = thread;
+    }
+
+    public static boolean isMainThread() {
+        return Thread.currentThread() == mainThread;
+    }
+
+    public static Span begin(String name) {
+        return enabled ? new Span(name, System.nanoTime()) : DISABLED;
+    }
+
+    /**
+     * 从过去的某个时间开始计时，用于开始时不能调用 {@link #begin} 的过程（如进程启动）
+     * @param startNanos 开始时间，与 System.nanoTime 使用同一基准
+     */
+    public static Span beginAt(String name, long startNanos) {
+        return enabled ? new Span(name, startNanos) : DISABLED;
+    }
+
+    public static void end(Span span) {
+        end(span, 0);
+    }
+
+    /**
+     * 结束计时
+     * @param bytes 本次调用读取或写入的字节数
+     */
+    public static void end(Span span, long bytes) {
+        if (span == DISABLED || !enabled) {
+            return;
+        }
+        long duration = System.nanoTime() - span.startNanos;
+        Thread thread = Thread.currentThread();
+        RECORDER.get().record(span.name, thread == mainThread, span.startNanos, duration, bytes);
+    }
+
+    /**
+     * @return 所有统计的副本，按总耗时从高到低排列
+     */
+    public static List<Stat> getStats() {
+        Map<String, Stat> merged = new HashMap<>();
+        synchronized (RECORDERS) {
+            retireFinishedThreads();
+            for (Stat stat : RETIRED.values()) {
+                merged.put(stat.name, new Stat(stat));
+            }
+            for (Recorder recorder : RECORDERS) {
+                recorder.addStatsTo(merged);
+            }
+        }
+        List<Stat> stats = new ArrayList<>(merged.values());
+        Collections.sort(stats, new Comparator<Stat>() {
+            @Override
+            public int compare(Stat s1, Stat s2) {
+                return Long.compare(s2.totalNanos, s1.totalNanos);
+            }
+        });
+        return stats;
+    }
+
+    /**
+     * 把已经结束的线程的统计并入 RETIRED，调用记录丢弃。调用时需持有 RECORDERS 的锁。
+     */
+    private static void retireFinishedThreads() {
+        Iterator<Recorder> it = RECORDERS.iterator();
+        while (it.hasNext()) {
+            Recorder recorder = it.next();
+            if (!recorder.thread.isAlive()) {
+                recorder.addStatsTo(RETIRED);
+                it.remove();
+            }
+        }
+    }
+
+    public static void reset() {
+        synchronized (RECORDERS) {
+            RETIRED.clear();
+            for (Recorder recorder : RECORDERS) {
+                recorder.clear();
+            }
+        }
+    }
+
+    /**
+     * 把最近的调用记录写成 Chrome trace 事件格式的 JSON
+     */
+    public static void writeTrace(Writer writer) throws IOException {
+        List<Event> events = new ArrayList<>();
+        synchronized (RECORDERS) {
+            for (Recorder recorder : RECORDERS) {
+                recorder.addEventsTo(events);
+            }
+        }
+        Collections.sort(events, new Comparator<Event>() {
+            @Override
+            public int compare(Event e1, Event e2) {
+                return Long.compare(e1.startNanos, e2.startNanos);
+            }
+        });
+
+        writer.write("{\"traceEvents\":[");
+        Map<Long, String> threads = new HashMap<>();
+        boolean first = true;
+        for (Event event : events) {
+            threads.put(event.threadId, event.threadName);
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write("\n{\"name\":" + quote(event.name)
+                + ",\"cat\":\"" + (event.mainThread ? "main" : "background") + "\""
+                + ",\"ph\":\"X\",\"pid\":1,\"tid\":" + event.threadId
+                + ",\"ts\":" + event.startNanos / 1000
+                + ",\"dur\":" + event.durationNanos / 1000
+                + ",\"args\":{\"bytes\":" + event.bytes + ",\"mainThread\":" + event.mainThread + "}}");
+        }
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+            writer.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey()
+                + ",\"args\":{\"name\":" + quote(thread.getValue()) + "}}");
+        }
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
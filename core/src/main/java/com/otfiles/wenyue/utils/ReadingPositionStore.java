@@ -0,0 +1,229 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 阅读位置记录
+ *
+ * 每个文件记录上次阅读位置所在行的字节偏移和当时使用的编码。
+ * 记录先保存在内存中，合并一段时间内的多次更新后再在后台线程一次性写入文件。
+ */
+public class ReadingPositionStore {
+
+    private static final String STORE_FILE = "reading_positions.txt";
+    // 位置更新后延迟多久写入文件
+    private static final long FLUSH_DELAY_MS = 2000;
+    private static final int MAX_ENTRIES = 500;
+
+    private static ReadingPositionStore instance;
+
+    /**
+     * 一个文件的阅读位置
+     */
+    public static class Position {
+        public final long offset;
+        public final String encoding;
+
+        public Position(long offset, String encoding) {
+            this.offset = offset;
+            this.encoding = encoding;
+        }
+    }
+
+    private final File storeFile;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, Position> positions =
+        new LinkedHashMap<String, Position>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Position> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    // 读取完成后才置位，主线程可以不加锁地查询
+    private volatile boolean loaded;
+    private boolean flushScheduled;
+
+    /**
+     * @param directory 保存记录文件的目录（应用私有目录）
+     */
+    public static synchronized ReadingPositionStore getInstance(File directory) {
+        if (instance == null) {
+            instance = new ReadingPositionStore(new File(directory, STORE_FILE));
+        }
+        return instance;
+    }
+
+    private ReadingPositionStore(File storeFile) {
+        this.storeFile = storeFile;
+    }
+
+    /**
+     * 在后台线程预先读取记录文件
+     */
+    public void preload() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureLoaded();
+            }
+        });
+    }
+
+    /**
+     * @return 记录文件是否已经读入，读入之前 get、put 会在调用线程读取文件
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @return 文件的阅读位置，没有记录时返回 null
+     */
+    public Position get(String path) {
+        ensureLoaded();
+        synchronized (this) {
+            return positions.get(path);
+        }
+    }
+
+    /**
+     * 更新阅读位置，稍后批量写入文件
+     */
+    public void put(String path, long offset, String encoding) {
+        ensureLoaded();
+        synchronized (this) {
+            Position old = positions.get(path);
+            if (old != null && old.offset == offset && old.encoding.equals(encoding)) {
+                return;
+            }
+            positions.put(path, new Position(offset, encoding));
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * 删除阅读位置，文件内容被整体替换后原来的偏移和编码不再有效
+     */
+    public void remove(String path) {
+        ensureLoaded();
+        synchronized (this) {
+            if (positions.remove(path) == null || flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        scheduleWrite();
+    }
+
+    private void scheduleWrite() {
+        writer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 立即在后台线程写入尚未保存的更新
+     */
+    public void flush() {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        });
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        if (!storeFile.exists()) {
+            loaded = true;
+            return;
+        }
+
+        BufferedReader br = null;
+        try {
+            br = new BufferedReader(new InputStreamReader(new FileInputStream(storeFile), "UTF-8"));
+            String line;
+            while ((line = br.readLine()) != null) {
+                // 格式：偏移\t编码\t路径
+                String[] parts = line.split("\t", 3);
+                if (parts.length == 3) {
+                    try {
+                        positions.put(parts[2], new Position(Long.parseLong(parts[0]), parts[1]));
+                    } catch (NumberFormatException e) {
+                        // 跳过损坏的行
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // 记录丢失只影响恢复阅读位置
+        } finally {
+            loaded = true;
+            if (br != null) {
+                try {
+                    br.close();
+                } catch (IOException e) {
+                    // 忽略关闭异常
+                }
+            }
+        }
+    }
+
+    private void write() {
+        Map<String, Position> snapshot;
+        synchronized (this) {
+            if (!flushScheduled) {
+                return;
+            }
+            flushScheduled = false;
+            snapshot = new LinkedHashMap<>(positions);
+        }
+
+        File tempFile = new File(storeFile.getPath() + ".tmp");
+        BufferedWriter bw = null;
+        try {
+            bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+            for (Map.Entry<String, Position> entry : snapshot.entrySet()) {
+                Position position = entry.getValue();
+                bw.write(position.offset + "\t" + position.encoding + "\t" + entry.getKey());
+                bw.write('\n');
+            }
+            bw.close();
+            bw = null;
+            if (!tempFile.renameTo(storeFile)) {
+                tempFile.delete();
+            }
+        } catch (IOException e) {
+            // 下次更新时会重新写入
+        } finally {
+            if (bw != null) {
+                try {
+                    bw.close();
+                } catch (IOException e) {
+                    // 忽略关闭异常
+                }
+            }
+        }
+    }
+}
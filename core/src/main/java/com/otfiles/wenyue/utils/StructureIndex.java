@@ -0,0 +1,702 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * JSON 和 XML 文件的结构索引
+ *
+ * 按字节流式扫描文件，节点只记录名称、简短的预览和字节范围，不把文件内容读入内存。
+ * 子节点在展开时才扫描父节点的字节范围得到，每次最多取一页，其余的需要时再继续扫描。
+ * 结构字符都是 ASCII，适用于 UTF-8、GBK 等与 ASCII 兼容的编码，不支持 UTF-16。
+ */
+public class StructureIndex {
+
+    // 节点类型
+    public static final int DOCUMENT = 0;
+    public static final int OBJECT = 1;
+    public static final int ARRAY = 2;
+    public static final int STRING = 3;
+    public static final int NUMBER = 4;
+    public static final int LITERAL = 5;
+    public static final int ELEMENT = 6;
+    public static final int TEXT = 7;
+
+    // 预览最多保留的字符数
+    private static final int MAX_PREVIEW = 80;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 一个节点，字节范围包括节点的开始和结束标记
+     */
+    public static final class Node {
+        private final int type;
+        private final String name;
+        private final String preview;
+        private final long start;
+        private final long end;
+        // 子节点所在的范围：JSON 在括号之内，XML 在开始标签和结束标签之间
+        private final long childrenStart;
+        private final long childrenEnd;
+        private final boolean hasChildren;
+
+        Node(int type, String name, String preview, long start, long end,
+             long childrenStart, long childrenEnd, boolean hasChildren) {
+            this.type = type;
+            this.name = name;
+            this.preview = preview;
+            this.start = start;
+            this.end = end;
+            this.childrenStart = childrenStart;
+            this.childrenEnd = childrenEnd;
+            this.hasChildren = hasChildren;
+        }
+
+        public int getType() {
+            return type;
+        }
+
+        /**
+         * @return JSON 的键或数组下标、XML 的标签名
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return 值或 XML 属性的开头部分，没有时为 null
+         */
+        public String getPreview() {
+            return preview;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public boolean hasChildren() {
+            return hasChildren;
+        }
+    }
+
+    /**
+     * 一页子节点
+     */
+    public static final class Page {
+        private final List<Node> nodes;
+        private final long nextOffset;
+        private final int nextIndex;
+
+        Page(List<Node> nodes, long nextOffset, int nextIndex) {
+            this.nodes = nodes;
+            this.nextOffset = nextOffset;
+            this.nextIndex = nextIndex;
+        }
+
+        public List<Node> getNodes() {
+            return nodes;
+        }
+
+        /**
+         * @return 后面是否还有子节点
+         */
+        public boolean hasMore() {
+            return nextOffset >= 0;
+        }
+    }
+
+    private final File file;
+    private final boolean xml;
+    private final Charset charset;
+    private final Node root;
+
+    /**
+     * @param encoding 文件编码，用来解码名称和预览
+     */
+    public StructureIndex(File file, String encoding) {
+        this.file = file;
+        this.xml = "xml".equals(FileUtils.getFileExtension(file));
+        this.charset = Charset.forName(encoding);
+        long length = file.length();
+        root = new Node(DOCUMENT, file.getName(), null, 0, length, 0, length, length > 0);
+    }
+
+    /**
+     * @return 扩展名是否可以显示结构
+     */
+    public static boolean isSupported(String extension) {
+        return "json".equals(extension) || "xml".equals(extension);
+    }
+
+    /**
+     * @return 代表整个文件的节点
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * 扫描节点的子节点
+     * @param after 上一页，为 null 时从第一个子节点开始
+     * @param limit 本页最多的节点数
+     * @throws IOException 读取失败或文件格式错误
+     */
+    public Page children(Node parent, Page after, int limit) throws IOException {
+        if (!parent.hasChildren) {
+            return new Page(Collections.<Node>emptyList(), -1, 0);
+        }
+        long from = after != null ? after.nextOffset : parent.childrenStart;
+        int index = after != null ? after.nextIndex : 0;
+        Perf.Span span = Perf.begin("StructureIndex.children");
+        ByteReader in = new ByteReader(file);
+        try {
+            in.seek(from);
+            if (from == 0) {
+                // 跳过 UTF-8 的 BOM
+                startsWith(in, "\u00EF\u00BB\u00BF");
+            }
+            Page page = xml ? xmlChildren(in, parent, index, limit) : jsonChildren(in, parent, index, limit);
+            Perf.end(span, in.position() - from);
+            return page;
+        } finally {
+            in.close();
+        }
+    }
+
+    private Page jsonChildren(ByteReader in, Node parent, int index, int limit) throws IOException {
+        List<Node> nodes = new ArrayList<>();
+        boolean object = parent.type == OBJECT;
+        while (true) {
+            skipJsonSeparators(in);
+            int c = in.peek();
+            if (c < 0 || in.position() >= parent.childrenEnd || c == '}' || c == ']') {
+                return new Page(nodes, -1, index);
+            }
+            if (nodes.size() == limit) {
+                return new Page(nodes, in.position(), index);
+            }
+            String name;
+            if (object) {
+                if (c != '"') {
+                    throw corrupt(in, "expected a key");
+                }
+                name = readJsonString(in);
+                skipWhitespace(in);
+                if (in.read() != ':') {
+                    throw corrupt(in, "expected ':'");
+                }
+                skipWhitespace(in);
+            } else if (parent.type == DOCUMENT) {
+                name = "$";
+            } else {
+                name = "[" + index + "]";
+            }
+            nodes.add(readJsonValue(in, name));
+            index++;
+        }
+    }
+
+    private Node readJsonValue(ByteReader in, String name) throws IOException {
+        long start = in.position();
+        int c = in.peek();
+        if (c == '{' || c == '[') {
+            in.read();
+            long childrenStart = in.position();
+            boolean hasChildren = false;
+            int depth = 1;
+            long childrenEnd;
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    throw corrupt(in, "unterminated " + (char) c);
+                } else if (b == '"') {
+                    skipJsonString(in);
+                    hasChildren = true;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                    hasChildren = true;
+                } else if (b == '}' || b == ']') {
+                    if (--depth == 0) {
+                        childrenEnd = in.position() - 1;
+                        break;
+                    }
+                } else if (!isWhitespace(b)) {
+                    hasChildren = true;
+                }
+            }
+            return new Node(c == '{' ? OBJECT : ARRAY, name, null, start, in.position(),
+                childrenStart, childrenEnd, hasChildren);
+        }
+        if (c == '"') {
+            String value = readJsonString(in);
+            return new Node(STRING, name, value, start, in.position(), 0, 0, false);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        while (true) {
+            int b = in.peek();
+            if (b < 0 || b == ',' || b == '}' || b == ']' || isWhitespace(b)) {
+                break;
+            }
+            in.read();
+            if (bytes.size() < MAX_PREVIEW) {
+                bytes.write(b);
+            }
+        }
+        if (bytes.size() == 0) {
+            throw corrupt(in, "expected a value");
+        }
+        String value = new String(bytes.toByteArray(), "US-ASCII");
+        int type = c == '-' || c >= '0' && c <= '9' ? NUMBER : LITERAL;
+        return new Node(type, name, value, start, in.position(), 0, 0, false);
+    }
+
+    /**
+     * 读取字符串，只保留开头部分
+     */
+    private String readJsonString(ByteReader in) throws IOException {
+        in.read();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        boolean truncated = false;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw corrupt(in, "unterminated string");
+            }
+            if (b == '"') {
+                break;
+            }
+            if (bytes.size() < MAX_PREVIEW * 4) {
+                bytes.write(b);
+            } else {
+                truncated = true;
+            }
+            if (b == '\\') {
+                b = in.read();
+                if (bytes.size() < MAX_PREVIEW * 4) {
+                    bytes.write(b);
+                }
+            }
+        }
+        String value = unescapeJson(new String(bytes.toByteArray(), charset));
+        if (truncated || value.length() > MAX_PREVIEW) {
+            value = value.substring(0, Math.min(value.length(), MAX_PREVIEW)) + "…";
+        }
+        return value;
+    }
+
+    private static void skipJsonString(ByteReader in) throws IOException {
+        while (true) {
+            int b = in.read();
+            if (b < 0 || b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                in.read();
+            }
+        }
+    }
+
+    private static String unescapeJson(String text) {
+        if (text.indexOf('\\') < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != '\\' || i + 1 >= text.length()) {
+                sb.append(c);
+                continue;
+            }
+            char e = text.charAt(++i);
+            switch (e) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (i + 4 < text.length()) {
+                        try {
+                            sb.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                            i += 4;
+                            break;
+                        } catch (NumberFormatException ignored) {
+                            // 按原样保留
+                        }
+                    }
+                    sb.append('\\').append(e);
+                    break;
+                default:
+                    sb.append(e);
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void skipJsonSeparators(ByteReader in) throws IOException {
+        while (true) {
+            int b = in.peek();
+            if (b != ',' && !isWhitespace(b)) {
+                return;
+            }
+            in.read();
+        }
+    }
+
+    private Page xmlChildren(ByteReader in, Node parent, int index, int limit) throws IOException {
+        List<Node> nodes = new ArrayList<>();
+        while (true) {
+            long textStart = in.position();
+            ByteArrayOutputStream text = readXmlText(in, parent.childrenEnd);
+            if (text != null) {
+                if (nodes.size() == limit) {
+                    return new Page(nodes, textStart, index);
+                }
+                nodes.add(new Node(TEXT, "#text", preview(text), textStart, in.position(), 0, 0, false));
+                index++;
+            }
+            int c = in.peek();
+            if (c < 0 || in.position() >= parent.childrenEnd) {
+                return new Page(nodes, -1, index);
+            }
+            long start = in.position();
+            in.read();
+            int next = in.peek();
+            if (next == '/') {
+                return new Page(nodes, -1, index);
+            } else if (next == '?') {
+                skipPast(in, "?>");
+            } else if (next == '!') {
+                if (startsWith(in, "![CDATA[")) {
+                    if (nodes.size() == limit) {
+                        return new Page(nodes, start, index);
+                    }
+                    ByteArrayOutputStream data = readUntil(in, "]]>");
+                    nodes.add(new Node(TEXT, "#cdata", preview(data), start, in.position(), 0, 0, false));
+                    index++;
+                } else if (startsWith(in, "!--")) {
+                    skipPast(in, "-->");
+                } else {
+                    skipDeclaration(in);
+                }
+            } else {
+                if (nodes.size() == limit) {
+                    return new Page(nodes, start, index);
+                }
+                nodes.add(readXmlElement(in, start));
+                index++;
+            }
+        }
+    }
+
+    /**
+     * 读取到下一个 '<' 之前的文字
+     * @return 全是空白时返回 null
+     */
+    private static ByteArrayOutputStream readXmlText(ByteReader in, long limit) throws IOException {
+        ByteArrayOutputStream bytes = null;
+        while (in.position() < limit) {
+            int b = in.peek();
+            if (b < 0 || b == '<') {
+                break;
+            }
+            in.read();
+            if (bytes == null && isWhitespace(b)) {
+                continue;
+            }
+            if (bytes == null) {
+                bytes = new ByteArrayOutputStream();
+            }
+            if (bytes.size() < MAX_PREVIEW * 4) {
+                bytes.write(b);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * 读取一个元素，跳过它的全部内容
+     * @param start '<' 的位置，已经读过
+     */
+    private Node readXmlElement(ByteReader in, long start) throws IOException {
+        ByteArrayOutputStream name = new ByteArrayOutputStream();
+        while (true) {
+            int b = in.peek();
+            if (b < 0) {
+                throw corrupt(in, "unterminated tag");
+            }
+            if (isWhitespace(b) || b == '/' || b == '>') {
+                break;
+            }
+            name.write(in.read());
+        }
+        ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+        boolean selfClosing = readTagRest(in, attributes);
+        String tag = new String(name.toByteArray(), charset);
+        String preview = preview(attributes);
+        if (selfClosing && preview.endsWith("/")) {
+            preview = preview.substring(0, preview.length() - 1).trim();
+        }
+        if (preview.isEmpty()) {
+            preview = null;
+        }
+        if (selfClosing) {
+            return new Node(ELEMENT, tag, preview, start, in.position(), 0, 0, false);
+        }
+
+        long childrenStart = in.position();
+        boolean hasChildren = false;
+        int depth = 1;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw corrupt(in, "unterminated element <" + tag + ">");
+            }
+            if (b != '<') {
+                hasChildren |= !isWhitespace(b);
+                continue;
+            }
+            int next = in.peek();
+            if (next == '/') {
+                if (--depth == 0) {
+                    long childrenEnd = in.position() - 1;
+                    skipPast(in, ">");
+                    return new Node(ELEMENT, tag, preview, start, in.position(), childrenStart, childrenEnd, hasChildren);
+                }
+                skipPast(in, ">");
+            } else if (next == '?') {
+                skipPast(in, "?>");
+            } else if (next == '!') {
+                hasChildren = true;
+                if (startsWith(in, "![CDATA[")) {
+                    skipPast(in, "]]>");
+                } else if (startsWith(in, "!--")) {
+                    skipPast(in, "-->");
+                } else {
+                    skipDeclaration(in);
+                }
+            } else {
+                hasChildren = true;
+                if (!readTagRest(in, null)) {
+                    depth++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取标签名之后到 '>' 为止的部分，引号内的 '>' 不算
+     * @param attributes 保存属性的开头部分，可以为 null
+     * @return 是否是自闭合标签
+     */
+    private static boolean readTagRest(ByteReader in, ByteArrayOutputStream attributes) throws IOException {
+        int quote = 0;
+        int previous = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0) {
+                throw corrupt(in, "unterminated tag");
+            }
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if (b == '"' || b == '\'') {
+                quote = b;
+            } else if (b == '>') {
+                return previous == '/';
+            }
+            if (attributes != null && attributes.size() < MAX_PREVIEW * 4) {
+                attributes.write(b == '\n' || b == '\r' || b == '\t' ? ' ' : b);
+            }
+            previous = b;
+        }
+    }
+
+    private static void skipDeclaration(ByteReader in) throws IOException {
+        // <!DOCTYPE ...> 可能带有 [...] 内部子集
+        int brackets = 0;
+        while (true) {
+            int b = in.read();
+            if (b < 0 || b == '>' && brackets == 0) {
+                return;
+            }
+            if (b == '[') {
+                brackets++;
+            } else if (b == ']') {
+                brackets--;
+            }
+        }
+    }
+
+    /**
+     * @return 后面的字节是否是 prefix，是时跳过它们
+     */
+    private static boolean startsWith(ByteReader in, String prefix) throws IOException {
+        long mark = in.position();
+        for (int i = 0; i < prefix.length(); i++) {
+            if (in.read() != prefix.charAt(i)) {
+                in.seek(mark);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void skipPast(ByteReader in, String terminator) throws IOException {
+        readUntil(in, terminator, null);
+    }
+
+    private static ByteArrayOutputStream readUntil(ByteReader in, String terminator) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        readUntil(in, terminator, bytes);
+        return bytes;
+    }
+
+    private static void readUntil(ByteReader in, String terminator, ByteArrayOutputStream bytes) throws IOException {
+        int[] fallback = fallbackTable(terminator);
+        int matched = 0;
+        while (matched < terminator.length()) {
+            int b = in.read();
+            if (b < 0) {
+                throw corrupt(in, "expected " + terminator);
+            }
+            // 失配时退回到仍可能匹配的最长前缀，"]]]>" 这样的重复字符才不会漏掉结束符
+            while (matched > 0 && b != terminator.charAt(matched)) {
+                matched = fallback[matched - 1];
+            }
+            if (b == terminator.charAt(matched)) {
+                matched++;
+            }
+            if (bytes != null && bytes.size() < MAX_PREVIEW * 4) {
+                bytes.write(b);
+            }
+        }
+        if (bytes != null && bytes.size() >= terminator.length() && bytes.size() < MAX_PREVIEW * 4) {
+            byte[] data = bytes.toByteArray();
+            bytes.reset();
+            bytes.write(data, 0, data.length - terminator.length());
+        }
+    }
+
+    /**
+     * @return 第 i 项为 terminator 前 i + 1 个字符中既是前缀又是后缀的最长真子串长度
+     */
+    private static int[] fallbackTable(String terminator) {
+        int[] table = new int[terminator.length()];
+        int length = 0;
+        for (int i = 1; i < terminator.length(); i++) {
+            while (length > 0 && terminator.charAt(i) != terminator.charAt(length)) {
+                length = table[length - 1];
+            }
+            if (terminator.charAt(i) == terminator.charAt(length)) {
+                length++;
+            }
+            table[i] = length;
+        }
+        return table;
+    }
+
+    private String preview(ByteArrayOutputStream bytes) {
+        String text = new String(bytes.toByteArray(), charset).trim().replaceAll("\\s+", " ");
+        if (bytes.size() >= MAX_PREVIEW * 4 || text.length() > MAX_PREVIEW) {
+            text = text.substring(0, Math.min(text.length(), MAX_PREVIEW)) + "…";
+        }
+        return text;
+    }
+
+    private static void skipWhitespace(ByteReader in) throws IOException {
+        while (isWhitespace(in.peek())) {
+            in.read();
+        }
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static IOException corrupt(ByteReader in, String message) {
+        return new IOException("Malformed structure at byte " + in.position() + ": " + message);
+    }
+
+    /**
+     * 带缓冲的随机读取
+     */
+    private static final class ByteReader implements Closeable {
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        // buffer 中第一个字节在文件中的位置
+        private long bufferStart;
+
+        ByteReader(File file) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            this.channel = this.file.getChannel();
+            buffer.limit(0);
+        }
+
+        long position() {
+            return bufferStart + buffer.position();
+        }
+
+        void seek(long position) {
+            if (position >= bufferStart && position <= bufferStart + buffer.limit()) {
+                buffer.position((int) (position - bufferStart));
+            } else {
+                bufferStart = position;
+                buffer.limit(0);
+            }
+        }
+
+        int peek() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buffer.get(buffer.position()) & 0xFF;
+        }
+
+        int read() throws IOException {
+            if (!buffer.hasRemaining() && !fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        private boolean fill() throws IOException {
+            bufferStart += buffer.limit();
+            buffer.clear();
+            int n = channel.read(buffer, bufferStart);
+            buffer.flip();
+            return n > 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
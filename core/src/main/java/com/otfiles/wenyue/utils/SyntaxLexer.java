@@ -0,0 +1,402 @@
+package com.otfiles.wenyue.utils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 按行工作的简单语法分析器
+ *
+ * 每次只分析一行，输入上一行结束时的状态，输出这一行的记号和结束状态。
+ * 跨行的结构（块注释、Python 三引号字符串、标记语言的注释和标签）由状态延续到下一行，
+ * 因此只要知道某一行开始时的状态，就可以从这一行开始分析，不需要从文件开头分析。
+ */
+public class SyntaxLexer {
+
+    // 行开始时的状态
+    public static final int INITIAL = 0;
+    private static final int BLOCK_COMMENT = 1;
+    private static final int TEMPLATE_STRING = 2;
+    private static final int TRIPLE_DOUBLE = 3;
+    private static final int TRIPLE_SINGLE = 4;
+    private static final int MARKUP_COMMENT = 5;
+    private static final int MARKUP_TAG = 6;
+    private static final int MARKUP_VALUE_DOUBLE = 7;
+    private static final int MARKUP_VALUE_SINGLE = 8;
+
+    // 记号类型
+    public static final int KEYWORD = 1;
+    public static final int STRING = 2;
+    public static final int COMMENT = 3;
+    public static final int NUMBER = 4;
+    public static final int TAG = 5;
+    public static final int ATTRIBUTE = 6;
+
+    public interface TokenSink {
+        /**
+         * @param start 记号在文本中的起始位置
+         * @param end 记号在文本中的结束位置（不包含）
+         * @param type 记号类型
+         */
+        void token(int start, int end, int type);
+    }
+
+    private enum Kind {
+        C_LIKE, PYTHON, MARKUP
+    }
+
+    private static final Set<String> JAVA_KEYWORDS = keywords(
+        "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+        "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+        "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+        "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp",
+        "super", "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void",
+        "volatile", "while", "true", "false", "null", "var");
+    private static final Set<String> C_KEYWORDS = keywords(
+        "auto", "bool", "break", "case", "catch", "char", "class", "const", "constexpr", "continue",
+        "default", "delete", "do", "double", "else", "enum", "explicit", "extern", "false", "float",
+        "for", "friend", "goto", "if", "inline", "int", "long", "namespace", "new", "nullptr",
+        "operator", "private", "protected", "public", "register", "return", "short", "signed",
+        "sizeof", "static", "struct", "switch", "template", "this", "throw", "true", "try", "typedef",
+        "typename", "union", "unsigned", "using", "virtual", "void", "volatile", "while", "NULL");
+    private static final Set<String> JS_KEYWORDS = keywords(
+        "async", "await", "break", "case", "catch", "class", "const", "continue", "debugger", "default",
+        "delete", "do", "else", "export", "extends", "false", "finally", "for", "function", "if",
+        "import", "in", "instanceof", "let", "new", "null", "of", "return", "super", "switch", "this",
+        "throw", "true", "try", "typeof", "undefined", "var", "void", "while", "yield");
+    private static final Set<String> PHP_KEYWORDS = keywords(
+        "abstract", "array", "as", "break", "case", "catch", "class", "const", "continue", "default",
+        "do", "echo", "else", "elseif", "empty", "extends", "false", "final", "finally", "for",
+        "foreach", "function", "global", "if", "implements", "include", "include_once", "instanceof",
+        "interface", "isset", "list", "namespace", "new", "null", "print", "private", "protected",
+        "public", "require", "require_once", "return", "static", "switch", "this", "throw", "trait",
+        "true", "try", "unset", "use", "var", "while");
+    private static final Set<String> PYTHON_KEYWORDS = keywords(
+        "False", "None", "True", "and", "as", "assert", "async", "await", "break", "class", "continue",
+        "def", "del", "elif", "else", "except", "finally", "for", "from", "global", "if", "import",
+        "in", "is", "lambda", "nonlocal", "not", "or", "pass", "raise", "return", "self", "try",
+        "while", "with", "yield");
+    private static final Set<String> NO_KEYWORDS = keywords();
+
+    private final Kind kind;
+    private final Set<String> keywords;
+    // // 开始行注释（CSS 只有块注释）
+    private final boolean slashComments;
+    // # 开始行注释（PHP）
+    private final boolean hashComments;
+    // # 开始预处理指令（C/C++）
+    private final boolean preprocessor;
+    // 反引号模板字符串可以跨行（JavaScript）
+    private final boolean templateStrings;
+
+    private SyntaxLexer(Kind kind, Set<String> keywords, boolean slashComments, boolean hashComments,
+                        boolean preprocessor, boolean templateStrings) {
+        this.kind = kind;
+        this.keywords = keywords;
+        this.slashComments = slashComments;
+        this.hashComments = hashComments;
+        this.preprocessor = preprocessor;
+        this.templateStrings = templateStrings;
+    }
+
+    /**
+     * @param extension 文件扩展名
+     * @return 对应语言的分析器，不支持的扩展名返回 null
+     */
+    public static SyntaxLexer forExtension(String extension) {
+        if (extension == null) {
+            return null;
+        }
+        String ext = extension.toLowerCase();
+        if (ext.equals("java")) {
+            return new SyntaxLexer(Kind.C_LIKE, JAVA_KEYWORDS, true, false, false, false);
+        } else if (ext.equals("c") || ext.equals("cpp") || ext.equals("h")) {
+            return new SyntaxLexer(Kind.C_LIKE, C_KEYWORDS, true, false, true, false);
+        } else if (ext.equals("js")) {
+            return new SyntaxLexer(Kind.C_LIKE, JS_KEYWORDS, true, false, false, true);
+        } else if (ext.equals("php")) {
+            return new SyntaxLexer(Kind.C_LIKE, PHP_KEYWORDS, true, true, false, false);
+        } else if (ext.equals("css")) {
+            return new SyntaxLexer(Kind.C_LIKE, NO_KEYWORDS, false, false, false, false);
+        } else if (ext.equals("py")) {
+            return new SyntaxLexer(Kind.PYTHON, PYTHON_KEYWORDS, false, true, false, false);
+        } else if (ext.equals("html") || ext.equals("htm") || ext.equals("xml")) {
+            return new SyntaxLexer(Kind.MARKUP, NO_KEYWORDS, false, false, false, false);
+        }
+        return null;
+    }
+
+    /**
+     * 分析一行
+     * @param text 文本
+     * @param start 行的起始位置
+     * @param end 行的结束位置，不包含换行符
+     * @param state 上一行的结束状态，第一行为 {@link #INITIAL}
+     * @param sink 接收记号，为 null 时只计算结束状态
+     * @return 这一行的结束状态
+     */
+    public int lexLine(CharSequence text, int start, int end, int state, TokenSink sink) {
+        if (kind == Kind.MARKUP) {
+            return lexMarkup(text, start, end, state, sink);
+        }
+        return lexCode(text, start, end, state, sink);
+    }
+
+    private int lexCode(CharSequence text, int start, int end, int state, TokenSink sink) {
+        int i = start;
+        if (state == BLOCK_COMMENT) {
+            int close = indexOf(text, "*/", i, end);
+            if (close < 0) {
+                emit(sink, i, end, COMMENT);
+                return BLOCK_COMMENT;
+            }
+            emit(sink, i, close + 2, COMMENT);
+            i = close + 2;
+        } else if (state == TEMPLATE_STRING || state == TRIPLE_DOUBLE || state == TRIPLE_SINGLE) {
+            String quote = state == TEMPLATE_STRING ? "`" : state == TRIPLE_DOUBLE ? "\"\"\"" : "'''";
+            int close = closingQuote(text, quote, i, end);
+            if (close < 0) {
+                emit(sink, i, end, STRING);
+                return state;
+            }
+            emit(sink, i, close, STRING);
+            i = close;
+        }
+
+        while (i < end) {
+            char c = text.charAt(i);
+            char next = i + 1 < end ? text.charAt(i + 1) : 0;
+            if (kind == Kind.C_LIKE && slashComments && c == '/' && next == '/') {
+                emit(sink, i, end, COMMENT);
+                return INITIAL;
+            } else if (kind == Kind.C_LIKE && c == '/' && next == '*') {
+                int close = indexOf(text, "*/", i + 2, end);
+                if (close < 0) {
+                    emit(sink, i, end, COMMENT);
+                    return BLOCK_COMMENT;
+                }
+                emit(sink, i, close + 2, COMMENT);
+                i = close + 2;
+            } else if (c == '#' && preprocessor) {
+                int wordEnd = skipIdentifier(text, i + 1, end);
+                emit(sink, i, wordEnd, KEYWORD);
+                i = wordEnd;
+            } else if (c == '#' && hashComments) {
+                emit(sink, i, end, COMMENT);
+                return INITIAL;
+            } else if (kind == Kind.PYTHON && (startsWith(text, "\"\"\"", i, end) || startsWith(text, "'''", i, end))) {
+                String quote = c == '"' ? "\"\"\"" : "'''";
+                int close = closingQuote(text, quote, i + 3, end);
+                if (close < 0) {
+                    emit(sink, i, end, STRING);
+                    return c == '"' ? TRIPLE_DOUBLE : TRIPLE_SINGLE;
+                }
+                emit(sink, i, close, STRING);
+                i = close;
+            } else if (c == '`' && templateStrings) {
+                int close = closingQuote(text, "`", i + 1, end);
+                if (close < 0) {
+                    emit(sink, i, end, STRING);
+                    return TEMPLATE_STRING;
+                }
+                emit(sink, i, close, STRING);
+                i = close;
+            } else if (c == '"' || c == '\'') {
+                // 普通字符串不跨行，没有结束引号时到行尾为止
+                int close = closingQuote(text, String.valueOf(c), i + 1, end);
+                int stop = close < 0 ? end : close;
+                emit(sink, i, stop, STRING);
+                i = stop;
+            } else if (isDigit(c) || (c == '.' && isDigit(next))) {
+                int stop = i + 1;
+                while (stop < end && (Character.isLetterOrDigit(text.charAt(stop)) || text.charAt(stop) == '.'
+                        || text.charAt(stop) == '_')) {
+                    stop++;
+                }
+                emit(sink, i, stop, NUMBER);
+                i = stop;
+            } else if (isIdentifierStart(c)) {
+                int stop = skipIdentifier(text, i + 1, end);
+                if (keywords.contains(text.subSequence(i, stop).toString())) {
+                    emit(sink, i, stop, KEYWORD);
+                }
+                i = stop;
+            } else {
+                i++;
+            }
+        }
+        return INITIAL;
+    }
+
+    private int lexMarkup(CharSequence text, int start, int end, int state, TokenSink sink) {
+        int i = start;
+        if (state == MARKUP_COMMENT) {
+            int close = indexOf(text, "-->", i, end);
+            if (close < 0) {
+                emit(sink, i, end, COMMENT);
+                return MARKUP_COMMENT;
+            }
+            emit(sink, i, close + 3, COMMENT);
+            i = close + 3;
+            state = INITIAL;
+        }
+
+        while (i < end) {
+            if (state == MARKUP_TAG || state == MARKUP_VALUE_DOUBLE || state == MARKUP_VALUE_SINGLE) {
+                int[] result = lexTag(text, i, end, state, sink);
+                i = result[0];
+                state = result[1];
+                continue;
+            }
+            char c = text.charAt(i);
+            if (c == '<' && startsWith(text, "<!--", i, end)) {
+                int close = indexOf(text, "-->", i + 4, end);
+                if (close < 0) {
+                    emit(sink, i, end, COMMENT);
+                    return MARKUP_COMMENT;
+                }
+                emit(sink, i, close + 3, COMMENT);
+                i = close + 3;
+            } else if (c == '<') {
+                int stop = i + 1;
+                if (stop < end && (text.charAt(stop) == '/' || text.charAt(stop) == '!' || text.charAt(stop) == '?')) {
+                    stop++;
+                }
+                stop = skipName(text, stop, end);
+                emit(sink, i, stop, TAG);
+                i = stop;
+                state = MARKUP_TAG;
+            } else if (c == '&') {
+                int semicolon = indexOf(text, ";", i + 1, end);
+                if (semicolon > 0 && semicolon - i <= 10) {
+                    emit(sink, i, semicolon + 1, KEYWORD);
+                    i = semicolon + 1;
+                } else {
+                    i++;
+                }
+            } else {
+                i++;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * 分析标签内部，直到标签结束或行尾
+     * @return {下一个位置, 状态}
+     */
+    private int[] lexTag(CharSequence text, int i, int end, int state, TokenSink sink) {
+        if (state == MARKUP_VALUE_DOUBLE || state == MARKUP_VALUE_SINGLE) {
+            char quote = state == MARKUP_VALUE_DOUBLE ? '"' : '\'';
+            int close = indexOf(text, String.valueOf(quote), i, end);
+            if (close < 0) {
+                emit(sink, i, end, STRING);
+                return new int[] {end, state};
+            }
+            emit(sink, i, close + 1, STRING);
+            i = close + 1;
+        }
+
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '>' || ((c == '/' || c == '?') && i + 1 < end && text.charAt(i + 1) == '>')) {
+                int stop = c == '>' ? i + 1 : i + 2;
+                emit(sink, i, stop, TAG);
+                return new int[] {stop, INITIAL};
+            } else if (c == '"' || c == '\'') {
+                int close = indexOf(text, String.valueOf(c), i + 1, end);
+                if (close < 0) {
+                    emit(sink, i, end, STRING);
+                    return new int[] {end, c == '"' ? MARKUP_VALUE_DOUBLE : MARKUP_VALUE_SINGLE};
+                }
+                emit(sink, i, close + 1, STRING);
+                i = close + 1;
+            } else if (isNameChar(c)) {
+                int stop = skipName(text, i, end);
+                emit(sink, i, stop, ATTRIBUTE);
+                i = stop;
+            } else {
+                i++;
+            }
+        }
+        return new int[] {end, MARKUP_TAG};
+    }
+
+    private static void emit(TokenSink sink, int start, int end, int type) {
+        if (sink != null && end > start) {
+            sink.token(start, end, type);
+        }
+    }
+
+    /**
+     * @return 结束引号之后的位置，跳过反斜杠转义的字符；没有结束引号时返回 -1
+     */
+    private static int closingQuote(CharSequence text, String quote, int from, int end) {
+        int i = from;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (startsWith(text, quote, i, end)) {
+                return i + quote.length();
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(CharSequence text, String target, int from, int end) {
+        for (int i = from; i <= end - target.length(); i++) {
+            if (startsWith(text, target, i, end)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(CharSequence text, String prefix, int at, int end) {
+        if (at + prefix.length() > end) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(at + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipIdentifier(CharSequence text, int from, int end) {
+        int i = from;
+        while (i < end && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_'
+                || text.charAt(i) == '$')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipName(CharSequence text, int from, int end) {
+        int i = from;
+        while (i < end && isNameChar(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == ':' || c == '.';
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return Character.isLetter(c) || c == '_' || c == '$';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static Set<String> keywords(String... words) {
+        return new HashSet<>(Arrays.asList(words));
+    }
+}
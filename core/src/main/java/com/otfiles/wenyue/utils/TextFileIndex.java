@@ -0,0 +1,101 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 文本文件的预处理结果：检测到的编码
+ * 按路径缓存，文件大小或修改时间变化后自动失效
+ */
+public class TextFileIndex {
+
+    // 编码检测大约需要读取的字节数，用于节流计数
+    private static final int DETECT_COST = 16 * 1024;
+    private static final int MAX_CACHE_ENTRIES = 64;
+
+    private static final Map<String, TextFileIndex> CACHE =
+        new LinkedHashMap<String, TextFileIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TextFileIndex> eldest) {
+                return size() > MAX_CACHE_ENTRIES;
+            }
+        };
+
+    private final String path;
+    private final long length;
+    private final long lastModified;
+    private final String encoding;
+
+    private TextFileIndex(String path, long length, long lastModified, String encoding) {
+        this.path = path;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.encoding = encoding;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return 文件未变化时返回缓存的索引，否则返回 null
+     */
+    public static TextFileIndex getCached(File file) {
+        TextFileIndex index;
+        synchronized (CACHE) {
+            index = CACHE.get(file.getAbsolutePath());
+        }
+        if (index != null && index.length == file.length() && index.lastModified == file.lastModified()) {
+            return index;
+        }
+        return null;
+    }
+
+    /**
+     * @return 预处理这个文件大约需要读取的字节数
+     */
+    public static long cost(File file) {
+        return Math.min(file.length(), DETECT_COST);
+    }
+
+    /**
+     * 检测编码，结果写入缓存
+     * @param file 文本文件
+     * @param throttle 读取前的节流检查，可以为 null
+     * @return 文件的索引
+     * @throws IOException 被节流中止
+     */
+    public static TextFileIndex build(File file, IoThrottle throttle) throws IOException {
+        TextFileIndex cached = getCached(file);
+        if (cached != null) {
+            return cached;
+        }
+
+        long length = file.length();
+        long lastModified = file.lastModified();
+        if (throttle != null) {
+            throttle.acquire(Math.min(length, DETECT_COST));
+        }
+        String encoding = FileUtils.detectEncoding(file);
+
+        TextFileIndex index = new TextFileIndex(file.getAbsolutePath(), length, lastModified, encoding);
+        synchronized (CACHE) {
+            CACHE.put(index.path, index);
+        }
+        return index;
+    }
+}
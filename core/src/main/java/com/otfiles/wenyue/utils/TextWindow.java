@@ -0,0 +1,661 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * 文本文件中解码后的一段连续内容
+ *
+ * 大文件只读取指定位置附近的一段（窗口），窗口边界对齐到行首。
+ * 文件不超过窗口大小时窗口就是整个文件。
+ * 窗口保存文件中的原始字节，需要显示时才解码，GBK、UTF-8 等编码的文本
+ * 占用的内存约为解码成 String 后的一半。
+ */
+public class TextWindow {
+
+    /**
+     * 可以从任意偏移开始顺序读取的内容，如压缩文件解压后的内容
+     */
+    public interface Source {
+        /**
+         * @return 内容的总字节数，未知时返回 -1
+         */
+        long length();
+
+        /**
+         * @return 从 offset 开始的流，调用者负责关闭
+         */
+        InputStream open(long offset) throws IOException;
+    }
+
+    private final String path;
+    private final long fileLength;
+    private final long lastModified;
+    private final String encoding;
+    private final long startByte;
+    private final long endByte;
+    // 窗口对应的原始字节
+    private final byte[] data;
+    // 窗口内每行起始位置相对 startByte 的字节偏移
+    private final int[] lineStarts;
+
+    private TextWindow(String path, long fileLength, long lastModified, String encoding,
+                       long startByte, long endByte, byte[] data, int[] lineStarts) {
+        this.path = path;
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        this.encoding = encoding;
+        this.startByte = startByte;
+        this.endByte = endByte;
+        this.data = data;
+        this.lineStarts = lineStarts;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public long getStartByte() {
+        return startByte;
+    }
+
+    public long getEndByte() {
+        return endByte;
+    }
+
+    /**
+     * 解码整个窗口。需要反复解码时用 {@link #decode(CharBuffer)} 复用缓冲区。
+     * @return 窗口文本
+     */
+    public String getText() {
+        return decode(null).toString();
+    }
+
+    /**
+     * 把窗口解码到缓冲区中，缓冲区容量不够时重新分配
+     * @param reuse 可以复用的缓冲区，可以为 null
+     * @return 包含窗口文本的缓冲区（已 flip），下次解码前有效
+     */
+    public CharBuffer decode(CharBuffer reuse) {
+        CharsetDecoder decoder = Charset.forName(encoding).newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        int capacity = (int) (data.length * (double) decoder.maxCharsPerByte()) + 16;
+        CharBuffer out = reuse != null && reuse.capacity() >= capacity ? reuse : CharBuffer.allocate(capacity);
+        while (true) {
+            out.clear();
+            decoder.reset();
+            CoderResult result = decoder.decode(ByteBuffer.wrap(data), out, true);
+            if (!result.isOverflow()) {
+                result = decoder.flush(out);
+            }
+            if (!result.isOverflow()) {
+                break;
+            }
+            out = CharBuffer.allocate(out.capacity() * 2);
+        }
+        out.flip();
+        return out;
+    }
+
+    /**
+     * @return 窗口是否包含整个文件
+     */
+    public boolean isWholeFile() {
+        return startByte == 0 && endByte == fileLength;
+    }
+
+    public boolean hasPrevious() {
+        return startByte > 0;
+    }
+
+    public boolean hasNext() {
+        return endByte < fileLength;
+    }
+
+    public int getLineCount() {
+        return lineStarts.length;
+    }
+
+    /**
+     * 用另一种编码解释同一段字节，不重新读取文件
+     * @param newEncoding 新编码
+     * @return 新窗口；两种编码的换行符表示不同（如 UTF-16 与单字节兼容编码之间）时返回 null，需要重新读取
+     */
+    public TextWindow withEncoding(String newEncoding) {
+        if (unitSize(newEncoding) != unitSize(encoding)
+                || isBigEndian(newEncoding) != isBigEndian(encoding)) {
+            return null;
+        }
+        return new TextWindow(path, fileLength, lastModified, newEncoding, startByte, endByte, data, lineStarts);
+    }
+
+    /**
+     * @return 窗口占用内存的估计值（字节）
+     */
+    public long estimateMemory() {
+        return data.length + (long) lineStarts.length * 4 + 64;
+    }
+
+    /**
+     * @return 窗口内第 line 行（从0开始）的起始字节在文件中的偏移，超出范围时取最后一行
+     */
+    public long byteOffsetOfLine(int line) {
+        int index = Math.max(0, Math.min(line, lineStarts.length - 1));
+        return startByte + lineStarts[index];
+    }
+
+    /**
+     * @return 包含指定文件偏移的行在窗口内的行号（从0开始）
+     */
+    public int lineOfByteOffset(long offset) {
+        int relative = (int) Math.max(0, Math.min(offset - startByte, Integer.MAX_VALUE));
+        int index = Arrays.binarySearch(lineStarts, relative);
+        if (index < 0) {
+            index = -index - 2;
+        }
+        return Math.max(0, index);
+    }
+
+    /**
+     * 统计文本中 charOffset 之前的换行符数量，即 charOffset 所在的行号
+     */
+    public static int lineOfCharOffset(CharSequence text, int charOffset) {
+        int line = 0;
+        int end = Math.min(charOffset, text.length());
+        for (int i = 0; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @return 文本中第 line 行的起始字符位置，超出范围时返回文本长度
+     */
+    public static int charOffsetOfLine(CharSequence text, int line) {
+        if (line <= 0) {
+            return 0;
+        }
+        int found = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n' && ++found == line) {
+                return i + 1;
+            }
+        }
+        return text.length();
+    }
+
+    /**
+     * @return 不包含任何内容的窗口，用于文件读取失败时
+     */
+    public static TextWindow empty(String path, String encoding) {
+        return new TextWindow(path, 0, 0, encoding, 0, 0, new byte[0], new int[] {0});
+    }
+
+    /**
+     * 读取指定位置附近的一段内容
+     * @param file 文件
+     * @param encoding 编码
+     * @param anchor 需要包含在窗口内的字节偏移，窗口尽量以它为中心
+     * @param maxBytes 窗口最大字节数
+     * @return 窗口
+     * @throws IOException 读取失败
+     */
+    public static TextWindow load(File file, String encoding, long anchor, int maxBytes) throws IOException {
+        int unitSize = unitSize(encoding);
+
+        Perf.Span span = Perf.begin("TextWindow.load");
+        long bytesRead = 0;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            long lastModified = file.lastModified();
+            anchor = alignAnchor(anchor, length, unitSize);
+            long start = windowStart(anchor, length, maxBytes, unitSize);
+            long end = Math.min(length, start + maxBytes);
+
+            byte[] data = new byte[(int) (end - start)];
+            raf.seek(start);
+            raf.readFully(data);
+            bytesRead = data.length;
+            return trim(file.getAbsolutePath(), length, lastModified, encoding, anchor, start, data);
+        } finally {
+            raf.close();
+            Perf.end(span, bytesRead);
+        }
+    }
+
+    /**
+     * 从压缩文件等不能直接按偏移读取的内容中读取指定位置附近的一段内容
+     * @param source 内容来源
+     * @param path 窗口对应的（虚拟）路径
+     * @param lastModified 内容的修改时间
+     * @throws IOException 读取失败
+     */
+    public static TextWindow load(Source source, String path, long lastModified,
+                                  String encoding, long anchor, int maxBytes) throws IOException {
+        int unitSize = unitSize(encoding);
+
+        Perf.Span span = Perf.begin("TextWindow.loadSource");
+        long bytesRead = 0;
+        try {
+            long length = source.length();
+            long start;
+            if (length >= 0) {
+                anchor = alignAnchor(anchor, length, unitSize);
+                start = windowStart(anchor, length, maxBytes, unitSize);
+            } else {
+                // 长度未知时先以锚点为中心读取，读到结尾后长度就确定了
+                anchor = Math.max(0, anchor - anchor % unitSize);
+                start = Math.max(0, anchor - maxBytes / 2);
+                start -= start % unitSize;
+            }
+            long end = length >= 0 ? Math.min(length, start + maxBytes) : start + maxBytes;
+
+            byte[] data = new byte[(int) (end - start)];
+            int filled = 0;
+            InputStream in = source.open(start);
+            try {
+                int n;
+                while (filled < data.length && (n = in.read(data, filled, data.length - filled)) > 0) {
+                    filled += n;
+                }
+            } finally {
+                in.close();
+            }
+            bytesRead = filled;
+            if (filled < data.length) {
+                if (length >= 0) {
+                    throw new EOFException(path);
+                }
+                if (filled == 0 && start > 0 && source.length() >= 0) {
+                    // 锚点在结尾之后，按确定的长度重新读取
+                    return load(source, path, lastModified, encoding, anchor, maxBytes);
+                }
+                length = start + filled;
+                data = Arrays.copyOf(data, filled);
+                anchor = Math.min(anchor, length);
+            } else if (length < 0) {
+                // 后面还有内容，但不知道有多少
+                length = Long.MAX_VALUE;
+            }
+            return trim(path, length, lastModified, encoding, anchor, start, data);
+        } finally {
+            Perf.end(span, bytesRead);
+        }
+    }
+
+    /**
+     * 文件在外部变长后更新窗口，只读取新增的部分。
+     * 文件中窗口对应的字节全部没有变化时按在末尾追加处理：窗口包含原来的结尾时把新增的内容
+     * 接在后面（总共不超过 maxBytes），否则窗口内容不变，只更新文件长度和修改时间。
+     * @return 更新后的窗口；文件没有变长或窗口的内容变化了时返回 null，需要重新读取
+     * @throws IOException 读取失败
+     */
+    public TextWindow reloadAppended(File file, int maxBytes) throws IOException {
+        Perf.Span span = Perf.begin("TextWindow.reloadAppended");
+        long bytesRead = 0;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long length = raf.length();
+            long modified = file.lastModified();
+            if (length <= fileLength) {
+                return null;
+            }
+            // 前面的内容被插入或删除时窗口的字节会移动
+            bytesRead = data.length;
+            if (!matches(raf.getChannel())) {
+                return null;
+            }
+            if (endByte < fileLength) {
+                return new TextWindow(path, length, modified, encoding, startByte, endByte, data, lineStarts);
+            }
+            int room = (int) Math.min(length - endByte, Math.max(0, maxBytes - data.length));
+            byte[] combined = Arrays.copyOf(data, data.length + room);
+            raf.seek(endByte);
+            raf.readFully(combined, data.length, room);
+            bytesRead += room;
+            return trim(path, length, modified, encoding, startByte, startByte, combined);
+        } finally {
+            raf.close();
+            Perf.end(span, bytesRead);
+        }
+    }
+
+    /**
+     * @return 文件中窗口对应的字节是否与窗口完全相同
+     */
+    private boolean matches(FileChannel channel) throws IOException {
+        if (channel.size() < endByte) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(1, Math.min(64 * 1024, data.length)));
+        byte[] current = buffer.array();
+        int checked = 0;
+        while (checked < data.length) {
+            buffer.clear();
+            buffer.limit(Math.min(buffer.capacity(), data.length - checked));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, startByte + checked + buffer.position()) < 0) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (current[i] != data[checked + i]) {
+                    return false;
+                }
+            }
+            checked += buffer.limit();
+        }
+        return true;
+    }
+
+    private static long alignAnchor(long anchor, long length, int unitSize) {
+        anchor = Math.max(0, Math.min(anchor, length));
+        return anchor - anchor % unitSize;
+    }
+
+    /**
+     * @return 以 anchor 为中心、不超过 maxBytes 的窗口的起始偏移
+     */
+    private static long windowStart(long anchor, long length, int maxBytes, int unitSize) {
+        if (length <= maxBytes) {
+            return 0;
+        }
+        long start = Math.max(0, anchor - maxBytes / 2);
+        long end = Math.min(length, start + maxBytes);
+        start = Math.max(0, end - maxBytes);
+        return start - start % unitSize;
+    }
+
+    /**
+     * 把读到的字节裁剪到完整的行，建立窗口
+     * @param start data 在内容中的起始偏移
+     */
+    private static TextWindow trim(String path, long length, long lastModified, String encoding,
+                                   long anchor, long start, byte[] data) {
+        int unitSize = unitSize(encoding);
+        boolean bigEndian = isBigEndian(encoding);
+        long end = start + data.length;
+        int from = 0;
+        int to = data.length;
+        int anchorIndex = (int) (anchor - start);
+        if (start > 0) {
+            // 从锚点所在行的行首开始；整行都在窗口之前时从窗口内第一个完整字符开始
+            int newline = lastNewline(data, 0, anchorIndex, unitSize, bigEndian);
+            from = newline >= 0 ? newline + unitSize : firstCharBoundary(data, encoding);
+        }
+        if (end < length) {
+            // 在最后一个换行符之后截断，不留下半行
+            int newline = lastNewline(data, Math.max(from, anchorIndex), to, unitSize, bigEndian);
+            to = newline >= 0 ? newline + unitSize : lastCharBoundary(data, from, encoding);
+        }
+
+        int[] lineStarts = scanLineStarts(data, from, to, unitSize, bigEndian);
+        byte[] window = from == 0 && to == data.length ? data : Arrays.copyOfRange(data, from, to);
+        return new TextWindow(path, length, lastModified, encoding, start + from, start + to, window, lineStarts);
+    }
+
+    /**
+     * @return 文件的长度和修改时间是否与读取窗口时相同
+     */
+    public boolean isUnchanged(File file) {
+        return file.length() == fileLength && file.lastModified() == lastModified;
+    }
+
+    /**
+     * 文件在读取窗口之后被修改过时，窗口对应的字节没有变化才能只替换窗口部分，
+     * 变化只在窗口之外（如在末尾追加）时写回会保留这些变化
+     * @return 文件中窗口对应的字节是否与窗口相同
+     * @throws IOException 读取失败
+     */
+    public boolean matchesFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return matches(raf.getChannel());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * 用编辑后的文本替换窗口对应的字节范围并写回文件，窗口之外的内容保持不变。
+     * 先写临时文件再替换原文件。文件在读取窗口之后被修改过时先确认窗口对应的字节没有变化。
+     * @param text 编辑后的窗口文本
+     * @throws IOException 写入失败，或窗口对应的字节已经变化（窗口的字节范围不再对应原来的内容）
+     */
+    public void save(CharSequence text) throws IOException {
+        File file = new File(path);
+        File tempFile = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        byte[] encoded = encode(text);
+
+        RandomAccessFile source = new RandomAccessFile(file, "r");
+        FileOutputStream out = null;
+        try {
+            if (!isUnchanged(file) && !matches(source.getChannel())) {
+                throw new IOException("Window no longer matches the file: " + file.getAbsolutePath());
+            }
+            out = new FileOutputStream(tempFile);
+            copyRange(source, 0, startByte, out);
+            out.write(encoded);
+            copyRange(source, endByte, source.length(), out);
+            out.getFD().sync();
+        } finally {
+            source.close();
+            if (out != null) {
+                out.close();
+            }
+        }
+
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Failed to replace " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 用编辑后的文本替换窗口对应的字节范围，直接在文件中移动窗口之后的内容，不写临时文件。
+     * 用于不能重命名替换的文件，如 content:// URI 打开的文件描述符。
+     * 描述符查不到可靠的修改时间，每次都先确认窗口对应的字节没有变化。
+     * @param in 文件的可读通道
+     * @param out 同一文件的可写通道
+     * @throws IOException 窗口对应的字节已经变化，或写入失败，此时文件可能只写了一部分
+     */
+    public void save(CharSequence text, FileChannel in, FileChannel out) throws IOException {
+        if (!matches(in)) {
+            throw new IOException("Window no longer matches the file: " + path);
+        }
+        byte[] encoded = encode(text);
+        long length = in.size();
+        long delta = encoded.length - (endByte - startByte);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        if (delta > 0) {
+            // 内容变长，从末尾开始向后移动，避免覆盖还没移动的字节
+            long position = length;
+            while (position > endByte) {
+                int count = (int) Math.min(buffer.capacity(), position - endByte);
+                position -= count;
+                moveRange(in, out, buffer, position, count, delta);
+            }
+        } else if (delta < 0) {
+            long position = endByte;
+            while (position < length) {
+                int count = (int) Math.min(buffer.capacity(), length - position);
+                moveRange(in, out, buffer, position, count, delta);
+                position += count;
+            }
+        }
+        writeFully(out, ByteBuffer.wrap(encoded), startByte);
+        if (delta < 0) {
+            out.truncate(length + delta);
+        }
+        out.force(true);
+    }
+
+    /**
+     * 不带字节序的 UTF-16 编码时会在开头加 BOM，写到文件中间时改用无 BOM 的大端序
+     */
+    private byte[] encode(CharSequence text) throws IOException {
+        String charsetName = startByte > 0 && "UTF-16".equalsIgnoreCase(encoding) ? "UTF-16BE" : encoding;
+        return text.toString().getBytes(charsetName);
+    }
+
+    private static void moveRange(FileChannel in, FileChannel out, ByteBuffer buffer,
+                                  long from, int count, long delta) throws IOException {
+        buffer.clear();
+        buffer.limit(count);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, from + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        writeFully(out, buffer, from + delta);
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+
+    private static void copyRange(RandomAccessFile source, long from, long to, FileOutputStream out)
+            throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        source.seek(from);
+        long remaining = to - from;
+        while (remaining > 0) {
+            int read = source.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                break;
+            }
+            out.write(buffer, 0, read);
+            remaining -= read;
+        }
+    }
+
+    /**
+     * @return [from, to) 范围内最后一个换行符单元的位置，没有时返回 -1
+     */
+    private static int lastNewline(byte[] data, int from, int to, int unitSize, boolean bigEndian) {
+        int i = to - unitSize;
+        i -= i % unitSize;
+        for (; i >= from; i -= unitSize) {
+            if (isNewline(data, i, unitSize, bigEndian)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 窗口从一行中间开始时，跳过 UTF-8 多字节字符的后续字节
+     */
+    private static int firstCharBoundary(byte[] data, String encoding) {
+        if (!"UTF-8".equalsIgnoreCase(encoding)) {
+            return 0;
+        }
+        int i = 0;
+        while (i < data.length && i < 4 && (data[i] & 0xC0) == 0x80) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 窗口在一行中间结束时，去掉末尾不完整的 UTF-8 多字节字符
+     */
+    private static int lastCharBoundary(byte[] data, int from, String encoding) {
+        int end = data.length;
+        if (!"UTF-8".equalsIgnoreCase(encoding)) {
+            return end;
+        }
+        for (int i = end - 1; i >= Math.max(from, end - 4); i--) {
+            int b = data[i] & 0xFF;
+            if ((b & 0xC0) == 0x80) {
+                continue;
+            }
+            // 找到首字节，检查它声明的长度是否完整
+            int sequenceLength = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+            return i + sequenceLength <= end ? end : i;
+        }
+        return end;
+    }
+
+    private static int[] scanLineStarts(byte[] data, int from, int to, int unitSize, boolean bigEndian) {
+        int[] starts = new int[64];
+        int count = 0;
+        starts[count++] = 0;
+        for (int i = from; i + unitSize <= to; i += unitSize) {
+            if (isNewline(data, i, unitSize, bigEndian) && i + unitSize < to) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i + unitSize - from;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    /**
+     * @return 编码中一个字符单元的字节数，用于识别换行符
+     */
+    private static int unitSize(String encoding) {
+        String name = encoding.toUpperCase();
+        if (name.startsWith("UTF-32")) return 4;
+        if (name.startsWith("UTF-16")) return 2;
+        return 1;
+    }
+
+    /**
+     * @return 多字节单元编码是否为大端序（未带字节序后缀的 UTF-16 默认大端）
+     */
+    private static boolean isBigEndian(String encoding) {
+        return !encoding.toUpperCase().endsWith("LE");
+    }
+
+    /**
+     * 判断 data[offset] 开始的字符单元是否为换行符
+     */
+    private static boolean isNewline(byte[] data, int offset, int unitSize, boolean bigEndian) {
+        if (unitSize == 1) {
+            return data[offset] == '\n';
+        }
+        int low = bigEndian ? offset + unitSize - 1 : offset;
+        if (data[low] != '\n') {
+            return false;
+        }
+        for (int i = offset; i < offset + unitSize; i++) {
+            if (i != low && data[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
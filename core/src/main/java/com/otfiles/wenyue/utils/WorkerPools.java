@@ -0,0 +1,88 @@
+package com.otfiles.wenyue.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 应用内共享的后台线程池
+ * 各个耗时任务统一从这里取线程池，避免每个功能各自创建线程
+ */
+public class WorkerPools {
+
+    // 文件读写线程数上限，闪存并发读写超过这个数量收益不大
+    private static final int IO_THREADS = 4;
+
+    private static ForkJoinPool forkJoinPool;
+    private static ExecutorService ioExecutor;
+    private static ExecutorService lowPriorityExecutor;
+
+    /**
+     * 获取共享的 fork-join 线程池，并行度等于 CPU 核心数
+     * @return fork-join 线程池
+     */
+    public static synchronized ForkJoinPool forkJoin() {
+        if (forkJoinPool == null) {
+            int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+            forkJoinPool = new ForkJoinPool(parallelism);
+        }
+        return forkJoinPool;
+    }
+
+    /**
+     * 获取共享的文件读写线程池，空闲线程会自动回收
+     * @return 文件读写线程池
+     */
+    public static synchronized ExecutorService io() {
+        if (ioExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(IO_THREADS, IO_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), namedThreads("io", Thread.NORM_PRIORITY));
+            executor.allowCoreThreadTimeOut(true);
+            ioExecutor = executor;
+        }
+        return ioExecutor;
+    }
+
+    /**
+     * 获取共享的低优先级单线程池，用于预加载等可有可无的后台任务
+     * @return 低优先级线程池
+     */
+    public static synchronized ExecutorService lowPriority() {
+        if (lowPriorityExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), namedThreads("low", Thread.MIN_PRIORITY));
+            executor.allowCoreThreadTimeOut(true);
+            lowPriorityExecutor = executor;
+        }
+        return lowPriorityExecutor;
+    }
+
+    /**
+     * 创建一个独立的固定大小线程池，用于需要自己控制并发数的批量任务，用完后由调用者关闭
+     * @param name 线程名前缀
+     * @param threads 线程数
+     * @return 新的线程池
+     */
+    public static ExecutorService newFixed(String name, int threads) {
+        return new ThreadPoolExecutor(threads, threads,
+            0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), namedThreads(name, Thread.NORM_PRIORITY));
+    }
+
+    private static ThreadFactory namedThreads(final String prefix, final int priority) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(priority);
+                return thread;
+            }
+        };
+    }
+}
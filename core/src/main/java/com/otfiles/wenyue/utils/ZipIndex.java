@@ -0,0 +1,724 @@
+package com.otfiles.wenyue.utils;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * ZIP 压缩包的条目索引
+ *
+ * 打开时只读取一次中央目录，条目名保存为一整块原始字节，大小、偏移等保存在并列的数组中，
+ * 几万个条目也只占几 MB。目录树在打开时建好，每个目录排序后的列表在第一次浏览时生成并保留。
+ * 索引按压缩包的长度和修改时间缓存，条目内容按需从压缩包中流式解压，不解压到磁盘。
+ *
+ * 压缩包中的文件用“压缩包路径!/序号!/条目名”形式的虚拟路径表示，按序号找到条目，
+ * 不必把条目名重新编码后逐个比较。
+ */
+public class ZipIndex {
+
+    public static final String ENTRY_SEPARATOR = "!/";
+
+    private static final int MAX_CACHE_ENTRIES = 4;
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int ZIP64_END_HEADER = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT = 0xFFFF;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    // 通用标志位：加密、文件名为 UTF-8
+    private static final int FLAG_ENCRYPTED = 1;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    // 没有 UTF-8 标志又不是合法 UTF-8 的文件名多半来自中文 Windows
+    private static final Charset LEGACY_NAMES = Charset.forName("GBK");
+
+    private static final Map<String, ZipIndex> CACHE =
+        new LinkedHashMap<String, ZipIndex>(8, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ZipIndex> eldest) {
+                return size() > MAX_CACHE_ENTRIES;
+            }
+        };
+
+    /**
+     * 目录中的一项，浏览目录时才创建
+     */
+    public static class Entry {
+        private final String name;
+        private final String path;
+        private final int index;
+        private final long size;
+        private final int dosTime;
+
+        Entry(String name, String path, int index, long size, int dosTime) {
+            this.name = name;
+            this.path = path;
+            this.index = index;
+            this.size = size;
+            this.dosTime = dosTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return 在压缩包内的路径，目录以 / 结尾
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public boolean isDirectory() {
+            return index < 0;
+        }
+
+        /**
+         * @return 在中央目录中的序号，目录为 -1
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return 解压后的大小，目录为 0
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return 修改时间，目录为 0。调用时才转换，列出目录时不用逐个换算
+         */
+        public long getTime() {
+            return index < 0 ? 0 : dosToJavaTime(dosTime);
+        }
+    }
+
+    private final File archive;
+    private final long length;
+    private final long lastModified;
+    private int count;
+    // 所有条目名的原始字节，第 i 个条目名为 names[nameStarts[i], nameStarts[i + 1])
+    private byte[] names;
+    private int[] nameStarts;
+    private boolean[] utf8Names;
+    private long[] localOffsets;
+    private long[] compressedSizes;
+    private long[] sizes;
+    private int[] methods;
+    private int[] dosTimes;
+    // 目录路径（以 / 结尾，根目录为空字符串）到其中的子目录和文件
+    private final Map<String, List<String>> subdirectories = new HashMap<>();
+    private final Map<String, List<Integer>> files = new HashMap<>();
+    private final Map<String, List<Entry>> listings = new HashMap<>();
+
+    private ZipIndex(File archive) {
+        this.archive = archive;
+        this.length = archive.length();
+        this.lastModified = archive.lastModified();
+    }
+
+    public static boolean isArchive(String extension) {
+        return "zip".equals(extension);
+    }
+
+    public static boolean isEntryPath(String path) {
+        return path != null && path.contains(ENTRY_SEPARATOR);
+    }
+
+    /**
+     * @return 虚拟路径中压缩包的路径
+     */
+    public static String archiveOf(String path) {
+        return path.substring(0, path.indexOf(ENTRY_SEPARATOR));
+    }
+
+    /**
+     * @return 虚拟路径中的条目名
+     */
+    public static String entryOf(String path) {
+        int start = path.indexOf(ENTRY_SEPARATOR) + ENTRY_SEPARATOR.length();
+        int end = path.indexOf(ENTRY_SEPARATOR, start);
+        return end >= 0 ? path.substring(end + ENTRY_SEPARATOR.length()) : path.substring(start);
+    }
+
+    /**
+     * @return 虚拟路径中条目的序号，没有序号时返回 -1
+     */
+    public static int entryIndexOf(String path) {
+        int start = path.indexOf(ENTRY_SEPARATOR) + ENTRY_SEPARATOR.length();
+        int end = path.indexOf(ENTRY_SEPARATOR, start);
+        if (end < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(path.substring(start, end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static String entryPath(String archive, Entry entry) {
+        return entryPath(archive, entry.index, entry.path);
+    }
+
+    private static String entryPath(String archive, int index, String entry) {
+        return archive + ENTRY_SEPARATOR + index + ENTRY_SEPARATOR + entry;
+    }
+
+    /**
+     * @return 压缩包未变化时返回缓存的索引，否则返回 null
+     */
+    public static ZipIndex getCached(File archive) {
+        ZipIndex index;
+        synchronized (CACHE) {
+            index = CACHE.get(archive.getAbsolutePath());
+        }
+        if (index != null && index.length == archive.length() && index.lastModified == archive.lastModified()) {
+            return index;
+        }
+        return null;
+    }
+
+    /**
+     * 获取压缩包的索引，没有缓存时读取中央目录
+     * @throws IOException 读取失败或不是有效的 ZIP 文件
+     */
+    public static ZipIndex open(File archive) throws IOException {
+        ZipIndex index = getCached(archive);
+        if (index != null) {
+            return index;
+        }
+        index = new ZipIndex(archive);
+        Perf.Span span = Perf.begin("ZipIndex.open");
+        try {
+            index.readCentralDirectory();
+        } finally {
+            Perf.end(span, index.names != null ? index.names.length : 0);
+        }
+        synchronized (CACHE) {
+            CACHE.put(archive.getAbsolutePath(), index);
+        }
+        return index;
+    }
+
+    public File getArchive() {
+        return archive;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public int getEntryCount() {
+        return count;
+    }
+
+    /**
+     * @return 已经生成过的目录列表（只读），还没有浏览过时返回 null
+     */
+    public List<Entry> getCachedListing(String directory) {
+        synchronized (listings) {
+            return listings.get(directory);
+        }
+    }
+
+    /**
+     * 列出目录中的子目录和文件，文件夹在前，各自按名称排序。
+     * 第一次列出时要创建并排序所有条目，大目录可能较慢，在后台线程调用。
+     * @param directory 以 / 结尾的目录路径，根目录为空字符串
+     * @return 排序后的列表（只读），目录不存在时为空
+     */
+    public List<Entry> list(String directory) {
+        synchronized (listings) {
+            List<Entry> listing = listings.get(directory);
+            if (listing != null) {
+                return listing;
+            }
+            List<Entry> dirs = new ArrayList<>();
+            List<String> subdirs = subdirectories.get(directory);
+            if (subdirs != null) {
+                for (String path : subdirs) {
+                    String name = path.substring(directory.length(), path.length() - 1);
+                    dirs.add(new Entry(name, path, -1, 0, 0));
+                }
+            }
+            List<Entry> entries = new ArrayList<>();
+            List<Integer> children = files.get(directory);
+            if (children != null) {
+                for (int i : children) {
+                    String path = nameOf(i);
+                    entries.add(new Entry(path.substring(path.lastIndexOf('/') + 1), path, i, sizes[i], dosTimes[i]));
+                }
+            }
+            Comparator<Entry> byName = new Comparator<Entry>() {
+                @Override
+                public int compare(Entry e1, Entry e2) {
+                    return e1.getName().compareToIgnoreCase(e2.getName());
+                }
+            };
+            Collections.sort(dirs, byName);
+            Collections.sort(entries, byName);
+            dirs.addAll(entries);
+            listing = Collections.unmodifiableList(dirs);
+            listings.put(directory, listing);
+            return listing;
+        }
+    }
+
+    /**
+     * 打开条目的解压流，调用者负责关闭
+     * @param path {@link #entryPath} 生成的虚拟路径
+     * @throws IOException 条目不存在、已加密或使用不支持的压缩方法
+     */
+    public InputStream openEntry(String path) throws IOException {
+        int i = findReadable(path);
+        FileInputStream in = new FileInputStream(archive);
+        try {
+            in.getChannel().position(dataStart(i, in));
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        InputStream data = new BoundedInputStream(new BufferedInputStream(in, 64 * 1024), compressedSizes[i]);
+        if (methods[i] == STORED) {
+            return data;
+        }
+        return new EntryInflaterStream(data);
+    }
+
+    /**
+     * 条目内容的来源，可以从任意位置开始读取。压缩的条目借助 {@link DeflateIndex} 的检查点跳转，
+     * 检查点随压缩包的索引一起按修改时间缓存。
+     * @param path {@link #entryPath} 生成的虚拟路径
+     * @throws IOException 条目不存在、已加密或使用不支持的压缩方法
+     */
+    public TextWindow.Source source(String path) throws IOException {
+        final int i = findReadable(path);
+        final long dataStart;
+        FileInputStream in = new FileInputStream(archive);
+        try {
+            dataStart = dataStart(i, in);
+        } finally {
+            in.close();
+        }
+        if (methods[i] == DEFLATED) {
+            return DeflateIndex.forRange(archive, entryPath(archive.getAbsolutePath(), i, nameOf(i)),
+                dataStart, compressedSizes[i], sizes[i]);
+        }
+        return new TextWindow.Source() {
+            @Override
+            public long length() {
+                return sizes[i];
+            }
+
+            @Override
+            public InputStream open(long offset) throws IOException {
+                offset = Math.max(0, Math.min(offset, sizes[i]));
+                FileInputStream in = new FileInputStream(archive);
+                try {
+                    in.getChannel().position(dataStart + offset);
+                } catch (IOException e) {
+                    in.close();
+                    throw e;
+                }
+                return new BoundedInputStream(new BufferedInputStream(in, 64 * 1024), sizes[i] - offset);
+            }
+        };
+    }
+
+    /**
+     * 按虚拟路径中的序号找到条目，压缩包被替换后序号对应的条目名不同时视为不存在
+     */
+    private int findReadable(String path) throws IOException {
+        int i = entryIndexOf(path);
+        String entry = entryOf(path);
+        if (i < 0 || i >= count || !nameOf(i).equals(entry)) {
+            throw new IOException("No such entry: " + entry);
+        }
+        if (methods[i] != STORED && methods[i] != DEFLATED) {
+            throw new IOException("Unsupported compression method " + methods[i] + ": " + entry);
+        }
+        return i;
+    }
+
+    /**
+     * 读取本地文件头，本地文件头中的扩展字段长度可能与中央目录中的不同
+     * @return 条目数据的起始偏移
+     */
+    private long dataStart(int i, FileInputStream in) throws IOException {
+        in.getChannel().position(localOffsets[i]);
+        byte[] header = new byte[LOCAL_HEADER_SIZE];
+        readFully(in, header);
+        if (getInt(header, 0) != LOCAL_HEADER) {
+            throw new IOException("Bad local header: " + nameOf(i));
+        }
+        return localOffsets[i] + LOCAL_HEADER_SIZE + getShort(header, 26) + getShort(header, 28);
+    }
+
+    private String nameOf(int i) {
+        int start = nameStarts[i];
+        int length = nameStarts[i + 1] - start;
+        return new String(names, start, length, utf8Names[i] ? UTF8 : LEGACY_NAMES);
+    }
+
+    /**
+     * 定位中央目录，读取所有条目并建立目录树
+     */
+    private void readCentralDirectory() throws IOException {
+        long entries;
+        long directorySize;
+        long directoryOffset;
+        RandomAccessFile raf = new RandomAccessFile(archive, "r");
+        try {
+            long end = findEndHeader(raf);
+            byte[] header = new byte[END_HEADER_SIZE];
+            raf.seek(end);
+            raf.readFully(header);
+            entries = getShort(header, 10);
+            directorySize = getInt(header, 12) & 0xFFFFFFFFL;
+            directoryOffset = getInt(header, 16) & 0xFFFFFFFFL;
+            if ((entries == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) && end >= 20) {
+                // ZIP64：结束记录之前是 ZIP64 结束记录的定位器
+                byte[] locator = new byte[20];
+                raf.seek(end - 20);
+                raf.readFully(locator);
+                if (getInt(locator, 0) == ZIP64_LOCATOR) {
+                    byte[] zip64 = new byte[56];
+                    raf.seek(getLong(locator, 8));
+                    raf.readFully(zip64);
+                    if (getInt(zip64, 0) != ZIP64_END_HEADER) {
+                        throw new IOException("Bad ZIP64 end record");
+                    }
+                    entries = getLong(zip64, 32);
+                    directorySize = getLong(zip64, 40);
+                    directoryOffset = getLong(zip64, 48);
+                }
+            }
+        } finally {
+            raf.close();
+        }
+        if (entries > Integer.MAX_VALUE - 1 || directoryOffset + directorySize > length) {
+            throw new IOException("Bad central directory");
+        }
+
+        int capacity = (int) entries;
+        names = new byte[(int) Math.min(directorySize, Integer.MAX_VALUE - 8)];
+        nameStarts = new int[capacity + 1];
+        utf8Names = new boolean[capacity];
+        localOffsets = new long[capacity];
+        compressedSizes = new long[capacity];
+        sizes = new long[capacity];
+        methods = new int[capacity];
+        dosTimes = new int[capacity];
+
+        FileInputStream fis = new FileInputStream(archive);
+        try {
+            fis.getChannel().position(directoryOffset);
+            InputStream in = new BufferedInputStream(fis, 64 * 1024);
+            byte[] header = new byte[CENTRAL_HEADER_SIZE];
+            byte[] extra = new byte[MAX_COMMENT];
+            int nameEnd = 0;
+            for (int i = 0; i < capacity; i++) {
+                readFully(in, header);
+                if (getInt(header, 0) != CENTRAL_HEADER) {
+                    throw new IOException("Bad central directory entry " + i);
+                }
+                int flags = getShort(header, 8);
+                int nameLength = getShort(header, 28);
+                int extraLength = getShort(header, 30);
+                int commentLength = getShort(header, 32);
+                if (nameEnd + nameLength > names.length) {
+                    throw new IOException("Bad central directory entry " + i);
+                }
+                readFully(in, names, nameEnd, nameLength);
+                readFully(in, extra, 0, extraLength);
+                skipFully(in, commentLength);
+
+                nameStarts[i] = nameEnd;
+                nameEnd += nameLength;
+                methods[i] = (flags & FLAG_ENCRYPTED) != 0 ? -1 : getShort(header, 10);
+                dosTimes[i] = getInt(header, 12);
+                compressedSizes[i] = getInt(header, 20) & 0xFFFFFFFFL;
+                sizes[i] = getInt(header, 24) & 0xFFFFFFFFL;
+                localOffsets[i] = getInt(header, 42) & 0xFFFFFFFFL;
+                readZip64Extra(i, extra, extraLength);
+                utf8Names[i] = (flags & FLAG_UTF8) != 0 || isUtf8(names, nameStarts[i], nameLength);
+                count = i + 1;
+            }
+            nameStarts[count] = nameEnd;
+            names = Arrays.copyOf(names, nameEnd);
+        } finally {
+            fis.close();
+        }
+        buildTree();
+    }
+
+    /**
+     * 大小或偏移超过 4 GB 时实际的值在 ZIP64 扩展字段中，按顺序只包含溢出的字段
+     */
+    private void readZip64Extra(int i, byte[] extra, int extraLength) {
+        int pos = 0;
+        while (pos + 4 <= extraLength) {
+            int id = getShort(extra, pos);
+            int size = getShort(extra, pos + 2);
+            int field = pos + 4;
+            if (id == 0x0001) {
+                if (sizes[i] == 0xFFFFFFFFL && field + 8 <= extraLength) {
+                    sizes[i] = getLong(extra, field);
+                    field += 8;
+                }
+                if (compressedSizes[i] == 0xFFFFFFFFL && field + 8 <= extraLength) {
+                    compressedSizes[i] = getLong(extra, field);
+                    field += 8;
+                }
+                if (localOffsets[i] == 0xFFFFFFFFL && field + 8 <= extraLength) {
+                    localOffsets[i] = getLong(extra, field);
+                }
+                return;
+            }
+            pos += 4 + size;
+        }
+    }
+
+    /**
+     * 按条目名建立目录树，没有单独条目的中间目录也会补上
+     */
+    private void buildTree() {
+        subdirectories.put("", new ArrayList<String>());
+        for (int i = 0; i < count; i++) {
+            String name = stripLeadingSlashes(nameOf(i));
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (name.endsWith("/")) {
+                addDirectory(name);
+                continue;
+            }
+            String parent = parentOf(name);
+            addDirectory(parent);
+            List<Integer> children = files.get(parent);
+            if (children == null) {
+                children = new ArrayList<>();
+                files.put(parent, children);
+            }
+            children.add(i);
+        }
+    }
+
+    /**
+     * 登记目录及其所有上级目录
+     * @param directory 以 / 结尾的目录路径
+     */
+    private void addDirectory(String directory) {
+        if (subdirectories.containsKey(directory)) {
+            return;
+        }
+        subdirectories.put(directory, new ArrayList<String>());
+        String parent = parentOf(directory);
+        addDirectory(parent);
+        subdirectories.get(parent).add(directory);
+    }
+
+    /**
+     * @return 上级目录，以 / 结尾，根目录为空字符串
+     */
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/', path.length() - 2);
+        return slash >= 0 ? path.substring(0, slash + 1) : "";
+    }
+
+    private static String stripLeadingSlashes(String name) {
+        int start = 0;
+        while (start < name.length() && name.charAt(start) == '/') {
+            start++;
+        }
+        return name.substring(start);
+    }
+
+    private static long findEndHeader(RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        int scan = (int) Math.min(length, END_HEADER_SIZE + MAX_COMMENT);
+        byte[] tail = new byte[scan];
+        raf.seek(length - scan);
+        raf.readFully(tail);
+        for (int i = scan - END_HEADER_SIZE; i >= 0; i--) {
+            if (getInt(tail, i) == END_HEADER) {
+                return length - scan + i;
+            }
+        }
+        throw new IOException("Not a ZIP file");
+    }
+
+    private static boolean isUtf8(byte[] data, int start, int length) {
+        try {
+            UTF8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT)
+                .decode(ByteBuffer.wrap(data, start, length));
+            return true;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    private static long dosToJavaTime(int dosTime) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(((dosTime >> 25) & 0x7F) + 1980, ((dosTime >> 21) & 0x0F) - 1, (dosTime >> 16) & 0x1F,
+            (dosTime >> 11) & 0x1F, (dosTime >> 5) & 0x3F, (dosTime << 1) & 0x3E);
+        return calendar.getTimeInMillis();
+    }
+
+    private static int getShort(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8;
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return getShort(b, off) | getShort(b, off + 2) << 16;
+    }
+
+    private static long getLong(byte[] b, int off) {
+        return (getInt(b, off) & 0xFFFFFFFFL) | (long) getInt(b, off + 4) << 32;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        readFully(in, buffer, 0, buffer.length);
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = in.read(buffer, off, len);
+            if (n < 0) {
+                throw new EOFException();
+            }
+            off += n;
+            len -= n;
+        }
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                throw new EOFException();
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * 只读取条目数据范围内的字节
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * 解压原始 deflate 数据。数据读完时补一个空字节，
+     * 不带 zlib 头的数据需要它才能确认结束（与 java.util.zip.ZipFile 的做法相同）
+     */
+    private static class EntryInflaterStream extends InflaterInputStream {
+        private boolean eof;
+        private boolean closed;
+
+        EntryInflaterStream(InputStream in) {
+            super(in, new Inflater(true), 8192);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of entry");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inf.end();
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.otfiles.wenyue.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 按 GZIPInputStream 解压的结果校验 DeflateIndex 顺序读取和前后跳转
+ */
+public class DeflateIndexTest {
+
+    // 超过检查点的初始间隔几倍，跳转时会用到中间的检查点
+    private static final int CONTENT_SIZE = 5 * 1024 * 1024 + 123;
+    private static final int READ_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void storedLevel0() throws IOException {
+        check(gzip("level0.gz", content(1), 0));
+    }
+
+    @Test
+    public void level1() throws IOException {
+        check(gzip("level1.gz", content(2), 1));
+    }
+
+    @Test
+    public void level6() throws IOException {
+        check(gzip("level6.gz", content(3), 6));
+    }
+
+    @Test
+    public void level9() throws IOException {
+        check(gzip("level9.gz", content(4), 9));
+    }
+
+    @Test
+    public void multipleMembers() throws IOException {
+        File file = folder.newFile("members.gz");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            // 不同级别的成员首尾相接，其中一个为空
+            out.write(compress(content(5), 6));
+            out.write(compress(new byte[0], 6));
+            out.write(compress(content(6), 0));
+            out.write(compress(content(7), 9));
+        } finally {
+            out.close();
+        }
+        check(file);
+    }
+
+    /**
+     * 先整体读一遍，再向后、向前跳转到随机位置读取，与 GZIPInputStream 的结果比较
+     */
+    private static void check(File file) throws IOException {
+        byte[] expected = gunzip(file);
+        DeflateIndex index = DeflateIndex.forGzip(file);
+        assertArrayEquals(expected, readFrom(index, 0, expected.length + 1));
+        assertEquals(expected.length, index.length());
+
+        Random random = new Random(file.getName().hashCode());
+        long[] offsets = new long[16];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = random.nextInt(expected.length);
+        }
+        Arrays.sort(offsets);
+        for (long offset : offsets) {
+            assertRange(expected, index, offset);
+        }
+        for (int i = offsets.length - 1; i >= 0; i--) {
+            assertRange(expected, index, offsets[i]);
+        }
+        assertRange(expected, index, expected.length - 1);
+        assertEquals(0, readFrom(index, expected.length, READ_SIZE).length);
+    }
+
+    private static void assertRange(byte[] expected, DeflateIndex index, long offset) throws IOException {
+        int end = (int) Math.min(expected.length, offset + READ_SIZE);
+        assertArrayEquals("offset " + offset, Arrays.copyOfRange(expected, (int) offset, end),
+            readFrom(index, offset, READ_SIZE));
+    }
+
+    private static byte[] readFrom(DeflateIndex index, long offset, int count) throws IOException {
+        InputStream in = index.open(offset);
+        try {
+            return read(in, count);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] read(InputStream in, int count) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while (out.size() < count && (n = in.read(buffer, 0, Math.min(buffer.length, count - out.size()))) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(File file) throws IOException {
+        InputStream in = new GZIPInputStream(new FileInputStream(file));
+        try {
+            return read(in, Integer.MAX_VALUE);
+        } finally {
+            in.close();
+        }
+    }
+
+    private File gzip(String name, byte[] content, int level) throws IOException {
+        File file = folder.newFile(name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(compress(content, level));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static byte[] compress(byte[] content, final int level) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(level);
+            }
+        };
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 随机单词组成的文本，夹杂不可压缩的随机字节，压缩后既有长距离引用也有存储块
+     */
+    private static byte[] content(long seed) {
+        Random random = new Random(seed);
+        String[] words = new String[256];
+        for (int i = 0; i < words.length; i++) {
+            StringBuilder word = new StringBuilder();
+            int length = 2 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            words[i] = word.toString();
+        }
+        byte[] content = new byte[CONTENT_SIZE];
+        int pos = 0;
+        while (pos < content.length) {
+            if (random.nextInt(200) == 0) {
+                int count = Math.min(content.length - pos, random.nextInt(8192));
+                for (int i = 0; i < count; i++) {
+                    content[pos++] = (byte) random.nextInt(256);
+                }
+                continue;
+            }
+            String word = words[random.nextInt(words.length)];
+            for (int i = 0; i < word.length() && pos < content.length; i++) {
+                content[pos++] = (byte) word.charAt(i);
+            }
+            if (pos < content.length) {
+                content[pos++] = (byte) (random.nextInt(12) == 0 ? '\n' : ' ');
+            }
+        }
+        return content;
+    }
+}
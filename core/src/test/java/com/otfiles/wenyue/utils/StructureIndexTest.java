@@ -0,0 +1,51 @@
+package com.otfiles.wenyue.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 校验 XML 结束符前出现重复字符时 StructureIndex 仍能找到结束符
+ */
+public class StructureIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void cdataEndingInBracket() throws IOException {
+        List<StructureIndex.Node> nodes = elementChildren("<a><![CDATA[x]]]></a>");
+        assertEquals(1, nodes.size());
+        assertEquals(StructureIndex.TEXT, nodes.get(0).getType());
+        assertEquals("x]", nodes.get(0).getPreview());
+    }
+
+    @Test
+    public void commentEndingInDash() throws IOException {
+        List<StructureIndex.Node> nodes = elementChildren("<a><!-- x ---><b/></a>");
+        assertEquals(1, nodes.size());
+        assertEquals("b", nodes.get(0).getName());
+    }
+
+    private List<StructureIndex.Node> elementChildren(String xml) throws IOException {
+        File file = folder.newFile("test.xml");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(xml.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        StructureIndex index = new StructureIndex(file, "UTF-8");
+        List<StructureIndex.Node> roots = index.children(index.getRoot(), null, 10).getNodes();
+        assertEquals(1, roots.size());
+        return index.children(roots.get(0), null, 10).getNodes();
+    }
+}